@@ -17,12 +17,37 @@ public class Arguments {
   final private String resort;
   final private String hostAddress;
   final private String csvFilename;
+  final private TransportSettings transportSettings;
+  final private CompressionSettings compressionSettings;
+  final private WarmupSettings warmupSettings;
+  final private DistributionSettings distributionSettings;
+  final private WorkloadSettings workloadSettings;
+  final private ReplaySettings replaySettings;
+  final private MixSettings mixSettings;
+  final private PartitionSettings partitionSettings;
+  final private VerificationSettings verificationSettings;
+  final private SessionSettings sessionSettings;
+  final private SimulationSettings simulationSettings;
+  final private DistributedSettings distributedSettings;
+  final private BalancingSettings balancingSettings;
+  final private BreakerSettings breakerSettings;
+  final private RateLimitSettings rateLimitSettings;
+  final private SoakSettings soakSettings;
+  final private StatsFileSettings statsFileSettings;
 
   /**
    * Private constructor for use with factory methods.
    */
   private Arguments(int maxThreads, int numSkiers, int numSkiLifts, int skiDay,
-      String resort, String hostAddress, String csvFilename) {
+      String resort, String hostAddress, String csvFilename, TransportSettings transportSettings,
+      CompressionSettings compressionSettings, WarmupSettings warmupSettings,
+      DistributionSettings distributionSettings, WorkloadSettings workloadSettings,
+      ReplaySettings replaySettings, MixSettings mixSettings,
+      PartitionSettings partitionSettings, VerificationSettings verificationSettings,
+      SessionSettings sessionSettings, SimulationSettings simulationSettings,
+      DistributedSettings distributedSettings, BalancingSettings balancingSettings,
+      BreakerSettings breakerSettings, RateLimitSettings rateLimitSettings,
+      SoakSettings soakSettings, StatsFileSettings statsFileSettings) {
     this.maxThreads = maxThreads;
     this.numSkiers = numSkiers;
     this.numSkiLifts = numSkiLifts;
@@ -30,6 +55,23 @@ public class Arguments {
     this.resort = resort;
     this.hostAddress = hostAddress;
     this.csvFilename = csvFilename;
+    this.transportSettings = transportSettings;
+    this.compressionSettings = compressionSettings;
+    this.warmupSettings = warmupSettings;
+    this.distributionSettings = distributionSettings;
+    this.workloadSettings = workloadSettings;
+    this.replaySettings = replaySettings;
+    this.mixSettings = mixSettings;
+    this.partitionSettings = partitionSettings;
+    this.verificationSettings = verificationSettings;
+    this.sessionSettings = sessionSettings;
+    this.simulationSettings = simulationSettings;
+    this.distributedSettings = distributedSettings;
+    this.balancingSettings = balancingSettings;
+    this.breakerSettings = breakerSettings;
+    this.rateLimitSettings = rateLimitSettings;
+    this.soakSettings = soakSettings;
+    this.statsFileSettings = statsFileSettings;
   }
 
   /**
@@ -42,6 +84,23 @@ public class Arguments {
    *   - resort: String
    *   - hostAddress: String
    *   - csvFilename: String
+   *   - transport settings, see TransportSettings.fromProperties
+   *   - compression settings, see CompressionSettings.fromProperties
+   *   - warm-up settings, see WarmupSettings.fromProperties
+   *   - workload distribution settings, see DistributionSettings.fromProperties
+   *   - repeatable workload settings, see WorkloadSettings.fromProperties
+   *   - trace replay settings, see ReplaySettings.fromProperties
+   *   - request mix settings, see MixSettings.fromProperties
+   *   - resort and day partitioning settings, see PartitionSettings.fromProperties
+   *   - read-after-write verification settings, see VerificationSettings.fromProperties
+   *   - virtual skier session settings, see SessionSettings.fromProperties
+   *   - ski day simulation settings, see SimulationSettings.fromProperties
+   *   - coordinator settings for distributed runs, see DistributedSettings.fromProperties
+   *   - client-side load balancing settings, see BalancingSettings.fromProperties
+   *   - circuit breaker settings, see BreakerSettings.fromProperties
+   *   - request rate limit settings, see RateLimitSettings.fromProperties
+   *   - duration-based soak test settings, see SoakSettings.fromProperties
+   *   - raw stats file and stats writer settings, see StatsFileSettings.fromProperties
    * maxThreads, resortId and hostAddr are required.
    * @param fileName Path to the properties file
    * @return an Arguments instance with the specified properties
@@ -76,7 +135,7 @@ public class Arguments {
    * @return an Arguments instance with the given properties
    * @throws IllegalArgumentException if given invalid properties
    */
-  private static Arguments fromProperties(Properties props) throws IllegalArgumentException {
+  static Arguments fromProperties(Properties props) throws IllegalArgumentException {
     if (props == null) {
       throw new IllegalArgumentException("no arguments given");
     }
@@ -145,8 +204,99 @@ public class Arguments {
       throw new IllegalArgumentException("skiDay must be between 1 and 366, inclusive");
     }
 
+    // Optional feature settings validate themselves
+    TransportSettings transportSettings = TransportSettings.fromProperties(props);
+    CompressionSettings compressionSettings = CompressionSettings.fromProperties(props);
+    WarmupSettings warmupSettings = WarmupSettings.fromProperties(props);
+    DistributionSettings distributionSettings = DistributionSettings.fromProperties(props);
+    int weightedLifts = distributionSettings.getWeightedLiftCount();
+    if (weightedLifts >= 0 && weightedLifts != numSkiLifts) {
+      throw new IllegalArgumentException("liftWeightsFile must list one weight for each of the "
+          + numSkiLifts + " lifts, found " + weightedLifts);
+    }
+    WorkloadSettings workloadSettings = WorkloadSettings.fromProperties(props);
+    ReplaySettings replaySettings = ReplaySettings.fromProperties(props);
+    MixSettings mixSettings = MixSettings.fromProperties(props);
+    int topTenPhases = mixSettings.getTopTenPhaseCount();
+    if (topTenPhases > 0 && topTenPhases != PhasePlan.NUM_STANDARD_PHASES) {
+      throw new IllegalArgumentException("topTenPerPhase must give one count for each of the "
+          + PhasePlan.NUM_STANDARD_PHASES + " phases, found " + topTenPhases);
+    }
+    PartitionSettings partitionSettings = PartitionSettings.fromProperties(props, resort, skiDay);
+    VerificationSettings verificationSettings = VerificationSettings.fromProperties(props);
+    // Verification keeps two ints per skier for every resort and day that gets rides, at worst
+    // all of them
+    long verifiedKeys = (long) partitionSettings.getPartitionCount() * (numSkiers + 1);
+    if (verificationSettings.isEnabled() && verifiedKeys > Integer.MAX_VALUE / 2) {
+      throw new IllegalArgumentException(
+          "too many resorts, days and skiers to verify, reduce them or disable verifyReads");
+    }
+    SessionSettings sessionSettings = SessionSettings.fromProperties(props, maxThreads);
+    if (sessionSettings.isEnabled() && replaySettings.isEnabled()) {
+      throw new IllegalArgumentException("sessionUsers and replayFile cannot be used together");
+    }
+    SimulationSettings simulationSettings = SimulationSettings.fromProperties(props);
+    if (simulationSettings.isEnabled()) {
+      // The simulation only feeds the phases, and a workload file already fixes every ride
+      if (sessionSettings.isEnabled() || replaySettings.isEnabled()) {
+        throw new IllegalArgumentException(
+            "simulateDay cannot be used with sessionUsers or replayFile");
+      }
+      if (workloadSettings.getWorkloadFile() != null) {
+        throw new IllegalArgumentException("simulateDay and workloadFile cannot be used together");
+      }
+    }
+    DistributedSettings distributedSettings = DistributedSettings.fromProperties(props);
+    if (distributedSettings.isEnabled()) {
+      // Workers split the phases' runners; these keep state that would need to be shared
+      if (sessionSettings.isEnabled() || replaySettings.isEnabled()) {
+        throw new IllegalArgumentException(
+            "distributedWorkers cannot be used with sessionUsers or replayFile");
+      }
+      if (verificationSettings.isEnabled() || simulationSettings.isEnabled()) {
+        throw new IllegalArgumentException(
+            "distributedWorkers cannot be used with verifyReads or simulateDay");
+      }
+    }
+
+    BalancingSettings balancingSettings = BalancingSettings.fromProperties(props, hostAddress);
+    if (balancingSettings.isEnabled() && transportSettings.isPipelinePosts()) {
+      // The pipelined POST engine keeps its connections to a single origin
+      throw new IllegalArgumentException("pipelinePosts cannot be used with hostAddresses");
+    }
+    BreakerSettings breakerSettings = BreakerSettings.fromProperties(props);
+    if (breakerSettings.isEnabled()) {
+      // Pipelined POSTs bypass the ApiClient, and a replay must send every call of its trace
+      if (transportSettings.isPipelinePosts() || replaySettings.isEnabled()) {
+        throw new IllegalArgumentException(
+            "circuitBreaker cannot be used with pipelinePosts or replayFile");
+      }
+    }
+    RateLimitSettings rateLimitSettings = RateLimitSettings.fromProperties(props);
+    if (rateLimitSettings.isEnabled() && replaySettings.isEnabled()) {
+      // A replay keeps to the trace's own timing
+      throw new IllegalArgumentException("rateLimit and rateLimits cannot be used with replayFile");
+    }
+    SoakSettings soakSettings = SoakSettings.fromProperties(props);
+    if (soakSettings.isEnabled()) {
+      // Only the phases repeat their mix; these fix the number of requests up front
+      if (sessionSettings.isEnabled() || replaySettings.isEnabled()) {
+        throw new IllegalArgumentException(
+            "phaseSeconds cannot be used with sessionUsers or replayFile");
+      }
+      if (workloadSettings.getWorkloadFile() != null || transportSettings.isPipelinePosts()) {
+        throw new IllegalArgumentException(
+            "phaseSeconds cannot be used with workloadFile or pipelinePosts");
+      }
+    }
+    StatsFileSettings statsFileSettings = StatsFileSettings.fromProperties(props);
+
     // Finally we can create an Arguments instance
-    return new Arguments(maxThreads, numSkiers, numSkiLifts, skiDay, resort, hostAddress, csvFilename);
+    return new Arguments(maxThreads, numSkiers, numSkiLifts, skiDay, resort, hostAddress, csvFilename,
+        transportSettings, compressionSettings, warmupSettings, distributionSettings,
+        workloadSettings, replaySettings, mixSettings, partitionSettings, verificationSettings,
+        sessionSettings, simulationSettings, distributedSettings, balancingSettings,
+        breakerSettings, rateLimitSettings, soakSettings, statsFileSettings);
   }
 
   public int getMaxThreads() {
@@ -181,6 +331,74 @@ public class Arguments {
     return this.csvFilename;
   }
 
+  public TransportSettings getTransportSettings() {
+    return transportSettings;
+  }
+
+  public CompressionSettings getCompressionSettings() {
+    return compressionSettings;
+  }
+
+  public WarmupSettings getWarmupSettings() {
+    return warmupSettings;
+  }
+
+  public DistributionSettings getDistributionSettings() {
+    return distributionSettings;
+  }
+
+  public WorkloadSettings getWorkloadSettings() {
+    return workloadSettings;
+  }
+
+  public ReplaySettings getReplaySettings() {
+    return replaySettings;
+  }
+
+  public MixSettings getMixSettings() {
+    return mixSettings;
+  }
+
+  public PartitionSettings getPartitionSettings() {
+    return partitionSettings;
+  }
+
+  public VerificationSettings getVerificationSettings() {
+    return verificationSettings;
+  }
+
+  public SessionSettings getSessionSettings() {
+    return sessionSettings;
+  }
+
+  public SimulationSettings getSimulationSettings() {
+    return simulationSettings;
+  }
+
+  public DistributedSettings getDistributedSettings() {
+    return distributedSettings;
+  }
+
+  public BalancingSettings getBalancingSettings() {
+    return balancingSettings;
+  }
+
+  public BreakerSettings getBreakerSettings() {
+    return breakerSettings;
+  }
+
+  public RateLimitSettings getRateLimitSettings() {
+    return rateLimitSettings;
+  }
+
+  public SoakSettings getSoakSettings() {
+    return soakSettings;
+  }
+
+  public StatsFileSettings getStatsFileSettings() {
+    return statsFileSettings;
+  }
+
   @Override
   public String toString() {
     return "Arguments{" +
@@ -191,6 +409,23 @@ public class Arguments {
         ", dayLengthMinutes=" + dayLengthMinutes +
         ", resort='" + resort + '\'' +
         ", hostAddress='" + hostAddress + '\'' +
+        ", transportSettings=" + transportSettings +
+        ", compressionSettings=" + compressionSettings +
+        ", warmupSettings=" + warmupSettings +
+        ", distributionSettings=" + distributionSettings +
+        ", workloadSettings=" + workloadSettings +
+        ", replaySettings=" + replaySettings +
+        ", mixSettings=" + mixSettings +
+        ", partitionSettings=" + partitionSettings +
+        ", verificationSettings=" + verificationSettings +
+        ", sessionSettings=" + sessionSettings +
+        ", simulationSettings=" + simulationSettings +
+        ", distributedSettings=" + distributedSettings +
+        ", balancingSettings=" + balancingSettings +
+        ", breakerSettings=" + breakerSettings +
+        ", rateLimitSettings=" + rateLimitSettings +
+        ", soakSettings=" + soakSettings +
+        ", statsFileSettings=" + statsFileSettings +
         '}';
   }
 }
@@ -0,0 +1,84 @@
+import com.squareup.okhttp.HttpUrl;
+import io.swagger.client.HostBalancer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Immutable client-side load balancing options read from the client properties file.
+ */
+public class BalancingSettings {
+
+  final private List<String> hosts;
+  final private String strategy;
+
+  private BalancingSettings(List<String> hosts, String strategy) {
+    this.hosts = Collections.unmodifiableList(hosts);
+    this.strategy = strategy;
+  }
+
+  /**
+   * Reads load balancing options from properties. Available properties:
+   *   - hostAddresses (default: none) comma separated base paths of further hosts serving the
+   *     same API; calls are balanced across hostAddress and these
+   *   - hostBalancing (default: roundRobin) how each call's host is chosen: roundRobin,
+   *     leastOutstanding (fewest calls in flight) or powerOfTwo (the better of two random hosts
+   *     by moving average latency and calls in flight)
+   * None are required. Balancing is off unless hostAddresses names a host besides hostAddress.
+   *
+   * @param props       properties parsed from the properties file
+   * @param hostAddress the required hostAddress property, always the first host
+   * @return the balancing settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static BalancingSettings fromProperties(Properties props, String hostAddress)
+      throws IllegalArgumentException {
+    List<String> hosts = new ArrayList<>();
+    hosts.add(hostAddress.trim());
+    for (String host : props.getProperty("hostAddresses", "").split(",")) {
+      host = host.trim();
+      if (host.isEmpty() || hosts.contains(host)) {
+        continue;
+      }
+      if (HttpUrl.parse(host) == null) {
+        throw new IllegalArgumentException("hostAddresses contains an invalid address: " + host);
+      }
+      hosts.add(host);
+    }
+
+    String strategy = props.getProperty("hostBalancing", HostBalancer.ROUND_ROBIN).trim();
+    if (!strategy.equals(HostBalancer.ROUND_ROBIN)
+        && !strategy.equals(HostBalancer.LEAST_OUTSTANDING)
+        && !strategy.equals(HostBalancer.POWER_OF_TWO)) {
+      throw new IllegalArgumentException("hostBalancing must be one of "
+          + HostBalancer.ROUND_ROBIN + ", " + HostBalancer.LEAST_OUTSTANDING + " or "
+          + HostBalancer.POWER_OF_TWO);
+    }
+
+    return new BalancingSettings(hosts, strategy);
+  }
+
+  public boolean isEnabled() {
+    return hosts.size() > 1;
+  }
+
+  /**
+   * @return every host's base path, hostAddress first
+   */
+  public List<String> getHosts() {
+    return hosts;
+  }
+
+  public String getStrategy() {
+    return strategy;
+  }
+
+  @Override
+  public String toString() {
+    return "BalancingSettings{" +
+        "hosts=" + hosts +
+        ", strategy='" + strategy + '\'' +
+        '}';
+  }
+}
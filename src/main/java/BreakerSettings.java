@@ -0,0 +1,140 @@
+import java.util.Properties;
+
+/**
+ * Immutable circuit breaker options read from the client properties file.
+ */
+public class BreakerSettings {
+
+  final private boolean enabled;
+  final private int window;
+  final private int minCalls;
+  final private int failureRate;
+  final private int slowCallMillis;
+  final private int slowCallRate;
+  final private int openMillis;
+  final private int halfOpenCalls;
+
+  private BreakerSettings(boolean enabled, int window, int minCalls, int failureRate,
+      int slowCallMillis, int slowCallRate, int openMillis, int halfOpenCalls) {
+    this.enabled = enabled;
+    this.window = window;
+    this.minCalls = minCalls;
+    this.failureRate = failureRate;
+    this.slowCallMillis = slowCallMillis;
+    this.slowCallRate = slowCallRate;
+    this.openMillis = openMillis;
+    this.halfOpenCalls = halfOpenCalls;
+  }
+
+  /**
+   * Reads circuit breaker options from properties. Available properties:
+   *   - circuitBreaker (default: false) give each endpoint a breaker that stops sending calls
+   *     while the server is failing or slow, and makes the runners wait until it lets calls
+   *     through again
+   *   - breakerWindow (default: 100, min: 1) most recent calls each breaker judges the endpoint by
+   *   - breakerMinCalls (default: 20, min: 1, max: breakerWindow) calls the window needs before
+   *     the breaker may open
+   *   - breakerFailureRate (default: 50, min: 1, max: 100) percentage of failed calls (no
+   *     response, or a 5xx) that opens the breaker
+   *   - breakerSlowCallMillis (default: 2000, min: 1) latency from which a call counts as slow
+   *   - breakerSlowCallRate (default: 80, min: 1, max: 100) percentage of slow calls that opens
+   *     the breaker
+   *   - breakerOpenMillis (default: 5000, min: 1) how long an open breaker short-circuits calls
+   *     before trying again
+   *   - breakerHalfOpenCalls (default: 5, min: 1) trial calls sent once the open time is over;
+   *     the breaker closes if they cross neither threshold
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the breaker settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static BreakerSettings fromProperties(Properties props) throws IllegalArgumentException {
+    boolean enabled = Boolean.parseBoolean(props.getProperty("circuitBreaker", "false").trim());
+    int window, minCalls, failureRate, slowCallMillis, slowCallRate, openMillis, halfOpenCalls;
+    try {
+      window = Integer.parseInt(props.getProperty("breakerWindow", "100").trim());
+      minCalls = Integer.parseInt(props.getProperty("breakerMinCalls", "20").trim());
+      failureRate = Integer.parseInt(props.getProperty("breakerFailureRate", "50").trim());
+      slowCallMillis = Integer.parseInt(props.getProperty("breakerSlowCallMillis", "2000").trim());
+      slowCallRate = Integer.parseInt(props.getProperty("breakerSlowCallRate", "80").trim());
+      openMillis = Integer.parseInt(props.getProperty("breakerOpenMillis", "5000").trim());
+      halfOpenCalls = Integer.parseInt(props.getProperty("breakerHalfOpenCalls", "5").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed circuit breaker settings");
+    }
+
+    if (window < 1) {
+      throw new IllegalArgumentException("breakerWindow must be at least 1");
+    }
+    if (minCalls < 1 || minCalls > window) {
+      throw new IllegalArgumentException("breakerMinCalls must be between 1 and breakerWindow");
+    }
+    if (failureRate < 1 || failureRate > 100) {
+      throw new IllegalArgumentException("breakerFailureRate must be between 1 and 100, inclusive");
+    }
+    if (slowCallMillis < 1) {
+      throw new IllegalArgumentException("breakerSlowCallMillis must be at least 1");
+    }
+    if (slowCallRate < 1 || slowCallRate > 100) {
+      throw new IllegalArgumentException(
+          "breakerSlowCallRate must be between 1 and 100, inclusive");
+    }
+    if (openMillis < 1) {
+      throw new IllegalArgumentException("breakerOpenMillis must be at least 1");
+    }
+    if (halfOpenCalls < 1) {
+      throw new IllegalArgumentException("breakerHalfOpenCalls must be at least 1");
+    }
+
+    return new BreakerSettings(enabled, window, minCalls, failureRate, slowCallMillis,
+        slowCallRate, openMillis, halfOpenCalls);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  public int getMinCalls() {
+    return minCalls;
+  }
+
+  public int getFailureRate() {
+    return failureRate;
+  }
+
+  public int getSlowCallMillis() {
+    return slowCallMillis;
+  }
+
+  public int getSlowCallRate() {
+    return slowCallRate;
+  }
+
+  public int getOpenMillis() {
+    return openMillis;
+  }
+
+  public int getHalfOpenCalls() {
+    return halfOpenCalls;
+  }
+
+  @Override
+  public String toString() {
+    return "BreakerSettings{" +
+        "enabled=" + enabled +
+        ", window=" + window +
+        ", minCalls=" + minCalls +
+        ", failureRate=" + failureRate +
+        ", slowCallMillis=" + slowCallMillis +
+        ", slowCallRate=" + slowCallRate +
+        ", openMillis=" + openMillis +
+        ", halfOpenCalls=" + halfOpenCalls +
+        '}';
+  }
+}
@@ -1,24 +1,55 @@
+import com.squareup.okhttp.HttpUrl;
+import io.swagger.client.ApiClient;
+import io.swagger.client.CircuitBreakers;
+import io.swagger.client.CompressionPolicy;
+import io.swagger.client.Configuration;
+import io.swagger.client.RateLimiters;
+import io.swagger.client.HostBalancer;
+import io.swagger.client.transport.Http2Transport;
+import io.swagger.client.transport.PipelinedHttpEngine;
+import io.swagger.client.transport.SocketTransport;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import statistics.BulkRequestStatistics;
 import statistics.SingleRequestStatistics;
+import workload.Operation;
+import workload.RequestSource;
+import workload.WorkloadFile;
+import workload.WorkloadMismatchException;
 
 public class BsdsApiClient {
 
   private static final Logger logger = LogManager.getLogger(BsdsApiClient.class);
-  private static final int numPostsStd = 1000;
-  private static final int numGetsPerPathStd = 5;
+
+  private static final String PROPERTIES_FILE = "arguments.properties";
+  // How long an interrupted run waits for its runners to hand over their results
+  private static final long STOP_GRACE_MILLIS = 5000;
 
   public static void main(String[] args) throws InterruptedException {
+    // A worker of a distributed run takes its arguments from the coordinator
+    if (args.length == 2 && args[0].equals("worker")) {
+      runWorker(args[1]);
+      return;
+    }
     infoLogAndPrint("Starting client...");
 
     // Get arguments from properties file
     logger.trace("parsing properties file");
     Arguments propertyArgs = null;
     try {
-      propertyArgs = Arguments.fromPropertiesFile("arguments.properties");
+      propertyArgs = Arguments.fromPropertiesFile(PROPERTIES_FILE);
     } catch (IOException e) {
       System.out.println("Problem reading properties file, please try again: " + e.getMessage());
       System.exit(1);
@@ -28,13 +59,200 @@ public class BsdsApiClient {
     }
     final Arguments arguments = propertyArgs;
 
-    final BulkRequestStatistics stats = new BulkRequestStatistics(arguments.getCsvFilename());
+    // The coordinator of a distributed run sends no requests itself
+    if (arguments.getDistributedSettings().isEnabled()) {
+      runCoordinator(arguments);
+      return;
+    }
+
+    final ApiClient apiClient = createApiClient(arguments, 1);
+
+    // A trace replay takes the place of the phases
+    if (arguments.getReplaySettings().isEnabled()) {
+      runReplay(arguments, apiClient);
+      return;
+    }
+    if (arguments.getSessionSettings().isEnabled()) {
+      runSessions(arguments, apiClient);
+      return;
+    }
+    runPhases(arguments, apiClient, null);
+  }
+
+  /**
+   * Creates the run's stats, writing its CSV as segments or shards if the arguments ask for them.
+   *
+   * @param arguments arguments provided to the client
+   * @return the stats, ready for their CSV listener to start
+   */
+  private static BulkRequestStatistics createStats(Arguments arguments) {
+    StatsFileSettings settings = arguments.getStatsFileSettings();
+    return new BulkRequestStatistics(arguments.getCsvFilename(), settings.getSegmentPolicy(),
+        settings.getQueueSlots(), settings.getQueueWait(), settings.getWriters());
+  }
+
+  /**
+   * Configures the api client all runners share, so its transport is chosen once.
+   *
+   * @param arguments arguments provided to the client
+   * @param shares    clients the rate limits are split between, 1 unless this is a worker
+   * @return the default api client, configured
+   */
+  private static ApiClient createApiClient(Arguments arguments, int shares) {
+    ApiClient apiClient = Configuration.getDefaultApiClient();
+    apiClient.setBasePath(arguments.getHostAddress());
+    BalancingSettings balancing = arguments.getBalancingSettings();
+    if (balancing.isEnabled()) {
+      apiClient.setHostBalancer(new HostBalancer(balancing.getHosts(), balancing.getStrategy()));
+      infoLogAndPrint("Balancing calls across " + balancing.getHosts().size() + " hosts ("
+          + balancing.getStrategy() + ")");
+    }
+    BreakerSettings breaker = arguments.getBreakerSettings();
+    if (breaker.isEnabled()) {
+      List<String> endpoints = new ArrayList<>();
+      for (Operation op : Operation.values()) {
+        endpoints.add(op.getMethod() + " " + op.getPath());
+      }
+      apiClient.setCircuitBreakers(new CircuitBreakers(endpoints, breaker.getWindow(),
+          breaker.getMinCalls(), breaker.getFailureRate(), breaker.getSlowCallMillis(),
+          breaker.getSlowCallRate(), breaker.getOpenMillis(), breaker.getHalfOpenCalls()));
+    }
+    RateLimitSettings rates = arguments.getRateLimitSettings();
+    if (rates.isEnabled()) {
+      Map<String, Double> endpointRates = new HashMap<>();
+      for (Operation op : Operation.values()) {
+        if (rates.getRate(op) > 0) {
+          endpointRates.put(op.getMethod() + " " + op.getPath(), rates.getRate(op) / shares);
+        }
+      }
+      apiClient.setRateLimiters(new RateLimiters(
+          rates.getGlobalRate() / shares, endpointRates, rates.getBurstMillis()));
+    }
+    configureTransport(apiClient, arguments.getTransportSettings());
+    infoLogAndPrint("Using " + apiClient.getTransport().getName() + " transport");
+    CompressionSettings compression = arguments.getCompressionSettings();
+    if (compression.isEnabled()) {
+      apiClient.setCompressionPolicy(new CompressionPolicy(
+          compression.getPaths(), compression.getMinBytes(), compression.getLevel()));
+    }
+    return apiClient;
+  }
+
+  /**
+   * Runs the three phases, or a worker's share of them, then reports. A worker starts each phase
+   * when the coordinator says so and sends its results back instead of printing a report.
+   *
+   * @param arguments arguments provided to the client
+   * @param apiClient the configured api client
+   * @param worker    the link to the coordinator, or null when running alone
+   * @throws InterruptedException if interrupted while waiting for a phase
+   */
+  private static void runPhases(final Arguments arguments, final ApiClient apiClient,
+      final WorkerLink worker) throws InterruptedException {
+    final PipelinedHttpEngine postEngine = createPostEngine(arguments);
+
+    final ConnectionWarmer warmer = arguments.getWarmupSettings().isEnabled()
+        ? new ConnectionWarmer(arguments, apiClient)
+        : null;
+
+    final List<PhasePlan> phases = new ArrayList<>();
+    for (PhasePlan plan : PhasePlan.standardPhases(arguments)) {
+      phases.add(worker == null ? plan : plan.forWorker(worker.getIndex(), worker.getNumWorkers()));
+    }
+    final WorkloadFile workloadFile = openWorkloadFile(arguments, phases);
+    if (arguments.getSoakSettings().isEnabled()) {
+      StringBuilder lengths = new StringBuilder();
+      for (PhasePlan plan : phases) {
+        lengths.append(lengths.length() == 0 ? "" : ", ").append(plan.getDurationMillis() / 1000);
+      }
+      infoLogAndPrint("Running timed phases of " + lengths + " seconds");
+    }
+
+    final BulkRequestStatistics stats = createStats(arguments);
+    final ReadVerifier verifier = arguments.getVerificationSettings().isEnabled()
+        ? new ReadVerifier(arguments, apiClient)
+        : null;
+    final ExpectedVerticals expectedVerticals = verifier == null ? null : verifier.getExpected();
+    final SkiDaySimulator simulator = arguments.getSimulationSettings().isEnabled()
+        ? new SkiDaySimulator(arguments)
+        : null;
 
     Thread writerLoop = stats.startStatsToCsvListener();
+    long flushMillis = arguments.getStatsFileSettings().getFlushMillis();
+    if (flushMillis > 0) {
+      stats.startPeriodicFlush(flushMillis);
+    }
+
+    // Reports whatever completed, once the phases end or from the shutdown hook
+    final InterruptibleTask report = () -> {
+      stats.stopWallTimer();
+      if (worker != null) {
+        worker.finished();
+      }
+      if (simulator != null) {
+        simulator.stop();
+        stats.addReportSection(simulator.summary());
+      }
+      // Stale reads are re-read until they settle, which needs the transport still open
+      if (verifier != null) {
+        infoLogAndPrint("Waiting for stale verification reads...");
+        verifier.stop();
+        stats.addReportSection(verifier.summary());
+      }
+      recordTransportInfo(stats, apiClient, postEngine);
+      if (workloadFile != null) {
+        try {
+          workloadFile.close();
+        } catch (IOException e) {
+          logger.error("Problem closing workload file: " + e.getMessage());
+        }
+      }
+      if (arguments.getPartitionSettings().isPartitioned()) {
+        for (PhasePlan plan : phases) {
+          stats.addReportSection(plan.partitionSummary());
+        }
+      }
+      if (warmer != null) {
+        stats.addReportSection(warmer.summary());
+      }
+      addClientReportSections(stats, apiClient);
+
+      // Runners a dead server holds up still hand over what they have
+      stats.stopPeriodicFlush();
+      stats.flushBuffers();
+      if (worker != null) {
+        infoLogAndPrint("All phases complete, sending results to the coordinator");
+        worker.sendResults(stats, writerLoop);
+        return;
+      }
+      infoLogAndPrint(stats.isStopping() ? "Run interrupted" : "All phases complete");
+      finishRun(stats, writerLoop);
+    };
+    // A worker's coordinator decides when its run ends
+    final CountDownLatch reported = worker == null
+        ? reportIfInterrupted(stats, report)
+        : new CountDownLatch(1);
+
+    // Phase 1 is warmed before the wall timer starts; later phases warm while earlier ones run
+    // A worker may have no runners in a phase, and nothing to warm
+    if (warmer != null && phases.get(0).getLocalThreadCount() > 0) {
+      infoLogAndPrint("Warming connections for phase 1...");
+      warmer.warmUp(phases.get(0).getName(), phases.get(0).getLocalThreadCount());
+    }
+    if (worker != null) {
+      infoLogAndPrint("Waiting for the other workers...");
+      worker.awaitPhaseStart(1);
+    }
 
     // Track total execution time
     // Timing setup of first phase because all others will be included
     stats.startWallTimer();
+    if (verifier != null) {
+      verifier.start();
+    }
+    if (simulator != null) {
+      simulator.start();
+    }
 
     /*
      * =====================================================================
@@ -45,24 +263,23 @@ public class BsdsApiClient {
     logger.trace("phase 1 set-up");
 
     // Set up trigger for phase two (starts after 10% threads finish)
-    int numThreadsP1 = arguments.getMaxThreads() / 4;
+    PhasePlan planP1 = phases.get(0);
+    int numThreadsP1 = planP1.getLocalThreadCount();
     // Next line is confusing, but spec states 10% should be rounded *up*
     int triggerNum = (int) Math.ceil((double) numThreadsP1 / 10);
     CountDownLatch phase2Latch = new CountDownLatch(triggerNum);
 
     // Create phase 1
     Runnable run1 = () -> {
-      int startTime = 1;
-      int endTime = 90;
       executePhase(
           arguments,
-          numThreadsP1,
-          startTime,
-          endTime,
-          numPostsStd,
-          numGetsPerPathStd,
+          planP1,
           phase2Latch,
-          stats
+          stats,
+          postEngine,
+          workloadFile,
+          expectedVerticals,
+          simulator
       );
     };
     Thread phase1 = new Thread(run1);
@@ -70,6 +287,9 @@ public class BsdsApiClient {
     infoLogAndPrint("Starting phase 1...");
     phase1.start();
     phase2Latch.await();
+    if (worker != null) {
+      worker.awaitPhaseStart(2);
+    }
 
 
     /*
@@ -80,23 +300,25 @@ public class BsdsApiClient {
     logger.trace("phase 2 set-up");
 
     // Set up trigger for phase two (starts after 10% threads finish)
-    int numThreadsP2 = arguments.getMaxThreads();
+    PhasePlan planP2 = phases.get(1);
+    int numThreadsP2 = planP2.getLocalThreadCount();
     triggerNum = (int) Math.ceil((double) numThreadsP2 / 10);
     CountDownLatch phase3Latch = new CountDownLatch(triggerNum);
 
     // Create phase 2
     Runnable run2 = () -> {
-      int startTime = 91;
-      int endTime = 360;
+      if (warmer != null && numThreadsP2 > 0) {
+        warmer.warmUp(planP2.getName(), numThreadsP2);
+      }
       executePhase(
           arguments,
-          numThreadsP2,
-          startTime,
-          endTime,
-          numPostsStd,
-          numGetsPerPathStd,
+          planP2,
           phase3Latch,
-          stats
+          stats,
+          postEngine,
+          workloadFile,
+          expectedVerticals,
+          simulator
       );
     };
     Thread phase2 = new Thread(run2);
@@ -104,6 +326,9 @@ public class BsdsApiClient {
     infoLogAndPrint("Starting phase 2...");
     phase2.start();
     phase3Latch.await();
+    if (worker != null) {
+      worker.awaitPhaseStart(3);
+    }
 
     /*
      * =====================================================================
@@ -113,22 +338,23 @@ public class BsdsApiClient {
     logger.trace("phase 3 set-up");
 
     // No trigger needed for phase 3, last phase
-    int numThreadsP3 = numThreadsP1;
+    PhasePlan planP3 = phases.get(2);
+    int numThreadsP3 = planP3.getLocalThreadCount();
 
     // Create phase 2
     Runnable run3 = () -> {
-      int startTime = 361;
-      int endTime = 420;
-      int numGetRequestsPerPathPerThread = numGetsPerPathStd * 2;
+      if (warmer != null && numThreadsP3 > 0) {
+        warmer.warmUp(planP3.getName(), numThreadsP3);
+      }
       executePhase(
           arguments,
-          numThreadsP3,
-          startTime,
-          endTime,
-          numPostsStd,
-          numGetRequestsPerPathPerThread,
+          planP3,
           new CountDownLatch(0),
-          stats
+          stats,
+          postEngine,
+          workloadFile,
+          expectedVerticals,
+          simulator
       );
     };
     Thread phase3 = new Thread(run3);
@@ -140,9 +366,339 @@ public class BsdsApiClient {
     phase1.join();
     phase2.join();
     phase3.join();
-    stats.stopWallTimer();
+    WorkloadMismatchException mismatch = workloadFile == null ? null : workloadFile.getMismatch();
+    String error = null;
+    if (mismatch != null) {
+      error = "Workload error: " + mismatch.getMessage();
+    } else if (simulator != null && simulator.getFailure() != null) {
+      error = "Ski day simulation failed: " + simulator.getFailure();
+    }
+    if (error != null) {
+      stats.addReportSection(error + ", the run was stopped\n");
+    }
+    reportOnce(stats, report, reported);
+    if (error != null) {
+      fatal(error);
+    }
+  }
+
+  /**
+   * Installs a shutdown hook that stops and reports the run if it is interrupted before it ends.
+   *
+   * @param stats  the run's statistics
+   * @param report finishes the run and prints its report
+   * @return counted down once the run's own report is printed
+   */
+  private static CountDownLatch reportIfInterrupted(BulkRequestStatistics stats,
+      InterruptibleTask report) {
+    CountDownLatch reported = new CountDownLatch(1);
+    Runtime.getRuntime().addShutdownHook(new Thread(
+        () -> reportInterruptedRun(stats, report, reported), "interrupted-run-report"));
+    return reported;
+  }
+
+  /**
+   * Reports a run that ended by itself. Interrupted, the shutdown hook reports instead.
+   *
+   * @param stats    the run's statistics
+   * @param report   finishes the run and prints its report
+   * @param reported counted down once the report is printed
+   * @throws InterruptedException if interrupted while reporting
+   */
+  private static void reportOnce(BulkRequestStatistics stats, InterruptibleTask report,
+      CountDownLatch reported) throws InterruptedException {
+    if (stats.claimReport()) {
+      report.run();
+      reported.countDown();
+    }
+  }
+
+  /**
+   * Shutdown hook for a run stopped before its phases end, e.g. by Ctrl-C. Stops the runners,
+   * gives them a moment to hand over their results, then writes the CSV and prints the report for
+   * whatever completed. Runners still waiting on the server are flushed where they are. If the
+   * run had already ended, waits for its report to finish printing instead.
+   *
+   * @param stats    the run's statistics
+   * @param report   finishes the run and prints its report
+   * @param reported counted down once the run's own report is printed
+   */
+  private static void reportInterruptedRun(BulkRequestStatistics stats,
+      InterruptibleTask report, CountDownLatch reported) {
+    try {
+      if (!stats.claimReport()) {
+        reported.await(STOP_GRACE_MILLIS * 2, TimeUnit.MILLISECONDS);
+        return;
+      }
+      infoLogAndPrint("Interrupted, stopping runners...");
+      stats.requestStop();
+      if (!stats.awaitBuffers(STOP_GRACE_MILLIS)) {
+        logger.warn("Some runners did not stop in time, reporting the results they hold");
+      }
+      stats.addReportSection("Run interrupted: results cover the requests completed before it "
+          + "stopped\n");
+      report.run();
+    } catch (InterruptedException e) {
+      logger.error("Interrupted while reporting: " + e.getMessage());
+    }
+  }
+
+  /**
+   * A step of the run that may wait on other threads.
+   */
+  private interface InterruptibleTask {
+
+    void run() throws InterruptedException;
+  }
+
+  /**
+   * Joins a distributed run as a worker and runs its share of the phases.
+   *
+   * @param coordinatorAddress the coordinator, as host:port
+   * @throws InterruptedException if interrupted while waiting for a phase
+   */
+  private static void runWorker(String coordinatorAddress) throws InterruptedException {
+    infoLogAndPrint("Starting worker for coordinator " + coordinatorAddress + "...");
+    WorkerLink worker = null;
+    Arguments arguments = null;
+    try {
+      worker = WorkerLink.connect(coordinatorAddress);
+      arguments = worker.getArguments();
+    } catch (IOException e) {
+      fatal("Could not join coordinator " + coordinatorAddress + ": " + e.getMessage());
+    } catch (IllegalArgumentException e) {
+      fatal("Invalid property from coordinator: " + e.getMessage());
+    }
+    infoLogAndPrint("Joined as worker " + (worker.getIndex() + 1) + " of "
+        + worker.getNumWorkers());
+    runPhases(arguments, createApiClient(arguments, worker.getNumWorkers()), worker);
+  }
+
+  /**
+   * Splits the phases across worker processes and reports their merged results.
+   *
+   * @param arguments arguments provided to the client
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  private static void runCoordinator(Arguments arguments) throws InterruptedException {
+    DistributedSettings settings = arguments.getDistributedSettings();
+    byte[] properties = null;
+    try {
+      properties = Files.readAllBytes(Paths.get(PROPERTIES_FILE));
+    } catch (IOException e) {
+      fatal("Could not read " + PROPERTIES_FILE + " for the workers: " + e.getMessage());
+    }
+    Coordinator coordinator = new Coordinator(arguments, properties,
+        PhasePlan.NUM_STANDARD_PHASES);
+    infoLogAndPrint("Coordinating " + settings.getWorkers() + " workers"
+        + (settings.isSpawnLocal() ? ", spawned locally" : " on port " + settings.getPort())
+        + "...");
+
+    // Requests are recorded by the workers, the local CSV only gets its header. The writer is
+    // stopped once, by finishRun
+    BulkRequestStatistics stats = createStats(arguments);
+    Thread writerLoop = stats.startStatsToCsvListener();
+    try {
+      coordinator.run(stats);
+    } catch (IOException e) {
+      fatal("Distributed run failed: " + e.getMessage());
+    }
+    stats.addReportSection(coordinator.summary());
+
+    infoLogAndPrint("All workers complete");
+    finishRun(stats, writerLoop);
+  }
+
+  /**
+   * Replays a recorded request log instead of running the phases, then reports as usual.
+   *
+   * @param arguments arguments provided to the client
+   * @param apiClient the configured api client
+   * @throws InterruptedException if the replay is interrupted
+   */
+  private static void runReplay(Arguments arguments, final ApiClient apiClient)
+      throws InterruptedException {
+    ReplaySettings settings = arguments.getReplaySettings();
+    // The stats writers start by deleting their CSVs or segments, which must not be the log being
+    // replayed
+    Path replayPath = Paths.get(settings.getReplayFile()).toAbsolutePath().normalize();
+    Path csvBase = Paths.get(arguments.getCsvFilename()).toAbsolutePath().normalize();
+    if (replayPath.getParent().equals(csvBase.getParent())
+        && replayPath.getFileName().toString().startsWith(csvBase.getFileName() + ".")) {
+      fatal("replayFile cannot be one of this run's csvFilename files, copy the log somewhere "
+          + "else first");
+    }
+
+    TraceReplayer replayer = new TraceReplayer(arguments, apiClient);
+    try {
+      replayer.load();
+    } catch (IOException | NumberFormatException e) {
+      fatal("Could not read replay file " + settings.getReplayFile() + ": " + e.getMessage());
+    }
+    infoLogAndPrint("Replaying " + replayer.size() + " requests from " + settings.getReplayFile()
+        + " at " + settings.getSpeedup() + "x...");
+
+    ConnectionWarmer warmer = null;
+    if (arguments.getWarmupSettings().isEnabled()) {
+      warmer = new ConnectionWarmer(arguments, apiClient, settings.getMaxWorkers());
+      infoLogAndPrint("Warming connections for replay...");
+      warmer.warmUp("replay", replayer.getInitialPoolSize());
+    }
+
+    final BulkRequestStatistics stats = createStats(arguments);
+    final Thread writerLoop = stats.startStatsToCsvListener();
+    long flushMillis = arguments.getStatsFileSettings().getFlushMillis();
+    if (flushMillis > 0) {
+      stats.startPeriodicFlush(flushMillis);
+    }
+
+    // Reports whatever completed, once the replay ends or from the shutdown hook
+    final ConnectionWarmer replayWarmer = warmer;
+    final InterruptibleTask report = () -> {
+      stats.stopWallTimer();
+      recordTransportInfo(stats, apiClient, null);
+      stats.addReportSection(replayer.summary());
+      if (replayWarmer != null) {
+        stats.addReportSection(replayWarmer.summary());
+      }
+      addClientReportSections(stats, apiClient);
+
+      stats.stopPeriodicFlush();
+      stats.flushBuffers();
+      infoLogAndPrint(stats.isStopping() ? "Replay interrupted" : "Replay complete");
+      finishRun(stats, writerLoop);
+    };
+    CountDownLatch reported = reportIfInterrupted(stats, report);
+
+    stats.startWallTimer();
+    replayer.replay(stats);
+    reportOnce(stats, report, reported);
+  }
+
+  /**
+   * Runs virtual skier sessions instead of the phases, then reports as usual.
+   *
+   * @param arguments arguments provided to the client
+   * @param apiClient the configured api client
+   * @throws InterruptedException if the sessions are interrupted
+   */
+  private static void runSessions(Arguments arguments, final ApiClient apiClient)
+      throws InterruptedException {
+    SessionSettings settings = arguments.getSessionSettings();
+    SessionRunner sessions = new SessionRunner(arguments, apiClient);
+
+    ConnectionWarmer warmer = null;
+    if (arguments.getWarmupSettings().isEnabled()) {
+      warmer = new ConnectionWarmer(arguments, apiClient, settings.getWorkers());
+      infoLogAndPrint("Warming connections for sessions...");
+      warmer.warmUp("sessions", settings.getWorkers());
+    }
+    ReadVerifier verifier = null;
+    if (arguments.getVerificationSettings().isEnabled()) {
+      verifier = new ReadVerifier(arguments, apiClient);
+      sessions.setExpectedVerticals(verifier.getExpected());
+    }
+
+    infoLogAndPrint("Running " + settings.getUsers() + " virtual skiers over a "
+        + (420L * settings.getMinuteMillis() / 1000) + " second ski day...");
+    final BulkRequestStatistics stats = createStats(arguments);
+    final Thread writerLoop = stats.startStatsToCsvListener();
+    long flushMillis = arguments.getStatsFileSettings().getFlushMillis();
+    if (flushMillis > 0) {
+      stats.startPeriodicFlush(flushMillis);
+    }
+
+    // Reports whatever completed, once the sessions end or from the shutdown hook
+    final ConnectionWarmer sessionWarmer = warmer;
+    final ReadVerifier sessionVerifier = verifier;
+    final InterruptibleTask report = () -> {
+      stats.stopWallTimer();
+      stats.addReportSection(sessions.summary());
+      if (sessionVerifier != null) {
+        infoLogAndPrint("Waiting for stale verification reads...");
+        sessionVerifier.stop();
+        stats.addReportSection(sessionVerifier.summary());
+      }
+      recordTransportInfo(stats, apiClient, null);
+      if (sessionWarmer != null) {
+        stats.addReportSection(sessionWarmer.summary());
+      }
+      addClientReportSections(stats, apiClient);
+
+      stats.stopPeriodicFlush();
+      stats.flushBuffers();
+      infoLogAndPrint(stats.isStopping() ? "Sessions interrupted" : "Sessions complete");
+      finishRun(stats, writerLoop);
+    };
+    CountDownLatch reported = reportIfInterrupted(stats, report);
 
-    infoLogAndPrint("All phases complete");
+    stats.startWallTimer();
+    if (verifier != null) {
+      verifier.start();
+    }
+    sessions.run(stats);
+    reportOnce(stats, report, reported);
+  }
+
+  /**
+   * Records which transport carried the run, then shuts the transport and any post engine down.
+   *
+   * @param stats      the run's statistics
+   * @param apiClient  the configured api client
+   * @param postEngine pipelined engine for POSTs, or null
+   */
+  private static void recordTransportInfo(BulkRequestStatistics stats, ApiClient apiClient,
+      PipelinedHttpEngine postEngine) {
+    if (postEngine == null) {
+      stats.setTransportInfo(apiClient.getTransport().getName(),
+          apiClient.getTransport().getConnectionsOpened());
+    } else {
+      postEngine.close();
+      if (postEngine.getRequestsResent() > 0) {
+        stats.addReportSection("Pipelined POSTs resent after the server closed a connection: "
+            + postEngine.getRequestsResent() + "\n");
+      }
+      long connections = apiClient.getTransport().getConnectionsOpened();
+      if (connections >= 0) {
+        connections += postEngine.getConnectionsOpened();
+      }
+      stats.setTransportInfo(apiClient.getTransport().getName() + " with pipelined POSTs",
+          connections);
+    }
+    apiClient.getTransport().shutdown();
+  }
+
+  /**
+   * Adds the report sections of the api client's optional request handling: compression, host
+   * balancing, circuit breakers and rate limits, each only if it is configured.
+   *
+   * @param stats     the run's statistics
+   * @param apiClient the configured api client
+   */
+  private static void addClientReportSections(BulkRequestStatistics stats, ApiClient apiClient) {
+    if (apiClient.getCompressionPolicy() != null) {
+      stats.addReportSection(apiClient.getCompressionPolicy().summary());
+    }
+    if (apiClient.getHostBalancer() != null) {
+      stats.addReportSection(apiClient.getHostBalancer().summary());
+    }
+    if (apiClient.getCircuitBreakers() != null) {
+      stats.addReportSection(apiClient.getCircuitBreakers().summary());
+    }
+    if (apiClient.getRateLimiters() != null) {
+      stats.addReportSection(apiClient.getRateLimiters().summary());
+    }
+  }
+
+  /**
+   * Flushes the remaining stats to CSV, then calculates and prints the final report.
+   *
+   * @param stats      the run's statistics
+   * @param writerLoop the CSV writer thread
+   * @throws InterruptedException if interrupted while waiting on the writer or calculations
+   */
+  private static void finishRun(BulkRequestStatistics stats, Thread writerLoop)
+      throws InterruptedException {
     System.out.println();  // newline for terminal user readability
 
     // Ensure final stats get written to CSV
@@ -153,62 +709,60 @@ public class BsdsApiClient {
     System.out.println("Calculating...\n");
     stats.performFinalCalcs();
     infoLogAndPrint(stats.toString());
-
   }
 
   /**
    * Executes one phase of the client process.
    *
-   * @param arguments                arguments provided to the client
-   * @param numThreads               number of threads to create
-   * @param startTime                start of time range for this phase
-   * @param endTime                  end of time range for this phase
-   * @param numPostRequestsPerThread number of POST requests to make per thread
-   * @param numGetRequestsPerThread  number of GET requests to make per thread
-   * @param nextPhaseLatch           a CountDownLatch to determine when the next phase can start
-   *                                 (null or set to 0 if there is no next phase)
-   * @param stats                    object to collect statistics from
+   * @param arguments         arguments provided to the client
+   * @param plan              the phase's runners, request counts and ranges
+   * @param nextPhaseLatch    a CountDownLatch to determine when the next phase can start (null or
+   *                          set to 0 if there is no next phase)
+   * @param stats             object to collect statistics from
+   * @param postEngine        pipelined engine for POSTs, or null to use the SDK
+   * @param workloadFile      pre-generated requests to replay, or null to generate them
+   * @param expectedVerticals accumulators for read-after-write verification, or null
+   * @param simulator         ski day simulation the POSTs are taken from, or null
    */
   private static void executePhase(
       Arguments arguments,
-      int numThreads,
-      int startTime,
-      int endTime,
-      int numPostRequestsPerThread,
-      int numGetRequestsPerThread,
+      PhasePlan plan,
       CountDownLatch nextPhaseLatch,
-      BulkRequestStatistics stats) {
-    // Set-up vars given in spec
-    int skiersPerThread = arguments.getNumSkiers() / numThreads;
-
-    // Start threads
-    CountDownLatch completionLatch = new CountDownLatch(numThreads);
-    int skierIdStart = 1;
-    int skierIdEnd = skiersPerThread;
-
+      BulkRequestStatistics stats,
+      PipelinedHttpEngine postEngine,
+      WorkloadFile workloadFile,
+      ExpectedVerticals expectedVerticals,
+      SkiDaySimulator simulator) {
+    int numThreads = plan.getNumThreads();
+    int numLocalThreads = plan.getLocalThreadCount();
+
+    // Start threads, a timed phase's runners all stop at the same time
+    CountDownLatch completionLatch = new CountDownLatch(numLocalThreads);
+    long deadline = plan.isTimed() ? System.currentTimeMillis() + plan.getDurationMillis() : 0;
     for (int i = 0; i < numThreads; i++) {
-      // Ensure last thread does not have too many skiers
-      if (i == numThreads - 1) {
-        skierIdEnd = arguments.getNumSkiers();
+      // Other workers of a distributed run send this runner's requests
+      if (!plan.isLocalRunner(i)) {
+        continue;
       }
-
       // Create and start thread
       PhaseRunner runner = new PhaseRunner(
-          numPostRequestsPerThread,
-          numGetRequestsPerThread,
+          operationsFor(arguments, plan, i, workloadFile),
           arguments,
           completionLatch,
           stats,
           nextPhaseLatch
       );
       // Probably a poor design choice here, will fix given the time
-      runner.setSkierIdRange(skierIdStart, skierIdEnd);
-      runner.setTimeRange(startTime, endTime);
+      runner.setSkierIdRange(plan.getSkierIdLow(i), plan.getSkierIdHigh(i));
+      runner.setTimeRange(plan.getStartTime(), plan.getEndTime());
+      runner.setPostEngine(postEngine);
+      runner.setPhase(plan.getNumber());
+      runner.setPartition(plan.getPartition(i));
+      runner.setExpectedVerticals(expectedVerticals);
+      runner.setRequestSource(requestSourceFor(arguments, plan, i, workloadFile));
+      runner.setSimulator(simulator);
+      runner.setDeadline(deadline);
       new Thread(runner).start();
-
-      // Calculate skier range for next thread
-      skierIdStart = skierIdEnd + 1;
-      skierIdEnd = skierIdEnd + skiersPerThread;
     }
 
     // Wait for threads to complete
@@ -218,11 +772,174 @@ public class BsdsApiClient {
       System.err.println("An issue occurred executing threads: " + e.getMessage());
       e.printStackTrace();
     }
+  }
+
+  /**
+   * Orders a runner's operations: the phase's mix in its standard order (all POSTs, then each GET
+   * path), or shuffled when requests are interleaved. The shuffle is repeatable when the run is
+   * seeded or replays a workload file, so the operations line up with the file's records.
+   *
+   * @param arguments    arguments provided to the client
+   * @param plan         the runner's phase
+   * @param runner       runner index within the phase
+   * @param workloadFile pre-generated requests, or null
+   * @return the operations in the order they will be sent
+   */
+  private static Operation[] operationsFor(
+      Arguments arguments, PhasePlan plan, int runner, WorkloadFile workloadFile) {
+    WorkloadSettings workload = arguments.getWorkloadSettings();
+    Random rand;
+    if (workloadFile != null) {
+      rand = WorkloadSettings.sequenceRandom(workloadFile.getSeed(), plan, runner);
+    } else if (workload.isSeeded()) {
+      rand = WorkloadSettings.sequenceRandom(workload.getSeed(), plan, runner);
+    } else {
+      rand = ThreadLocalRandom.current();
+    }
+    return plan.getMix().sequence(arguments.getMixSettings().isInterleaved(), rand);
+  }
+
+  /**
+   * Picks where a runner's requests come from: the workload file, a seeded generator, or null for
+   * the runner's own random generator. Exits if the workload file can't be mapped.
+   *
+   * @param arguments    arguments provided to the client
+   * @param plan         the runner's phase
+   * @param runner       runner index within the phase
+   * @param workloadFile pre-generated requests, or null
+   * @return the request source, or null
+   */
+  private static RequestSource requestSourceFor(
+      Arguments arguments, PhasePlan plan, int runner, WorkloadFile workloadFile) {
+    WorkloadSettings workload = arguments.getWorkloadSettings();
+    if (workloadFile != null) {
+      try {
+        return workloadFile.section(plan.getNumber(), runner);
+      } catch (IOException e) {
+        fatal("Could not map workload file: " + e.getMessage());
+      }
+    }
+    if (workload.isSeeded()) {
+      return WorkloadSettings.seededSource(arguments, workload.getSeed(), plan, runner);
+    }
+    return null;
+  }
+
+  /**
+   * Opens the configured workload file and checks it holds the right number of requests for every
+   * runner. Exits if it doesn't.
+   *
+   * @param arguments arguments provided to the client
+   * @param phases    the phases that will run
+   * @return the open file, or null if none is configured
+   */
+  private static WorkloadFile openWorkloadFile(Arguments arguments, List<PhasePlan> phases) {
+    String fileName = arguments.getWorkloadSettings().getWorkloadFile();
+    if (fileName == null) {
+      return null;
+    }
+    WorkloadFile workloadFile = null;
+    try {
+      workloadFile = WorkloadFile.open(Paths.get(fileName));
+    } catch (IOException e) {
+      fatal("Could not open workload file: " + e.getMessage());
+    }
+    for (PhasePlan plan : phases) {
+      for (int i = 0; i < plan.getNumThreads(); i++) {
+        if (workloadFile.getRequestCount(plan.getNumber(), i) != plan.getRequestsPerThread()) {
+          fatal("Workload file " + fileName + " does not match the arguments for "
+              + plan.getName() + " runner " + i + ", regenerate it with WorkloadGenerator");
+        }
+      }
+    }
+    infoLogAndPrint("Replaying workload file " + fileName
+        + " (seed " + workloadFile.getSeed() + ")");
+    return workloadFile;
+  }
 
-    // Calculate total requests completed
-    // Done here for performance reasons (no waiting for adds on each thread)
-    int numPhaseRequests = (numPostRequestsPerThread + (numGetRequestsPerThread * 2)) * numThreads;
-    stats.getTotalRequests().getAndAdd(numPhaseRequests);
+  /**
+   * Logs and prints an error that prevents the client from running, then exits.
+   *
+   * @param msg a message to output
+   */
+  private static void fatal(String msg) {
+    logger.error(msg);
+    System.err.println(msg);
+    System.exit(1);
+  }
+
+  /**
+   * Creates the shared pipelined POST engine if it is enabled. Exits if it cannot be started.
+   *
+   * @param arguments arguments provided to the client
+   * @return the engine, or null if POSTs use the normal transport
+   */
+  private static PipelinedHttpEngine createPostEngine(Arguments arguments) {
+    TransportSettings settings = arguments.getTransportSettings();
+    if (!settings.isPipelinePosts()) {
+      return null;
+    }
+    try {
+      HttpUrl origin = HttpUrl.parse(arguments.getHostAddress());
+      if (origin == null) {
+        throw new IllegalArgumentException("invalid host address " + arguments.getHostAddress());
+      }
+      return new PipelinedHttpEngine(origin, settings.getPipelineConnections(),
+          settings.getPipelineDepth(), settings.getPipelineTimeoutSeconds() * 1000L);
+    } catch (IOException | IllegalArgumentException e) {
+      String msg = "Could not start pipelined POST engine: " + e.getMessage();
+      logger.error(msg);
+      System.err.println(msg);
+      System.exit(1);
+      return null;
+    }
+  }
+
+  /**
+   * @param apiClient a configured api client
+   * @return whether its base path, or any host it balances across, is https
+   */
+  private static boolean usesHttps(ApiClient apiClient) {
+    if (apiClient.getBasePath().startsWith("https:")) {
+      return true;
+    }
+    if (apiClient.getHostBalancer() != null) {
+      for (HostBalancer.Host host : apiClient.getHostBalancer().getHosts()) {
+        if (host.getBasePath().startsWith("https:")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Installs the configured HTTP transport on an api client.
+   *
+   * @param apiClient the client to configure
+   * @param settings  transport settings from the properties file
+   */
+  private static void configureTransport(ApiClient apiClient, TransportSettings settings) {
+    if (TransportSettings.HTTP2.equals(settings.getName())) {
+      // Checked before any request, rather than failing each TLS handshake
+      if (!Http2Transport.isAlpnSupported() && usesHttps(apiClient)) {
+        fatal(Http2Transport.alpnUnsupportedMessage());
+      }
+      apiClient.setTransport(new Http2Transport(
+          apiClient.getConnectTimeout(),
+          apiClient.getReadTimeout(),
+          settings.getH2MaxConnections(),
+          settings.getH2MaxStreamsPerConnection()
+      ));
+    } else if (TransportSettings.SOCKET.equals(settings.getName())) {
+      apiClient.setTransport(new SocketTransport(
+          apiClient.getConnectTimeout(),
+          apiClient.getReadTimeout(),
+          settings.getSocketMaxIdlePerHost()
+      ));
+    } else {
+      apiClient.setTransport(settings.getName());
+    }
   }
 
   /**
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Immutable request compression options read from the client properties file.
+ */
+public class CompressionSettings {
+
+  final private List<String> paths;
+  final private int minBytes;
+  final private int level;
+
+  private CompressionSettings(List<String> paths, int minBytes, int level) {
+    this.paths = Collections.unmodifiableList(paths);
+    this.minBytes = minBytes;
+    this.level = level;
+  }
+
+  /**
+   * Reads compression options from properties. Available properties:
+   *   - compressPaths (default: none) comma separated path fragments whose request bodies are
+   *     gzipped, or * for every path
+   *   - compressMinBytes (default: 1024, min: 0) smallest body worth compressing
+   *   - compressLevel (default: 6, min: 0, max: 9) deflate level
+   * None are required. Compression is off unless compressPaths is given.
+   *
+   * @param props properties parsed from the properties file
+   * @return the compression settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static CompressionSettings fromProperties(Properties props) throws IllegalArgumentException {
+    List<String> paths = new ArrayList<>();
+    for (String path : props.getProperty("compressPaths", "").split(",")) {
+      if (!path.trim().isEmpty()) {
+        paths.add(path.trim());
+      }
+    }
+
+    int minBytes, level;
+    try {
+      minBytes = Integer.parseInt(props.getProperty("compressMinBytes", "1024").trim());
+      level = Integer.parseInt(props.getProperty("compressLevel", "6").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed compression settings");
+    }
+
+    if (minBytes < 0) {
+      throw new IllegalArgumentException("compressMinBytes cannot be negative");
+    }
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("compressLevel must be between 0 and 9, inclusive");
+    }
+
+    return new CompressionSettings(paths, minBytes, level);
+  }
+
+  public boolean isEnabled() {
+    return !paths.isEmpty();
+  }
+
+  public List<String> getPaths() {
+    return paths;
+  }
+
+  public int getMinBytes() {
+    return minBytes;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  @Override
+  public String toString() {
+    return "CompressionSettings{" +
+        "paths=" + paths +
+        ", minBytes=" + minBytes +
+        ", level=" + level +
+        '}';
+  }
+}
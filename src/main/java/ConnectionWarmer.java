@@ -0,0 +1,178 @@
+import com.squareup.okhttp.ConnectionPool;
+import io.swagger.client.ApiClient;
+import io.swagger.client.ApiException;
+import io.swagger.client.api.SkiersApi;
+import io.swagger.client.transport.OkHttpTransport;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import statistics.SampleSummary;
+
+/**
+ * Opens and validates connections before a phase starts so the phase's first requests do not pay
+ * for TCP/TLS setup, then sends a batch of requests to get the client's request path compiled.
+ * <p>
+ * Warm-up requests are read-only GETs (a POST would write lift rides to the server) and are never
+ * recorded in the run's statistics. Their latencies are kept separately: the connection-opening
+ * batch shows cold-start latency, the JIT batch shows latency on warmed connections.
+ */
+public class ConnectionWarmer {
+
+  private static final Logger logger = LogManager.getLogger(ConnectionWarmer.class);
+  private static final long POOL_KEEP_ALIVE_MINS = 5;
+
+  private final Arguments args;
+  private final WarmupSettings settings;
+  private final SkiersApi skiersApi;
+  private final List<String> phaseSummaries = new CopyOnWriteArrayList<>();
+
+  /**
+   * Creates a warmer for the given api client. OkHttp only keeps 5 idle connections by default, so
+   * its pool is enlarged to hold every thread's connection between warm-up and use.
+   *
+   * @param args      arguments provided to the client
+   * @param apiClient the api client shared by the runners
+   */
+  public ConnectionWarmer(Arguments args, ApiClient apiClient) {
+    this(args, apiClient, args.getMaxThreads());
+  }
+
+  /**
+   * Creates a warmer whose connections will be used by up to the given number of threads.
+   *
+   * @param args       arguments provided to the client
+   * @param apiClient  the api client shared by the request threads
+   * @param maxThreads most threads that will share the warmed connections
+   */
+  public ConnectionWarmer(Arguments args, ApiClient apiClient, int maxThreads) {
+    this.args = args;
+    this.settings = args.getWarmupSettings();
+    this.skiersApi = new SkiersApi(apiClient);
+
+    if (apiClient.getTransport() instanceof OkHttpTransport) {
+      int maxIdle = Math.max(maxThreads, settings.getConnections(maxThreads));
+      apiClient.getHttpClient().setConnectionPool(
+          new ConnectionPool(maxIdle, TimeUnit.MINUTES.toMillis(POOL_KEEP_ALIVE_MINS)));
+    }
+  }
+
+  /**
+   * Warms connections for one phase. Blocks until the warm-up requests have completed.
+   *
+   * @param phaseName    label for the report
+   * @param phaseThreads number of threads the phase will run
+   */
+  public void warmUp(String phaseName, int phaseThreads) {
+    int numConnections = settings.getConnections(phaseThreads);
+    ExecutorService pool = Executors.newFixedThreadPool(numConnections);
+    try {
+      // Connection batch: all requests start together so each needs its own connection
+      long[] coldLatencies = new long[numConnections];
+      AtomicInteger failures = new AtomicInteger();
+      runBatch(pool, numConnections, numConnections, coldLatencies, failures);
+      int validated = numConnections - failures.get();
+
+      // JIT batch: spread over the now-open connections
+      long[] warmLatencies = new long[settings.getRequests()];
+      runBatch(pool, numConnections, settings.getRequests(), warmLatencies, failures);
+
+      String summary = String.format("Warm-up before %s:\n"
+              + "\tConnections validated: %d of %d\n"
+              + "\tFailed warm-up requests: %d\n"
+              + "\tCold-start latency (ms): %s\n"
+              + "\tWarm latency (ms): %s\n"
+          , phaseName
+          , validated
+          , numConnections
+          , failures.get()
+          , SampleSummary.describe(coldLatencies)
+          , SampleSummary.describe(warmLatencies)
+      );
+      phaseSummaries.add(summary);
+      logger.info(summary);
+    } catch (InterruptedException e) {
+      logger.error("warm-up interrupted: " + e.getMessage());
+      Thread.currentThread().interrupt();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Provides every phase's warm-up summary as a string.
+   *
+   * @return the warm-up report section
+   */
+  public String summary() {
+    return String.join("", phaseSummaries);
+  }
+
+  /**
+   * Runs a batch of unrecorded GETs, released together from a start gate.
+   *
+   * @param pool        threads to run on
+   * @param parallelism number of threads to use
+   * @param numRequests total requests in the batch
+   * @param latencies   filled with each request's latency
+   * @param failures    incremented for every request that got no HTTP response
+   */
+  private void runBatch(ExecutorService pool, int parallelism, int numRequests, long[] latencies,
+      AtomicInteger failures) throws InterruptedException {
+    if (numRequests == 0) {
+      return;
+    }
+    CountDownLatch startGate = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(Math.min(parallelism, numRequests));
+    AtomicInteger nextIndex = new AtomicInteger();
+
+    for (int t = 0; t < Math.min(parallelism, numRequests); t++) {
+      pool.execute(() -> {
+        try {
+          startGate.await();
+          for (int i = nextIndex.getAndIncrement(); i < numRequests;
+              i = nextIndex.getAndIncrement()) {
+            latencies[i] = sendOne(failures);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      });
+    }
+    startGate.countDown();
+    done.await();
+  }
+
+  /**
+   * Sends one read-only request. Any HTTP response, even an error code, proves the connection
+   * works; only I/O failures count as failed.
+   *
+   * @return the request latency in milliseconds
+   */
+  private long sendOne(AtomicInteger failures) {
+    String skierId = String.valueOf(ThreadLocalRandom.current().nextInt(1, args.getNumSkiers() + 1));
+    long start = System.currentTimeMillis();
+    try {
+      skiersApi.getSkierResortTotalsWithHttpInfo(skierId,
+          Collections.singletonList(args.getResort()));
+    } catch (ApiException e) {
+      if (e.getCode() == 0) {
+        failures.getAndIncrement();
+      }
+    } catch (RuntimeException e) {
+      // e.g. a malformed host address; warm-up must not take the client down
+      failures.getAndIncrement();
+      logger.error("warm-up request failed: " + e.getMessage());
+    }
+    return System.currentTimeMillis() - start;
+  }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import statistics.BulkRequestStatistics;
+import statistics.RunSnapshot;
+
+/**
+ * Runs the phases on worker processes instead of in this one. Each worker runs every N-th runner
+ * of each phase (see PhasePlan.forWorker), and a phase starts on all workers together once each
+ * of them is ready for it: phase 1 when all are warmed up, later phases when every worker's own
+ * trigger has fired. Workers then send back their report sections and run snapshots, which are
+ * merged into one BulkRequestStatistics so percentiles are computed over every request rather
+ * than averaged across workers.
+ * <p>
+ * See WorkerLink for the protocol.
+ */
+public class Coordinator {
+
+  private static final Logger logger = LogManager.getLogger(Coordinator.class);
+  // Spawned workers get this long to exit after sending their results
+  private static final long WORKER_EXIT_MILLIS = 10000;
+
+  private final DistributedSettings settings;
+  private final byte[] properties;
+  private final int numPhases;
+  private final List<Worker> workers = new ArrayList<>();
+  private final List<Process> spawned = new ArrayList<>();
+  private long startMillis;
+
+  /**
+   * @param args       arguments provided to the client
+   * @param properties the properties file the arguments came from, passed on to every worker
+   * @param numPhases  phases the workers will run
+   */
+  public Coordinator(Arguments args, byte[] properties, int numPhases) {
+    this.settings = args.getDistributedSettings();
+    this.properties = properties;
+    this.numPhases = numPhases;
+  }
+
+  /**
+   * Waits for the workers, runs the phases on them and adds their snapshots to stats.
+   *
+   * @param stats statistics for the whole run
+   * @throws IOException          if a worker can't be reached or its results can't be merged
+   * @throws InterruptedException if interrupted while waiting for spawned workers
+   */
+  public void run(BulkRequestStatistics stats) throws IOException, InterruptedException {
+    try (ServerSocket server = new ServerSocket(settings.getPort())) {
+      server.setSoTimeout(settings.getConnectSeconds() * 1000);
+      if (settings.isSpawnLocal()) {
+        spawnWorkers(server.getLocalPort(), stats.getCsvPath().toString());
+      }
+      acceptWorkers(server);
+
+      // Phase 1 starts the wall timer once every worker has warmed up
+      for (int phase = 1; phase <= numPhases; phase++) {
+        for (Worker worker : workers) {
+          worker.awaitReached(phase);
+        }
+        if (phase == 1) {
+          stats.startWallTimer();
+          startMillis = stats.getWallStart();
+        }
+        for (Worker worker : workers) {
+          worker.start(phase);
+        }
+      }
+      for (Worker worker : workers) {
+        worker.awaitFinished();
+      }
+      stats.stopWallTimer();
+
+      for (Worker worker : workers) {
+        worker.mergeResults(stats);
+      }
+    } finally {
+      for (Worker worker : workers) {
+        worker.close();
+      }
+      for (Process process : spawned) {
+        awaitExit(process);
+      }
+    }
+  }
+
+  private void spawnWorkers(int port, String csvPath) throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    String logBase = csvPath.endsWith(".csv")
+        ? csvPath.substring(0, csvPath.length() - ".csv".length())
+        : csvPath;
+    for (int i = 0; i < settings.getWorkers(); i++) {
+      ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+          System.getProperty("java.class.path"), BsdsApiClient.class.getName(), "worker",
+          "127.0.0.1:" + port);
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(new File(logBase + "-spawned" + (i + 1) + ".out"));
+      spawned.add(builder.start());
+    }
+  }
+
+  private void acceptWorkers(ServerSocket server) throws IOException {
+    while (workers.size() < settings.getWorkers()) {
+      Socket socket;
+      try {
+        socket = server.accept();
+      } catch (SocketTimeoutException e) {
+        throw new IOException("only " + workers.size() + " of " + settings.getWorkers()
+            + " workers connected within " + settings.getConnectSeconds() + " seconds");
+      }
+      socket.setTcpNoDelay(true);
+      Worker worker = new Worker(workers.size(), socket);
+      workers.add(worker);
+      worker.configure();
+      logger.info("Worker " + worker.number() + " connected from "
+          + socket.getRemoteSocketAddress());
+    }
+  }
+
+  private void awaitExit(Process process) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + WORKER_EXIT_MILLIS;
+    while (process.isAlive() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    if (process.isAlive()) {
+      logger.error("Spawned worker did not exit, stopping it");
+      process.destroy();
+    }
+  }
+
+  /**
+   * Provides the distributed run report section, followed by the sections each worker reported.
+   * Call after run.
+   *
+   * @return the report text
+   */
+  public String summary() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("Distributed Run:\n");
+    builder.append(String.format("\tWorkers: %d (%s)\n", workers.size(),
+        settings.isSpawnLocal() ? "spawned locally" : "connected to port " + settings.getPort()));
+    for (Worker worker : workers) {
+      builder.append(String.format(
+          "\tWorker %d at %s: %d requests, %d bad, finished %.2f seconds after start\n",
+          worker.number(), worker.socket.getRemoteSocketAddress(),
+          worker.snapshot.getTotalRequests(), worker.snapshot.getTotalBadRequests(),
+          (worker.finishedMillis - startMillis) / 1000.0));
+    }
+    for (Worker worker : workers) {
+      for (String section : worker.sections) {
+        builder.append("Worker ").append(worker.number()).append(' ').append(section);
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * The coordinator's side of one worker's connection.
+   */
+  private class Worker {
+
+    private final int index;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private long finishedMillis;
+    private RunSnapshot snapshot;
+    private final List<String> sections = new ArrayList<>();
+
+    Worker(int index, Socket socket) throws IOException {
+      this.index = index;
+      this.socket = socket;
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    int number() {
+      return index + 1;
+    }
+
+    void configure() throws IOException {
+      WorkerLink.expect(in, WorkerLink.HELLO);
+      int magic = in.readInt();
+      short version = in.readShort();
+      if (magic != WorkerLink.MAGIC || version != WorkerLink.VERSION) {
+        throw new IOException("worker " + number() + " speaks an unsupported protocol version");
+      }
+      // Phases can run for a long time between messages
+      socket.setSoTimeout(0);
+      out.writeByte(WorkerLink.CONFIG);
+      out.writeInt(index);
+      out.writeInt(settings.getWorkers());
+      WorkerLink.writeBytes(out, properties);
+      out.flush();
+    }
+
+    void awaitReached(int phase) throws IOException {
+      try {
+        WorkerLink.expect(in, WorkerLink.REACHED);
+        int reached = in.readInt();
+        if (reached != phase) {
+          throw new IOException("reached phase " + reached + ", expected " + phase);
+        }
+      } catch (IOException e) {
+        throw lost(e);
+      }
+    }
+
+    void start(int phase) throws IOException {
+      try {
+        out.writeByte(WorkerLink.START);
+        out.writeInt(phase);
+        out.flush();
+      } catch (IOException e) {
+        throw lost(e);
+      }
+    }
+
+    void awaitFinished() throws IOException {
+      try {
+        WorkerLink.expect(in, WorkerLink.FINISHED);
+        finishedMillis = System.currentTimeMillis();
+      } catch (IOException e) {
+        throw lost(e);
+      }
+    }
+
+    void mergeResults(BulkRequestStatistics stats) throws IOException {
+      try {
+        WorkerLink.expect(in, WorkerLink.RESULTS);
+        int numSections = in.readInt();
+        for (int i = 0; i < numSections; i++) {
+          sections.add(WorkerLink.readString(in));
+        }
+        snapshot = RunSnapshot.fromBytes(WorkerLink.readBytes(in));
+      } catch (IOException e) {
+        throw lost(e);
+      }
+      snapshot.setLabel("worker " + number());
+      stats.addSnapshot(snapshot);
+    }
+
+    IOException lost(IOException e) {
+      return new IOException("lost worker " + number() + ": " + e.getMessage(), e);
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        logger.error("Problem closing worker " + number() + " connection: " + e.getMessage());
+      }
+    }
+  }
+}
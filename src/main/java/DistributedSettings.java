@@ -0,0 +1,98 @@
+import java.util.Properties;
+
+/**
+ * Immutable coordinator options read from the client properties file. Workers need no settings of
+ * their own: they are started as "BsdsApiClient worker host:port" and receive the coordinator's
+ * properties when they connect.
+ */
+public class DistributedSettings {
+
+  final private int workers;
+  final private int port;
+  final private boolean spawnLocal;
+  final private int connectSeconds;
+
+  private DistributedSettings(int workers, int port, boolean spawnLocal, int connectSeconds) {
+    this.workers = workers;
+    this.port = port;
+    this.spawnLocal = spawnLocal;
+    this.connectSeconds = connectSeconds;
+  }
+
+  /**
+   * Reads coordinator options from properties. Available properties:
+   *   - distributedWorkers (default: 0, min: 0) worker processes to split each phase's runners
+   *     across; when above 0 this process only coordinates and sends no requests itself
+   *   - coordinatorPort (default: 7600, min: 0, max: 65535) port workers connect to, 0 for any
+   *     free port when workers are spawned locally
+   *   - spawnLocalWorkers (default: false) start the workers as JVMs on this machine, for testing
+   *   - workerConnectSeconds (default: 60, min: 1) how long to wait for every worker to connect
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the distributed settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static DistributedSettings fromProperties(Properties props) throws IllegalArgumentException {
+    boolean spawnLocal = Boolean.parseBoolean(
+        props.getProperty("spawnLocalWorkers", "false").trim());
+    int workers, port, connectSeconds;
+    try {
+      workers = Integer.parseInt(props.getProperty("distributedWorkers", "0").trim());
+      port = Integer.parseInt(props.getProperty("coordinatorPort", "7600").trim());
+      connectSeconds = Integer.parseInt(props.getProperty("workerConnectSeconds", "60").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed distributed settings");
+    }
+
+    if (workers < 0) {
+      throw new IllegalArgumentException("distributedWorkers cannot be negative");
+    }
+    if (port < 0 || port > 65535) {
+      throw new IllegalArgumentException("coordinatorPort must be between 0 and 65535, inclusive");
+    }
+    if (port == 0 && workers > 0 && !spawnLocal) {
+      throw new IllegalArgumentException(
+          "coordinatorPort can only be 0 when spawnLocalWorkers is true");
+    }
+    if (connectSeconds < 1) {
+      throw new IllegalArgumentException("workerConnectSeconds must be at least 1");
+    }
+
+    return new DistributedSettings(workers, port, spawnLocal, connectSeconds);
+  }
+
+  /**
+   * @return true if this process coordinates workers instead of sending requests
+   */
+  public boolean isEnabled() {
+    return workers > 0;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public boolean isSpawnLocal() {
+    return spawnLocal;
+  }
+
+  public int getConnectSeconds() {
+    return connectSeconds;
+  }
+
+  @Override
+  public String toString() {
+    return "DistributedSettings{" +
+        "workers=" + workers +
+        ", port=" + port +
+        ", spawnLocal=" + spawnLocal +
+        ", connectSeconds=" + connectSeconds +
+        '}';
+  }
+}
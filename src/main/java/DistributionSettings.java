@@ -0,0 +1,212 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import workload.Distributions;
+import workload.IntSampler;
+import workload.TimePeak;
+
+/**
+ * Immutable workload distribution options read from the client properties file. Decides how skier
+ * IDs, lift IDs and ride times are drawn for generated requests.
+ */
+public class DistributionSettings {
+
+  public static final String UNIFORM = "uniform";
+  public static final String ZIPF = "zipf";
+  public static final String WEIGHTED = "weighted";
+  public static final String PEAKS = "peaks";
+
+  final private String skierDistribution;
+  final private double skierZipfExponent;
+  final private String liftDistribution;
+  final private double liftZipfExponent;
+  final private String liftWeightsFile;
+  final private double[] liftWeights;
+  final private String timeDistribution;
+  final private List<TimePeak> timePeaks;
+
+  private DistributionSettings(String skierDistribution, double skierZipfExponent,
+      String liftDistribution, double liftZipfExponent, String liftWeightsFile,
+      double[] liftWeights, String timeDistribution, List<TimePeak> timePeaks) {
+    this.skierDistribution = skierDistribution;
+    this.skierZipfExponent = skierZipfExponent;
+    this.liftDistribution = liftDistribution;
+    this.liftZipfExponent = liftZipfExponent;
+    this.liftWeightsFile = liftWeightsFile;
+    this.liftWeights = liftWeights;
+    this.timeDistribution = timeDistribution;
+    this.timePeaks = Collections.unmodifiableList(timePeaks);
+  }
+
+  /**
+   * Reads distribution options from properties. Available properties:
+   *   - skierDistribution (default: uniform) uniform or zipf
+   *   - skierZipfExponent (default: 1.0, min: 0) skew of the zipf skier distribution
+   *   - liftDistribution (default: uniform) uniform, zipf or weighted
+   *   - liftZipfExponent (default: 1.0, min: 0) skew of the zipf lift distribution
+   *   - liftWeightsFile (required for weighted lifts) file with one popularity weight per line,
+   *     the first line being lift 1; blank lines and lines starting with # are skipped, and at
+   *     least one weight must be above 0
+   *   - timeDistribution (default: uniform) uniform or peaks
+   *   - timePeaks (default: 60:45:2,330:45:1) comma separated minute:stdDev[:weight] peaks for the
+   *     peaks time distribution, the default being a morning rush and a smaller afternoon one
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the distribution settings
+   * @throws IllegalArgumentException if any properties are invalid or the weights file can't be read
+   */
+  static DistributionSettings fromProperties(Properties props) throws IllegalArgumentException {
+    String skierDistribution = props.getProperty("skierDistribution", UNIFORM).trim();
+    String liftDistribution = props.getProperty("liftDistribution", UNIFORM).trim();
+    String timeDistribution = props.getProperty("timeDistribution", UNIFORM).trim();
+    String liftWeightsFile = props.getProperty("liftWeightsFile");
+
+    if (!UNIFORM.equals(skierDistribution) && !ZIPF.equals(skierDistribution)) {
+      throw new IllegalArgumentException("skierDistribution must be one of: uniform, zipf");
+    }
+    if (!UNIFORM.equals(liftDistribution) && !ZIPF.equals(liftDistribution)
+        && !WEIGHTED.equals(liftDistribution)) {
+      throw new IllegalArgumentException(
+          "liftDistribution must be one of: uniform, zipf, weighted");
+    }
+    if (!UNIFORM.equals(timeDistribution) && !PEAKS.equals(timeDistribution)) {
+      throw new IllegalArgumentException("timeDistribution must be one of: uniform, peaks");
+    }
+
+    double skierZipfExponent, liftZipfExponent;
+    try {
+      skierZipfExponent = Double.parseDouble(props.getProperty("skierZipfExponent", "1.0").trim());
+      liftZipfExponent = Double.parseDouble(props.getProperty("liftZipfExponent", "1.0").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed distribution settings");
+    }
+    if (skierZipfExponent < 0 || liftZipfExponent < 0) {
+      throw new IllegalArgumentException("zipf exponents cannot be negative");
+    }
+
+    double[] liftWeights = null;
+    if (WEIGHTED.equals(liftDistribution)) {
+      if (liftWeightsFile == null) {
+        throw new IllegalArgumentException("liftWeightsFile is required for weighted lifts");
+      }
+      liftWeights = readWeights(liftWeightsFile.trim());
+    }
+
+    List<TimePeak> timePeaks = TimePeak.parseList(
+        props.getProperty("timePeaks", "60:45:2,330:45:1"));
+
+    return new DistributionSettings(skierDistribution, skierZipfExponent, liftDistribution,
+        liftZipfExponent, liftWeightsFile, liftWeights, timeDistribution, timePeaks);
+  }
+
+  /**
+   * Reads one weight per line from a file.
+   */
+  private static double[] readWeights(String fileName) throws IllegalArgumentException {
+    List<Double> weights = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(fileName))) {
+      String line = reader.readLine();
+      while (line != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          double weight = Double.parseDouble(line);
+          if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException(
+                "lift weights must be finite and at least 0 in liftWeightsFile " + fileName);
+          }
+          weights.add(weight);
+        }
+        line = reader.readLine();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("could not read liftWeightsFile " + fileName);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("malformed weight in liftWeightsFile " + fileName);
+    }
+
+    double[] result = new double[weights.size()];
+    double total = 0;
+    for (int i = 0; i < result.length; i++) {
+      result[i] = weights.get(i);
+      total += result[i];
+    }
+    if (total <= 0) {
+      throw new IllegalArgumentException(
+          "liftWeightsFile " + fileName + " must give at least one lift a weight above 0");
+    }
+    return result;
+  }
+
+  /**
+   * Number of lifts listed in the weights file, or -1 if lifts are not weighted.
+   *
+   * @return the lift count from the file
+   */
+  public int getWeightedLiftCount() {
+    return liftWeights == null ? -1 : liftWeights.length;
+  }
+
+  /**
+   * Builds a sampler for skier IDs in a runner's range.
+   *
+   * @param low  low bound, inclusive
+   * @param high high bound, inclusive
+   * @return the sampler
+   */
+  public IntSampler skierSampler(int low, int high) {
+    if (ZIPF.equals(skierDistribution)) {
+      return Distributions.zipf(low, high, skierZipfExponent);
+    }
+    return Distributions.uniform(low, high);
+  }
+
+  /**
+   * Builds a sampler for 1-indexed lift IDs.
+   *
+   * @param numSkiLifts number of lifts
+   * @return the sampler
+   */
+  public IntSampler liftSampler(int numSkiLifts) {
+    if (ZIPF.equals(liftDistribution)) {
+      return Distributions.zipf(1, numSkiLifts, liftZipfExponent);
+    }
+    if (WEIGHTED.equals(liftDistribution)) {
+      return Distributions.weighted(1, liftWeights);
+    }
+    return Distributions.uniform(1, numSkiLifts);
+  }
+
+  /**
+   * Builds a sampler for ride times in a runner's range.
+   *
+   * @param low  first minute, inclusive
+   * @param high last minute, inclusive
+   * @return the sampler
+   */
+  public IntSampler timeSampler(int low, int high) {
+    if (PEAKS.equals(timeDistribution)) {
+      return Distributions.gaussianPeaks(low, high, timePeaks);
+    }
+    return Distributions.uniform(low, high);
+  }
+
+  @Override
+  public String toString() {
+    return "DistributionSettings{" +
+        "skierDistribution='" + skierDistribution + '\'' +
+        ", skierZipfExponent=" + skierZipfExponent +
+        ", liftDistribution='" + liftDistribution + '\'' +
+        ", liftZipfExponent=" + liftZipfExponent +
+        ", liftWeightsFile='" + liftWeightsFile + '\'' +
+        ", timeDistribution='" + timeDistribution + '\'' +
+        ", timePeaks=" + timePeaks +
+        '}';
+  }
+}
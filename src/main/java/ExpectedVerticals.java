@@ -0,0 +1,154 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The vertical the server should report for every skier on every resort and day, built from the
+ * rides the client wrote successfully. Each resort and day gets flat primitive arrays indexed by
+ * skier ID the first time a ride is recorded on it, so recording a ride is two atomic writes and
+ * never blocks the POST path, and memory grows with the partitions runners actually write to
+ * rather than with the whole resort and day grid.
+ */
+public class ExpectedVerticals {
+
+  private final int numSkiers;
+  private final int numDays;
+  private final int verticalPerLift;
+  private final long baseMillis;
+  // Null until a ride is recorded on the partition
+  private final AtomicReferenceArray<Accumulator> accumulators;
+  // Indexes of the partitions with an accumulator, in the order they got one
+  private final int[] active;
+  private volatile int numActive;
+
+  /**
+   * Verticals and write times of every skier on one resort and day.
+   */
+  private static class Accumulator {
+
+    final AtomicIntegerArray verticals;
+    // Milliseconds after baseMillis of the latest ride recorded for the skier
+    final AtomicIntegerArray lastWriteOffsets;
+
+    Accumulator(int numSkiers) {
+      this.verticals = new AtomicIntegerArray(numSkiers + 1);
+      this.lastWriteOffsets = new AtomicIntegerArray(numSkiers + 1);
+    }
+  }
+
+  /**
+   * @param numPartitions   resort and day partitions, see PartitionSettings
+   * @param numDays         days per resort in the partition grid
+   * @param numSkiers       highest skier ID
+   * @param verticalPerLift vertical of one ride, multiplied by the lift ID
+   */
+  public ExpectedVerticals(int numPartitions, int numDays, int numSkiers, int verticalPerLift) {
+    this.numSkiers = numSkiers;
+    this.numDays = numDays;
+    this.verticalPerLift = verticalPerLift;
+    this.baseMillis = System.currentTimeMillis();
+    this.accumulators = new AtomicReferenceArray<>(numPartitions);
+    this.active = new int[numPartitions];
+  }
+
+  /**
+   * Adds a ride the server acknowledged.
+   *
+   * @param partition the ride's partition index
+   * @param skierId   the skier
+   * @param liftId    the lift, which sets the ride's vertical
+   */
+  public void recordRide(int partition, int skierId, int liftId) {
+    Accumulator accumulator = accumulators.get(partition);
+    if (accumulator == null) {
+      accumulator = allocate(partition);
+    }
+    // Time first, so a reader that sees the new vertical never sees an older write time
+    accumulator.lastWriteOffsets.lazySet(skierId, (int) (System.currentTimeMillis() - baseMillis));
+    accumulator.verticals.getAndAdd(skierId, liftId * verticalPerLift);
+  }
+
+  /**
+   * Creates a partition's accumulator, once per partition.
+   */
+  private synchronized Accumulator allocate(int partition) {
+    Accumulator accumulator = accumulators.get(partition);
+    if (accumulator == null) {
+      accumulator = new Accumulator(numSkiers);
+      accumulators.set(partition, accumulator);
+      active[numActive] = partition;
+      // Publishing the count makes the new entry visible to randomActivePartition
+      numActive = numActive + 1;
+    }
+    return accumulator;
+  }
+
+  /**
+   * @param rand the caller's random source
+   * @return a random partition with rides recorded on it, or -1 if there is none yet
+   */
+  public int randomActivePartition(Random rand) {
+    int count = numActive;
+    return count == 0 ? -1 : active[rand.nextInt(count)];
+  }
+
+  /**
+   * @param partition the partition index
+   * @param skierId   the skier
+   * @return the expected vertical for the skier on the partition's resort and day
+   */
+  public int getDayVertical(int partition, int skierId) {
+    Accumulator accumulator = accumulators.get(partition);
+    return accumulator == null ? 0 : accumulator.verticals.get(skierId);
+  }
+
+  /**
+   * @param resort  the resort's position in the resorts list
+   * @param skierId the skier
+   * @return the expected vertical for the skier over all configured days at the resort
+   */
+  public int getResortVertical(int resort, int skierId) {
+    int total = 0;
+    for (int day = 0; day < numDays; day++) {
+      total += getDayVertical(resort * numDays + day, skierId);
+    }
+    return total;
+  }
+
+  /**
+   * @param partition the partition index
+   * @param skierId   the skier
+   * @return when the skier's latest ride on the partition was acknowledged, or 0 if none was
+   */
+  public long getDayLastWriteMillis(int partition, int skierId) {
+    Accumulator accumulator = accumulators.get(partition);
+    if (accumulator == null || accumulator.verticals.get(skierId) == 0) {
+      return 0;
+    }
+    return baseMillis + accumulator.lastWriteOffsets.get(skierId);
+  }
+
+  /**
+   * @param resort  the resort's position in the resorts list
+   * @param skierId the skier
+   * @return when the skier's latest ride at the resort was acknowledged, or 0 if none was
+   */
+  public long getResortLastWriteMillis(int resort, int skierId) {
+    long latest = 0;
+    for (int day = 0; day < numDays; day++) {
+      latest = Math.max(latest, getDayLastWriteMillis(resort * numDays + day, skierId));
+    }
+    return latest;
+  }
+
+  /**
+   * @return how many resort and day partitions have rides recorded on them
+   */
+  public int getActivePartitionCount() {
+    return numActive;
+  }
+
+  public int getNumSkiers() {
+    return numSkiers;
+  }
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.Properties;
+import workload.Operation;
+import workload.OperationMix;
+
+/**
+ * Immutable request mix options read from the client properties file. Decides how many requests of
+ * each operation a runner sends and whether they are interleaved.
+ */
+public class MixSettings {
+
+  final private boolean interleave;
+  final private double[] weights;
+  final private int[] topTenPerPhase;
+
+  private MixSettings(boolean interleave, double[] weights, int[] topTenPerPhase) {
+    this.interleave = interleave;
+    this.weights = weights;
+    this.topTenPerPhase = topTenPerPhase;
+  }
+
+  /**
+   * Reads request mix options from properties. Available properties:
+   *   - interleaveRequests (default: false) shuffle each runner's requests so reads and writes are
+   *     mixed, instead of sending all POSTs first and then each GET path in turn
+   *   - requestMix (default: none) comma separated operation:weight pairs that split each runner's
+   *     requests between operations, e.g. post:90,dayVertical:4,resortTotals:4,topTen:2;
+   *     operations are post, dayVertical, resortTotals and topTen, unlisted ones get no requests
+   *   - topTenPerPhase (default: none) comma separated top-ten calls per runner for each phase in
+   *     order, e.g. 2,10,5; replaces the topTen share of requestMix, on top of the other requests
+   * None are required. Without requestMix the phases keep their specified POST and GET counts.
+   *
+   * @param props properties parsed from the properties file
+   * @return the request mix settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static MixSettings fromProperties(Properties props) throws IllegalArgumentException {
+    boolean interleave = Boolean.parseBoolean(
+        props.getProperty("interleaveRequests", "false").trim());
+
+    int[] topTenPerPhase = null;
+    String topTenRaw = props.getProperty("topTenPerPhase", "").trim();
+    if (!topTenRaw.isEmpty()) {
+      String[] parts = topTenRaw.split(",");
+      topTenPerPhase = new int[parts.length];
+      for (int i = 0; i < parts.length; i++) {
+        try {
+          topTenPerPhase[i] = Integer.parseInt(parts[i].trim());
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("malformed topTenPerPhase count: " + parts[i].trim());
+        }
+        if (topTenPerPhase[i] < 0) {
+          throw new IllegalArgumentException("topTenPerPhase counts cannot be negative");
+        }
+      }
+    }
+
+    String mixRaw = props.getProperty("requestMix", "").trim();
+    if (mixRaw.isEmpty()) {
+      return new MixSettings(interleave, null, topTenPerPhase);
+    }
+
+    double[] weights = new double[Operation.values().length];
+    double sum = 0;
+    for (String part : mixRaw.split(",")) {
+      String[] fields = part.trim().split(":");
+      if (fields.length != 2) {
+        throw new IllegalArgumentException("requestMix entries must be written as operation:weight");
+      }
+      Operation op = Operation.fromKey(fields[0].trim());
+      if (op == null) {
+        throw new IllegalArgumentException("unknown requestMix operation " + fields[0].trim()
+            + ", expected one of: post, dayVertical, resortTotals, topTen");
+      }
+      try {
+        weights[op.ordinal()] = Double.parseDouble(fields[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("malformed requestMix weight: " + part.trim());
+      }
+      if (weights[op.ordinal()] < 0) {
+        throw new IllegalArgumentException("requestMix weights cannot be negative");
+      }
+      sum += weights[op.ordinal()];
+    }
+    if (sum <= 0) {
+      throw new IllegalArgumentException("requestMix needs at least one positive weight");
+    }
+
+    return new MixSettings(interleave, weights, topTenPerPhase);
+  }
+
+  public boolean isInterleaved() {
+    return interleave;
+  }
+
+  /**
+   * Number of phases topTenPerPhase gives counts for.
+   *
+   * @return the count, or 0 if topTenPerPhase is not set
+   */
+  public int getTopTenPhaseCount() {
+    return topTenPerPhase == null ? 0 : topTenPerPhase.length;
+  }
+
+  /**
+   * Splits a runner's requests between operations.
+   *
+   * @param phase           the phase's number, starting at 1
+   * @param numPosts        the phase's specified POSTs per runner
+   * @param numGetsPerPath  the phase's specified GETs per runner on each skier GET path
+   * @return the specified counts, or the same total split by the configured weights, with the
+   *     phase's top-ten count if one is configured
+   */
+  public OperationMix mixFor(int phase, int numPosts, int numGetsPerPath) {
+    int[] counts = new int[Operation.values().length];
+    counts[Operation.POST_LIFT_RIDE.ordinal()] = numPosts;
+    counts[Operation.GET_SKIER_DAY_VERTICAL.ordinal()] = numGetsPerPath;
+    counts[Operation.GET_SKIER_RESORT_TOTALS.ordinal()] = numGetsPerPath;
+    OperationMix mix = new OperationMix(counts);
+    if (weights != null) {
+      double[] otherWeights = weights.clone();
+      if (topTenPerPhase != null) {
+        otherWeights[Operation.GET_TOP_TEN_VERT.ordinal()] = 0;
+      }
+      mix = OperationMix.fromWeights(otherWeights, mix.getTotal());
+    }
+    if (topTenPerPhase != null) {
+      mix = mix.withCount(Operation.GET_TOP_TEN_VERT, topTenPerPhase[phase - 1]);
+    }
+    return mix;
+  }
+
+  @Override
+  public String toString() {
+    return "MixSettings{" +
+        "interleave=" + interleave +
+        ", weights=" + Arrays.toString(weights) +
+        ", topTenPerPhase=" + Arrays.toString(topTenPerPhase) +
+        '}';
+  }
+}
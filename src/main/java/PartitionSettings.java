@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import workload.Partition;
+import workload.PartitionStrategy;
+
+/**
+ * Immutable resort and day partitioning options read from the client properties file. Decides
+ * which resort and day each runner's skier block sends its requests to.
+ */
+public class PartitionSettings {
+
+  final private List<String> resorts;
+  final private int[] days;
+  final private PartitionStrategy strategy;
+
+  private PartitionSettings(List<String> resorts, int[] days, PartitionStrategy strategy) {
+    this.resorts = resorts;
+    this.days = days;
+    this.strategy = strategy;
+  }
+
+  /**
+   * Reads partitioning options from properties. Available properties:
+   *   - resorts (default: the resort property) comma separated resort names
+   *   - skiDays (default: the skiDay property) comma separated days or inclusive day ranges, e.g.
+   *     1-3,10; each between 1 and 366
+   *   - partitionStrategy (default: contiguous) how runners are assigned a resort and day:
+   *     contiguous gives neighbouring skier blocks the same partition, hashed picks one by hashing
+   *     the block, roundRobin deals partitions to runners in turn
+   * None are required. Every resort is paired with every day; a phase with fewer runners than
+   * partitions leaves some of them idle.
+   *
+   * @param props         properties parsed from the properties file
+   * @param defaultResort the resort property, used when resorts is not given
+   * @param defaultDay    the skiDay property, used when skiDays is not given
+   * @return the partition settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static PartitionSettings fromProperties(Properties props, String defaultResort, int defaultDay)
+      throws IllegalArgumentException {
+    List<String> resorts = new ArrayList<>();
+    String resortsRaw = props.getProperty("resorts", "").trim();
+    if (resortsRaw.isEmpty()) {
+      resorts.add(defaultResort);
+    } else {
+      for (String resort : resortsRaw.split(",")) {
+        if (resort.trim().isEmpty()) {
+          throw new IllegalArgumentException("resorts cannot contain an empty name");
+        }
+        if (resorts.contains(resort.trim())) {
+          throw new IllegalArgumentException("resort listed twice: " + resort.trim());
+        }
+        resorts.add(resort.trim());
+      }
+    }
+
+    String daysRaw = props.getProperty("skiDays", "").trim();
+    int[] days = daysRaw.isEmpty() ? new int[]{defaultDay} : parseDays(daysRaw);
+
+    String strategyRaw = props.getProperty("partitionStrategy", "contiguous").trim();
+    PartitionStrategy strategy = PartitionStrategy.fromKey(strategyRaw);
+    if (strategy == null) {
+      throw new IllegalArgumentException(
+          "partitionStrategy must be contiguous, hashed or roundRobin");
+    }
+
+    return new PartitionSettings(Collections.unmodifiableList(resorts), days, strategy);
+  }
+
+  private static int[] parseDays(String raw) throws IllegalArgumentException {
+    List<Integer> days = new ArrayList<>();
+    for (String part : raw.split(",")) {
+      String[] bounds = part.trim().split("-");
+      int low;
+      int high;
+      try {
+        low = Integer.parseInt(bounds[0].trim());
+        high = bounds.length == 2 ? Integer.parseInt(bounds[1].trim()) : low;
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("malformed skiDays entry: " + part.trim());
+      }
+      if (bounds.length > 2 || low > high) {
+        throw new IllegalArgumentException("malformed skiDays entry: " + part.trim());
+      }
+      if (low < 1 || high > 366) {
+        throw new IllegalArgumentException("skiDays must be between 1 and 366, inclusive");
+      }
+      for (int day = low; day <= high; day++) {
+        if (days.contains(day)) {
+          throw new IllegalArgumentException("day listed twice in skiDays: " + day);
+        }
+        days.add(day);
+      }
+    }
+    int[] result = new int[days.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = days.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * @return whether requests go to more than one resort or day
+   */
+  public boolean isPartitioned() {
+    return getPartitionCount() > 1;
+  }
+
+  public int getPartitionCount() {
+    return resorts.size() * days.length;
+  }
+
+  /**
+   * Picks the resort and day for one runner. Partitions are numbered resort by resort, so
+   * contiguous runners cover all of one resort's days before moving to the next resort.
+   *
+   * @param runner     runner index within the phase
+   * @param numRunners runners in the phase
+   * @param skierIdLow first skier ID of the runner's block
+   * @return the partition
+   */
+  public Partition partitionFor(int runner, int numRunners, int skierIdLow) {
+    return getPartition(
+        strategy.partitionFor(runner, numRunners, skierIdLow, getPartitionCount()));
+  }
+
+  public int getResortCount() {
+    return resorts.size();
+  }
+
+  public int getDayCount() {
+    return days.length;
+  }
+
+  /**
+   * Provides a partition by its index in the grid.
+   *
+   * @param index from 0 to getPartitionCount() - 1
+   * @return the partition
+   */
+  public Partition getPartition(int index) {
+    return new Partition(index, resorts.get(index / days.length), days[index % days.length]);
+  }
+
+  public PartitionStrategy getStrategy() {
+    return strategy;
+  }
+
+  @Override
+  public String toString() {
+    return "PartitionSettings{" +
+        "resorts=" + resorts +
+        ", days=" + Arrays.toString(days) +
+        ", strategy=" + strategy.getKey() +
+        '}';
+  }
+}
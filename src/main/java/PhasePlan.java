@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import workload.OperationMix;
+import workload.Partition;
+
+/**
+ * Immutable description of one phase of the client process: how many runners it starts, how many
+ * requests of each operation each sends, and which skier and time ranges each covers. A timed
+ * phase repeats each runner's requests until its time is up.
+ * <p>
+ * Phase specifications at https://gortonator.github.io/bsds-6650/assignments-2020/Assignment-1
+ */
+public class PhasePlan {
+
+  public static final int NUM_STANDARD_PHASES = 3;
+
+  private static final int numPostsStd = 1000;
+  private static final int numGetsPerPathStd = 5;
+
+  final private int number;
+  final private int numThreads;
+  final private int startTime;
+  final private int endTime;
+  final private OperationMix mix;
+  final private int numSkiers;
+  final private PartitionSettings partitions;
+  final private int worker;
+  final private int numWorkers;
+  final private long durationMillis;
+
+  private PhasePlan(int number, int numThreads, int startTime, int endTime, OperationMix mix,
+      int numSkiers, PartitionSettings partitions, int worker, int numWorkers,
+      long durationMillis) {
+    this.number = number;
+    this.numThreads = numThreads;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.mix = mix;
+    this.numSkiers = numSkiers;
+    this.partitions = partitions;
+    this.worker = worker;
+    this.numWorkers = numWorkers;
+    this.durationMillis = durationMillis;
+  }
+
+  private PhasePlan(int number, int numThreads, int startTime, int endTime, OperationMix mix,
+      int numSkiers, PartitionSettings partitions, long durationMillis) {
+    this(number, numThreads, startTime, endTime, mix, numSkiers, partitions, 0, 1,
+        durationMillis);
+  }
+
+  /**
+   * Builds the three standard phases: warmup, peak and cooldown. The request mix settings may
+   * redistribute each runner's requests between operations, and the soak settings may give each
+   * phase a length.
+   *
+   * @param arguments arguments provided to the client
+   * @return the phases in the order they start
+   */
+  public static List<PhasePlan> standardPhases(Arguments arguments) {
+    int maxThreads = arguments.getMaxThreads();
+    int numSkiers = arguments.getNumSkiers();
+    MixSettings mixSettings = arguments.getMixSettings();
+    PartitionSettings partitions = arguments.getPartitionSettings();
+    SoakSettings soak = arguments.getSoakSettings();
+    List<PhasePlan> phases = new ArrayList<>();
+    phases.add(new PhasePlan(1, maxThreads / 4, 1, 90,
+        mixSettings.mixFor(1, numPostsStd, numGetsPerPathStd), numSkiers, partitions,
+        soak.getPhaseMillis(1)));
+    phases.add(new PhasePlan(2, maxThreads, 91, 360,
+        mixSettings.mixFor(2, numPostsStd, numGetsPerPathStd), numSkiers, partitions,
+        soak.getPhaseMillis(2)));
+    phases.add(new PhasePlan(3, maxThreads / 4, 361, 420,
+        mixSettings.mixFor(3, numPostsStd, numGetsPerPathStd * 2), numSkiers, partitions,
+        soak.getPhaseMillis(3)));
+    return phases;
+  }
+
+  /**
+   * Gives one worker of a distributed run its share of the phase: every numWorkers-th runner,
+   * starting at the worker's index. Runners keep the skier ranges and partitions they have in the
+   * whole phase, so the workers together send exactly what one process would.
+   *
+   * @param worker     the worker's index, starting at 0
+   * @param numWorkers workers in the run
+   * @return the worker's plan
+   */
+  public PhasePlan forWorker(int worker, int numWorkers) {
+    return new PhasePlan(number, numThreads, startTime, endTime, mix, numSkiers, partitions,
+        worker, numWorkers, durationMillis);
+  }
+
+  /**
+   * @param runner runner index within the phase, starting at 0
+   * @return whether this process runs the runner
+   */
+  public boolean isLocalRunner(int runner) {
+    return runner % numWorkers == worker;
+  }
+
+  /**
+   * @return how many of the phase's runners this process runs
+   */
+  public int getLocalThreadCount() {
+    int count = 0;
+    for (int i = 0; i < numThreads; i++) {
+      if (isLocalRunner(i)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public int getNumber() {
+    return number;
+  }
+
+  public String getName() {
+    return "phase " + number;
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  public int getStartTime() {
+    return startTime;
+  }
+
+  public int getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * @return how long the phase's runners keep sending in milliseconds, or 0 if each sends its
+   *     requests once
+   */
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public boolean isTimed() {
+    return durationMillis > 0;
+  }
+
+  /**
+   * @return how many requests of each operation each runner sends, per round in a timed phase
+   */
+  public OperationMix getMix() {
+    return mix;
+  }
+
+  /**
+   * Requests sent by each runner, over all operations, per round in a timed phase.
+   *
+   * @return the request count
+   */
+  public int getRequestsPerThread() {
+    return mix.getTotal();
+  }
+
+  /**
+   * Low end of a runner's skier ID range, inclusive.
+   *
+   * @param runner runner index within the phase, starting at 0
+   * @return the lowest skier ID
+   */
+  public int getSkierIdLow(int runner) {
+    return runner * (numSkiers / numThreads) + 1;
+  }
+
+  /**
+   * High end of a runner's skier ID range, inclusive. The last runner also takes any remainder.
+   *
+   * @param runner runner index within the phase, starting at 0
+   * @return the highest skier ID
+   */
+  public int getSkierIdHigh(int runner) {
+    if (runner == numThreads - 1) {
+      return numSkiers;
+    }
+    return (runner + 1) * (numSkiers / numThreads);
+  }
+
+  /**
+   * Resort and day a runner sends its requests to, assigned by the configured partition strategy.
+   *
+   * @param runner runner index within the phase, starting at 0
+   * @return the partition
+   */
+  public Partition getPartition(int runner) {
+    return partitions.partitionFor(runner, numThreads, getSkierIdLow(runner));
+  }
+
+  /**
+   * Describes how the phase's runners and skiers are spread over resorts and days.
+   *
+   * @return an indented report block
+   */
+  public String partitionSummary() {
+    // Runners and skiers for each partition that got any
+    Map<String, int[]> load = new TreeMap<>();
+    for (int i = 0; i < numThreads; i++) {
+      int[] counts = load.computeIfAbsent(getPartition(i).toString(), key -> new int[2]);
+      counts[0]++;
+      counts[1] += getSkierIdHigh(i) - getSkierIdLow(i) + 1;
+    }
+    StringBuilder builder = new StringBuilder();
+    builder.append("Partitions in ").append(getName()).append(":\n");
+    builder.append(String.format("\tPartitions used: %d of %d (%s)\n", load.size(),
+        partitions.getPartitionCount(), partitions.getStrategy().getKey()));
+    for (Map.Entry<String, int[]> entry : load.entrySet()) {
+      builder.append(String.format("\t%s: %d runners, %d skiers\n",
+          entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "PhasePlan{" +
+        "number=" + number +
+        ", numThreads=" + numThreads +
+        ", startTime=" + startTime +
+        ", endTime=" + endTime +
+        ", mix=" + mix +
+        ", durationMillis=" + durationMillis +
+        '}';
+  }
+}
@@ -1,16 +1,34 @@
+import com.squareup.okhttp.HttpUrl;
+import io.swagger.client.ApiClient;
 import io.swagger.client.ApiException;
 import io.swagger.client.ApiResponse;
+import io.swagger.client.CallMeter;
+import io.swagger.client.CircuitOpenException;
+import io.swagger.client.RateLimiters;
+import io.swagger.client.api.ResortsApi;
 import io.swagger.client.api.SkiersApi;
 import io.swagger.client.model.LiftRide;
 import io.swagger.client.model.SkierVertical;
+import io.swagger.client.model.TopTen;
+import io.swagger.client.model.TopTenTopTenSkiers;
+import io.swagger.client.transport.PipelinedHttpEngine;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import statistics.BulkRequestStatistics;
 import statistics.SingleRequestStatistics;
+import statistics.TopTenStatistics;
+import workload.Operation;
+import workload.Partition;
+import workload.RequestSource;
+import workload.SampledRequestSource;
+import workload.WorkloadMismatchException;
 
 /**
  * PhaseRunner uses the client SDK to call the server API in an automated way.
@@ -21,9 +39,14 @@ public class PhaseRunner implements Runnable {
 
   // Limited logging performed here due to high execution volume
   private static final Logger logger = LogManager.getLogger(PhaseRunner.class);
+  // Results are handed to the stats writer a chunk at a time, so a runner's memory stays bounded
+  // however long it sends for
+  private static final int STATS_CHUNK_SIZE = 1024;
 
 
   private SkiersApi skiersApiInstance;
+  private ResortsApi resortsApiInstance;
+  private PipelinedHttpEngine postEngine;
   private Arguments args;
   private CountDownLatch completionLatch;
   private CountDownLatch nextPhaseLatch;
@@ -31,12 +54,25 @@ public class PhaseRunner implements Runnable {
   private ThreadLocalRandom rand;
   private SingleRequestStatistics[] singleRequestStatisticsArray;
   private int singleStatsCurrIndex;
-  private int numPosts;
-  private int numGets;
+  // Written only by the runner's thread, read by whichever thread flushes
+  private volatile int requestsSent;
+  private int requestsReported;
+  private final Runnable flush = this::flushStats;
+  private final int writerShard;
+  private long deadlineMillis;
+  private Operation[] operations;
   private int skierIdLow;
   private int skierIdHigh;
   private int timeLow;
   private int timeHigh;
+  private RequestSource requestSource;
+  private int phase;
+  private int partitionIndex;
+  private String resort;
+  private String skiDay;
+  private ExpectedVerticals expectedVerticals;
+  private SkiDaySimulator simulator;
+  private TopTenStatistics.Recorder topTenRecorder;
 
   /**
    * Basic constructor for a PhaseRunner.
@@ -44,26 +80,28 @@ public class PhaseRunner implements Runnable {
    * To aid in readability, set skier and time ranges in helper methods, setSkierIdRange and
    * setTimeRange. These fields will be null if not set.
    *
-   * @throws IllegalArgumentException if args is null or either numPosts or numGets is negative
+   * @param operations the requests to send, in order, see workload.OperationMix
+   * @throws IllegalArgumentException if operations, args, completionLatch or stats is null
    */
   public PhaseRunner(
-      int numPosts,
-      int numGets,
+      Operation[] operations,
       Arguments args,
       CountDownLatch completionLatch,
       BulkRequestStatistics stats,
       CountDownLatch nextPhaseLatch)
       throws IllegalArgumentException {
-    if (args == null || completionLatch == null || stats == null || numPosts < 0 || numGets < 0) {
+    if (operations == null || args == null || completionLatch == null || stats == null) {
       throw new IllegalArgumentException(
-          "invalid arguments - args cannot be null, posts and gets cannot be negative");
+          "invalid arguments - operations, args, latch and stats cannot be null");
     }
-    this.numPosts = numPosts;
-    this.numGets = numGets;
+    this.operations = operations;
     this.args = args;
     this.completionLatch = completionLatch;
     this.nextPhaseLatch = nextPhaseLatch;
     this.stats = stats;
+    this.writerShard = stats.assignShard();
+    this.resort = args.getResort();
+    this.skiDay = String.valueOf(args.getSkiDay());
 
     // Prevent null pointer errors if no next phase is given
     if (nextPhaseLatch == null) {
@@ -73,13 +111,14 @@ public class PhaseRunner implements Runnable {
     // Set up api caller instance
     this.skiersApiInstance = new SkiersApi();
     this.skiersApiInstance.getApiClient().setBasePath(this.args.getHostAddress());
+    this.resortsApiInstance = new ResortsApi(this.skiersApiInstance.getApiClient());
 
     // Thread-safe random number generator for generating API calls
     this.rand = ThreadLocalRandom.current();
 
-    // Initialize array for all requests
-    this.singleRequestStatisticsArray = new SingleRequestStatistics[this.numPosts + (this.numGets
-        * 2)];  // 2x for Gets because there are two Get paths
+    // Initialize array for the first chunk of requests
+    this.singleRequestStatisticsArray =
+        new SingleRequestStatistics[Math.max(1, Math.min(operations.length, STATS_CHUNK_SIZE))];
     this.singleStatsCurrIndex = 0;
   }
 
@@ -121,156 +160,536 @@ public class PhaseRunner implements Runnable {
     this.timeHigh = high;
   }
 
+  /**
+   * Sends this runner's POSTs through a shared pipelined engine instead of the blocking SDK call.
+   *
+   * @param postEngine the engine, or null to use the SDK
+   */
+  public void setPostEngine(PipelinedHttpEngine postEngine) {
+    this.postEngine = postEngine;
+  }
+
+  /**
+   * Sends this runner's requests to the given resort and day instead of the configured resort and
+   * skiDay.
+   *
+   * @param partition the resort and day
+   */
+  public void setPartition(Partition partition) {
+    this.partitionIndex = partition.getIndex();
+    this.resort = partition.getResort();
+    this.skiDay = String.valueOf(partition.getDay());
+  }
+
+  /**
+   * Records every ride the server acknowledges so a ReadVerifier can check it is read back.
+   *
+   * @param expectedVerticals the shared accumulators, or null to skip recording
+   */
+  public void setExpectedVerticals(ExpectedVerticals expectedVerticals) {
+    this.expectedVerticals = expectedVerticals;
+  }
+
+  /**
+   * Sets the phase this runner belongs to, used to group its top-ten payload statistics.
+   *
+   * @param phase the phase number, starting at 1
+   */
+  public void setPhase(int phase) {
+    this.phase = phase;
+  }
+
+  /**
+   * Replaces the runner's random request generation with a seeded or pre-generated source.
+   *
+   * @param requestSource the source, or null to sample from the configured distributions
+   */
+  public void setRequestSource(RequestSource requestSource) {
+    this.requestSource = requestSource;
+  }
+
+  /**
+   * Makes the runner repeat its operation sequence until the given time instead of sending it once.
+   *
+   * @param deadlineMillis when to stop sending, in epoch milliseconds, or 0 to send the sequence
+   *                       once
+   */
+  public void setDeadline(long deadlineMillis) {
+    this.deadlineMillis = deadlineMillis;
+  }
+
+  /**
+   * Takes this runner's lift ride POSTs from a ski day simulation rather than its request source.
+   *
+   * @param simulator the shared simulation, or null to use the request source
+   */
+  public void setSimulator(SkiDaySimulator simulator) {
+    this.simulator = simulator;
+  }
+
   @Override
   public void run() {
-    performPosts();
-    performGets();
-    stats.pushDataToWriter(singleRequestStatisticsArray);
-    nextPhaseLatch.countDown();
-    completionLatch.countDown();
+    buildDefaultRequestSource();
+    stats.registerBuffer(flush);
+    try {
+      performRequests();
+    } catch (WorkloadMismatchException e) {
+      // A pre-generated workload that doesn't match the phase plan can't be recovered from, so
+      // every runner stops and the main thread reports it once the phases have ended
+      logger.error("Workload error: " + e.getMessage());
+      stats.requestStop();
+    } catch (SimulationStoppedException e) {
+      // Without rides no runner can go on; the main thread reports a failed simulation
+      if (simulator.getFailure() != null) {
+        logger.error("Stopping runner: " + e.getMessage());
+      }
+      stats.requestStop();
+    } finally {
+      flushStats();
+      stats.unregisterBuffer(flush);
+      if (topTenRecorder != null) {
+        stats.getTopTenStatistics().merge(topTenRecorder);
+      }
+      nextPhaseLatch.countDown();
+      completionLatch.countDown();
+    }
   }
 
   /**
-   * Runs the POST requests required against the server.
+   * Sends this runner's requests in the order of its precomputed operation sequence, over and over
+   * until the deadline if one is set, or until the run is interrupted. When POSTs go through the
+   * pipelined engine they complete on the engine's I/O thread, so this waits for the last of them
+   * before returning.
    */
-  private void performPosts() {
-    String reqType = "POST";
-    String path = "/skiers/liftrides";
-
+  private void performRequests() {
     // Set up reusable parts of a lift ride
     LiftRide liftRide = new LiftRide();
-    liftRide.setResortID(args.getResort());
-    liftRide.setDayID(
-        String.valueOf(args.getSkiDay())
-    );
-
-    for (int i = 0; i < numPosts; i++) {
-      // Set up random variables for skier, lift and time
-      liftRide.setSkierID(nextSkierId());
-      liftRide.setTime(nextTime());
-      liftRide.setLiftID(nextLift());
-
-      // Attempt request
-      long reqStart = System.currentTimeMillis();
-      try {
-        // Get response info and time it. Write stats to array.
-        ApiResponse<Void> resp = skiersApiInstance.writeNewLiftRideWithHttpInfo(liftRide);
-        long reqEnd = System.currentTimeMillis();
-        long latency = reqEnd - reqStart;
-        appendStats(
-            new SingleRequestStatistics(reqType, path, reqStart, latency, resp.getStatusCode()));
-
-        // Includes 4XX/5XX responses
-      } catch (ApiException e) {
-        // Get stats
-        long reqEnd = System.currentTimeMillis();
-        long latency = reqEnd - reqStart;
-        appendStats(new SingleRequestStatistics(reqType, path, reqStart, latency, e.getCode()));
-        stats.getTotalBadRequests().getAndIncrement();
+    liftRide.setResortID(resort);
+    liftRide.setDayID(skiDay);
+
+    int[] counts = new int[Operation.values().length];
+    for (Operation op : operations) {
+      counts[op.ordinal()]++;
+    }
+    PipelinedPosts pipelinedPosts = null;
+    if (postEngine != null) {
+      pipelinedPosts = new PipelinedPosts(counts[Operation.POST_LIFT_RIDE.ordinal()]);
+    }
+    int numTopTen = counts[Operation.GET_TOP_TEN_VERT.ordinal()];
+    if (numTopTen > 0) {
+      topTenRecorder = stats.getTopTenStatistics().recorder(phase, numTopTen);
+    }
+    RateLimiters.Limiter[] limiters = rateLimitersFor(skiersApiInstance.getApiClient());
 
-        // Notify of error
-        System.err.println("API error: " + e.getMessage());
-        logger.error("API error: " + e.getMessage() + "\n"
-            + Arrays.toString(e.getStackTrace()));
+    long deadline = deadlineMillis;
+    do {
+      for (Operation op : operations) {
+        if ((deadline > 0 && System.currentTimeMillis() >= deadline) || stats.isStopping()) {
+          break;
+        }
+        // Wait for permits before the request's clock starts, so throttling isn't counted as
+        // latency
+        if (limiters != null) {
+          limiters[op.ordinal()].acquire();
+        }
+        switch (op) {
+          case POST_LIFT_RIDE:
+            if (pipelinedPosts != null) {
+              if (!pipelinedPosts.send(liftRide)) {
+                // Interrupted, responses to what was sent may never arrive
+                return;
+              }
+            } else {
+              performPost(liftRide);
+            }
+            break;
+          case GET_SKIER_DAY_VERTICAL:
+            performGetVertByDayAndResort();
+            break;
+          case GET_SKIER_RESORT_TOTALS:
+            performGetVertByResort();
+            break;
+          case GET_TOP_TEN_VERT:
+            performGetTopTenVert();
+            break;
+          default:
+            throw new IllegalStateException("runner cannot send " + op);
+        }
+        requestsSent++;
       }
+    } while (deadline > 0 && operations.length > 0 && System.currentTimeMillis() < deadline
+        && !stats.isStopping());
+
+    // Responses to POSTs never sent would never arrive
+    if (pipelinedPosts != null && !stats.isStopping()) {
+      pipelinedPosts.awaitResponses();
     }
   }
 
   /**
-   * Runs the GET requests required against the server.
+   * Looks up the rate limits of every operation once, rather than on each request.
+   *
+   * @param apiClient the client whose limits apply
+   * @return the limiters indexed by operation ordinal, or null if requests are not limited
    */
-  private void performGets() {
-    performGetsVertByDayAndResort();
-    performGetsVertByResort();
+  static RateLimiters.Limiter[] rateLimitersFor(ApiClient apiClient) {
+    RateLimiters rateLimiters = apiClient.getRateLimiters();
+    if (rateLimiters == null) {
+      return null;
+    }
+    RateLimiters.Limiter[] limiters = new RateLimiters.Limiter[Operation.values().length];
+    for (Operation op : Operation.values()) {
+      limiters[op.ordinal()] = rateLimiters.limiterFor(op.getMethod(), op.getPath());
+    }
+    return limiters;
   }
 
-  private void performGetsVertByDayAndResort() {
-    String reqType = "GET";
-    String path = "/skiers/{resortID}/days/{dayID}/skiers/{skierID}";
+  /**
+   * Sends one lift ride POST through the SDK.
+   *
+   * @param liftRide the reusable lift ride, filled in here
+   */
+  private void performPost(LiftRide liftRide) {
+    String reqType = "POST";
+    String path = Operation.POST_LIFT_RIDE.getPath();
 
-    for (int i = 0; i < numGets; i++) {
-      long reqStart = System.currentTimeMillis();
-      try {
-        // Get response info and time it. Write stats to array.
-        ApiResponse<SkierVertical> resp = skiersApiInstance.getSkierDayVerticalWithHttpInfo(
-            args.getResort(),
-            String.valueOf(args.getSkiDay()),
-            nextSkierId()
-        );
-        long reqEnd = System.currentTimeMillis();
-        long latency = reqEnd - reqStart;
-        appendStats(
-            new SingleRequestStatistics(reqType, path, reqStart, latency, resp.getStatusCode()));
-
-        // Includes 4XX/5XX responses
-      } catch (ApiException e) {
-        // Record stats
-        long reqEnd = System.currentTimeMillis();
-        long latency = reqEnd - reqStart;
-        appendStats(new SingleRequestStatistics(reqType, path, reqStart, latency, e.getCode()));
-        stats.getTotalBadRequests().getAndIncrement();
+    // Set up random variables for skier, lift and time
+    liftRide.setSkierID(nextSkierId(Operation.POST_LIFT_RIDE));
+    liftRide.setTime(currentTime());
+    liftRide.setLiftID(currentLift());
 
-        // Notify of error
-        System.err.println("API error: " + e.getCode() + " " + e.getResponseBody());
-        logger.error("API error: " + e.getCode() + " " + e.getResponseBody() + "\n"
-            + Arrays.toString(e.getStackTrace()));
+    // Attempt request
+    long reqStart = System.currentTimeMillis();
+    try {
+      // Get response info and time it. Write stats to array.
+      ApiResponse<Void> resp = skiersApiInstance.writeNewLiftRideWithHttpInfo(liftRide);
+      long reqEnd = System.currentTimeMillis();
+      long latency = reqEnd - reqStart;
+      appendStats(meteredStats(reqType, path, reqStart, latency, resp.getStatusCode()));
+      if (expectedVerticals != null) {
+        expectedVerticals.recordRide(
+            partitionIndex, requestSource.getSkierId(), requestSource.getLiftId());
       }
+
+    } catch (CircuitOpenException e) {
+      shortCircuited(e);
+
+      // Includes 4XX/5XX responses
+    } catch (ApiException e) {
+      // Get stats
+      long reqEnd = System.currentTimeMillis();
+      long latency = reqEnd - reqStart;
+      appendStats(meteredStats(reqType, path, reqStart, latency, e.getCode()));
+      stats.getTotalBadRequests().getAndIncrement();
+
+      // Notify of error
+      System.err.println("API error: " + e.getMessage());
+      logger.error("API error: " + e.getMessage() + "\n"
+          + Arrays.toString(e.getStackTrace()));
     }
   }
 
-  private void performGetsVertByResort() {
-    String reqType = "GET";
-    String path = "/skiers/{skierID}/vertical";
+  /**
+   * Runs a runner's POST requests through the pipelined engine. Requests are queued without
+   * waiting for responses; the engine's I/O thread records each result as it arrives.
+   */
+  private class PipelinedPosts implements PipelinedHttpEngine.ResponseListener {
+
+    private final String reqType = "POST";
+    private final String path = Operation.POST_LIFT_RIDE.getPath();
+    private final ApiClient apiClient = skiersApiInstance.getApiClient();
+    private final HttpUrl url = HttpUrl.parse(apiClient.buildUrl(path, null, null));
+    private final CountDownLatch responsesLatch;
+
+    PipelinedPosts(int numPosts) {
+      this.responsesLatch = new CountDownLatch(numPosts);
+    }
+
+    /**
+     * @return false if interrupted while waiting for room in the engine's queue
+     */
+    boolean send(LiftRide liftRide) {
+      liftRide.setSkierID(nextSkierId(Operation.POST_LIFT_RIDE));
+      liftRide.setTime(currentTime());
+      liftRide.setLiftID(currentLift());
+      byte[] body = apiClient.getJSON().serialize(liftRide).getBytes(StandardCharsets.UTF_8);
+      // Verification needs to know which ride each response acknowledges
+      PipelinedHttpEngine.ResponseListener listener = expectedVerticals == null
+          ? this
+          : new VerifiedPost(requestSource.getSkierId(), requestSource.getLiftId());
+      try {
+        postEngine.send(reqType, url, "application/json", body, listener);
+        return true;
+      } catch (InterruptedException e) {
+        interrupted(e);
+        return false;
+      }
+    }
 
-    for (int i = 0; i < numGets; i++) {
-      long reqStart = System.currentTimeMillis();
+    void awaitResponses() {
       try {
-        // Get response info and time it. Write stats to array.
-        ApiResponse<SkierVertical> resp = skiersApiInstance.getSkierResortTotalsWithHttpInfo(
-            nextSkierId(),
-            Collections.singletonList(args.getResort())
-        );
-        long reqEnd = System.currentTimeMillis();
-        long latency = reqEnd - reqStart;
-        appendStats(
-            new SingleRequestStatistics(reqType, path, reqStart, latency, resp.getStatusCode()));
-
-        // Includes 4XX/5XX responses
-      } catch (ApiException e) {
-        // Record stats
-        long reqEnd = System.currentTimeMillis();
-        long latency = reqEnd - reqStart;
-        appendStats(new SingleRequestStatistics(reqType, path, reqStart, latency, e.getCode()));
+        responsesLatch.await();
+      } catch (InterruptedException e) {
+        interrupted(e);
+      }
+    }
+
+    // Called only from the engine's I/O thread
+    @Override
+    public void onResponse(int statusCode, long startMillis, long latencyMillis) {
+      appendStats(
+          new SingleRequestStatistics(reqType, path, startMillis, latencyMillis, statusCode));
+      if (statusCode >= 400) {
         stats.getTotalBadRequests().getAndIncrement();
+        System.err.println("API error: " + statusCode);
+        logger.error("API error: " + statusCode + " on pipelined " + path);
+      }
+      responsesLatch.countDown();
+    }
+
+    @Override
+    public void onFailure(IOException e, long startMillis, long latencyMillis) {
+      appendStats(new SingleRequestStatistics(reqType, path, startMillis, latencyMillis, 0));
+      stats.getTotalBadRequests().getAndIncrement();
+      System.err.println("API error: " + e.getMessage());
+      logger.error("API error: " + e.getMessage() + " on pipelined " + path);
+      responsesLatch.countDown();
+    }
+
+    private void interrupted(InterruptedException e) {
+      System.err.println("Interrupted while sending pipelined requests: " + e.getMessage());
+      logger.error("Interrupted while sending pipelined requests: " + e.getMessage());
+      Thread.currentThread().interrupt();
+    }
 
-        // Notify of error
-        System.err.println("API error: " + e.getCode() + " " + e.getResponseBody());
-        logger.error("API error: " + e.getCode() + " " + e.getResponseBody() + "\n"
-            + Arrays.toString(e.getStackTrace()));
+    /**
+     * Records one pipelined ride in the expected verticals once the server acknowledges it.
+     */
+    private class VerifiedPost implements PipelinedHttpEngine.ResponseListener {
+
+      private final int skierId;
+      private final int liftId;
+
+      VerifiedPost(int skierId, int liftId) {
+        this.skierId = skierId;
+        this.liftId = liftId;
       }
+
+      @Override
+      public void onResponse(int statusCode, long startMillis, long latencyMillis) {
+        if (statusCode >= 200 && statusCode < 300) {
+          expectedVerticals.recordRide(partitionIndex, skierId, liftId);
+        }
+        PipelinedPosts.this.onResponse(statusCode, startMillis, latencyMillis);
+      }
+
+      @Override
+      public void onFailure(IOException e, long startMillis, long latencyMillis) {
+        PipelinedPosts.this.onFailure(e, startMillis, latencyMillis);
+      }
+    }
+  }
+
+  private void performGetVertByDayAndResort() {
+    String reqType = "GET";
+    String path = Operation.GET_SKIER_DAY_VERTICAL.getPath();
+
+    long reqStart = System.currentTimeMillis();
+    try {
+      // Get response info and time it. Write stats to array.
+      ApiResponse<SkierVertical> resp = skiersApiInstance.getSkierDayVerticalWithHttpInfo(
+          resort,
+          skiDay,
+          nextSkierId(Operation.GET_SKIER_DAY_VERTICAL)
+      );
+      long reqEnd = System.currentTimeMillis();
+      long latency = reqEnd - reqStart;
+      appendStats(meteredStats(reqType, path, reqStart, latency, resp.getStatusCode()));
+
+    } catch (CircuitOpenException e) {
+      shortCircuited(e);
+
+      // Includes 4XX/5XX responses
+    } catch (ApiException e) {
+      recordGetError(reqType, path, reqStart, e);
+    }
+  }
+
+  private void performGetVertByResort() {
+    String reqType = "GET";
+    String path = Operation.GET_SKIER_RESORT_TOTALS.getPath();
+
+    long reqStart = System.currentTimeMillis();
+    try {
+      // Get response info and time it. Write stats to array.
+      ApiResponse<SkierVertical> resp = skiersApiInstance.getSkierResortTotalsWithHttpInfo(
+          nextSkierId(Operation.GET_SKIER_RESORT_TOTALS),
+          Collections.singletonList(resort)
+      );
+      long reqEnd = System.currentTimeMillis();
+      long latency = reqEnd - reqStart;
+      appendStats(meteredStats(reqType, path, reqStart, latency, resp.getStatusCode()));
+
+    } catch (CircuitOpenException e) {
+      shortCircuited(e);
+
+      // Includes 4XX/5XX responses
+    } catch (ApiException e) {
+      recordGetError(reqType, path, reqStart, e);
+    }
+  }
+
+  private void performGetTopTenVert() {
+    String reqType = "GET";
+    String path = Operation.GET_TOP_TEN_VERT.getPath();
+
+    // Keeps the request source in step with the operation sequence, the skier is not used
+    requestSource.advance(Operation.GET_TOP_TEN_VERT);
+
+    long reqStart = System.currentTimeMillis();
+    try {
+      // Get response info and time it. Write stats to array.
+      ApiResponse<TopTen> resp = resortsApiInstance.getTopTenVertWithHttpInfo(
+          Collections.singletonList(resort),
+          Collections.singletonList(skiDay)
+      );
+      long reqEnd = System.currentTimeMillis();
+      long latency = reqEnd - reqStart;
+      appendStats(meteredStats(reqType, path, reqStart, latency, resp.getStatusCode()));
+      recordTopTenPayload(resp.getData(), latency);
+
+    } catch (CircuitOpenException e) {
+      shortCircuited(e);
+
+      // Includes 4XX/5XX responses
+    } catch (ApiException e) {
+      recordGetError(reqType, path, reqStart, e);
+    }
+  }
+
+  /**
+   * Records the size and deserialization cost of a top-ten response, kept apart from the per-path
+   * latencies because the leaderboard payload is much larger than the other GETs'.
+   */
+  private void recordTopTenPayload(TopTen topTen, long latency) {
+    CallMeter meter = skiersApiInstance.getApiClient().getLastCallMeter();
+    if (topTen == null || meter == null || meter.getDeserializeNanos() < 0) {
+      return;
+    }
+    List<TopTenTopTenSkiers> skiers = topTen.getTopTenSkiers();
+    topTenRecorder.record(meter.getResponseBodyBytes(), skiers == null ? 0 : skiers.size(),
+        meter.getDeserializeNanos(), latency);
+  }
+
+  /**
+   * Counts a request its circuit breaker would not send, then holds this runner back until the
+   * breaker may let calls through again, instead of racing through the rest of its requests.
+   */
+  private void shortCircuited(CircuitOpenException e) {
+    stats.getTotalShortCircuited().getAndIncrement();
+    try {
+      Thread.sleep(e.getRetryAfterMillis());
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
     }
   }
 
   /**
-   * Adds the given stats to a storage array and ensures the correct index is used.
+   * Records a failed GET and reports the error.
+   */
+  private void recordGetError(String reqType, String path, long reqStart, ApiException e) {
+    // Record stats
+    long reqEnd = System.currentTimeMillis();
+    long latency = reqEnd - reqStart;
+    appendStats(meteredStats(reqType, path, reqStart, latency, e.getCode()));
+    stats.getTotalBadRequests().getAndIncrement();
+
+    // Notify of error
+    System.err.println("API error: " + e.getCode() + " " + e.getResponseBody());
+    logger.error("API error: " + e.getCode() + " " + e.getResponseBody() + "\n"
+        + Arrays.toString(e.getStackTrace()));
+  }
+
+  /**
+   * Adds the given stats to a storage array and ensures the correct index is used, handing the
+   * array to the stats writer once it is full. Synchronized because pipelined POST results arrive
+   * on the engine's I/O thread while GETs are still running here.
    *
    * @param stats the stats to store
    */
-  private void appendStats(SingleRequestStatistics stats) {
+  private synchronized void appendStats(SingleRequestStatistics stats) {
     singleRequestStatisticsArray[singleStatsCurrIndex] = stats;
     singleStatsCurrIndex++;
+    if (singleStatsCurrIndex == singleRequestStatisticsArray.length) {
+      flushStats();
+    }
   }
 
-  private String nextSkierId() {
-    return String.valueOf(rand.nextInt(skierIdLow, skierIdHigh + 1));
+  /**
+   * Hands the stored stats to the stats writer and starts a new array, and counts the requests
+   * sent since the last flush. Short-circuited requests store nothing, and the periodic flush
+   * comes between chunks, so the array may not be full.
+   */
+  private synchronized void flushStats() {
+    int sent = requestsSent;
+    stats.getTotalRequests().getAndAdd(sent - requestsReported);
+    requestsReported = sent;
+    if (singleStatsCurrIndex == 0) {
+      return;
+    }
+    stats.pushDataToWriter(writerShard, singleStatsCurrIndex == singleRequestStatisticsArray.length
+        ? singleRequestStatisticsArray
+        : Arrays.copyOf(singleRequestStatisticsArray, singleStatsCurrIndex));
+    singleRequestStatisticsArray = new SingleRequestStatistics[singleRequestStatisticsArray.length];
+    singleStatsCurrIndex = 0;
+  }
+
+  /**
+   * Builds stats for the call this thread just made, including the wire byte counts the API client
+   * measured for it.
+   */
+  private SingleRequestStatistics meteredStats(
+      String reqType, String path, long reqStart, long latency, int code) {
+    CallMeter meter = skiersApiInstance.getApiClient().getLastCallMeter();
+    long reqBytes = meter == null ? -1 : meter.getRequestBytes();
+    long respBytes = meter == null ? -1 : meter.getResponseBytes();
+    return new SingleRequestStatistics(reqType, path, reqStart, latency, code, reqBytes, respBytes);
+  }
+
+  /**
+   * Precomputes the configured skier, lift and time distributions for this runner's ranges so each
+   * draw during the run is O(1). Done on the runner's own thread to keep setup off the main thread.
+   * Skipped when a seeded or pre-generated source was given. A ski day simulation then takes over
+   * the POSTs.
+   */
+  private void buildDefaultRequestSource() {
+    if (requestSource == null) {
+      DistributionSettings distributions = args.getDistributionSettings();
+      this.requestSource = new SampledRequestSource(
+          distributions.skierSampler(skierIdLow, skierIdHigh),
+          distributions.liftSampler(args.getNumSkiLifts()),
+          distributions.timeSampler(timeLow, timeHigh),
+          rand);
+    }
+    if (simulator != null) {
+      this.requestSource = new SimulatedRequestSource(simulator, requestSource);
+    }
+  }
+
+  /**
+   * Moves to the next request and provides its skier.
+   */
+  private String nextSkierId(Operation op) {
+    requestSource.advance(op);
+    return String.valueOf(requestSource.getSkierId());
   }
 
-  private String nextTime() {
-    return String.valueOf(rand.nextInt(timeLow, timeHigh + 1));
+  private String currentTime() {
+    return String.valueOf(requestSource.getTime());
   }
 
-  private String nextLift() {
-    // Values are increased by 1 in order to line up with 1-indexed lift IDs
-    return String.valueOf(rand.nextInt(1, args.getNumSkiLifts() + 1));
+  private String currentLift() {
+    // Request sources already produce 1-indexed lift IDs
+    return String.valueOf(requestSource.getLiftId());
   }
 }
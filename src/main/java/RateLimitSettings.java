@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.Properties;
+import workload.Operation;
+
+/**
+ * Immutable request rate limit options read from the client properties file.
+ */
+public class RateLimitSettings {
+
+  final private double globalRate;
+  final private double[] operationRates;
+  final private int burstMillis;
+
+  private RateLimitSettings(double globalRate, double[] operationRates, int burstMillis) {
+    this.globalRate = globalRate;
+    this.operationRates = operationRates;
+    this.burstMillis = burstMillis;
+  }
+
+  /**
+   * Reads rate limit options from properties. Available properties:
+   *   - rateLimit (default: 0, min: 0) requests per second across all calls, 0 for no limit
+   *   - rateLimits (default: none) comma separated operation:rate pairs capping the requests per
+   *     second on each operation's path, e.g. post:2000,dayVertical:250,resortTotals:250;
+   *     operations are post, dayVertical, resortTotals and topTen, unlisted ones are only held
+   *     to rateLimit
+   *   - rateBurstMillis (default: 100, min: 1) how many milliseconds' worth of requests a limit
+   *     lets through at once after a pause
+   * None are required. In a distributed run each worker gets an equal share of every rate.
+   *
+   * @param props properties parsed from the properties file
+   * @return the rate limit settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static RateLimitSettings fromProperties(Properties props) throws IllegalArgumentException {
+    double globalRate;
+    int burstMillis;
+    try {
+      globalRate = Double.parseDouble(props.getProperty("rateLimit", "0").trim());
+      burstMillis = Integer.parseInt(props.getProperty("rateBurstMillis", "100").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed rate limit settings");
+    }
+    if (globalRate < 0 || Double.isNaN(globalRate) || Double.isInfinite(globalRate)) {
+      throw new IllegalArgumentException("rateLimit must be a number of at least 0");
+    }
+    if (burstMillis < 1) {
+      throw new IllegalArgumentException("rateBurstMillis must be at least 1");
+    }
+
+    double[] operationRates = new double[Operation.values().length];
+    String ratesRaw = props.getProperty("rateLimits", "").trim();
+    if (!ratesRaw.isEmpty()) {
+      for (String part : ratesRaw.split(",")) {
+        String[] fields = part.trim().split(":");
+        if (fields.length != 2) {
+          throw new IllegalArgumentException("rateLimits entries must be written as operation:rate");
+        }
+        Operation op = Operation.fromKey(fields[0].trim());
+        if (op == null) {
+          throw new IllegalArgumentException("unknown rateLimits operation " + fields[0].trim()
+              + ", expected one of: post, dayVertical, resortTotals, topTen");
+        }
+        double rate;
+        try {
+          rate = Double.parseDouble(fields[1].trim());
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("malformed rateLimits rate: " + part.trim());
+        }
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+          throw new IllegalArgumentException("rateLimits rates must be positive");
+        }
+        operationRates[op.ordinal()] = rate;
+      }
+    }
+
+    return new RateLimitSettings(globalRate, operationRates, burstMillis);
+  }
+
+  /**
+   * @return true if any rate is limited
+   */
+  public boolean isEnabled() {
+    if (globalRate > 0) {
+      return true;
+    }
+    for (double rate : operationRates) {
+      if (rate > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return requests per second across all calls, or 0 for no limit
+   */
+  public double getGlobalRate() {
+    return globalRate;
+  }
+
+  /**
+   * @param op an operation
+   * @return requests per second on the operation's path, or 0 for no limit
+   */
+  public double getRate(Operation op) {
+    return operationRates[op.ordinal()];
+  }
+
+  public int getBurstMillis() {
+    return burstMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "RateLimitSettings{" +
+        "globalRate=" + globalRate +
+        ", operationRates=" + Arrays.toString(operationRates) +
+        ", burstMillis=" + burstMillis +
+        '}';
+  }
+}
@@ -0,0 +1,282 @@
+import io.swagger.client.ApiClient;
+import io.swagger.client.ApiException;
+import io.swagger.client.api.SkiersApi;
+import io.swagger.client.model.SkierVertical;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import statistics.SampleSummary;
+import workload.Partition;
+
+/**
+ * Checks in the background that the server returns the vertical implied by the rides the client
+ * wrote. Runners only add each acknowledged ride to an ExpectedVerticals; a single low-priority
+ * thread samples a skier every few milliseconds, reads its day or resort vertical, and compares it
+ * with what was expected just before and just after the read.
+ * <p>
+ * A read below the expected vertical is stale and is re-read until it catches up, which gives the
+ * staleness lag: time from the write it was missing to the first read that showed it, accurate to
+ * the verification interval. A read above the expected vertical, or one still behind after the
+ * settle time, is a mismatch. Verification reads are never recorded in the run's statistics.
+ */
+public class ReadVerifier implements Runnable {
+
+  private static final Logger logger = LogManager.getLogger(ReadVerifier.class);
+  private static final int SAMPLE_ATTEMPTS = 8;
+
+  private final VerificationSettings settings;
+  private final PartitionSettings partitions;
+  private final ExpectedVerticals expected;
+  private final SkiersApi skiersApi;
+  // Only touched by the verifier thread; rechecks are due in the order they were added
+  private final ArrayDeque<Check> pending = new ArrayDeque<>();
+  private volatile boolean stopping;
+  private Thread thread;
+
+  // Written by the verifier thread, read after it is joined
+  private int dayVerticalSamples;
+  private int resortTotalSamples;
+  private int failedReads;
+  private int freshReads;
+  private int staleReads;
+  private int caughtUp;
+  private int overCounts;
+  private int lostWrites;
+  private long[] lagMillis = new long[64];
+  private int numLags;
+
+  /**
+   * @param args      arguments provided to the client
+   * @param apiClient the api client shared by the runners
+   */
+  public ReadVerifier(Arguments args, ApiClient apiClient) {
+    this.settings = args.getVerificationSettings();
+    this.partitions = args.getPartitionSettings();
+    this.expected = new ExpectedVerticals(partitions.getPartitionCount(),
+        partitions.getDayCount(), args.getNumSkiers(), settings.getVerticalPerLift());
+    this.skiersApi = new SkiersApi(apiClient);
+  }
+
+  /**
+   * @return the accumulators runners record acknowledged rides in
+   */
+  public ExpectedVerticals getExpected() {
+    return expected;
+  }
+
+  /**
+   * Starts sampling on a daemon thread at minimum priority.
+   */
+  public void start() {
+    thread = new Thread(this, "read-verifier");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Stops taking new samples and waits for outstanding stale reads to catch up or time out.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void stop() throws InterruptedException {
+    stopping = true;
+    if (thread != null) {
+      thread.join();
+    }
+  }
+
+  @Override
+  public void run() {
+    Random rand = new Random();
+    long intervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getIntervalMillis());
+    while (!stopping || !pending.isEmpty()) {
+      LockSupport.parkNanos(intervalNanos);
+      Check due = pending.peek();
+      if (due != null && due.nextCheckMillis <= System.currentTimeMillis()) {
+        check(pending.poll());
+      } else if (!stopping) {
+        sample(rand);
+      }
+    }
+  }
+
+  /**
+   * Picks a skier that has acknowledged rides, on a resort and day that has any, and checks it.
+   * Gives up for this interval if the first few picks have none, which is normal early in a run.
+   */
+  private void sample(Random rand) {
+    for (int attempt = 0; attempt < SAMPLE_ATTEMPTS; attempt++) {
+      int partition = expected.randomActivePartition(rand);
+      if (partition < 0) {
+        return;
+      }
+      int skierId = rand.nextInt(expected.getNumSkiers()) + 1;
+      Check candidate;
+      if (rand.nextBoolean()) {
+        candidate = new Check(true, partition, skierId);
+      } else {
+        candidate = new Check(false, partition / partitions.getDayCount(), skierId);
+      }
+      if (candidate.expectedNow() == 0) {
+        continue;
+      }
+      if (candidate.dayVertical) {
+        dayVerticalSamples++;
+      } else {
+        resortTotalSamples++;
+      }
+      check(candidate);
+      return;
+    }
+  }
+
+  private void check(Check check) {
+    int before = check.expectedNow();
+    long lastWrite = check.lastWriteMillis();
+    int actual;
+    try {
+      actual = check.read();
+    } catch (ApiException e) {
+      failedReads++;
+      logger.error("Verification read failed: " + e.getCode() + " " + e.getMessage());
+      return;
+    }
+    int after = check.expectedNow();
+    long now = System.currentTimeMillis();
+
+    if (actual >= before && actual <= after) {
+      if (check.firstStaleMillis == 0) {
+        freshReads++;
+      } else {
+        caughtUp++;
+        addLag(now - check.missingWriteMillis);
+      }
+    } else if (actual > after) {
+      overCounts++;
+      logger.error("Verification over-count for " + check + ": expected at most " + after
+          + ", read " + actual);
+    } else {
+      if (check.firstStaleMillis == 0) {
+        staleReads++;
+        check.firstStaleMillis = now;
+        check.missingWriteMillis = lastWrite;
+      }
+      if (now - check.firstStaleMillis > settings.getSettleMillis()) {
+        lostWrites++;
+        logger.error("Verification read for " + check + " still behind after "
+            + settings.getSettleMillis() + " ms: expected " + before + ", read " + actual);
+      } else {
+        check.nextCheckMillis = now + settings.getIntervalMillis();
+        pending.add(check);
+      }
+    }
+  }
+
+  private void addLag(long lag) {
+    if (numLags == lagMillis.length) {
+      lagMillis = Arrays.copyOf(lagMillis, numLags * 2);
+    }
+    lagMillis[numLags++] = lag;
+  }
+
+  /**
+   * Provides the verification report section. Call after stop.
+   *
+   * @return the report text
+   */
+  public String summary() {
+    int samples = dayVerticalSamples + resortTotalSamples;
+    int answered = samples - failedReads;
+    int mismatches = overCounts + lostWrites;
+    StringBuilder builder = new StringBuilder();
+    builder.append("Read-After-Write Verification:\n");
+    builder.append(String.format("\tReads sampled: %d (day vertical %d, resort totals %d)\n",
+        samples, dayVerticalSamples, resortTotalSamples));
+    builder.append(String.format("\tResort days written: %d of %d\n",
+        expected.getActivePartitionCount(), partitions.getPartitionCount()));
+    builder.append("\tFailed reads: ").append(failedReads).append('\n');
+    builder.append("\tConsistent on first read: ").append(freshReads).append('\n');
+    builder.append(String.format("\tStale reads: %d (%.2f%%), caught up %d\n",
+        staleReads, percent(staleReads, answered), caughtUp));
+    builder.append("\tStaleness lag (ms): ")
+        .append(SampleSummary.describe(Arrays.copyOf(lagMillis, numLags))).append('\n');
+    builder.append(String.format(
+        "\tMismatches: %d (%.2f%%), over-counted %d, still behind after %d ms %d\n",
+        mismatches, percent(mismatches, answered), overCounts, settings.getSettleMillis(),
+        lostWrites));
+    return builder.toString();
+  }
+
+  private static double percent(int part, int whole) {
+    return whole == 0 ? 0.0 : 100.0 * part / whole;
+  }
+
+  /**
+   * One sampled key: a skier's vertical on a resort and day, or over all days at a resort.
+   */
+  private class Check {
+
+    private final boolean dayVertical;
+    // Partition index for day verticals, resort index for resort totals
+    private final int key;
+    private final int skierId;
+    private long firstStaleMillis;
+    private long missingWriteMillis;
+    private long nextCheckMillis;
+
+    Check(boolean dayVertical, int key, int skierId) {
+      this.dayVertical = dayVertical;
+      this.key = key;
+      this.skierId = skierId;
+    }
+
+    int expectedNow() {
+      return dayVertical
+          ? expected.getDayVertical(key, skierId)
+          : expected.getResortVertical(key, skierId);
+    }
+
+    long lastWriteMillis() {
+      return dayVertical
+          ? expected.getDayLastWriteMillis(key, skierId)
+          : expected.getResortLastWriteMillis(key, skierId);
+    }
+
+    int read() throws ApiException {
+      SkierVertical vertical;
+      try {
+        if (dayVertical) {
+          Partition partition = partitions.getPartition(key);
+          vertical = skiersApi.getSkierDayVerticalWithHttpInfo(partition.getResort(),
+              String.valueOf(partition.getDay()), String.valueOf(skierId)).getData();
+        } else {
+          String resort = partitions.getPartition(key * partitions.getDayCount()).getResort();
+          vertical = skiersApi.getSkierResortTotalsWithHttpInfo(String.valueOf(skierId),
+              Collections.singletonList(resort)).getData();
+        }
+      } catch (ApiException e) {
+        // The server has no rides for the skier yet, which is a stale read rather than a failure
+        if (e.getCode() == 404) {
+          return 0;
+        }
+        throw e;
+      }
+      return vertical == null || vertical.getTotalVert() == null ? 0 : vertical.getTotalVert();
+    }
+
+    @Override
+    public String toString() {
+      if (dayVertical) {
+        return "skier " + skierId + " at " + partitions.getPartition(key);
+      }
+      return "skier " + skierId + " at "
+          + partitions.getPartition(key * partitions.getDayCount()).getResort();
+    }
+  }
+}
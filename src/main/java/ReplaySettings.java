@@ -0,0 +1,83 @@
+import java.util.Properties;
+
+/**
+ * Immutable trace replay options read from the client properties file.
+ */
+public class ReplaySettings {
+
+  final private String replayFile;
+  final private double speedup;
+  final private int maxWorkers;
+
+  private ReplaySettings(String replayFile, double speedup, int maxWorkers) {
+    this.replayFile = replayFile;
+    this.speedup = speedup;
+    this.maxWorkers = maxWorkers;
+  }
+
+  /**
+   * Reads replay options from properties. Available properties:
+   *   - replayFile (default: none) request log from an earlier run, in the CSV format the client
+   *     writes, or the .segments index or .shards manifest of a segmented or sharded one; when
+   *     given, the client replays it instead of running the phases
+   *   - replaySpeedup (default: 1.0, min: above 0) how much faster than recorded to send requests,
+   *     e.g. 2 halves every gap between request starts
+   *   - replayMaxWorkers (default: 512, min: 1) cap on the replay worker pool, which otherwise
+   *     sizes itself to keep up with the schedule
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the replay settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static ReplaySettings fromProperties(Properties props) throws IllegalArgumentException {
+    String replayFile = props.getProperty("replayFile");
+    if (replayFile != null && replayFile.trim().isEmpty()) {
+      replayFile = null;
+    }
+
+    double speedup;
+    int maxWorkers;
+    try {
+      speedup = Double.parseDouble(props.getProperty("replaySpeedup", "1.0").trim());
+      maxWorkers = Integer.parseInt(props.getProperty("replayMaxWorkers", "512").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed replay settings");
+    }
+
+    if (!(speedup > 0) || Double.isInfinite(speedup)) {
+      throw new IllegalArgumentException("replaySpeedup must be greater than 0");
+    }
+    if (maxWorkers < 1) {
+      throw new IllegalArgumentException("replayMaxWorkers must be at least 1");
+    }
+
+    return new ReplaySettings(replayFile == null ? null : replayFile.trim(), speedup, maxWorkers);
+  }
+
+  public boolean isEnabled() {
+    return replayFile != null;
+  }
+
+  public String getReplayFile() {
+    return replayFile;
+  }
+
+  public double getSpeedup() {
+    return speedup;
+  }
+
+  public int getMaxWorkers() {
+    return maxWorkers;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplaySettings{" +
+        "replayFile='" + replayFile + '\'' +
+        ", speedup=" + speedup +
+        ", maxWorkers=" + maxWorkers +
+        '}';
+  }
+}
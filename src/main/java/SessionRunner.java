@@ -0,0 +1,362 @@
+import com.squareup.okhttp.ConnectionPool;
+import io.swagger.client.ApiClient;
+import io.swagger.client.ApiException;
+import io.swagger.client.ApiResponse;
+import io.swagger.client.CallMeter;
+import io.swagger.client.CircuitOpenException;
+import io.swagger.client.RateLimiters;
+import io.swagger.client.api.SkiersApi;
+import io.swagger.client.model.LiftRide;
+import io.swagger.client.transport.OkHttpTransport;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import statistics.BulkRequestStatistics;
+import statistics.SingleRequestStatistics;
+import workload.IntSampler;
+import workload.Operation;
+import workload.Partition;
+import workload.TimerWheel;
+
+/**
+ * Simulates virtual skiers, each with its own ski day: it arrives at a random minute, rides lifts
+ * with exponentially distributed think time between rides, sometimes looks up its day vertical,
+ * and leaves at a random minute. The ski day runs in compressed wall-clock time.
+ * <p>
+ * Skiers hold no thread while they think. Each is a timeout on a timer wheel that hands it to a
+ * small worker pool when its next ride is due, so a few threads can pace 100k+ skiers. When the
+ * workers can't keep up, rides start late; that pacing lateness is reported so a run that didn't
+ * hold its schedule is visible.
+ */
+public class SessionRunner {
+
+  private static final Logger logger = LogManager.getLogger(SessionRunner.class);
+  private static final int DAY_MINUTES = 420;
+  private static final int WHEEL_SIZE = 4096;
+  private static final int BUFFER_SIZE = 1024;
+  // Longest the run waits before checking whether it was asked to stop
+  private static final long STOP_CHECK_MILLIS = 100;
+  // Bucket i holds lateness in [2^(i-1), 2^i) ms, bucket 0 holds on-time rides
+  private static final int NUM_BUCKETS = 32;
+
+  private final Arguments args;
+  private final SessionSettings settings;
+  private final PartitionSettings partitions;
+  private final SkiersApi skiersApi;
+  private final RateLimiters.Limiter[] limiters;
+  private final IntSampler liftSampler;
+  private final long minuteNanos;
+  private ExpectedVerticals expectedVerticals;
+
+  private final AtomicInteger active = new AtomicInteger();
+  private final LongAccumulator peakActive = new LongAccumulator(Long::max, 0);
+  private final LongAdder rides = new LongAdder();
+  private final LongAdder lookups = new LongAdder();
+  private final AtomicLongArray latenessBuckets = new AtomicLongArray(NUM_BUCKETS);
+  private final LongAdder latenessSum = new LongAdder();
+  private final LongAccumulator maxLateness = new LongAccumulator(Long::max, 0);
+  private final List<StatsBuffer> buffers = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<StatsBuffer> buffer = ThreadLocal.withInitial(() -> {
+    StatsBuffer created = new StatsBuffer();
+    buffers.add(created);
+    this.stats.registerBuffer(created.flush);
+    return created;
+  });
+
+  private BulkRequestStatistics stats;
+  private TimerWheel wheel;
+  private CountDownLatch finished;
+  private long startNanos;
+
+  /**
+   * @param args      arguments provided to the client
+   * @param apiClient the api client to send requests through
+   */
+  public SessionRunner(Arguments args, ApiClient apiClient) {
+    this.args = args;
+    this.settings = args.getSessionSettings();
+    this.partitions = args.getPartitionSettings();
+    this.skiersApi = new SkiersApi(apiClient);
+    this.limiters = PhaseRunner.rateLimitersFor(apiClient);
+    this.liftSampler = args.getDistributionSettings().liftSampler(args.getNumSkiLifts());
+    this.minuteNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMinuteMillis());
+
+    // OkHttp only keeps 5 idle connections, let every worker keep its own
+    if (apiClient.getTransport() instanceof OkHttpTransport) {
+      apiClient.getHttpClient().setConnectionPool(
+          new ConnectionPool(settings.getWorkers(), TimeUnit.MINUTES.toMillis(5)));
+    }
+  }
+
+  /**
+   * Records every acknowledged ride so a ReadVerifier can check it is read back.
+   *
+   * @param expectedVerticals the accumulators, or null to skip recording
+   */
+  public void setExpectedVerticals(ExpectedVerticals expectedVerticals) {
+    this.expectedVerticals = expectedVerticals;
+  }
+
+  /**
+   * Plans every skier's day, runs the compressed ski day and blocks until the last skier leaves,
+   * or until the run is asked to stop. A stopped run sends no more rides; those under way finish
+   * and are recorded.
+   *
+   * @param stats the run's statistics
+   * @throws InterruptedException if interrupted while waiting for the skiers
+   */
+  public void run(BulkRequestStatistics stats) throws InterruptedException {
+    this.stats = stats;
+    int numUsers = settings.getUsers();
+    WorkloadSettings workload = args.getWorkloadSettings();
+    Random rand = workload.isSeeded() ? new Random(workload.getSeed()) : new Random();
+
+    ExecutorService pool = Executors.newFixedThreadPool(settings.getWorkers());
+    wheel = new TimerWheel(settings.getTickMillis(), WHEEL_SIZE, pool);
+    finished = new CountDownLatch(numUsers);
+    startNanos = System.nanoTime();
+    for (int i = 0; i < numUsers; i++) {
+      int skierId = i % args.getNumSkiers() + 1;
+      int minLength = settings.getMinSessionMinutes();
+      int arrival = 1 + rand.nextInt(DAY_MINUTES - minLength + 1);
+      int departure = arrival + minLength - 1
+          + rand.nextInt(DAY_MINUTES - arrival - minLength + 2);
+      VirtualSkier skier = new VirtualSkier(skierId,
+          partitions.partitionFor(i, numUsers, skierId), arrival, departure);
+      wheel.schedule(skier, skier.dueNanos() - System.nanoTime());
+    }
+
+    while (!finished.await(STOP_CHECK_MILLIS, TimeUnit.MILLISECONDS) && !stats.isStopping()) {
+      // Skiers still on the mountain
+    }
+    wheel.stop();
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+    for (StatsBuffer remaining : buffers) {
+      remaining.flush();
+      stats.unregisterBuffer(remaining.flush);
+    }
+  }
+
+  /**
+   * Provides the session report section. Call after run.
+   *
+   * @return the report text
+   */
+  public String summary() {
+    long numRides = rides.sum();
+    long[] buckets = new long[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets[i] = latenessBuckets.get(i);
+    }
+    StringBuilder builder = new StringBuilder();
+    builder.append("Virtual Skier Sessions:\n");
+    builder.append(String.format("\tSkiers: %d, peak on the mountain %d\n",
+        settings.getUsers(), peakActive.get()));
+    builder.append(String.format("\tSki day: %d minutes at %d ms/minute on %d workers\n",
+        DAY_MINUTES, settings.getMinuteMillis(), settings.getWorkers()));
+    builder.append(String.format("\tRides: %d, vertical lookups: %d\n", numRides, lookups.sum()));
+    builder.append(String.format("\tPacing lateness (ms): mean %.2f, p99 under %d, max %d\n",
+        numRides == 0 ? 0.0 : (double) latenessSum.sum() / numRides,
+        percentileBound(buckets, numRides, 0.99), maxLateness.get()));
+    return builder.toString();
+  }
+
+  /**
+   * Upper bound of the bucket the given percentile falls in.
+   */
+  private static long percentileBound(long[] buckets, long total, double percentile) {
+    long target = (long) Math.ceil(total * percentile);
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= target && seen > 0) {
+        return i == 0 ? 1 : 1L << i;
+      }
+    }
+    return 0;
+  }
+
+  private void recordLateness(long latenessMillis) {
+    long lateness = Math.max(0, latenessMillis);
+    int bucket = Math.min(64 - Long.numberOfLeadingZeros(lateness), NUM_BUCKETS - 1);
+    latenessBuckets.incrementAndGet(bucket);
+    latenessSum.add(lateness);
+    maxLateness.accumulate(lateness);
+  }
+
+  private void acquirePermit(Operation op) {
+    if (limiters != null) {
+      limiters[op.ordinal()].acquire();
+    }
+  }
+
+  /**
+   * Counts a call its circuit breaker would not send. Skiers keep to their schedule, so the call
+   * is simply skipped; it is never written to the CSV.
+   */
+  private void shortCircuited() {
+    stats.getTotalRequests().getAndIncrement();
+    stats.getTotalShortCircuited().getAndIncrement();
+  }
+
+  private void recordStats(String reqType, String path, long reqStart, long latency, int code) {
+    CallMeter meter = skiersApi.getApiClient().getLastCallMeter();
+    long reqBytes = meter == null ? -1 : meter.getRequestBytes();
+    long respBytes = meter == null ? -1 : meter.getResponseBytes();
+    buffer.get().add(
+        new SingleRequestStatistics(reqType, path, reqStart, latency, code, reqBytes, respBytes));
+  }
+
+  /**
+   * One skier's day. Runs on a worker each time a ride is due, then puts itself back on the
+   * wheel until its next ride.
+   */
+  private class VirtualSkier extends TimerWheel.Timeout {
+
+    private final int skierId;
+    private final Partition partition;
+    private final int departure;
+    private int minute;
+    private boolean arrived;
+
+    VirtualSkier(int skierId, Partition partition, int arrival, int departure) {
+      this.skierId = skierId;
+      this.partition = partition;
+      this.minute = arrival;
+      this.departure = departure;
+    }
+
+    long dueNanos() {
+      return startNanos + (minute - 1) * minuteNanos;
+    }
+
+    @Override
+    public void run() {
+      if (stats.isStopping()) {
+        return;
+      }
+      try {
+        if (!arrived) {
+          arrived = true;
+          peakActive.accumulate(active.incrementAndGet());
+        }
+        recordLateness(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - dueNanos()));
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        ride(rand);
+        if (rand.nextDouble() < settings.getLookupProbability()) {
+          lookUpVertical();
+        }
+
+        // Exponential think time, at least a minute
+        double gap = -settings.getRideGapMinutes() * Math.log(1 - rand.nextDouble());
+        int next = minute + Math.max(1, (int) Math.round(gap));
+        if (next > departure) {
+          active.decrementAndGet();
+          finished.countDown();
+          return;
+        }
+        minute = next;
+        wheel.schedule(this, dueNanos() - System.nanoTime());
+      } catch (RuntimeException e) {
+        // A skier that throws must still leave, or the run never ends
+        logger.error("Virtual skier " + skierId + " failed: " + e.getMessage());
+        active.decrementAndGet();
+        finished.countDown();
+      }
+    }
+
+    private void ride(ThreadLocalRandom rand) {
+      int liftId = liftSampler.next(rand);
+      LiftRide liftRide = new LiftRide();
+      liftRide.setResortID(partition.getResort());
+      liftRide.setDayID(String.valueOf(partition.getDay()));
+      liftRide.setSkierID(String.valueOf(skierId));
+      liftRide.setTime(String.valueOf(minute));
+      liftRide.setLiftID(String.valueOf(liftId));
+
+      // A throttled skier runs late, which shows in the lateness histogram
+      acquirePermit(Operation.POST_LIFT_RIDE);
+      long reqStart = System.currentTimeMillis();
+      int code;
+      try {
+        ApiResponse<Void> resp = skiersApi.writeNewLiftRideWithHttpInfo(liftRide);
+        code = resp.getStatusCode();
+        if (expectedVerticals != null) {
+          expectedVerticals.recordRide(partition.getIndex(), skierId, liftId);
+        }
+      } catch (CircuitOpenException e) {
+        shortCircuited();
+        return;
+      } catch (ApiException e) {
+        code = e.getCode();
+        stats.getTotalBadRequests().getAndIncrement();
+        logger.error("API error: " + e.getCode() + " posting ride for skier " + skierId);
+      }
+      rides.increment();
+      recordStats("POST", Operation.POST_LIFT_RIDE.getPath(), reqStart,
+          System.currentTimeMillis() - reqStart, code);
+    }
+
+    private void lookUpVertical() {
+      acquirePermit(Operation.GET_SKIER_DAY_VERTICAL);
+      long reqStart = System.currentTimeMillis();
+      int code;
+      try {
+        code = skiersApi.getSkierDayVerticalWithHttpInfo(partition.getResort(),
+            String.valueOf(partition.getDay()), String.valueOf(skierId)).getStatusCode();
+      } catch (CircuitOpenException e) {
+        shortCircuited();
+        return;
+      } catch (ApiException e) {
+        code = e.getCode();
+        stats.getTotalBadRequests().getAndIncrement();
+        logger.error("API error: " + e.getCode() + " looking up skier " + skierId);
+      }
+      lookups.increment();
+      recordStats("GET", Operation.GET_SKIER_DAY_VERTICAL.getPath(), reqStart,
+          System.currentTimeMillis() - reqStart, code);
+    }
+  }
+
+  /**
+   * A worker's results, handed to the stats writer a batch at a time so a long day never holds
+   * every result in memory. The run's periodic flush also empties it, from its own thread.
+   */
+  private class StatsBuffer {
+
+    private final Runnable flush = this::flush;
+    private SingleRequestStatistics[] results = new SingleRequestStatistics[BUFFER_SIZE];
+    private int count;
+
+    synchronized void add(SingleRequestStatistics result) {
+      results[count++] = result;
+      if (count == results.length) {
+        flush();
+      }
+    }
+
+    synchronized void flush() {
+      if (count == 0) {
+        return;
+      }
+      stats.getTotalRequests().getAndAdd(count);
+      stats.pushDataToWriter(count == results.length ? results : Arrays.copyOf(results, count));
+      results = new SingleRequestStatistics[BUFFER_SIZE];
+      count = 0;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+import java.util.Properties;
+
+/**
+ * Immutable virtual skier session options read from the client properties file.
+ */
+public class SessionSettings {
+
+  final private int users;
+  final private int minuteMillis;
+  final private double rideGapMinutes;
+  final private int minSessionMinutes;
+  final private double lookupProbability;
+  final private int workers;
+  final private int tickMillis;
+
+  private SessionSettings(int users, int minuteMillis, double rideGapMinutes,
+      int minSessionMinutes, double lookupProbability, int workers, int tickMillis) {
+    this.users = users;
+    this.minuteMillis = minuteMillis;
+    this.rideGapMinutes = rideGapMinutes;
+    this.minSessionMinutes = minSessionMinutes;
+    this.lookupProbability = lookupProbability;
+    this.workers = workers;
+    this.tickMillis = tickMillis;
+  }
+
+  /**
+   * Reads session options from properties. Available properties:
+   *   - sessionUsers (default: 0, min: 0) virtual skiers to simulate; when above 0 the client runs
+   *     their ski days instead of the phases. Skier IDs wrap around numSkiers
+   *   - sessionMinuteMillis (default: 1000, min: 1) wall-clock milliseconds per ski day minute,
+   *     e.g. 100 runs the 420 minute day in 42 seconds
+   *   - sessionRideGapMinutes (default: 10, min: 1) mean think time between a skier's rides, in
+   *     ski day minutes, covering the lift queue, the ride and the run down
+   *   - sessionMinMinutes (default: 60, min: 1, max: 420) shortest ski day a skier spends
+   *   - sessionLookupProbability (default: 0.1, min: 0, max: 1) chance a skier checks its day
+   *     vertical after a ride
+   *   - sessionWorkers (default: maxThreads, min: 1) threads the skiers' requests are sent on
+   *   - sessionTickMillis (default: 1, min: 1) resolution of the skier scheduler
+   * None are required.
+   *
+   * @param props      properties parsed from the properties file
+   * @param maxThreads the maxThreads property, used when sessionWorkers is not given
+   * @return the session settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static SessionSettings fromProperties(Properties props, int maxThreads)
+      throws IllegalArgumentException {
+    int users, minuteMillis, minSessionMinutes, workers, tickMillis;
+    double rideGapMinutes, lookupProbability;
+    try {
+      users = Integer.parseInt(props.getProperty("sessionUsers", "0").trim());
+      minuteMillis = Integer.parseInt(props.getProperty("sessionMinuteMillis", "1000").trim());
+      rideGapMinutes = Double.parseDouble(
+          props.getProperty("sessionRideGapMinutes", "10").trim());
+      minSessionMinutes = Integer.parseInt(props.getProperty("sessionMinMinutes", "60").trim());
+      lookupProbability = Double.parseDouble(
+          props.getProperty("sessionLookupProbability", "0.1").trim());
+      workers = Integer.parseInt(
+          props.getProperty("sessionWorkers", String.valueOf(maxThreads)).trim());
+      tickMillis = Integer.parseInt(props.getProperty("sessionTickMillis", "1").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed session settings");
+    }
+
+    if (users < 0) {
+      throw new IllegalArgumentException("sessionUsers cannot be negative");
+    }
+    if (minuteMillis < 1) {
+      throw new IllegalArgumentException("sessionMinuteMillis must be at least 1");
+    }
+    if (!(rideGapMinutes >= 1)) {
+      throw new IllegalArgumentException("sessionRideGapMinutes must be at least 1");
+    }
+    if (minSessionMinutes < 1 || minSessionMinutes > 420) {
+      throw new IllegalArgumentException("sessionMinMinutes must be between 1 and 420, inclusive");
+    }
+    if (!(lookupProbability >= 0 && lookupProbability <= 1)) {
+      throw new IllegalArgumentException("sessionLookupProbability must be between 0 and 1");
+    }
+    if (workers < 1) {
+      throw new IllegalArgumentException("sessionWorkers must be at least 1");
+    }
+    if (tickMillis < 1) {
+      throw new IllegalArgumentException("sessionTickMillis must be at least 1");
+    }
+
+    return new SessionSettings(users, minuteMillis, rideGapMinutes, minSessionMinutes,
+        lookupProbability, workers, tickMillis);
+  }
+
+  public boolean isEnabled() {
+    return users > 0;
+  }
+
+  public int getUsers() {
+    return users;
+  }
+
+  public int getMinuteMillis() {
+    return minuteMillis;
+  }
+
+  public double getRideGapMinutes() {
+    return rideGapMinutes;
+  }
+
+  public int getMinSessionMinutes() {
+    return minSessionMinutes;
+  }
+
+  public double getLookupProbability() {
+    return lookupProbability;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public int getTickMillis() {
+    return tickMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "SessionSettings{" +
+        "users=" + users +
+        ", minuteMillis=" + minuteMillis +
+        ", rideGapMinutes=" + rideGapMinutes +
+        ", minSessionMinutes=" + minSessionMinutes +
+        ", lookupProbability=" + lookupProbability +
+        ", workers=" + workers +
+        ", tickMillis=" + tickMillis +
+        '}';
+  }
+}
@@ -0,0 +1,57 @@
+import workload.Operation;
+import workload.RequestSource;
+
+/**
+ * Takes each lift ride POST's skier, lift and time from a running SkiDaySimulator, waiting until
+ * the simulation reaches the next ride. Other operations keep drawing their skier from the
+ * runner's own source.
+ */
+public class SimulatedRequestSource implements RequestSource {
+
+  private final SkiDaySimulator simulator;
+  private final RequestSource others;
+  private SkiDaySimulator.Ride ride;
+  private boolean onRide;
+
+  /**
+   * @param simulator the shared simulation
+   * @param others    source for the skiers of non-POST operations
+   */
+  public SimulatedRequestSource(SkiDaySimulator simulator, RequestSource others) {
+    this.simulator = simulator;
+    this.others = others;
+  }
+
+  /**
+   * @throws SimulationStoppedException if the simulation ended before the next ride
+   */
+  @Override
+  public void advance(Operation op) throws SimulationStoppedException {
+    onRide = op == Operation.POST_LIFT_RIDE;
+    if (!onRide) {
+      others.advance(op);
+      return;
+    }
+    try {
+      ride = simulator.nextRide();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted waiting for a simulated lift ride");
+    }
+  }
+
+  @Override
+  public int getSkierId() {
+    return onRide ? ride.getSkierId() : others.getSkierId();
+  }
+
+  @Override
+  public int getLiftId() {
+    return ride.getLiftId();
+  }
+
+  @Override
+  public int getTime() {
+    return ride.getMinute();
+  }
+}
@@ -0,0 +1,140 @@
+import java.util.Properties;
+
+/**
+ * Immutable ski day simulation options read from the client properties file.
+ */
+public class SimulationSettings {
+
+  final private boolean enabled;
+  final private double compression;
+  final private int chairCapacity;
+  final private int chairSeconds;
+  final private int rideMinutes;
+  final private double runMinutes;
+  final private int routeChoices;
+  final private int feedSize;
+
+  private SimulationSettings(boolean enabled, double compression, int chairCapacity,
+      int chairSeconds, int rideMinutes, double runMinutes, int routeChoices, int feedSize) {
+    this.enabled = enabled;
+    this.compression = compression;
+    this.chairCapacity = chairCapacity;
+    this.chairSeconds = chairSeconds;
+    this.rideMinutes = rideMinutes;
+    this.runMinutes = runMinutes;
+    this.routeChoices = routeChoices;
+    this.feedSize = feedSize;
+  }
+
+  /**
+   * Reads simulation options from properties. Available properties:
+   *   - simulateDay (default: false) take each lift ride POST from a simulated ski day of
+   *     numSkiers skiers queueing for numSkiLifts lifts, instead of drawing skier, lift and time
+   *     from the distributions
+   *   - simCompression (default: 60, min: 0) simulated seconds per wall-clock second, e.g. 60 runs
+   *     the 420 minute day in 7 minutes; 0 sends rides as fast as the runners take them
+   *   - simChairCapacity (default: 4, min: 1) riders per chair; the base area lifts carry twice
+   *     as many
+   *   - simChairSeconds (default: 6, min: 1) seconds between chairs
+   *   - simRideMinutes (default: 6, min: 1) minutes from loading to the top of a lift
+   *   - simRunMinutes (default: 8, min: 1) mean minutes to ski down to the next lift
+   *   - simRouteChoices (default: 3, min: 1) lifts reachable from the top of each lift
+   *   - simFeedSize (default: 4096, min: 1) rides the simulation may run ahead of the runners
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the simulation settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static SimulationSettings fromProperties(Properties props) throws IllegalArgumentException {
+    boolean enabled = Boolean.parseBoolean(props.getProperty("simulateDay", "false").trim());
+    int chairCapacity, chairSeconds, rideMinutes, routeChoices, feedSize;
+    double compression, runMinutes;
+    try {
+      compression = Double.parseDouble(props.getProperty("simCompression", "60").trim());
+      chairCapacity = Integer.parseInt(props.getProperty("simChairCapacity", "4").trim());
+      chairSeconds = Integer.parseInt(props.getProperty("simChairSeconds", "6").trim());
+      rideMinutes = Integer.parseInt(props.getProperty("simRideMinutes", "6").trim());
+      runMinutes = Double.parseDouble(props.getProperty("simRunMinutes", "8").trim());
+      routeChoices = Integer.parseInt(props.getProperty("simRouteChoices", "3").trim());
+      feedSize = Integer.parseInt(props.getProperty("simFeedSize", "4096").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed simulation settings");
+    }
+
+    if (!(compression >= 0) || Double.isInfinite(compression)) {
+      throw new IllegalArgumentException("simCompression must be 0 or more");
+    }
+    if (chairCapacity < 1) {
+      throw new IllegalArgumentException("simChairCapacity must be at least 1");
+    }
+    if (chairSeconds < 1) {
+      throw new IllegalArgumentException("simChairSeconds must be at least 1");
+    }
+    if (rideMinutes < 1) {
+      throw new IllegalArgumentException("simRideMinutes must be at least 1");
+    }
+    if (!(runMinutes >= 1)) {
+      throw new IllegalArgumentException("simRunMinutes must be at least 1");
+    }
+    if (routeChoices < 1) {
+      throw new IllegalArgumentException("simRouteChoices must be at least 1");
+    }
+    if (feedSize < 1) {
+      throw new IllegalArgumentException("simFeedSize must be at least 1");
+    }
+
+    return new SimulationSettings(enabled, compression, chairCapacity, chairSeconds, rideMinutes,
+        runMinutes, routeChoices, feedSize);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return simulated seconds per wall-clock second, 0 if the simulation is not paced
+   */
+  public double getCompression() {
+    return compression;
+  }
+
+  public int getChairCapacity() {
+    return chairCapacity;
+  }
+
+  public int getChairSeconds() {
+    return chairSeconds;
+  }
+
+  public int getRideMinutes() {
+    return rideMinutes;
+  }
+
+  public double getRunMinutes() {
+    return runMinutes;
+  }
+
+  public int getRouteChoices() {
+    return routeChoices;
+  }
+
+  public int getFeedSize() {
+    return feedSize;
+  }
+
+  @Override
+  public String toString() {
+    return "SimulationSettings{" +
+        "enabled=" + enabled +
+        ", compression=" + compression +
+        ", chairCapacity=" + chairCapacity +
+        ", chairSeconds=" + chairSeconds +
+        ", rideMinutes=" + rideMinutes +
+        ", runMinutes=" + runMinutes +
+        ", routeChoices=" + routeChoices +
+        ", feedSize=" + feedSize +
+        '}';
+  }
+}
@@ -0,0 +1,13 @@
+/**
+ * Thrown to a runner waiting for a simulated lift ride once the ski day simulation has been
+ * stopped or has failed, since no more rides will arrive.
+ */
+public class SimulationStoppedException extends RuntimeException {
+
+  /**
+   * @param message why the simulation ended
+   */
+  public SimulationStoppedException(String message) {
+    super(message);
+  }
+}
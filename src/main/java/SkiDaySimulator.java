@@ -0,0 +1,500 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Discrete-event simulation of a ski day that supplies the lift rides runners POST. Skiers arrive
+ * through the morning at a base area lift, queue, ride up, ski down to one of the lifts their runs
+ * lead to, preferring the shorter line, and go home after a few hours. Each chair that loads emits
+ * one ride per rider, so the POST stream has the bursts and lulls of real lift lines rather than a
+ * uniform lift choice.
+ * <p>
+ * Skiers and lifts are the events: each waits in a single priority queue ordered by simulated
+ * time, so a day of 50000 skiers runs in well under a second of CPU. A simulator thread paces the
+ * events against the wall clock at the configured compression and hands rides to the runners
+ * through a bounded feed; when the runners fall behind, the feed fills and the simulation waits
+ * for them. If the phases need more rides than one day produces, another day starts. Once the
+ * simulation is stopped or fails, runners waiting for a ride get a SimulationStoppedException.
+ */
+public class SkiDaySimulator implements Runnable {
+
+  private static final Logger logger = LogManager.getLogger(SkiDaySimulator.class);
+  // Arrivals peak mid-morning; nobody arrives in the last two hours
+  private static final double ARRIVAL_MEAN_MINUTES = 60;
+  private static final double ARRIVAL_STD_DEV_MINUTES = 45;
+  private static final int LAST_ARRIVAL_MINUTES = 300;
+  private static final double MIN_STAY_MINUTES = 90;
+  private static final double EXTRA_STAY_MEAN_MINUTES = 150;
+  // Chance a skier takes the lift they fancy without comparing lines
+  private static final double LINE_BLIND_PROBABILITY = 0.2;
+  private static final int MAX_RECORDED_WAIT_SECONDS = 7200;
+  // How often a runner waiting for a ride checks that the simulation is still running
+  private static final long FEED_POLL_MILLIS = 100;
+
+  private final SimulationSettings settings;
+  private final int numSkiers;
+  private final int daySeconds;
+  private final Random rand;
+  private final BlockingQueue<Ride> feed;
+  private final PriorityQueue<Event> events = new PriorityQueue<>();
+  private final Lift[] lifts;
+  private final int numBaseLifts;
+  private final Skier[] skiers;
+  private volatile boolean stopping;
+  private volatile boolean ended;
+  private volatile RuntimeException failure;
+  private Thread thread;
+  private long startMillis;
+  // Everything below is only touched by the simulator thread, and read after it is joined
+  private long sequence;
+  private int day;
+  private int clockSeconds;
+  private int onMountain;
+  private int peakOnMountain;
+  private long ridesEmitted;
+  private long eventsHandled;
+  private long busyNanos;
+  private long maxBehindMillis;
+  private final long[] waitCounts = new long[MAX_RECORDED_WAIT_SECONDS + 1];
+  private long waitSumSeconds;
+  private int maxWaitSeconds;
+
+  /**
+   * One lift ride for a runner to POST.
+   */
+  public static class Ride {
+
+    private final int skierId;
+    private final int liftId;
+    private final int minute;
+
+    Ride(int skierId, int liftId, int minute) {
+      this.skierId = skierId;
+      this.liftId = liftId;
+      this.minute = minute;
+    }
+
+    public int getSkierId() {
+      return skierId;
+    }
+
+    /**
+     * @return the 1-indexed lift ID
+     */
+    public int getLiftId() {
+      return liftId;
+    }
+
+    /**
+     * @return the minute of the day the skier loaded the lift, starting at 1
+     */
+    public int getMinute() {
+      return minute;
+    }
+  }
+
+  /**
+   * @param args arguments provided to the client; a seeded workload seeds the simulation too
+   */
+  public SkiDaySimulator(Arguments args) {
+    this.settings = args.getSimulationSettings();
+    this.numSkiers = args.getNumSkiers();
+    this.daySeconds = args.getDayLengthMinutes() * 60;
+    WorkloadSettings workload = args.getWorkloadSettings();
+    this.rand = workload.isSeeded() ? new Random(workload.getSeed()) : new Random();
+    this.feed = new ArrayBlockingQueue<>(settings.getFeedSize());
+
+    // The lowest lifts are the base area's high-capacity chairs that every skier starts from
+    int numLifts = args.getNumSkiLifts();
+    this.numBaseLifts = Math.max(1, numLifts / 8);
+    this.lifts = new Lift[numLifts];
+    for (int i = 0; i < numLifts; i++) {
+      int capacity = settings.getChairCapacity() * (i < numBaseLifts ? 2 : 1);
+      lifts[i] = new Lift(i, capacity);
+    }
+    this.skiers = new Skier[numSkiers];
+    for (int i = 0; i < numSkiers; i++) {
+      skiers[i] = new Skier(i + 1);
+    }
+  }
+
+  /**
+   * Starts simulating on a daemon thread. Pacing is measured from this call.
+   */
+  public void start() {
+    startMillis = System.currentTimeMillis();
+    thread = new Thread(this, "ski-day-simulator");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the simulation. Rides still in the feed are never sent.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulator thread
+   */
+  public void stop() throws InterruptedException {
+    stopping = true;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join();
+    }
+  }
+
+  /**
+   * Waits for the simulation to reach the next ride. Safe to call from any runner.
+   *
+   * @return the ride
+   * @throws InterruptedException       if interrupted while waiting
+   * @throws SimulationStoppedException if the simulation was stopped or failed and no rides are
+   *                                    left
+   */
+  public Ride nextRide() throws InterruptedException, SimulationStoppedException {
+    while (true) {
+      Ride ride = feed.poll(FEED_POLL_MILLIS, TimeUnit.MILLISECONDS);
+      if (ride != null) {
+        return ride;
+      }
+      if (stopping || ended) {
+        throw new SimulationStoppedException(failure == null
+            ? "the ski day simulation was stopped"
+            : "the ski day simulation failed: " + failure);
+      }
+    }
+  }
+
+  /**
+   * @return what ended the simulation thread, or null if it has not failed
+   */
+  public RuntimeException getFailure() {
+    return failure;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!stopping) {
+        startDay();
+        Event event;
+        while ((event = events.poll()) != null) {
+          clockSeconds = event.time;
+          awaitSchedule(event.time);
+          long handleStart = System.nanoTime();
+          event.handle();
+          busyNanos += System.nanoTime() - handleStart;
+          eventsHandled++;
+        }
+      }
+    } catch (InterruptedException e) {
+      if (!stopping) {
+        logger.error("Ski day simulation interrupted: " + e.getMessage());
+      }
+    } catch (RuntimeException e) {
+      failure = e;
+      logger.error("Ski day simulation failed: " + e + "\n" + Arrays.toString(e.getStackTrace()));
+    } finally {
+      ended = true;
+    }
+  }
+
+  /**
+   * Puts every skier back at home with a new arrival and departure time.
+   */
+  private void startDay() {
+    day++;
+    events.clear();
+    for (Lift lift : lifts) {
+      lift.queue.clear();
+      lift.loading = false;
+    }
+    onMountain = 0;
+    int closeSeconds = daySeconds;
+    for (Skier skier : skiers) {
+      double arrivalMinutes = ARRIVAL_MEAN_MINUTES + rand.nextGaussian() * ARRIVAL_STD_DEV_MINUTES;
+      arrivalMinutes = Math.max(0, Math.min(LAST_ARRIVAL_MINUTES, arrivalMinutes));
+      double stayMinutes = MIN_STAY_MINUTES + exponential(EXTRA_STAY_MEAN_MINUTES);
+      skier.leaveSeconds = (int) Math.min(closeSeconds, (arrivalMinutes + stayMinutes) * 60);
+      skier.state = SkierState.ARRIVING;
+      skier.liftIndex = rand.nextInt(numBaseLifts);
+      schedule(skier, (int) (arrivalMinutes * 60));
+    }
+  }
+
+  /**
+   * Waits until the wall clock catches up with a simulated time, unless the simulation is unpaced.
+   */
+  private void awaitSchedule(int time) throws InterruptedException {
+    if (settings.getCompression() == 0) {
+      return;
+    }
+    long dueMillis = dueMillis(time);
+    long wait;
+    while ((wait = dueMillis - System.currentTimeMillis()) > 0) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(wait));
+      if (Thread.interrupted()) {
+        throw new InterruptedException("stopped while pacing");
+      }
+    }
+  }
+
+  private long dueMillis(int time) {
+    double simulatedSeconds = (double) (day - 1) * daySeconds + time;
+    return startMillis + (long) (simulatedSeconds * 1000 / settings.getCompression());
+  }
+
+  private void schedule(Event event, int time) {
+    event.time = time;
+    event.sequence = sequence++;
+    events.add(event);
+  }
+
+  /**
+   * Hands a ride to the runners, waiting if they have fallen a full feed behind. Time spent waiting
+   * is not counted as simulation work.
+   */
+  private void emit(Skier skier, Lift lift, int time) throws InterruptedException {
+    int minute = Math.min(daySeconds / 60, time / 60 + 1);
+    Ride ride = new Ride(skier.id, lift.index + 1, minute);
+    if (!feed.offer(ride)) {
+      long blockedStart = System.nanoTime();
+      feed.put(ride);
+      busyNanos -= System.nanoTime() - blockedStart;
+    }
+    ridesEmitted++;
+    if (settings.getCompression() > 0) {
+      maxBehindMillis = Math.max(maxBehindMillis, System.currentTimeMillis() - dueMillis(time));
+    }
+  }
+
+  /**
+   * Picks the lift a skier heads for from the top of a lift: one of the few whose runs start
+   * there, and of two candidates the one with the shorter line.
+   */
+  private int routeFrom(int liftIndex) {
+    int reachable = Math.min(settings.getRouteChoices(), lifts.length);
+    int first = liftIndex - (reachable - 1) / 2;
+    first = Math.max(0, Math.min(lifts.length - reachable, first));
+    int choice = first + rand.nextInt(reachable);
+    if (reachable == 1 || rand.nextDouble() < LINE_BLIND_PROBABILITY) {
+      return choice;
+    }
+    int other = first + rand.nextInt(reachable);
+    return lifts[other].expectedWait() < lifts[choice].expectedWait() ? other : choice;
+  }
+
+  private double exponential(double mean) {
+    return -Math.log(1 - rand.nextDouble()) * mean;
+  }
+
+  private void recordWait(int waitSeconds) {
+    waitCounts[Math.min(waitSeconds, MAX_RECORDED_WAIT_SECONDS)]++;
+    waitSumSeconds += waitSeconds;
+    maxWaitSeconds = Math.max(maxWaitSeconds, waitSeconds);
+  }
+
+  /**
+   * Provides the simulation report section. Call after stop.
+   *
+   * @return the report text
+   */
+  public String summary() {
+    int busiest = 0;
+    for (Lift lift : lifts) {
+      // Most total time spent in line, so a lift that one skier waited at once doesn't count
+      if (lift.waitSumSeconds > lifts[busiest].waitSumSeconds) {
+        busiest = lift.index;
+      }
+    }
+    double busySeconds = busyNanos / 1e9;
+    double simulatedSeconds = (double) (day - 1) * daySeconds + clockSeconds;
+
+    StringBuilder builder = new StringBuilder();
+    builder.append("Ski Day Simulation:\n");
+    builder.append(String.format("\tSkiers: %d on %d lifts (%d at the base), peak on the mountain"
+        + " %d\n", numSkiers, lifts.length, numBaseLifts, peakOnMountain));
+    builder.append(String.format("\tReached: day %d, minute %d; rides sent %d of %d simulated\n",
+        day, clockSeconds / 60 + 1, ridesEmitted - feed.size(), ridesEmitted));
+    if (settings.getCompression() > 0) {
+      builder.append(String.format("\tPacing: %.1fx real time, at most %d ms behind schedule\n",
+          settings.getCompression(), Math.max(0, maxBehindMillis)));
+    } else {
+      builder.append("\tPacing: none, rides sent as fast as runners take them\n");
+    }
+    builder.append("\tLift line wait (s): ").append(describeWaits()).append('\n');
+    builder.append(String.format("\tBusiest line: lift %d, mean wait %.1f s over %d rides\n",
+        busiest + 1, lifts[busiest].meanWait(), lifts[busiest].rides));
+    builder.append(String.format("\tEngine: %d events, %.0fx faster than real time\n",
+        eventsHandled, busySeconds == 0 ? 0.0 : simulatedSeconds / busySeconds));
+    return builder.toString();
+  }
+
+  private String describeWaits() {
+    long total = 0;
+    for (long count : waitCounts) {
+      total += count;
+    }
+    if (total == 0) {
+      return "n/a";
+    }
+    return String.format("mean %.2f, median %d, p99 %d, max %d",
+        (double) waitSumSeconds / total, waitPercentile(total, 0.5),
+        waitPercentile(total, 0.99), maxWaitSeconds);
+  }
+
+  private int waitPercentile(long total, double fraction) {
+    long rank = (long) Math.ceil(total * fraction);
+    long seen = 0;
+    for (int seconds = 0; seconds < waitCounts.length; seconds++) {
+      seen += waitCounts[seconds];
+      if (seen >= rank) {
+        return seconds;
+      }
+    }
+    return maxWaitSeconds;
+  }
+
+  /**
+   * Something that happens at a simulated time, in seconds from the lifts opening. Events at the
+   * same time are handled in the order they were scheduled, so a seeded day always plays out the
+   * same way.
+   */
+  private abstract static class Event implements Comparable<Event> {
+
+    int time;
+    long sequence;
+
+    abstract void handle() throws InterruptedException;
+
+    @Override
+    public int compareTo(Event other) {
+      if (time != other.time) {
+        return Integer.compare(time, other.time);
+      }
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+
+  private enum SkierState {
+    ARRIVING, SKIING_DOWN, AT_TOP
+  }
+
+  /**
+   * A skier is due either at the bottom of a lift or at its top.
+   */
+  private class Skier extends Event {
+
+    final int id;
+    SkierState state;
+    int liftIndex;
+    int leaveSeconds;
+    int queuedAt;
+
+    Skier(int id) {
+      this.id = id;
+    }
+
+    @Override
+    void handle() {
+      switch (state) {
+        case ARRIVING:
+          onMountain++;
+          peakOnMountain = Math.max(peakOnMountain, onMountain);
+          joinLine();
+          break;
+        case SKIING_DOWN:
+          if (time >= leaveSeconds) {
+            onMountain--;
+          } else {
+            joinLine();
+          }
+          break;
+        case AT_TOP:
+          liftIndex = routeFrom(liftIndex);
+          state = SkierState.SKIING_DOWN;
+          // Even the shortest run takes a minute
+          schedule(this, time + Math.max(60, (int) (exponential(settings.getRunMinutes()) * 60)));
+          break;
+        default:
+          throw new IllegalStateException("unknown skier state " + state);
+      }
+    }
+
+    private void joinLine() {
+      Lift lift = lifts[liftIndex];
+      queuedAt = time;
+      lift.queue.add(this);
+      lift.startLoading(time);
+    }
+  }
+
+  /**
+   * A lift is due when its next chair reaches the loading area, and only while skiers are waiting.
+   */
+  private class Lift extends Event {
+
+    final int index;
+    final int capacity;
+    final ArrayDeque<Skier> queue = new ArrayDeque<>();
+    boolean loading;
+    long rides;
+    long waitSumSeconds;
+
+    Lift(int index, int capacity) {
+      this.index = index;
+      this.capacity = capacity;
+    }
+
+    void startLoading(int now) {
+      if (loading) {
+        return;
+      }
+      loading = true;
+      int chairSeconds = settings.getChairSeconds();
+      schedule(this, (now + chairSeconds - 1) / chairSeconds * chairSeconds);
+    }
+
+    @Override
+    void handle() throws InterruptedException {
+      if (time >= daySeconds) {
+        // Closed, whoever is still in line goes home
+        onMountain -= queue.size();
+        queue.clear();
+        loading = false;
+        return;
+      }
+      for (int seat = 0; seat < capacity && !queue.isEmpty(); seat++) {
+        Skier skier = queue.poll();
+        int waitSeconds = time - skier.queuedAt;
+        recordWait(waitSeconds);
+        waitSumSeconds += waitSeconds;
+        rides++;
+        emit(skier, this, time);
+        skier.state = SkierState.AT_TOP;
+        schedule(skier, time + settings.getRideMinutes() * 60);
+      }
+      if (queue.isEmpty()) {
+        loading = false;
+      } else {
+        schedule(this, time + settings.getChairSeconds());
+      }
+    }
+
+    /**
+     * @return seconds a skier joining now would wait, judged from the line length
+     */
+    double expectedWait() {
+      return (double) queue.size() / capacity * settings.getChairSeconds();
+    }
+
+    double meanWait() {
+      return rides == 0 ? 0.0 : (double) waitSumSeconds / rides;
+    }
+  }
+}
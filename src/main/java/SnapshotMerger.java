@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import statistics.RunSnapshot;
+
+/**
+ * Command line tool that merges the snapshots of any number of client runs, such as clients run in
+ * parallel on several machines or the same run repeated, and prints the combined report.
+ * Percentiles come from the merged latency histograms, so they are exact over every request.
+ * <p>
+ * Usage: SnapshotMerger [-o merged-file] snapshot-file...
+ * <p>
+ * Every run saves its snapshot as csvFilename.snapshot. With -o the merged snapshot is saved too,
+ * so it can be merged again later.
+ */
+public class SnapshotMerger {
+
+  private static final Logger logger = LogManager.getLogger(SnapshotMerger.class);
+  private static final String USAGE = "Usage: SnapshotMerger [-o merged-file] snapshot-file...";
+
+  public static void main(String[] args) {
+    String outFile = null;
+    int first = 0;
+    if (args.length >= 2 && args[0].equals("-o")) {
+      outFile = args[1];
+      first = 2;
+    }
+    if (args.length <= first) {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+
+    RunSnapshot merged = null;
+    for (int i = first; i < args.length; i++) {
+      RunSnapshot snapshot = null;
+      try {
+        snapshot = RunSnapshot.load(Paths.get(args[i]));
+      } catch (IOException e) {
+        fatal("Problem reading snapshot " + args[i] + ": " + e.getMessage());
+      }
+      System.out.println(String.format("%s: %d requests, %.2f seconds, run %s", args[i],
+          snapshot.getTotalRequests(), snapshot.getWallTimeSecs(), snapshot.getLabel()));
+      if (merged == null) {
+        merged = snapshot;
+      } else {
+        merged.merge(snapshot);
+      }
+    }
+    merged.setLabel("merged from " + (args.length - first) + " snapshots");
+
+    if (outFile != null) {
+      try {
+        merged.save(Paths.get(outFile));
+      } catch (IOException e) {
+        fatal("Problem writing merged snapshot: " + e.getMessage());
+      }
+    }
+    System.out.println();
+    String report = merged.report();
+    logger.info(report);
+    System.out.println(report);
+  }
+
+  private static void fatal(String msg) {
+    logger.error(msg);
+    System.err.println(msg);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,69 @@
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Immutable soak test options read from the client properties file.
+ */
+public class SoakSettings {
+
+  final private int[] phaseSeconds;
+
+  private SoakSettings(int[] phaseSeconds) {
+    this.phaseSeconds = phaseSeconds;
+  }
+
+  /**
+   * Reads soak test options from properties. Available properties:
+   *   - phaseSeconds (default: none) comma separated wall-clock length of each standard phase in
+   *     order, e.g. 600,14400,600 for a four hour peak. Runners repeat their phase's request mix
+   *     until the phase's time is up instead of stopping after it once. A phase still starts once
+   *     a tenth of the previous phase's runners are done, so timed phases follow one another.
+   * None are required. Without phaseSeconds every runner sends its mix exactly once.
+   *
+   * @param props properties parsed from the properties file
+   * @return the soak settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static SoakSettings fromProperties(Properties props) throws IllegalArgumentException {
+    String secondsRaw = props.getProperty("phaseSeconds", "").trim();
+    if (secondsRaw.isEmpty()) {
+      return new SoakSettings(null);
+    }
+    String[] parts = secondsRaw.split(",");
+    if (parts.length != PhasePlan.NUM_STANDARD_PHASES) {
+      throw new IllegalArgumentException("phaseSeconds needs a length for each of the "
+          + PhasePlan.NUM_STANDARD_PHASES + " phases, found " + parts.length);
+    }
+    int[] phaseSeconds = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      try {
+        phaseSeconds[i] = Integer.parseInt(parts[i].trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("malformed phaseSeconds length: " + parts[i].trim());
+      }
+      if (phaseSeconds[i] < 1) {
+        throw new IllegalArgumentException("phaseSeconds lengths must be at least 1");
+      }
+    }
+    return new SoakSettings(phaseSeconds);
+  }
+
+  public boolean isEnabled() {
+    return phaseSeconds != null;
+  }
+
+  /**
+   * @param phase the phase's number, starting at 1
+   * @return how long the phase runs in milliseconds, or 0 if it sends its mix once
+   */
+  public long getPhaseMillis(int phase) {
+    return phaseSeconds == null ? 0 : phaseSeconds[phase - 1] * 1000L;
+  }
+
+  @Override
+  public String toString() {
+    return "SoakSettings{" +
+        "phaseSeconds=" + Arrays.toString(phaseSeconds) +
+        '}';
+  }
+}
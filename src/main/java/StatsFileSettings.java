@@ -0,0 +1,165 @@
+import java.util.Properties;
+import statistics.BulkRequestStatistics;
+import statistics.SegmentPolicy;
+import statistics.StatsRingBuffer;
+
+/**
+ * Immutable raw stats file and stats writer options read from the client properties file.
+ */
+public class StatsFileSettings {
+
+  final private int segmentMegabytes;
+  final private int segmentSeconds;
+  final private boolean compressSegments;
+  final private int keepSegments;
+  final private int keepMegabytes;
+  final private int flushSeconds;
+  final private int queueSlots;
+  final private StatsRingBuffer.WaitStrategy queueWait;
+  final private int writers;
+
+  private StatsFileSettings(int segmentMegabytes, int segmentSeconds, boolean compressSegments,
+      int keepSegments, int keepMegabytes, int flushSeconds, int queueSlots,
+      StatsRingBuffer.WaitStrategy queueWait, int writers) {
+    this.segmentMegabytes = segmentMegabytes;
+    this.segmentSeconds = segmentSeconds;
+    this.compressSegments = compressSegments;
+    this.keepSegments = keepSegments;
+    this.keepMegabytes = keepMegabytes;
+    this.flushSeconds = flushSeconds;
+    this.queueSlots = queueSlots;
+    this.queueWait = queueWait;
+    this.writers = writers;
+  }
+
+  /**
+   * Reads raw stats file options from properties. Available properties:
+   *   - csvSegmentMegabytes (default: 0, min: 0) size at which the stats CSV is closed and a new
+   *     segment started, 0 for no size limit
+   *   - csvSegmentSeconds (default: 0, min: 0) age at which the stats CSV is closed and a new
+   *     segment started, 0 for no time limit
+   *   - compressSegments (default: true) gzip closed segments in the background
+   *   - csvKeepSegments (default: 0, min: 0) closed segments each writer keeps on disk, dropping
+   *     the oldest beyond that, 0 to keep them all
+   *   - csvKeepMegabytes (default: 0, min: 0) disk space each writer's closed segments may take,
+   *     dropping the oldest beyond that, 0 for no limit
+   *   - statsFlushSeconds (default: 5, min: 0) longest a runner holds its results before handing
+   *     them to the CSV writer, 0 to hand them over only in full chunks
+   *   - statsQueueSlots (default: 1024, min: 2) chunks of results that may wait for the CSV
+   *     writer, rounded up to a power of two; runners wait when all are taken
+   *   - statsQueueWait (default: park) how runners and the writer wait on each other: park,
+   *     yield or spin, from least CPU to lowest latency
+   *   - statsWriters (default: 1, min: 1, max: 64) CSV writer threads, each with its own file and
+   *     queue; every runner's results go to one of them
+   * None are required. With either limit set the stats go to csvFilename.00001.csv and onwards,
+   * listed in csvFilename.segments, instead of a single csvFilename.csv. With several writers
+   * each writes csvFilename.shard1.csv and onwards, or segments of them, listed in
+   * csvFilename.shards. Dropped segments are taken out of the index, and the run report still
+   * counts their rows. The keep limits need a segment limit to be set.
+   *
+   * @param props properties parsed from the properties file
+   * @return the stats file settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static StatsFileSettings fromProperties(Properties props) throws IllegalArgumentException {
+    int segmentMegabytes;
+    int segmentSeconds;
+    int keepSegments;
+    int keepMegabytes;
+    int flushSeconds;
+    int queueSlots;
+    int writers;
+    try {
+      segmentMegabytes = Integer.parseInt(props.getProperty("csvSegmentMegabytes", "0").trim());
+      segmentSeconds = Integer.parseInt(props.getProperty("csvSegmentSeconds", "0").trim());
+      keepSegments = Integer.parseInt(props.getProperty("csvKeepSegments", "0").trim());
+      keepMegabytes = Integer.parseInt(props.getProperty("csvKeepMegabytes", "0").trim());
+      flushSeconds = Integer.parseInt(props.getProperty("statsFlushSeconds", "5").trim());
+      queueSlots = Integer.parseInt(props.getProperty("statsQueueSlots",
+          String.valueOf(BulkRequestStatistics.DEFAULT_WRITE_QUEUE_CAPACITY)).trim());
+      writers = Integer.parseInt(props.getProperty("statsWriters", "1").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed stats file settings");
+    }
+    if (segmentMegabytes < 0 || segmentSeconds < 0) {
+      throw new IllegalArgumentException(
+          "csvSegmentMegabytes and csvSegmentSeconds must be at least 0");
+    }
+    if (keepSegments < 0 || keepMegabytes < 0) {
+      throw new IllegalArgumentException("csvKeepSegments and csvKeepMegabytes must be at least 0");
+    }
+    if ((keepSegments > 0 || keepMegabytes > 0) && segmentMegabytes == 0 && segmentSeconds == 0) {
+      throw new IllegalArgumentException(
+          "csvKeepSegments and csvKeepMegabytes need csvSegmentMegabytes or csvSegmentSeconds");
+    }
+    if (flushSeconds < 0) {
+      throw new IllegalArgumentException("statsFlushSeconds must be at least 0");
+    }
+    if (queueSlots < 2 || queueSlots > 1 << 20) {
+      throw new IllegalArgumentException("statsQueueSlots must be between 2 and 1048576");
+    }
+    if (writers < 1 || writers > 64) {
+      throw new IllegalArgumentException("statsWriters must be between 1 and 64");
+    }
+    String waitRaw = props.getProperty("statsQueueWait", "park").trim();
+    StatsRingBuffer.WaitStrategy queueWait = StatsRingBuffer.WaitStrategy.fromName(waitRaw);
+    if (queueWait == null) {
+      throw new IllegalArgumentException(
+          "unknown statsQueueWait " + waitRaw + ", expected one of: park, yield, spin");
+    }
+    boolean compressSegments =
+        Boolean.parseBoolean(props.getProperty("compressSegments", "true").trim());
+    return new StatsFileSettings(segmentMegabytes, segmentSeconds, compressSegments,
+        keepSegments, keepMegabytes, flushSeconds, queueSlots, queueWait, writers);
+  }
+
+  public boolean isSegmented() {
+    return segmentMegabytes > 0 || segmentSeconds > 0;
+  }
+
+  /**
+   * @return when the stats writer rolls over to a new segment
+   */
+  public SegmentPolicy getSegmentPolicy() {
+    if (!isSegmented()) {
+      return SegmentPolicy.SINGLE_FILE;
+    }
+    return new SegmentPolicy(segmentMegabytes * 1024L * 1024L, segmentSeconds * 1000L,
+        compressSegments, keepSegments, keepMegabytes * 1024L * 1024L);
+  }
+
+  /**
+   * @return milliseconds between flushes of runners' results, or 0 for no periodic flush
+   */
+  public long getFlushMillis() {
+    return flushSeconds * 1000L;
+  }
+
+  public int getQueueSlots() {
+    return queueSlots;
+  }
+
+  public StatsRingBuffer.WaitStrategy getQueueWait() {
+    return queueWait;
+  }
+
+  public int getWriters() {
+    return writers;
+  }
+
+  @Override
+  public String toString() {
+    return "StatsFileSettings{" +
+        "segmentMegabytes=" + segmentMegabytes +
+        ", segmentSeconds=" + segmentSeconds +
+        ", compressSegments=" + compressSegments +
+        ", keepSegments=" + keepSegments +
+        ", keepMegabytes=" + keepMegabytes +
+        ", flushSeconds=" + flushSeconds +
+        ", queueSlots=" + queueSlots +
+        ", queueWait=" + queueWait +
+        ", writers=" + writers +
+        '}';
+  }
+}
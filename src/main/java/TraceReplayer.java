@@ -0,0 +1,447 @@
+import com.squareup.okhttp.ConnectionPool;
+import io.swagger.client.ApiClient;
+import io.swagger.client.ApiException;
+import io.swagger.client.ApiResponse;
+import io.swagger.client.CallMeter;
+import io.swagger.client.api.ResortsApi;
+import io.swagger.client.api.SkiersApi;
+import io.swagger.client.model.LiftRide;
+import io.swagger.client.transport.OkHttpTransport;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import statistics.BulkRequestStatistics;
+import statistics.CsvStatsReader;
+import statistics.SampleSummary;
+import statistics.SingleRequestStatistics;
+import workload.Operation;
+import workload.RequestSource;
+import workload.SampledRequestSource;
+
+/**
+ * Replays a request log written by an earlier run. Requests are sent in recorded start order at
+ * their recorded offsets from the first request, optionally sped up, and recorded in the run's
+ * statistics like any other request.
+ * <p>
+ * The log only keeps each request's path template, so skier, lift and time are drawn again from
+ * the configured distributions (repeatably when workloadSeed is set). The worker pool starts at
+ * the peak concurrency the recorded latencies imply and grows when requests start queueing.
+ */
+public class TraceReplayer {
+
+  private static final Logger logger = LogManager.getLogger(TraceReplayer.class);
+  private static final double POOL_HEADROOM = 1.25;
+  private static final long LATE_THRESHOLD_MS = 10;
+  private static final int BUFFER_SIZE = 1024;
+  // Longest the dispatcher parks before checking whether the run was asked to stop
+  private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final Arguments args;
+  private final ReplaySettings settings;
+  private final SkiersApi skiersApi;
+  private final ResortsApi resortsApi;
+  private final List<TraceEntry> trace = new ArrayList<>();
+  private int initialPoolSize;
+  private int finalPoolSize;
+  private int skipped;
+  // Latency of each trace entry as replayed, -1 until its response arrives
+  private long[] replayedLatency;
+  private long[] lagMillis;
+  private volatile boolean fallingBehind;
+  // Results not yet handed to the stats writer
+  private SingleRequestStatistics[] buffered = new SingleRequestStatistics[BUFFER_SIZE];
+  private int bufferedCount;
+
+  /**
+   * @param args      arguments provided to the client
+   * @param apiClient the api client to send requests through
+   */
+  public TraceReplayer(Arguments args, ApiClient apiClient) {
+    this.args = args;
+    this.settings = args.getReplaySettings();
+    this.skiersApi = new SkiersApi(apiClient);
+    this.resortsApi = new ResortsApi(apiClient);
+
+    // OkHttp only keeps 5 idle connections, let every worker keep its own
+    if (apiClient.getTransport() instanceof OkHttpTransport) {
+      apiClient.getHttpClient().setConnectionPool(
+          new ConnectionPool(settings.getMaxWorkers(), TimeUnit.MINUTES.toMillis(5)));
+    }
+  }
+
+  /**
+   * Reads the request log, or every segment and shard of a segmented or sharded one, in start
+   * order. Threads write the log in chunks, so it is not in start order on disk.
+   *
+   * @throws IOException           if the log can't be read
+   * @throws NumberFormatException if a timestamp or latency is malformed
+   */
+  public void load() throws IOException, NumberFormatException {
+    trace.addAll(CsvStatsReader.readInStartOrder(Paths.get(settings.getReplayFile()),
+        cols -> cols.length >= 4
+            ? new TraceEntry(cols[0] + " " + cols[1], Long.parseLong(cols[2]),
+            Long.parseLong(cols[3]))
+            : null,
+        entry -> entry.start));
+    this.initialPoolSize = estimatePoolSize();
+  }
+
+  /**
+   * Number of requests loaded from the log.
+   *
+   * @return the request count
+   */
+  public int size() {
+    return trace.size();
+  }
+
+  /**
+   * Worker pool size the replay starts with, known once the log is loaded.
+   *
+   * @return the estimated pool size
+   */
+  public int getInitialPoolSize() {
+    return initialPoolSize;
+  }
+
+  /**
+   * Peak number of requests in flight if every request takes its recorded latency at the scaled
+   * schedule, with some headroom. Found by sweeping sorted start and end times.
+   */
+  private int estimatePoolSize() {
+    int n = trace.size();
+    if (n == 0) {
+      return 1;
+    }
+    long first = trace.get(0).start;
+    double[] starts = new double[n];
+    double[] ends = new double[n];
+    for (int i = 0; i < n; i++) {
+      TraceEntry entry = trace.get(i);
+      starts[i] = (entry.start - first) / settings.getSpeedup();
+      ends[i] = starts[i] + entry.latency;
+    }
+    Arrays.sort(ends);
+
+    int inFlight = 0;
+    int peak = 0;
+    int e = 0;
+    for (double start : starts) {
+      while (e < n && ends[e] <= start) {
+        inFlight--;
+        e++;
+      }
+      inFlight++;
+      peak = Math.max(peak, inFlight);
+    }
+    int size = (int) Math.ceil(peak * POOL_HEADROOM);
+    return Math.max(1, Math.min(size, settings.getMaxWorkers()));
+  }
+
+  /**
+   * Sends every loaded request on schedule and blocks until all have completed. Results go to the
+   * stats writer a chunk at a time, and whenever the run's periodic flush asks for them. If the
+   * run is asked to stop, requests not yet sent are dropped and the replay returns once those
+   * being sent have completed.
+   *
+   * @param stats the run's statistics
+   * @throws InterruptedException if interrupted while waiting on the schedule or the workers
+   */
+  public void replay(BulkRequestStatistics stats) throws InterruptedException {
+    Runnable flush = () -> flushResults(stats);
+    stats.registerBuffer(flush);
+    try {
+      dispatch(stats);
+    } finally {
+      flushResults(stats);
+      stats.unregisterBuffer(flush);
+    }
+  }
+
+  private void dispatch(BulkRequestStatistics stats) throws InterruptedException {
+    int n = trace.size();
+    replayedLatency = new long[n];
+    Arrays.fill(replayedLatency, -1);
+    lagMillis = new long[n];
+    RequestSource source = newRequestSource();
+
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(initialPoolSize, initialPoolSize,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    pool.prestartAllCoreThreads();
+
+    long first = n == 0 ? 0 : trace.get(0).start;
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < n && !stats.isStopping(); i++) {
+      TraceEntry entry = trace.get(i);
+      int space = entry.key.indexOf(' ');
+      Operation op = Operation.fromPath(entry.key.substring(0, space),
+          entry.key.substring(space + 1));
+      if (op == null) {
+        skipped++;
+        continue;
+      }
+
+      long dueNanos = startNanos
+          + (long) (TimeUnit.MILLISECONDS.toNanos(entry.start - first) / settings.getSpeedup());
+      long waitNanos = dueNanos - System.nanoTime();
+      while (waitNanos > 0 && !stats.isStopping()) {
+        LockSupport.parkNanos(Math.min(waitNanos, STOP_CHECK_NANOS));
+        if (Thread.interrupted()) {
+          pool.shutdownNow();
+          throw new InterruptedException("replay interrupted");
+        }
+        waitNanos = dueNanos - System.nanoTime();
+      }
+      if (stats.isStopping()) {
+        break;
+      }
+
+      // Parameters are drawn here, on the one dispatching thread, so the source needs no locking
+      source.advance(op);
+      Request request = new Request(i, op, op.getPath(),
+          source.getSkierId(), source.getLiftId(), source.getTime(), dueNanos);
+      pool.execute(() -> send(request, stats));
+
+      // Requests queueing behind busy workers and starting late: the estimate was low, so grow
+      if (fallingBehind && !pool.getQueue().isEmpty()
+          && pool.getCorePoolSize() < settings.getMaxWorkers()) {
+        fallingBehind = false;
+        int size = Math.min(settings.getMaxWorkers(),
+            (int) Math.ceil(pool.getCorePoolSize() * POOL_HEADROOM));
+        pool.setMaximumPoolSize(size);
+        pool.setCorePoolSize(size);
+      }
+    }
+
+    if (stats.isStopping()) {
+      // Queued requests are dropped, those being sent finish and are recorded
+      pool.getQueue().clear();
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    finalPoolSize = pool.getLargestPoolSize();
+  }
+
+  private synchronized void bufferResult(BulkRequestStatistics stats,
+      SingleRequestStatistics result) {
+    buffered[bufferedCount++] = result;
+    if (bufferedCount == buffered.length) {
+      flushResults(stats);
+    }
+  }
+
+  /**
+   * Hands the buffered results to the stats writer and counts them. Called by the workers when
+   * the buffer fills and by the run's periodic flush.
+   */
+  private synchronized void flushResults(BulkRequestStatistics stats) {
+    if (bufferedCount == 0) {
+      return;
+    }
+    stats.getTotalRequests().getAndAdd(bufferedCount);
+    stats.pushDataToWriter(bufferedCount == buffered.length
+        ? buffered
+        : Arrays.copyOf(buffered, bufferedCount));
+    buffered = new SingleRequestStatistics[BUFFER_SIZE];
+    bufferedCount = 0;
+  }
+
+  private RequestSource newRequestSource() {
+    DistributionSettings distributions = args.getDistributionSettings();
+    WorkloadSettings workload = args.getWorkloadSettings();
+    Random rand = workload.isSeeded() ? new Random(workload.getSeed()) : ThreadLocalRandom.current();
+    return new SampledRequestSource(
+        distributions.skierSampler(1, args.getNumSkiers()),
+        distributions.liftSampler(args.getNumSkiLifts()),
+        distributions.timeSampler(1, 420),
+        rand);
+  }
+
+  /**
+   * Sends one request on a worker thread and records its result.
+   */
+  private void send(Request request, BulkRequestStatistics stats) {
+    long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.dueNanos);
+    lagMillis[request.index] = lag;
+    if (lag > LATE_THRESHOLD_MS) {
+      fallingBehind = true;
+    }
+    String reqType = request.op.getMethod();
+    long reqStart = System.currentTimeMillis();
+    int code;
+    try {
+      code = execute(request).getStatusCode();
+    } catch (ApiException e) {
+      code = e.getCode();
+      stats.getTotalBadRequests().getAndIncrement();
+      logger.error("API error: " + e.getCode() + " replaying " + request.path);
+    }
+    long latency = System.currentTimeMillis() - reqStart;
+    CallMeter meter = skiersApi.getApiClient().getLastCallMeter();
+    long reqBytes = meter == null ? -1 : meter.getRequestBytes();
+    long respBytes = meter == null ? -1 : meter.getResponseBytes();
+    SingleRequestStatistics result = new SingleRequestStatistics(reqType, request.path, reqStart,
+        latency, code, reqBytes, respBytes);
+    replayedLatency[request.index] = latency;
+    bufferResult(stats, result);
+  }
+
+  private ApiResponse<?> execute(Request request) throws ApiException {
+    String skierId = String.valueOf(request.skierId);
+    switch (request.op) {
+      case POST_LIFT_RIDE:
+        LiftRide liftRide = new LiftRide();
+        liftRide.setResortID(args.getResort());
+        liftRide.setDayID(String.valueOf(args.getSkiDay()));
+        liftRide.setSkierID(skierId);
+        liftRide.setTime(String.valueOf(request.time));
+        liftRide.setLiftID(String.valueOf(request.liftId));
+        return skiersApi.writeNewLiftRideWithHttpInfo(liftRide);
+      case GET_SKIER_DAY_VERTICAL:
+        return skiersApi.getSkierDayVerticalWithHttpInfo(args.getResort(),
+            String.valueOf(args.getSkiDay()), skierId);
+      case GET_SKIER_RESORT_TOTALS:
+        return skiersApi.getSkierResortTotalsWithHttpInfo(skierId,
+            Collections.singletonList(args.getResort()));
+      default:
+        return resortsApi.getTopTenVertWithHttpInfo(Collections.singletonList(args.getResort()),
+            Collections.singletonList(String.valueOf(args.getSkiDay())));
+    }
+  }
+
+  /**
+   * Provides the replay report: schedule adherence and, per path, recorded against replayed
+   * latency compared request for request.
+   *
+   * @return the replay report section
+   */
+  public String summary() {
+    StringBuilder builder = new StringBuilder();
+    // Workers of a stopped run may still be filling in latencies
+    long[] completed;
+    if (replayedLatency != null) {
+      completed = replayedLatency.clone();
+    } else {
+      completed = new long[trace.size()];
+      Arrays.fill(completed, -1);
+    }
+    int numReplayed = 0;
+    for (long latency : completed) {
+      if (latency >= 0) {
+        numReplayed++;
+      }
+    }
+    long[] lags = new long[numReplayed];
+    int late = 0;
+    int j = 0;
+    Map<String, List<long[]>> pairsByPath = new HashMap<>();
+    for (int i = 0; i < trace.size(); i++) {
+      if (completed[i] < 0) {
+        continue;
+      }
+      lags[j++] = lagMillis[i];
+      if (lagMillis[i] > LATE_THRESHOLD_MS) {
+        late++;
+      }
+      pairsByPath.computeIfAbsent(trace.get(i).key, k -> new ArrayList<>())
+          .add(new long[]{trace.get(i).latency, completed[i]});
+    }
+
+    builder.append(String.format("Trace Replay of %s:\n"
+            + "\tSpeed-up: %.2fx\n"
+            + "\tRequests Replayed: %d (%d skipped, unknown path)\n"
+            + "\tWorkers: %d estimated, %d used\n"
+            + "\tStart Lag (ms): %s\n"
+            + "\tStarted More Than %dms Late: %d\n"
+        , settings.getReplayFile()
+        , settings.getSpeedup()
+        , lags.length
+        , skipped
+        , initialPoolSize
+        , finalPoolSize
+        , SampleSummary.describe(lags)
+        , LATE_THRESHOLD_MS
+        , late
+    ));
+    int notSent = trace.size() - skipped - numReplayed;
+    if (notSent > 0) {
+      builder.append(String.format("\tNot Sent: %d, the run was stopped\n", notSent));
+    }
+
+    for (Map.Entry<String, List<long[]>> entry : pairsByPath.entrySet()) {
+      List<long[]> pairs = entry.getValue();
+      long[] recorded = new long[pairs.size()];
+      long[] replayed = new long[pairs.size()];
+      long[] deltas = new long[pairs.size()];
+      for (int i = 0; i < pairs.size(); i++) {
+        recorded[i] = pairs.get(i)[0];
+        replayed[i] = pairs.get(i)[1];
+        deltas[i] = replayed[i] - recorded[i];
+      }
+      builder.append("Replay Latencies (ms) for ");
+      builder.append(entry.getKey());
+      builder.append(":\n\tRecorded: ");
+      builder.append(SampleSummary.describe(recorded));
+      builder.append("\n\tReplayed: ");
+      builder.append(SampleSummary.describe(replayed));
+      builder.append("\n\tReplayed - Recorded: ");
+      builder.append(SampleSummary.describe(deltas));
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * One line of the request log.
+   */
+  private static class TraceEntry {
+
+    private final String key;
+    private final long start;
+    private final long latency;
+
+    TraceEntry(String key, long start, long latency) {
+      this.key = key;
+      this.start = start;
+      this.latency = latency;
+    }
+  }
+
+  /**
+   * A scheduled request with its drawn parameters.
+   */
+  private static class Request {
+
+    private final int index;
+    private final Operation op;
+    private final String path;
+    private final int skierId;
+    private final int liftId;
+    private final int time;
+    private final long dueNanos;
+
+    Request(int index, Operation op, String path, int skierId, int liftId, int time,
+        long dueNanos) {
+      this.index = index;
+      this.op = op;
+      this.path = path;
+      this.skierId = skierId;
+      this.liftId = liftId;
+      this.time = time;
+      this.dueNanos = dueNanos;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+import java.util.Properties;
+
+/**
+ * Immutable transport options read from the client properties file.
+ */
+public class TransportSettings {
+
+  public static final String OKHTTP = "okhttp";
+  public static final String URL_CONNECTION = "urlconnection";
+  public static final String SOCKET = "socket";
+  public static final String HTTP2 = "h2";
+
+  final private String name;
+  final private int h2MaxConnections;
+  final private int h2MaxStreamsPerConnection;
+  final private int socketMaxIdlePerHost;
+  final private boolean pipelinePosts;
+  final private int pipelineConnections;
+  final private int pipelineDepth;
+  final private int pipelineTimeoutSeconds;
+
+  private TransportSettings(String name, int h2MaxConnections, int h2MaxStreamsPerConnection,
+      int socketMaxIdlePerHost, boolean pipelinePosts, int pipelineConnections, int pipelineDepth,
+      int pipelineTimeoutSeconds) {
+    this.name = name;
+    this.h2MaxConnections = h2MaxConnections;
+    this.h2MaxStreamsPerConnection = h2MaxStreamsPerConnection;
+    this.socketMaxIdlePerHost = socketMaxIdlePerHost;
+    this.pipelinePosts = pipelinePosts;
+    this.pipelineConnections = pipelineConnections;
+    this.pipelineDepth = pipelineDepth;
+    this.pipelineTimeoutSeconds = pipelineTimeoutSeconds;
+  }
+
+  /**
+   * Reads transport options from properties. Available properties:
+   *   - transport (default: okhttp, options: okhttp, urlconnection, socket, h2)
+   *   - h2MaxConnections (default: 4, min: 1) connections per host for the h2 transport
+   *   - h2MaxStreamsPerConnection (default: 100, min: 1) concurrent streams per h2 connection
+   *   - socketMaxIdlePerHost (default: 64, min: 1) idle connections per host the socket transport
+   *     keeps for reuse; raise it to at least maxThreads to avoid reconnecting
+   *   - pipelinePosts (default: false) send lift ride POSTs through the pipelined HTTP/1.1 engine
+   *     instead of the transport (plaintext http only)
+   *   - pipelineConnections (default: 4, min: 1) connections shared by all pipelined POSTs
+   *   - pipelineDepth (default: 64, min: 1) outstanding requests per pipelined connection
+   *   - pipelineTimeoutSeconds (default: 30, min: 1) longest a pipelined POST may wait for its
+   *     response, including time queued behind earlier requests on its connection
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the transport settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static TransportSettings fromProperties(Properties props) throws IllegalArgumentException {
+    String name = props.getProperty("transport", OKHTTP).trim().toLowerCase();
+    boolean pipelinePosts = Boolean.parseBoolean(props.getProperty("pipelinePosts", "false").trim());
+    int maxConnections, maxStreams, socketMaxIdle, pipelineConnections, pipelineDepth, pipelineTimeoutSeconds;
+    try {
+      maxConnections = Integer.parseInt(props.getProperty("h2MaxConnections", "4").trim());
+      maxStreams = Integer.parseInt(props.getProperty("h2MaxStreamsPerConnection", "100").trim());
+      socketMaxIdle = Integer.parseInt(props.getProperty("socketMaxIdlePerHost", "64").trim());
+      pipelineConnections = Integer.parseInt(props.getProperty("pipelineConnections", "4").trim());
+      pipelineDepth = Integer.parseInt(props.getProperty("pipelineDepth", "64").trim());
+      pipelineTimeoutSeconds =
+          Integer.parseInt(props.getProperty("pipelineTimeoutSeconds", "30").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed transport settings");
+    }
+
+    if (!name.equals(OKHTTP) && !name.equals(URL_CONNECTION) && !name.equals(SOCKET)
+        && !name.equals(HTTP2)) {
+      throw new IllegalArgumentException(
+          "transport must be one of okhttp, urlconnection, socket, h2");
+    }
+    if (maxConnections < 1) {
+      throw new IllegalArgumentException("h2MaxConnections must be at least 1");
+    }
+    if (maxStreams < 1) {
+      throw new IllegalArgumentException("h2MaxStreamsPerConnection must be at least 1");
+    }
+    if (socketMaxIdle < 1) {
+      throw new IllegalArgumentException("socketMaxIdlePerHost must be at least 1");
+    }
+
+    if (pipelineConnections < 1) {
+      throw new IllegalArgumentException("pipelineConnections must be at least 1");
+    }
+    if (pipelineDepth < 1) {
+      throw new IllegalArgumentException("pipelineDepth must be at least 1");
+    }
+    if (pipelineTimeoutSeconds < 1) {
+      throw new IllegalArgumentException("pipelineTimeoutSeconds must be at least 1");
+    }
+
+    return new TransportSettings(name, maxConnections, maxStreams, socketMaxIdle, pipelinePosts,
+        pipelineConnections, pipelineDepth, pipelineTimeoutSeconds);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getH2MaxConnections() {
+    return h2MaxConnections;
+  }
+
+  public int getH2MaxStreamsPerConnection() {
+    return h2MaxStreamsPerConnection;
+  }
+
+  public int getSocketMaxIdlePerHost() {
+    return socketMaxIdlePerHost;
+  }
+
+  public boolean isPipelinePosts() {
+    return pipelinePosts;
+  }
+
+  public int getPipelineConnections() {
+    return pipelineConnections;
+  }
+
+  public int getPipelineDepth() {
+    return pipelineDepth;
+  }
+
+  public int getPipelineTimeoutSeconds() {
+    return pipelineTimeoutSeconds;
+  }
+
+  @Override
+  public String toString() {
+    return "TransportSettings{" +
+        "name='" + name + '\'' +
+        ", h2MaxConnections=" + h2MaxConnections +
+        ", h2MaxStreamsPerConnection=" + h2MaxStreamsPerConnection +
+        ", socketMaxIdlePerHost=" + socketMaxIdlePerHost +
+        ", pipelinePosts=" + pipelinePosts +
+        ", pipelineConnections=" + pipelineConnections +
+        ", pipelineDepth=" + pipelineDepth +
+        ", pipelineTimeoutSeconds=" + pipelineTimeoutSeconds +
+        '}';
+  }
+}
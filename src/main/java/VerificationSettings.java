@@ -0,0 +1,86 @@
+import java.util.Properties;
+
+/**
+ * Immutable read-after-write verification options read from the client properties file.
+ */
+public class VerificationSettings {
+
+  final private boolean enabled;
+  final private int intervalMillis;
+  final private int settleMillis;
+  final private int verticalPerLift;
+
+  private VerificationSettings(boolean enabled, int intervalMillis, int settleMillis,
+      int verticalPerLift) {
+    this.enabled = enabled;
+    this.intervalMillis = intervalMillis;
+    this.settleMillis = settleMillis;
+    this.verticalPerLift = verticalPerLift;
+  }
+
+  /**
+   * Reads verification options from properties. Available properties:
+   *   - verifyReads (default: false) track the vertical each successful POST adds and sample the
+   *     GET endpoints in the background to check the server returns it; assumes the server holds
+   *     no earlier rides for the configured resorts and days
+   *   - verifyIntervalMillis (default: 20, min: 1) pause between verification reads
+   *   - verifySettleMillis (default: 5000, min: 0) how long a stale read may take to catch up
+   *     before it counts as a mismatch
+   *   - verticalPerLift (default: 10, min: 1) vertical of one ride, multiplied by the lift ID
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the verification settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static VerificationSettings fromProperties(Properties props) throws IllegalArgumentException {
+    boolean enabled = Boolean.parseBoolean(props.getProperty("verifyReads", "false").trim());
+    int intervalMillis, settleMillis, verticalPerLift;
+    try {
+      intervalMillis = Integer.parseInt(props.getProperty("verifyIntervalMillis", "20").trim());
+      settleMillis = Integer.parseInt(props.getProperty("verifySettleMillis", "5000").trim());
+      verticalPerLift = Integer.parseInt(props.getProperty("verticalPerLift", "10").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed verification settings");
+    }
+
+    if (intervalMillis < 1) {
+      throw new IllegalArgumentException("verifyIntervalMillis must be at least 1");
+    }
+    if (settleMillis < 0) {
+      throw new IllegalArgumentException("verifySettleMillis cannot be negative");
+    }
+    if (verticalPerLift < 1) {
+      throw new IllegalArgumentException("verticalPerLift must be at least 1");
+    }
+
+    return new VerificationSettings(enabled, intervalMillis, settleMillis, verticalPerLift);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public int getSettleMillis() {
+    return settleMillis;
+  }
+
+  public int getVerticalPerLift() {
+    return verticalPerLift;
+  }
+
+  @Override
+  public String toString() {
+    return "VerificationSettings{" +
+        "enabled=" + enabled +
+        ", intervalMillis=" + intervalMillis +
+        ", settleMillis=" + settleMillis +
+        ", verticalPerLift=" + verticalPerLift +
+        '}';
+  }
+}
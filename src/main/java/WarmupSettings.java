@@ -0,0 +1,77 @@
+import java.util.Properties;
+
+/**
+ * Immutable connection pre-warming options read from the client properties file.
+ */
+public class WarmupSettings {
+
+  final private boolean enabled;
+  final private int connections;
+  final private int requests;
+
+  private WarmupSettings(boolean enabled, int connections, int requests) {
+    this.enabled = enabled;
+    this.connections = connections;
+    this.requests = requests;
+  }
+
+  /**
+   * Reads warm-up options from properties. Available properties:
+   *   - warmup (default: false) warm connections before each phase starts
+   *   - warmupConnections (default: 0, min: 0) connections to open and validate per phase, 0 to
+   *     use the phase's thread count
+   *   - warmupRequests (default: 100, min: 0) extra unrecorded requests per phase to warm the JIT
+   * None are required.
+   *
+   * @param props properties parsed from the properties file
+   * @return the warm-up settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static WarmupSettings fromProperties(Properties props) throws IllegalArgumentException {
+    boolean enabled = Boolean.parseBoolean(props.getProperty("warmup", "false").trim());
+    int connections, requests;
+    try {
+      connections = Integer.parseInt(props.getProperty("warmupConnections", "0").trim());
+      requests = Integer.parseInt(props.getProperty("warmupRequests", "100").trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "could not parse properties file - malformed warm-up settings");
+    }
+
+    if (connections < 0) {
+      throw new IllegalArgumentException("warmupConnections cannot be negative");
+    }
+    if (requests < 0) {
+      throw new IllegalArgumentException("warmupRequests cannot be negative");
+    }
+
+    return new WarmupSettings(enabled, connections, requests);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Connections to warm for a phase.
+   *
+   * @param phaseThreads number of threads in the phase
+   * @return the configured connection count, or the thread count if none was configured
+   */
+  public int getConnections(int phaseThreads) {
+    return connections == 0 ? phaseThreads : connections;
+  }
+
+  public int getRequests() {
+    return requests;
+  }
+
+  @Override
+  public String toString() {
+    return "WarmupSettings{" +
+        "enabled=" + enabled +
+        ", connections=" + connections +
+        ", requests=" + requests +
+        '}';
+  }
+}
@@ -0,0 +1,226 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import statistics.BulkRequestStatistics;
+import statistics.SingleRequestStatistics;
+
+/**
+ * A worker's connection to the coordinator of a distributed run, and the protocol both sides
+ * speak. The worker runs its share of each phase's runners, starting each phase when the
+ * coordinator says so, and finally sends back its report sections and its run's snapshot.
+ * <p>
+ * Messages, all big-endian over one TCP connection, each starting with its type byte:
+ * <pre>
+ *   worker      HELLO     magic (int), version (short)
+ *   coordinator CONFIG    worker index (int), worker count (int), properties file (bytes)
+ *   worker      REACHED   phase (int), once ready for phase 1, or its trigger for a later phase
+ *                         fired
+ *   coordinator START     phase (int), once every worker has reached the phase
+ *   worker      FINISHED  when its last phase is done
+ *   worker      RESULTS   report sections (int count, then strings), RunSnapshot (bytes)
+ * </pre>
+ * Strings are UTF-8 and, like byte blocks, prefixed with their length (int).
+ */
+public class WorkerLink {
+
+  static final int MAGIC = 0x534B4457;  // "SKDW"
+  static final short VERSION = 1;
+  static final byte HELLO = 1;
+  static final byte CONFIG = 2;
+  static final byte REACHED = 3;
+  static final byte START = 4;
+  static final byte FINISHED = 5;
+  static final byte RESULTS = 6;
+
+  private static final Logger logger = LogManager.getLogger(WorkerLink.class);
+
+  private final Socket socket;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private final int index;
+  private final int numWorkers;
+  private final byte[] properties;
+
+  private WorkerLink(Socket socket) throws IOException {
+    this.socket = socket;
+    this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    out.writeByte(HELLO);
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    out.flush();
+    expect(in, CONFIG);
+    this.index = in.readInt();
+    this.numWorkers = in.readInt();
+    this.properties = readBytes(in);
+  }
+
+  /**
+   * Connects to a coordinator and receives this worker's place in the run.
+   *
+   * @param address the coordinator, as host:port
+   * @return the open link
+   * @throws IOException if the coordinator can't be reached or doesn't speak the protocol
+   */
+  public static WorkerLink connect(String address) throws IOException {
+    int colon = address.lastIndexOf(':');
+    if (colon < 1) {
+      throw new IOException("coordinator address must be host:port, was " + address);
+    }
+    int port;
+    try {
+      port = Integer.parseInt(address.substring(colon + 1));
+    } catch (NumberFormatException e) {
+      throw new IOException("invalid coordinator port in " + address);
+    }
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(address.substring(0, colon), port));
+      socket.setTcpNoDelay(true);
+      return new WorkerLink(socket);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Parses the coordinator's properties as this worker's arguments. The worker writes its own CSV,
+   * named after the coordinator's with the worker number appended.
+   *
+   * @return the arguments
+   * @throws IOException              if the properties can't be read
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  public Arguments getArguments() throws IOException, IllegalArgumentException {
+    Properties props = new Properties();
+    props.load(new ByteArrayInputStream(properties));
+    props.remove("distributedWorkers");
+    props.setProperty("csvFilename",
+        props.getProperty("csvFilename", "request-stats").trim() + "-worker" + (index + 1));
+    return Arguments.fromProperties(props);
+  }
+
+  /**
+   * @return this worker's index, starting at 0
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  public int getNumWorkers() {
+    return numWorkers;
+  }
+
+  /**
+   * Tells the coordinator this worker is ready for a phase, then waits for every other worker to
+   * be ready too. Exits if the coordinator is lost.
+   *
+   * @param phase the phase number, starting at 1
+   */
+  public void awaitPhaseStart(int phase) {
+    try {
+      out.writeByte(REACHED);
+      out.writeInt(phase);
+      out.flush();
+      expect(in, START);
+      int started = in.readInt();
+      if (started != phase) {
+        throw new IOException("coordinator started phase " + started + ", expected " + phase);
+      }
+    } catch (IOException e) {
+      fatal("Lost the coordinator waiting for phase " + phase + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Tells the coordinator this worker's phases are done, so it can stop the run's wall timer.
+   */
+  public void finished() {
+    try {
+      out.writeByte(FINISHED);
+      out.flush();
+    } catch (IOException e) {
+      fatal("Lost the coordinator: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Flushes the worker's CSV, calculates its snapshot and sends the results to the coordinator,
+   * then closes the link. The CSV stays on this machine. Exits if the results can't be sent.
+   *
+   * @param stats      the worker's statistics
+   * @param writerLoop the worker's CSV writer thread
+   * @throws InterruptedException if interrupted while waiting for the writer
+   */
+  public void sendResults(BulkRequestStatistics stats, Thread writerLoop)
+      throws InterruptedException {
+    stats.pushDataToWriter(new SingleRequestStatistics[]{});  // empty signals stop
+    writerLoop.join();
+    stats.performFinalCalcs();
+    try {
+      out.writeByte(RESULTS);
+      List<String> sections = new ArrayList<>();
+      if (!stats.getTopTenStatistics().isEmpty()) {
+        sections.add(stats.getTopTenStatistics().summary());
+      }
+      sections.addAll(stats.getReportSections());
+      out.writeInt(sections.size());
+      for (String section : sections) {
+        writeString(out, section);
+      }
+      writeBytes(out, stats.getSnapshot().toBytes());
+      out.flush();
+      socket.close();
+    } catch (IOException e) {
+      fatal("Could not send results to the coordinator: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Reads a message type and fails unless it is the expected one.
+   */
+  static void expect(DataInputStream in, byte type) throws IOException {
+    byte actual = in.readByte();
+    if (actual != type) {
+      throw new IOException("expected message " + type + ", received " + actual);
+    }
+  }
+
+  static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  static void writeString(DataOutputStream out, String value) throws IOException {
+    writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    return new String(readBytes(in), StandardCharsets.UTF_8);
+  }
+
+  private static void fatal(String msg) {
+    logger.error(msg);
+    System.err.println(msg);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import workload.Operation;
+import workload.RequestSource;
+import workload.WorkloadFileWriter;
+
+/**
+ * Command line tool that writes the complete request sequence of a run to a workload file. Point
+ * the client's workloadFile property at the result to replay exactly the same requests every run.
+ * <p>
+ * Usage: WorkloadGenerator output-file [properties-file]
+ * <p>
+ * The properties file (default: arguments.properties) decides the phases, ranges and
+ * distributions, and its workloadSeed the seed. Without a seed one is picked and printed.
+ */
+public class WorkloadGenerator {
+
+  private static final Logger logger = LogManager.getLogger(WorkloadGenerator.class);
+
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: WorkloadGenerator output-file [properties-file]");
+      System.exit(1);
+    }
+    String outFile = args[0];
+    String propertiesFile = args.length == 2 ? args[1] : "arguments.properties";
+
+    Arguments arguments = null;
+    try {
+      arguments = Arguments.fromPropertiesFile(propertiesFile);
+    } catch (IOException e) {
+      System.out.println("Problem reading properties file, please try again: " + e.getMessage());
+      System.exit(1);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Invalid property found: " + e.getMessage());
+      System.exit(1);
+    }
+
+    WorkloadSettings workload = arguments.getWorkloadSettings();
+    long seed = workload.isSeeded() ? workload.getSeed() : System.nanoTime();
+    List<PhasePlan> phases = PhasePlan.standardPhases(arguments);
+
+    // Declare every runner's section up front so the section table can be written first
+    List<int[]> sections = new ArrayList<>();
+    long totalRequests = 0;
+    for (PhasePlan plan : phases) {
+      for (int i = 0; i < plan.getNumThreads(); i++) {
+        sections.add(new int[]{plan.getNumber(), i, plan.getRequestsPerThread()});
+        totalRequests += plan.getRequestsPerThread();
+      }
+    }
+
+    try (WorkloadFileWriter writer = new WorkloadFileWriter(Paths.get(outFile), seed, sections)) {
+      for (PhasePlan plan : phases) {
+        for (int i = 0; i < plan.getNumThreads(); i++) {
+          RequestSource source = WorkloadSettings.seededSource(arguments, seed, plan, i);
+          // Same order PhaseRunner sends them in
+          Operation[] operations = plan.getMix().sequence(
+              arguments.getMixSettings().isInterleaved(),
+              WorkloadSettings.sequenceRandom(seed, plan, i));
+          writeRequests(writer, source, operations);
+        }
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      String msg = "Problem writing workload file: " + e.getMessage();
+      logger.error(msg);
+      System.err.println(msg);
+      System.exit(1);
+    }
+
+    String msg = "Wrote " + totalRequests + " requests for " + sections.size() + " runners to "
+        + outFile + " (seed " + seed + ")";
+    logger.info(msg);
+    System.out.println(msg);
+  }
+
+  /**
+   * Draws and writes one runner's requests.
+   */
+  private static void writeRequests(WorkloadFileWriter writer, RequestSource source,
+      Operation[] operations) throws IOException {
+    for (Operation op : operations) {
+      source.advance(op);
+      writer.write(op, source.getSkierId(), source.getLiftId(), source.getTime());
+    }
+  }
+}
@@ -0,0 +1,119 @@
+import java.util.Properties;
+import java.util.Random;
+import workload.RequestSource;
+import workload.SampledRequestSource;
+
+/**
+ * Immutable options for repeatable workloads, read from the client properties file.
+ */
+public class WorkloadSettings {
+
+  final private boolean seeded;
+  final private long seed;
+  final private String workloadFile;
+
+  private WorkloadSettings(boolean seeded, long seed, String workloadFile) {
+    this.seeded = seeded;
+    this.seed = seed;
+    this.workloadFile = workloadFile;
+  }
+
+  /**
+   * Reads workload options from properties. Available properties:
+   *   - workloadSeed (default: none) seed for the request generator; runs with the same seed and
+   *     arguments send the same requests
+   *   - workloadFile (default: none) pre-generated workload to replay, see WorkloadGenerator;
+   *     takes precedence over workloadSeed
+   * None are required. Without either, every run draws fresh random requests.
+   *
+   * @param props properties parsed from the properties file
+   * @return the workload settings
+   * @throws IllegalArgumentException if any properties are invalid
+   */
+  static WorkloadSettings fromProperties(Properties props) throws IllegalArgumentException {
+    String seedRaw = props.getProperty("workloadSeed");
+    long seed = 0;
+    if (seedRaw != null) {
+      try {
+        seed = Long.parseLong(seedRaw.trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "could not parse properties file - malformed workloadSeed");
+      }
+    }
+    String workloadFile = props.getProperty("workloadFile");
+    if (workloadFile != null) {
+      workloadFile = workloadFile.trim();
+    }
+
+    return new WorkloadSettings(seedRaw != null, seed, workloadFile);
+  }
+
+  public boolean isSeeded() {
+    return seeded;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * @return the workload file to replay, or null to generate requests
+   */
+  public String getWorkloadFile() {
+    return workloadFile;
+  }
+
+  /**
+   * Builds the seeded request source for one runner. The seed is mixed with the phase and runner
+   * so every runner gets its own repeatable stream; WorkloadGenerator uses the same sources, so a
+   * generated file matches a live seeded run exactly.
+   *
+   * @param arguments arguments provided to the client
+   * @param seed      base seed
+   * @param plan      the runner's phase
+   * @param runner    runner index within the phase
+   * @return the request source
+   */
+  static RequestSource seededSource(Arguments arguments, long seed, PhasePlan plan, int runner) {
+    DistributionSettings distributions = arguments.getDistributionSettings();
+    return new SampledRequestSource(
+        distributions.skierSampler(plan.getSkierIdLow(runner), plan.getSkierIdHigh(runner)),
+        distributions.liftSampler(arguments.getNumSkiLifts()),
+        distributions.timeSampler(plan.getStartTime(), plan.getEndTime()),
+        new Random(mix(seed, plan.getNumber(), runner)));
+  }
+
+  /**
+   * Builds the random generator that orders one runner's interleaved operations. Kept apart from
+   * the request source's stream so changing the mix doesn't change which skiers are drawn.
+   *
+   * @param seed   base seed
+   * @param plan   the runner's phase
+   * @param runner runner index within the phase
+   * @return the random generator
+   */
+  static Random sequenceRandom(long seed, PhasePlan plan, int runner) {
+    return new Random(mix(~seed, plan.getNumber(), runner));
+  }
+
+  /**
+   * SplitMix64 finalizer over the seed, phase and runner, so neighbouring runners don't get
+   * correlated java.util.Random streams.
+   */
+  private static long mix(long seed, int phase, int runner) {
+    long z = seed + 0x9E3779B97F4A7C15L * ((long) phase << 32 | runner);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public String toString() {
+    return "WorkloadSettings{" +
+        "seeded=" + seeded +
+        ", seed=" + seed +
+        ", workloadFile='" + workloadFile + '\'' +
+        '}';
+  }
+}
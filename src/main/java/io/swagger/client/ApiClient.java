@@ -17,6 +17,7 @@ import com.squareup.okhttp.internal.http.HttpMethod;
 import com.squareup.okhttp.logging.HttpLoggingInterceptor;
 import com.squareup.okhttp.logging.HttpLoggingInterceptor.Level;
 import okio.BufferedSink;
+import okio.BufferedSource;
 import okio.Okio;
 import org.threeten.bp.LocalDate;
 import org.threeten.bp.OffsetDateTime;
@@ -48,6 +49,9 @@ import io.swagger.client.auth.Authentication;
 import io.swagger.client.auth.HttpBasicAuth;
 import io.swagger.client.auth.ApiKeyAuth;
 import io.swagger.client.auth.OAuth;
+import io.swagger.client.transport.HttpTransport;
+import io.swagger.client.transport.HttpTransports;
+import io.swagger.client.transport.OkHttpTransport;
 
 public class ApiClient {
 
@@ -68,16 +72,25 @@ public class ApiClient {
     private KeyManager[] keyManagers;
 
     private OkHttpClient httpClient;
+    private HttpTransport transport;
+    private CompressionPolicy compressionPolicy;
+    private HostBalancer hostBalancer;
+    private CircuitBreakers circuitBreakers;
+    private RateLimiters rateLimiters;
     private JSON json;
 
     private HttpLoggingInterceptor loggingInterceptor;
 
+    private final ThreadLocal<CallMeter> lastCallMeter = new ThreadLocal<CallMeter>();
+
     /*
      * Constructor for ApiClient
      */
     public ApiClient() {
         httpClient = new OkHttpClient();
-
+        MeteringInterceptor.install(httpClient);
+        FailureInterceptor.install(httpClient);
+        transport = new OkHttpTransport(httpClient);
 
         verifyingSsl = true;
 
@@ -129,6 +142,128 @@ public class ApiClient {
      */
     public ApiClient setHttpClient(OkHttpClient httpClient) {
         this.httpClient = httpClient;
+        MeteringInterceptor.install(httpClient);
+        FailureInterceptor.install(httpClient);
+        if (transport instanceof OkHttpTransport) {
+            transport = new OkHttpTransport(httpClient);
+        }
+        return this;
+    }
+
+    /**
+     * Get the transport used to send requests
+     *
+     * @return The HTTP transport
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set the transport used to send requests. The previous transport is shut down.
+     *
+     * @param transport An HTTP transport
+     * @return Api Client
+     */
+    public ApiClient setTransport(HttpTransport transport) {
+        if (this.transport != null && this.transport != transport) {
+            this.transport.shutdown();
+        }
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Set the transport by name (see {@link HttpTransports#create}). Timeouts of non-OkHttp
+     * transports are taken from the current HTTP client settings.
+     *
+     * @param name Transport name, e.g. "okhttp", "urlconnection" or "socket"
+     * @return Api Client
+     */
+    public ApiClient setTransport(String name) {
+        return setTransport(HttpTransports.create(name, httpClient));
+    }
+
+    /**
+     * Get the request body compression policy
+     *
+     * @return The compression policy, or null if bodies are never compressed
+     */
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * Set the request body compression policy
+     *
+     * @param compressionPolicy A compression policy, or null to disable compression
+     * @return Api Client
+     */
+    public ApiClient setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
+    /**
+     * Get the balancer that spreads calls across several hosts
+     *
+     * @return The host balancer, or null if every call goes to the base path
+     */
+    public HostBalancer getHostBalancer() {
+        return hostBalancer;
+    }
+
+    /**
+     * Set the balancer that spreads calls across several hosts. While one is set, its hosts'
+     * base paths are used instead of {@link #getBasePath()}.
+     *
+     * @param hostBalancer A host balancer, or null to send every call to the base path
+     * @return Api Client
+     */
+    public ApiClient setHostBalancer(HostBalancer hostBalancer) {
+        this.hostBalancer = hostBalancer;
+        return this;
+    }
+
+    /**
+     * Get the per-endpoint circuit breakers
+     *
+     * @return The circuit breakers, or null if calls are never short-circuited
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * Set the per-endpoint circuit breakers. While an endpoint's breaker is open, building a
+     * request for it throws a {@link CircuitOpenException}.
+     *
+     * @param circuitBreakers Circuit breakers, or null to never short-circuit calls
+     * @return Api Client
+     */
+    public ApiClient setCircuitBreakers(CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+        return this;
+    }
+
+    /**
+     * Get the rate limits shared by the callers of this client
+     *
+     * @return The rate limiters, or null if calls are not limited
+     */
+    public RateLimiters getRateLimiters() {
+        return rateLimiters;
+    }
+
+    /**
+     * Set the rate limits shared by the callers of this client. Callers take their permits
+     * before sending, so the client itself never waits for them.
+     *
+     * @param rateLimiters Rate limiters, or null to not limit calls
+     * @return Api Client
+     */
+    public ApiClient setRateLimiters(RateLimiters rateLimiters) {
+        this.rateLimiters = rateLimiters;
         return this;
     }
 
@@ -706,7 +841,13 @@ public class ApiClient {
             contentType = "application/json";
         }
         if (isJsonMime(contentType)) {
-            return json.deserialize(respBody, returnType);
+            CallMeter meter = CallMeter.of(response.request());
+            long start = System.nanoTime();
+            T data = json.deserialize(respBody, returnType);
+            if (meter != null) {
+                meter.recordDeserialization(System.nanoTime() - start);
+            }
+            return data;
         } else if (returnType.equals(String.class)) {
             // Expecting string, return the raw response body.
             return (T) respBody;
@@ -834,13 +975,42 @@ public class ApiClient {
      * @throws ApiException If fail to execute the call
      */
     public <T> ApiResponse<T> execute(Call call, Type returnType) throws ApiException {
+        lastCallMeter.remove();
+        long start = System.currentTimeMillis();
+        Response response;
         try {
-            Response response = call.execute();
-            T data = handleResponse(response, returnType);
-            return new ApiResponse<T>(response.code(), response.headers().toMultimap(), data);
+            // A call that fails here is completed by the transport, which still has its request
+            response = call.execute();
         } catch (IOException e) {
             throw new ApiException(e);
         }
+        CallMeter meter = CallMeter.of(response.request());
+        lastCallMeter.set(meter);
+        try {
+            T data = handleResponse(response, returnType);
+            return new ApiResponse<T>(response.code(), response.headers().toMultimap(), data);
+        } finally {
+            if (meter != null) {
+                meter.complete(System.currentTimeMillis() - start, isServerError(response));
+            }
+        }
+    }
+
+    private static boolean isServerError(Response response) {
+        return response.code() >= 500;
+    }
+
+    /**
+     * Get the wire byte counts of the last call this thread ran through
+     * {@link #execute(Call, Type)}, whether it returned or threw an {@link ApiException}.
+     * {@link #handleResponse(Response, Type)} reads every response body to its end, including
+     * bodies it discards because there is nothing to deserialize them into, so the response
+     * count is final once the call returns or throws.
+     *
+     * @return The meter, or null if the last call failed before a response arrived
+     */
+    public CallMeter getLastCallMeter() {
+        return lastCallMeter.get();
     }
 
     /**
@@ -865,9 +1035,11 @@ public class ApiClient {
      */
     @SuppressWarnings("unchecked")
     public <T> void executeAsync(Call call, final Type returnType, final ApiCallback<T> callback) {
+        final long start = System.currentTimeMillis();
         call.enqueue(new Callback() {
             @Override
             public void onFailure(Request request, IOException e) {
+                CallMeter.fail(request, System.currentTimeMillis() - start);
                 callback.onFailure(new ApiException(e), 0, null);
             }
 
@@ -879,6 +1051,11 @@ public class ApiClient {
                 } catch (ApiException e) {
                     callback.onFailure(e, response.code(), response.headers().toMultimap());
                     return;
+                } finally {
+                    CallMeter meter = CallMeter.of(response.request());
+                    if (meter != null) {
+                        meter.complete(System.currentTimeMillis() - start, isServerError(response));
+                    }
                 }
                 callback.onSuccess(result, response.code(), response.headers().toMultimap());
             }
@@ -902,7 +1079,7 @@ public class ApiClient {
                 // or the status code is 204 (No Content)
                 if (response.body() != null) {
                     try {
-                        response.body().close();
+                        discardBody(response.body());
                     } catch (IOException e) {
                         throw new ApiException(response.message(), e, response.code(), response.headers().toMultimap());
                     }
@@ -924,6 +1101,24 @@ public class ApiClient {
         }
     }
 
+    /**
+     * Read a response body to its end and close it. Reading goes through any metering source
+     * wrapped around the body, so the bytes of a body nobody looks at are still counted.
+     *
+     * @param body The response body
+     * @throws IOException If the body could not be read
+     */
+    private static void discardBody(ResponseBody body) throws IOException {
+        try {
+            BufferedSource source = body.source();
+            while (!source.exhausted()) {
+                source.skip(source.buffer().size());
+            }
+        } finally {
+            body.close();
+        }
+    }
+
     /**
      * Build HTTP call with the given options.
      *
@@ -940,9 +1135,29 @@ public class ApiClient {
      * @throws ApiException If fail to serialize the request body object
      */
     public Call buildCall(String path, String method, List<Pair> queryParams, List<Pair> collectionQueryParams, Object body, Map<String, String> headerParams, Map<String, Object> formParams, String[] authNames, ProgressRequestBody.ProgressRequestListener progressRequestListener) throws ApiException {
-        Request request = buildRequest(path, method, queryParams, collectionQueryParams, body, headerParams, formParams, authNames, progressRequestListener);
+        return buildCall(path, method, queryParams, collectionQueryParams, body, headerParams, formParams, authNames, progressRequestListener, null);
+    }
 
-        return httpClient.newCall(request);
+    /**
+     * Build HTTP call with the given options and a response progress listener.
+     *
+     * @param path The sub-path of the HTTP URL
+     * @param method The request method, one of "GET", "HEAD", "OPTIONS", "POST", "PUT", "PATCH" and "DELETE"
+     * @param queryParams The query parameters
+     * @param collectionQueryParams The collection query parameters
+     * @param body The request body object
+     * @param headerParams The header parameters
+     * @param formParams The form parameters
+     * @param authNames The authentications to apply
+     * @param progressRequestListener Progress request listener
+     * @param progressListener Progress response listener, may be null
+     * @return The HTTP call
+     * @throws ApiException If fail to serialize the request body object
+     */
+    public Call buildCall(String path, String method, List<Pair> queryParams, List<Pair> collectionQueryParams, Object body, Map<String, String> headerParams, Map<String, Object> formParams, String[] authNames, ProgressRequestBody.ProgressRequestListener progressRequestListener, ProgressResponseBody.ProgressListener progressListener) throws ApiException {
+        Request request = buildRequest(path, method, queryParams, collectionQueryParams, body, headerParams, formParams, authNames, progressRequestListener, progressListener);
+
+        return transport.newCall(request);
     }
 
     /**
@@ -961,10 +1176,36 @@ public class ApiClient {
      * @throws ApiException If fail to serialize the request body object
      */
     public Request buildRequest(String path, String method, List<Pair> queryParams, List<Pair> collectionQueryParams, Object body, Map<String, String> headerParams, Map<String, Object> formParams, String[] authNames, ProgressRequestBody.ProgressRequestListener progressRequestListener) throws ApiException {
+        return buildRequest(path, method, queryParams, collectionQueryParams, body, headerParams, formParams, authNames, progressRequestListener, null);
+    }
+
+    /**
+     * Build an HTTP request with the given options. The request is tagged with a
+     * {@link CallMeter} that counts its wire bytes and forwards response progress. With a
+     * {@link HostBalancer} set, the request goes to the host it chooses; with
+     * {@link CircuitBreakers} set, it is only built if its endpoint's breaker lets it through.
+     * Either way the host and breaker permit travel with the request on its meter, and
+     * the call that sends it reports back to them.
+     *
+     * @param path The sub-path of the HTTP URL
+     * @param method The request method, one of "GET", "HEAD", "OPTIONS", "POST", "PUT", "PATCH" and "DELETE"
+     * @param queryParams The query parameters
+     * @param collectionQueryParams The collection query parameters
+     * @param body The request body object
+     * @param headerParams The header parameters
+     * @param formParams The form parameters
+     * @param authNames The authentications to apply
+     * @param progressRequestListener Progress request listener
+     * @param progressListener Progress response listener, may be null
+     * @return The HTTP request
+     * @throws ApiException If fail to serialize the request body object, or a
+     *   {@link CircuitOpenException} if the endpoint's breaker is open
+     */
+    public Request buildRequest(String path, String method, List<Pair> queryParams, List<Pair> collectionQueryParams, Object body, Map<String, String> headerParams, Map<String, Object> formParams, String[] authNames, ProgressRequestBody.ProgressRequestListener progressRequestListener, ProgressResponseBody.ProgressListener progressListener) throws ApiException {
         updateParamsForAuth(authNames, queryParams, headerParams);
 
-        final String url = buildUrl(path, queryParams, collectionQueryParams);
-        final Request.Builder reqBuilder = new Request.Builder().url(url);
+        final CallMeter meter = new CallMeter(progressListener);
+        final Request.Builder reqBuilder = new Request.Builder().tag(meter);
         processHeaderParams(headerParams, reqBuilder);
 
         String contentType = (String) headerParams.get("Content-Type");
@@ -992,13 +1233,46 @@ public class ApiClient {
             reqBody = serialize(body, contentType);
         }
 
-        Request request = null;
+        if (compressionPolicy != null && reqBody != null && !headerParams.containsKey("Content-Encoding")) {
+            try {
+                reqBody = compressionPolicy.apply(path, reqBody, reqBuilder);
+            } catch (IOException e) {
+                throw new ApiException(e);
+            }
+        }
 
-        if(progressRequestListener != null && reqBody != null) {
-            ProgressRequestBody progressRequestBody = new ProgressRequestBody(reqBody, progressRequestListener);
-            request = reqBuilder.method(method, progressRequestBody).build();
-        } else {
-            request = reqBuilder.method(method, reqBody).build();
+        // Only ask the breaker and choose a host once nothing else can fail, as the call now
+        // holds a permit and counts as outstanding on its host
+        String base = basePath;
+        BuiltCall built = null;
+        if (circuitBreakers != null || hostBalancer != null) {
+            built = new BuiltCall();
+            if (circuitBreakers != null) {
+                built.breaker = circuitBreakers.breakerFor(method, path);
+                built.breaker.acquire();
+            }
+            if (hostBalancer != null) {
+                built.host = hostBalancer.select();
+                base = built.host.getBasePath();
+            }
+            meter.attach(built);
+        }
+
+        Request request = null;
+        try {
+            reqBuilder.url(buildUrl(base, path, queryParams, collectionQueryParams));
+            if(progressRequestListener != null && reqBody != null) {
+                ProgressRequestBody progressRequestBody = new ProgressRequestBody(reqBody, progressRequestListener);
+                request = reqBuilder.method(method, progressRequestBody).build();
+            } else {
+                request = reqBuilder.method(method, reqBody).build();
+            }
+        } catch (RuntimeException e) {
+            // A request that was never built can't be sent, so give back what it holds
+            if (built != null) {
+                built.release();
+            }
+            throw e;
         }
 
         return request;
@@ -1013,8 +1287,12 @@ public class ApiClient {
      * @return The full URL
      */
     public String buildUrl(String path, List<Pair> queryParams, List<Pair> collectionQueryParams) {
+        return buildUrl(basePath, path, queryParams, collectionQueryParams);
+    }
+
+    private String buildUrl(String base, String path, List<Pair> queryParams, List<Pair> collectionQueryParams) {
         final StringBuilder url = new StringBuilder();
-        url.append(basePath).append(path);
+        url.append(base).append(path);
 
         if (queryParams != null && !queryParams.isEmpty()) {
             // support (constant) query string in `path`, e.g. "/posts?draft=1"
@@ -1200,4 +1478,31 @@ public class ApiClient {
             throw new AssertionError(e);
         }
     }
+
+    /**
+     * The host and breaker permit a built request holds until its call completes.
+     */
+    static final class BuiltCall {
+
+        private HostBalancer.Host host;
+        private CircuitBreakers.Breaker breaker;
+
+        void complete(long latencyMillis, boolean failed) {
+            if (host != null) {
+                host.complete(latencyMillis, failed);
+            }
+            if (breaker != null) {
+                breaker.complete(latencyMillis, failed);
+            }
+        }
+
+        void release() {
+            if (host != null) {
+                host.release();
+            }
+            if (breaker != null) {
+                breaker.release();
+            }
+        }
+    }
 }
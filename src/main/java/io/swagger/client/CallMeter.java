@@ -0,0 +1,204 @@
+package io.swagger.client;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Counts the bytes one call puts on and takes off the wire. A meter is attached to every request
+ * built by {@link ApiClient} as its tag, so a single network interceptor (or a transport) can find
+ * it without the generated API classes registering a new interceptor per call.
+ *
+ * <p>Header sizes are the HTTP/1.1 encoding of the header block; for HTTP/2 they are an upper
+ * bound because HPACK compresses them. Body sizes are exact and measured before any transparent
+ * gzip decoding.</p>
+ */
+public class CallMeter {
+
+    private final ProgressResponseBody.ProgressListener progressListener;
+
+    private volatile long requestBytes = -1L;
+    private volatile long responseHeaderBytes = -1L;
+    private volatile long responseBodyBytes;
+    private volatile boolean responseComplete;
+    private volatile long deserializeNanos = -1L;
+    // Host and breaker permit the call holds until it completes, taken by whoever completes it
+    private ApiClient.BuiltCall builtCall;
+
+    /**
+     * @param progressListener Optional listener that also receives response body progress
+     */
+    public CallMeter(ProgressResponseBody.ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Find the meter attached to a request.
+     *
+     * @param request The request
+     * @return The meter, or null when the request was not built by {@link ApiClient}
+     */
+    public static CallMeter of(Request request) {
+        Object tag = request.tag();
+        return tag instanceof CallMeter ? (CallMeter) tag : null;
+    }
+
+    /**
+     * Meter an exchange: record the size of the request as sent and wrap the response body so
+     * the bytes read from it are counted. Requests without a meter are passed through.
+     *
+     * @param request The request as it went onto the wire
+     * @param response The raw network response
+     * @return The response with a counting body
+     */
+    public static Response meter(Request request, Response response) {
+        CallMeter meter = of(request);
+        if (meter == null) {
+            return response;
+        }
+        meter.recordRequest(request);
+        return meter.recordResponse(response);
+    }
+
+    /**
+     * Complete the host and breaker of a call that failed before a response arrived. Calls
+     * that already completed, or hold neither, are left alone.
+     *
+     * @param request The request that failed
+     * @param latencyMillis How long the call ran before it failed
+     */
+    public static void fail(Request request, long latencyMillis) {
+        CallMeter meter = of(request);
+        if (meter != null) {
+            meter.complete(latencyMillis, true);
+        }
+    }
+
+    synchronized void attach(ApiClient.BuiltCall builtCall) {
+        this.builtCall = builtCall;
+    }
+
+    /**
+     * Report the call's outcome to its host and breaker, the first time only.
+     *
+     * @param latencyMillis How long the call took
+     * @param failed Whether it failed
+     */
+    void complete(long latencyMillis, boolean failed) {
+        ApiClient.BuiltCall built;
+        synchronized (this) {
+            built = builtCall;
+            builtCall = null;
+        }
+        if (built != null) {
+            built.complete(latencyMillis, failed);
+        }
+    }
+
+    private void recordRequest(Request request) {
+        String query = request.httpUrl().encodedQuery();
+        long bytes = request.method().length() + 1
+                + request.httpUrl().encodedPath().length()
+                + (query == null ? 0 : query.length() + 1)
+                + " HTTP/1.1\r\n".length()
+                + headerBytes(request.headers());
+        RequestBody body = request.body();
+        if (body != null) {
+            try {
+                bytes += Math.max(0L, body.contentLength());
+            } catch (IOException e) {
+                // Unknown length, leave the body out of the count
+            }
+        }
+        requestBytes = bytes;
+    }
+
+    private Response recordResponse(Response response) {
+        responseHeaderBytes = "HTTP/1.1 000 \r\n".length()
+                + (response.message() == null ? 0 : response.message().length())
+                + headerBytes(response.headers());
+        if (response.body() == null) {
+            responseComplete = true;
+            return response;
+        }
+        ProgressResponseBody.ProgressListener counter = new ProgressResponseBody.ProgressListener() {
+            @Override
+            public void update(long bytesRead, long contentLength, boolean done) {
+                responseBodyBytes = bytesRead;
+                if (done) {
+                    responseComplete = true;
+                }
+                if (progressListener != null) {
+                    progressListener.update(bytesRead, contentLength, done);
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(new ProgressResponseBody(response.body(), counter))
+                .build();
+    }
+
+    /**
+     * Record how long turning the response body into a model object took.
+     *
+     * @param nanos Deserialization time in nanoseconds
+     */
+    void recordDeserialization(long nanos) {
+        deserializeNanos = nanos;
+    }
+
+    private static long headerBytes(Headers headers) {
+        long bytes = 2; // blank line ending the header block
+        for (int i = 0; i < headers.size(); i++) {
+            bytes += headers.name(i).length() + 2 + headers.value(i).length() + 2;
+        }
+        return bytes;
+    }
+
+    /**
+     * Bytes sent for the request, including the request line and headers.
+     *
+     * @return Request bytes, or -1 if the request never reached the network
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * Bytes received for the response so far, including the status line and headers.
+     *
+     * @return Response bytes, or -1 if no response was received
+     */
+    public long getResponseBytes() {
+        long headerBytes = responseHeaderBytes;
+        return headerBytes < 0 ? -1L : headerBytes + responseBodyBytes;
+    }
+
+    /**
+     * Bytes of response body received so far, as sent on the wire.
+     *
+     * @return Response body bytes, or -1 if no response was received
+     */
+    public long getResponseBodyBytes() {
+        return responseHeaderBytes < 0 ? -1L : responseBodyBytes;
+    }
+
+    /**
+     * Time spent deserializing the JSON response body, not counting reading it off the wire.
+     *
+     * @return Nanoseconds, or -1 if the response was not deserialized into a model object
+     */
+    public long getDeserializeNanos() {
+        return deserializeNanos;
+    }
+
+    /**
+     * @return True once the response body has been read to the end
+     */
+    public boolean isResponseComplete() {
+        return responseComplete;
+    }
+}
@@ -0,0 +1,298 @@
+package io.swagger.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One circuit breaker per endpoint of an {@link ApiClient}, so a struggling server gets room to
+ * recover instead of every runner hammering it, and the client stops spending its time on errors.
+ * <p>
+ * An endpoint is a method and path template, e.g. "GET /skiers/{skierID}/vertical"; requests whose
+ * path matches none of the templates share one breaker per method. Each breaker is:
+ * <ul>
+ *   <li>closed: calls go through and their outcomes fill a sliding window of the last
+ *   {@code windowSize} calls. Once it holds at least {@code minimumCalls}, the breaker opens if
+ *   the share of failed calls (no response, or a server error) or of slow calls reaches its
+ *   threshold.</li>
+ *   <li>open: calls fail at once with a {@link CircuitOpenException}, without being sent, until
+ *   {@code openMillis} have passed.</li>
+ *   <li>half-open: {@code halfOpenCalls} trial calls go through, the rest are short-circuited.
+ *   Once all trials are back the breaker closes, or opens again if the trials cross a
+ *   threshold.</li>
+ * </ul>
+ */
+public class CircuitBreakers {
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long slowCallMillis;
+    private final int slowCallRatePercent;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final List<Template> templates = new ArrayList<Template>();
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<String, Breaker>();
+
+    /**
+     * @param endpoints "method path" templates, path parameters in braces
+     * @param windowSize calls in each breaker's sliding window
+     * @param minimumCalls calls the window needs before the breaker may open
+     * @param failureRatePercent share of failed calls that opens the breaker
+     * @param slowCallMillis latency from which a call counts as slow
+     * @param slowCallRatePercent share of slow calls that opens the breaker
+     * @param openMillis how long an open breaker short-circuits calls
+     * @param halfOpenCalls trial calls let through once the open time is over
+     */
+    public CircuitBreakers(List<String> endpoints, int windowSize, int minimumCalls, int failureRatePercent, long slowCallMillis, int slowCallRatePercent, long openMillis, int halfOpenCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        for (String endpoint : endpoints) {
+            templates.add(new Template(endpoint));
+        }
+    }
+
+    /**
+     * Find the breaker guarding a request.
+     *
+     * @param method The request method
+     * @param path The request path, parameters filled in
+     * @return The endpoint's breaker
+     */
+    public Breaker breakerFor(String method, String path) {
+        String endpoint = method + " *";
+        for (Template template : templates) {
+            if (template.method.equals(method) && template.path.matcher(path).matches()) {
+                endpoint = template.endpoint;
+                break;
+            }
+        }
+        Breaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            Breaker created = new Breaker(endpoint);
+            breaker = breakers.putIfAbsent(endpoint, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Provide each endpoint's breaker activity for the run report.
+     *
+     * @return a human readable summary
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Circuit Breakers (window %d calls, open at %d%% failed or %d%% slower than %d ms):\n", windowSize, failureRatePercent, slowCallRatePercent, slowCallMillis));
+        Map<String, Breaker> sorted = new TreeMap<String, Breaker>(breakers);
+        if (sorted.isEmpty()) {
+            builder.append("\tNo calls\n");
+        }
+        for (Breaker breaker : sorted.values()) {
+            synchronized (breaker) {
+                long openTime = breaker.openMillisTotal + (breaker.state == State.OPEN ? Math.min(System.currentTimeMillis() - breaker.openedAt, openMillis) : 0);
+                builder.append("\t").append(breaker.endpoint).append(":\n");
+                builder.append(String.format("\t\tState: %s, Opened: %d times, Open for: %.2f seconds\n", breaker.state, breaker.timesOpened, openTime / 1000.0));
+                builder.append(String.format("\t\tCalls: %d, Failed: %d, Slow: %d, Short-circuited: %d\n", breaker.calls, breaker.failedCalls, breaker.slowCalls, breaker.shortCircuited));
+            }
+        }
+        return builder.toString();
+    }
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * The breaker of one endpoint. Its state is guarded by the breaker itself; calls last
+     * milliseconds, so the lock is never contended for long.
+     */
+    public class Breaker {
+
+        private final String endpoint;
+        private State state = State.CLOSED;
+        // Sliding window as a ring of outcomes, with running counts of its failed and slow calls
+        private final boolean[] windowFailed = new boolean[windowSize];
+        private final boolean[] windowSlow = new boolean[windowSize];
+        private int windowNext;
+        private int windowCount;
+        private int windowFailures;
+        private int windowSlowCalls;
+        private long openedAt;
+        private int trialsIssued;
+        private int trialsDone;
+        private int trialFailures;
+        private int trialSlowCalls;
+
+        private long calls;
+        private long failedCalls;
+        private long slowCalls;
+        private long shortCircuited;
+        private int timesOpened;
+        private long openMillisTotal;
+
+        Breaker(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * Ask to send a call. A permitted call must be handed back through {@link #complete},
+         * or released if it is never sent.
+         *
+         * @throws CircuitOpenException if the call is short-circuited
+         */
+        public synchronized void acquire() throws CircuitOpenException {
+            long now = System.currentTimeMillis();
+            if (state == State.OPEN) {
+                if (now - openedAt < openMillis) {
+                    throw shortCircuit(openedAt + openMillis - now);
+                }
+                // Open for exactly openMillis, however long it was until the next call came
+                openMillisTotal += openMillis;
+                state = State.HALF_OPEN;
+                trialsIssued = 0;
+                trialsDone = 0;
+                trialFailures = 0;
+                trialSlowCalls = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsIssued >= halfOpenCalls) {
+                    // The trials are still out, check back after another open period
+                    throw shortCircuit(openMillis);
+                }
+                trialsIssued++;
+            }
+        }
+
+        private CircuitOpenException shortCircuit(long retryAfterMillis) {
+            shortCircuited++;
+            return new CircuitOpenException(endpoint, retryAfterMillis);
+        }
+
+        /**
+         * Give back a permitted call that was never sent.
+         */
+        synchronized void release() {
+            if (state == State.HALF_OPEN && trialsIssued > trialsDone) {
+                trialsIssued--;
+            }
+        }
+
+        /**
+         * Record the outcome of a permitted call.
+         *
+         * @param latencyMillis time from sending the call to its response or failure
+         * @param failed true if no response arrived or the server answered with a server error
+         */
+        public synchronized void complete(long latencyMillis, boolean failed) {
+            boolean slow = latencyMillis >= slowCallMillis;
+            calls++;
+            if (failed) {
+                failedCalls++;
+            }
+            if (slow) {
+                slowCalls++;
+            }
+
+            if (state == State.HALF_OPEN) {
+                trialsDone++;
+                trialFailures += failed ? 1 : 0;
+                trialSlowCalls += slow ? 1 : 0;
+                if (trialsDone >= halfOpenCalls) {
+                    if (crosses(trialFailures, trialSlowCalls, trialsDone)) {
+                        open();
+                    } else {
+                        state = State.CLOSED;
+                        clearWindow();
+                    }
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // Sent before the breaker opened
+                return;
+            }
+
+            if (windowCount == windowSize) {
+                windowFailures -= windowFailed[windowNext] ? 1 : 0;
+                windowSlowCalls -= windowSlow[windowNext] ? 1 : 0;
+            } else {
+                windowCount++;
+            }
+            windowFailed[windowNext] = failed;
+            windowSlow[windowNext] = slow;
+            windowFailures += failed ? 1 : 0;
+            windowSlowCalls += slow ? 1 : 0;
+            windowNext = (windowNext + 1) % windowSize;
+            if (windowCount >= minimumCalls && crosses(windowFailures, windowSlowCalls, windowCount)) {
+                open();
+            }
+        }
+
+        private boolean crosses(int failures, int slow, int total) {
+            return failures * 100 >= failureRatePercent * total || slow * 100 >= slowCallRatePercent * total;
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            timesOpened++;
+            clearWindow();
+        }
+
+        private void clearWindow() {
+            windowNext = 0;
+            windowCount = 0;
+            windowFailures = 0;
+            windowSlowCalls = 0;
+        }
+    }
+
+    /**
+     * A "method path" template compiled to match request paths.
+     */
+    private static class Template {
+
+        private static final Pattern PARAMETER = Pattern.compile("\\{[^/}]*\\}");
+
+        private final String endpoint;
+        private final String method;
+        private final Pattern path;
+
+        Template(String endpoint) {
+            int space = endpoint.indexOf(' ');
+            if (space < 1) {
+                throw new IllegalArgumentException("endpoint must be \"method path\": " + endpoint);
+            }
+            this.endpoint = endpoint;
+            this.method = endpoint.substring(0, space);
+            String template = endpoint.substring(space + 1);
+            Matcher parameters = PARAMETER.matcher(template);
+            StringBuilder regex = new StringBuilder();
+            int literalStart = 0;
+            while (parameters.find()) {
+                regex.append(Pattern.quote(template.substring(literalStart, parameters.start())));
+                regex.append("[^/]+");
+                literalStart = parameters.end();
+            }
+            regex.append(Pattern.quote(template.substring(literalStart)));
+            this.path = Pattern.compile(regex.toString());
+        }
+    }
+}
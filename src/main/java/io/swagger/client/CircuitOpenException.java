@@ -0,0 +1,29 @@
+package io.swagger.client;
+
+/**
+ * Thrown instead of sending a call while the {@link CircuitBreakers} breaker of its endpoint is
+ * open. Nothing reached the server, so callers should record the call apart from failed ones.
+ */
+public class CircuitOpenException extends ApiException {
+
+    private final String endpoint;
+    private final long retryAfterMillis;
+
+    /**
+     * @param endpoint The "method path" template of the short-circuited call
+     * @param retryAfterMillis How long until the breaker lets a call through again, at the earliest
+     */
+    public CircuitOpenException(String endpoint, long retryAfterMillis) {
+        super("circuit open for " + endpoint);
+        this.endpoint = endpoint;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,204 @@
+package io.swagger.client;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Decides which request bodies are gzip-compressed and measures what that costs and saves.
+ * <p>
+ * A body is compressed when its request path contains one of the configured path fragments
+ * ("*" matches every path) and it is at least {@code minBytes} long. Compression uses pooled
+ * deflaters. Bytes in and out and the CPU time spent are recorded per matching fragment, so the
+ * trade-off can be judged from a real run.
+ */
+public class CompressionPolicy {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int MAX_IDLE_DEFLATERS = 64;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final List<String> paths;
+    private final int minBytes;
+    private final DeflaterPool deflaters;
+    private final ConcurrentMap<String, PathStats> statsByPath = new ConcurrentHashMap<String, PathStats>();
+
+    /**
+     * @param paths path fragments to compress, "*" for all
+     * @param minBytes minimum body size to compress
+     * @param level Deflater compression level, 0-9
+     */
+    public CompressionPolicy(List<String> paths, int minBytes, int level) {
+        this.paths = Collections.unmodifiableList(new ArrayList<String>(paths));
+        this.minBytes = minBytes;
+        this.deflaters = new DeflaterPool(level, MAX_IDLE_DEFLATERS);
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public int getMinBytes() {
+        return minBytes;
+    }
+
+    public int getLevel() {
+        return deflaters.getLevel();
+    }
+
+    /**
+     * The configured fragment matching a path.
+     *
+     * @param path The request path
+     * @return the first matching fragment, or null if the path is not enabled
+     */
+    public String match(String path) {
+        for (String fragment : paths) {
+            if ("*".equals(fragment) || path.contains(fragment)) {
+                return fragment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compress a request body if the policy says so, setting the Content-Encoding header on the
+     * request builder when it does.
+     *
+     * @param path The request path, used for matching
+     * @param body The uncompressed body
+     * @param reqBuilder Builder of the request the body belongs to
+     * @return the body to send, either the original or a gzip-compressed copy
+     * @throws IOException If the original body cannot be written
+     */
+    public RequestBody apply(String path, RequestBody body, Request.Builder reqBuilder) throws IOException {
+        String fragment = match(path);
+        if (fragment == null) {
+            return body;
+        }
+        PathStats stats = statsFor(fragment);
+
+        // Buffer first: the length decides whether compressing is worth it
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        byte[] raw = buffer.readByteArray();
+        if (raw.length < minBytes) {
+            stats.skipped.incrementAndGet();
+            return RequestBody.create(body.contentType(), raw);
+        }
+
+        long cpuStart = cpuTimeNanos();
+        byte[] compressed = gzip(raw);
+        stats.cpuNanos.addAndGet(cpuTimeNanos() - cpuStart);
+        stats.compressed.incrementAndGet();
+        stats.bytesIn.addAndGet(raw.length);
+        stats.bytesOut.addAndGet(compressed.length);
+
+        reqBuilder.header("Content-Encoding", "gzip");
+        MediaType contentType = body.contentType();
+        return RequestBody.create(contentType, compressed);
+    }
+
+    /**
+     * Gzip a byte array with a pooled deflater.
+     *
+     * @param raw The uncompressed bytes
+     * @return a complete gzip member
+     */
+    byte[] gzip(byte[] raw) {
+        Buffer out = new Buffer();
+        // Header: magic, CM=deflate, no flags, no mtime, no extra flags, OS=unknown
+        out.writeShortLe(GZIP_MAGIC);
+        out.writeByte(Deflater.DEFLATED);
+        out.writeByte(0);
+        out.writeIntLe(0);
+        out.writeByte(0);
+        out.writeByte(0xff);
+
+        Deflater deflater = deflaters.acquire();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] chunk = new byte[Math.max(64, Math.min(raw.length, 8192))];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+        } finally {
+            deflaters.release(deflater);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(raw, 0, raw.length);
+        out.writeIntLe((int) crc.getValue());
+        out.writeIntLe(raw.length);
+        return out.readByteArray();
+    }
+
+    /**
+     * Describe what compression did so far, one block per path fragment.
+     *
+     * @return a human readable summary
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Request Compression (level %d, min %d bytes):\n", getLevel(), minBytes));
+        Map<String, PathStats> sorted = new TreeMap<String, PathStats>(statsByPath);
+        if (sorted.isEmpty()) {
+            builder.append("\tNo matching requests\n");
+        }
+        for (Map.Entry<String, PathStats> entry : sorted.entrySet()) {
+            PathStats stats = entry.getValue();
+            long in = stats.bytesIn.get();
+            long out = stats.bytesOut.get();
+            builder.append("\t").append(entry.getKey()).append(":\n");
+            builder.append(String.format("\t\tCompressed: %d, Below threshold: %d\n", stats.compressed.get(), stats.skipped.get()));
+            builder.append(String.format("\t\tBytes: %d -> %d (saved %d, ratio %.2f)\n", in, out, in - out, in == 0 ? 1.0 : (double) out / in));
+            builder.append(String.format("\t\tCPU time: %.2f ms\n", stats.cpuNanos.get() / 1e6));
+        }
+        return builder.toString();
+    }
+
+    private PathStats statsFor(String fragment) {
+        PathStats stats = statsByPath.get(fragment);
+        if (stats == null) {
+            PathStats created = new PathStats();
+            stats = statsByPath.putIfAbsent(fragment, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private static long cpuTimeNanos() {
+        // Thread CPU time excludes time spent descheduled; fall back to wall time if unsupported
+        if (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+            return THREADS.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    private static class PathStats {
+        final AtomicLong compressed = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong bytesIn = new AtomicLong();
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong cpuNanos = new AtomicLong();
+    }
+}
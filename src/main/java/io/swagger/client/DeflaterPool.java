@@ -0,0 +1,63 @@
+package io.swagger.client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of raw (no zlib header) {@link Deflater}s at one compression level. Creating a
+ * Deflater allocates native memory, so reusing them keeps compression cheap on hot request paths.
+ */
+public class DeflaterPool {
+
+    private final int level;
+    private final int maxIdle;
+    private final Queue<Deflater> idle = new ConcurrentLinkedQueue<Deflater>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param level Deflater compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param maxIdle maximum number of idle deflaters kept for reuse
+     */
+    public DeflaterPool(int level, int maxIdle) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+        this.level = level;
+        this.maxIdle = maxIdle;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Take a deflater from the pool, creating one if none are idle.
+     *
+     * @return a reset deflater
+     */
+    public Deflater acquire() {
+        Deflater deflater = idle.poll();
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+        idleCount.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Return a deflater to the pool, or free it if the pool is full.
+     *
+     * @param deflater a deflater obtained from {@link #acquire()}
+     */
+    public void release(Deflater deflater) {
+        deflater.reset();
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(deflater);
+        } else {
+            idleCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.swagger.client;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Application interceptor that completes the host and breaker of a call that fails before a
+ * response arrives. A failed synchronous call only hands its caller the exception, so the
+ * request it was built from, and the {@link CallMeter} tagged on it, are only reachable here.
+ */
+class FailureInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        long start = System.currentTimeMillis();
+        try {
+            return chain.proceed(request);
+        } catch (IOException e) {
+            CallMeter.fail(request, System.currentTimeMillis() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            CallMeter.fail(request, System.currentTimeMillis() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Register the interceptor on a client unless it is already there.
+     *
+     * @param client The client
+     */
+    static void install(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof FailureInterceptor) {
+                return;
+            }
+        }
+        client.interceptors().add(new FailureInterceptor());
+    }
+}
@@ -13,68 +13,29 @@
 package io.swagger.client;
 
 import com.squareup.okhttp.*;
-import okio.Buffer;
-import okio.BufferedSink;
-import okio.GzipSink;
-import okio.Okio;
 
 import java.io.IOException;
 
 /**
- * Encodes request bodies using gzip.
- *
- * Taken from https://github.com/square/okhttp/issues/350
+ * Applies a {@link CompressionPolicy} at the OkHttp layer, for OkHttp clients used outside
+ * {@link ApiClient}. ApiClient itself applies its policy while building requests, which works for
+ * every transport, so this interceptor is not needed there.
  */
 class GzipRequestInterceptor implements Interceptor {
+    private final CompressionPolicy policy;
+
+    GzipRequestInterceptor(CompressionPolicy policy) {
+        this.policy = policy;
+    }
+
     @Override public Response intercept(Chain chain) throws IOException {
         Request originalRequest = chain.request();
         if (originalRequest.body() == null || originalRequest.header("Content-Encoding") != null) {
             return chain.proceed(originalRequest);
         }
 
-        Request compressedRequest = originalRequest.newBuilder()
-                                                   .header("Content-Encoding", "gzip")
-                                                   .method(originalRequest.method(), forceContentLength(gzip(originalRequest.body())))
-                                                   .build();
-        return chain.proceed(compressedRequest);
-    }
-
-    private RequestBody forceContentLength(final RequestBody requestBody) throws IOException {
-        final Buffer buffer = new Buffer();
-        requestBody.writeTo(buffer);
-        return new RequestBody() {
-            @Override
-            public MediaType contentType() {
-                return requestBody.contentType();
-            }
-
-            @Override
-            public long contentLength() {
-                return buffer.size();
-            }
-
-            @Override
-            public void writeTo(BufferedSink sink) throws IOException {
-                sink.write(buffer.snapshot());
-            }
-        };
-    }
-
-    private RequestBody gzip(final RequestBody body) {
-        return new RequestBody() {
-            @Override public MediaType contentType() {
-                return body.contentType();
-            }
-
-            @Override public long contentLength() {
-                return -1; // We don't know the compressed length in advance!
-            }
-
-            @Override public void writeTo(BufferedSink sink) throws IOException {
-                BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
-                body.writeTo(gzipSink);
-                gzipSink.close();
-            }
-        };
+        Request.Builder builder = originalRequest.newBuilder();
+        RequestBody body = policy.apply(originalRequest.httpUrl().encodedPath(), originalRequest.body(), builder);
+        return chain.proceed(builder.method(originalRequest.method(), body).build());
     }
-}
\ No newline at end of file
+}
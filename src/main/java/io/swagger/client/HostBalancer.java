@@ -0,0 +1,219 @@
+package io.swagger.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads the calls of an {@link ApiClient} across several base paths, so a cluster can be load
+ * tested without a load balancer in front of it becoming the bottleneck being measured.
+ * <p>
+ * A host is chosen for every request as it is built, and the call is counted as outstanding on
+ * that host until its response (or failure) arrives. Strategies:
+ * <ul>
+ *   <li>round-robin: hosts take turns</li>
+ *   <li>least-outstanding: the host with the fewest calls in flight, ties taking turns</li>
+ *   <li>power-of-two: of two hosts picked at random, the one with the lower expected latency,
+ *   which is its moving average latency plus a millisecond, times its calls in flight plus one.
+ *   The extra millisecond keeps calls in flight counting when a host answers in under a
+ *   millisecond, as on a LAN. Hosts that have not answered yet are expected to be fast, so every
+ *   host gets tried, and failed calls count as slow ones.</li>
+ * </ul>
+ */
+public class HostBalancer {
+
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String LEAST_OUTSTANDING = "leastOutstanding";
+    public static final String POWER_OF_TWO = "powerOfTwo";
+
+    // Weight of the newest latency in each host's moving average
+    private static final double EWMA_ALPHA = 0.2;
+    // Failures count as at least this slow, so a host that refuses calls quickly is not favoured
+    private static final long FAILURE_PENALTY_MILLIS = 1000;
+
+    private final List<Host> hosts;
+    private final String strategy;
+    private final AtomicInteger turn = new AtomicInteger();
+
+    /**
+     * @param basePaths base paths of the hosts, e.g. http://10.0.0.1:8080/server
+     * @param strategy one of {@link #ROUND_ROBIN}, {@link #LEAST_OUTSTANDING} or {@link #POWER_OF_TWO}
+     * @throws IllegalArgumentException if there are no hosts or the strategy is unknown
+     */
+    public HostBalancer(List<String> basePaths, String strategy) {
+        if (basePaths.isEmpty()) {
+            throw new IllegalArgumentException("no hosts to balance across");
+        }
+        if (!ROUND_ROBIN.equals(strategy) && !LEAST_OUTSTANDING.equals(strategy) && !POWER_OF_TWO.equals(strategy)) {
+            throw new IllegalArgumentException("unknown balancing strategy: " + strategy);
+        }
+        List<Host> created = new ArrayList<Host>();
+        for (String basePath : basePaths) {
+            created.add(new Host(basePath));
+        }
+        this.hosts = Collections.unmodifiableList(created);
+        this.strategy = strategy;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Choose the host for the next call and count the call as outstanding on it. Every chosen
+     * host must be handed back through {@link Host#complete}, or released if the call is never
+     * sent.
+     *
+     * @return the host
+     */
+    public Host select() {
+        Host host;
+        if (hosts.size() == 1) {
+            host = hosts.get(0);
+        } else if (LEAST_OUTSTANDING.equals(strategy)) {
+            host = leastOutstanding();
+        } else if (POWER_OF_TWO.equals(strategy)) {
+            host = powerOfTwo();
+        } else {
+            host = hosts.get(nextTurn());
+        }
+        host.begin();
+        return host;
+    }
+
+    private int nextTurn() {
+        return (turn.getAndIncrement() & Integer.MAX_VALUE) % hosts.size();
+    }
+
+    private Host leastOutstanding() {
+        int start = nextTurn();
+        Host best = null;
+        for (int i = 0; i < hosts.size(); i++) {
+            Host candidate = hosts.get((start + i) % hosts.size());
+            if (best == null || candidate.outstanding.get() < best.outstanding.get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private Host powerOfTwo() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(hosts.size());
+        int second = random.nextInt(hosts.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Host a = hosts.get(first);
+        Host b = hosts.get(second);
+        return a.expectedMillis() <= b.expectedMillis() ? a : b;
+    }
+
+    /**
+     * Provide the per-host breakdown for the run report.
+     *
+     * @return a human readable summary
+     */
+    public String summary() {
+        long total = 0;
+        for (Host host : hosts) {
+            total += host.calls.get();
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Host Balancing (%s across %d hosts):\n", strategy, hosts.size()));
+        for (Host host : hosts) {
+            long calls = host.calls.get();
+            builder.append("\t").append(host.basePath).append(":\n");
+            builder.append(String.format("\t\tCalls: %d (%.1f%%), Failed: %d\n", calls, total == 0 ? 0.0 : 100.0 * calls / total, host.failures.get()));
+            builder.append(String.format("\t\tLatency (ms): mean %.2f, max %d, moving average %.2f\n", calls == 0 ? 0.0 : host.latencyMillisSum.get() / (double) calls, host.maxLatencyMillis.get(), host.averageMillis()));
+            builder.append(String.format("\t\tMost outstanding: %d\n", host.maxOutstanding.get()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * One balanced host and what the client has seen of it.
+     */
+    public static class Host {
+
+        private final String basePath;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger maxOutstanding = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong latencyMillisSum = new AtomicLong();
+        private final AtomicLong maxLatencyMillis = new AtomicLong();
+        // Moving average latency in milliseconds, as double bits; negative until the first call
+        private final AtomicLong averageBits = new AtomicLong(Double.doubleToLongBits(-1.0));
+
+        Host(String basePath) {
+            this.basePath = basePath;
+        }
+
+        public String getBasePath() {
+            return basePath;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        private void begin() {
+            int inFlight = outstanding.incrementAndGet();
+            int max = maxOutstanding.get();
+            while (inFlight > max && !maxOutstanding.compareAndSet(max, inFlight)) {
+                max = maxOutstanding.get();
+            }
+        }
+
+        /**
+         * Stop counting a call that was never sent as outstanding.
+         */
+        void release() {
+            outstanding.decrementAndGet();
+        }
+
+        /**
+         * Record the end of a call chosen by {@link HostBalancer#select}.
+         *
+         * @param latencyMillis time from sending the call to its response or failure
+         * @param failed true if no response arrived or the host answered with a server error
+         */
+        public void complete(long latencyMillis, boolean failed) {
+            outstanding.decrementAndGet();
+            calls.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            latencyMillisSum.addAndGet(latencyMillis);
+            long maxLatency = maxLatencyMillis.get();
+            while (latencyMillis > maxLatency && !maxLatencyMillis.compareAndSet(maxLatency, latencyMillis)) {
+                maxLatency = maxLatencyMillis.get();
+            }
+            long sample = failed ? Math.max(latencyMillis, FAILURE_PENALTY_MILLIS) : latencyMillis;
+            long bits;
+            double updated;
+            do {
+                bits = averageBits.get();
+                double average = Double.longBitsToDouble(bits);
+                updated = average < 0 ? sample : average + EWMA_ALPHA * (sample - average);
+            } while (!averageBits.compareAndSet(bits, Double.doubleToLongBits(updated)));
+        }
+
+        private double averageMillis() {
+            return Math.max(0.0, Double.longBitsToDouble(averageBits.get()));
+        }
+
+        private double expectedMillis() {
+            // Latencies are whole milliseconds, so a fast host's average can be 0
+            return (averageMillis() + 1) * (outstanding.get() + 1);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.swagger.client;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Network interceptor that feeds the {@link CallMeter} tagged on each request. It is registered
+ * once per {@link OkHttpClient}, so calls no longer grow the interceptor list.
+ */
+class MeteringInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        return CallMeter.meter(request, chain.proceed(request));
+    }
+
+    /**
+     * Register the interceptor on a client unless it is already there.
+     *
+     * @param client The client
+     */
+    static void install(OkHttpClient client) {
+        for (Interceptor interceptor : client.networkInterceptors()) {
+            if (interceptor instanceof MeteringInterceptor) {
+                return;
+            }
+        }
+        client.networkInterceptors().add(new MeteringInterceptor());
+    }
+}
@@ -0,0 +1,251 @@
+package io.swagger.client;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket rate limits for the calls of an {@link ApiClient}: one for all calls together and
+ * one per endpoint, any of which may be left out. Callers take a permit before sending, so time
+ * spent waiting for one is never counted as the call's latency. Callers of the SDK's *Async
+ * methods take them with {@link Limiter#tryAcquire}, which never blocks.
+ * <p>
+ * Each bucket is lock-free: its whole state is the time its next permit is due, moved forward
+ * with a single compare-and-set per permit, so hundreds of threads can share one cheaply.
+ */
+public class RateLimiters {
+
+    private final long burstMillis;
+    private final TokenBucket global;
+    private final Map<String, TokenBucket> endpoints = new TreeMap<String, TokenBucket>();
+
+    /**
+     * @param globalRate permits per second for all calls together, 0 for no global limit
+     * @param endpointRates permits per second for each "method path" endpoint, path parameters in braces
+     * @param burstMillis how many milliseconds' worth of permits a bucket may hand out at once after being idle
+     */
+    public RateLimiters(double globalRate, Map<String, Double> endpointRates, long burstMillis) {
+        this.burstMillis = burstMillis;
+        this.global = globalRate > 0 ? new TokenBucket(globalRate, burstMillis) : null;
+        for (Map.Entry<String, Double> entry : endpointRates.entrySet()) {
+            endpoints.put(entry.getKey(), new TokenBucket(entry.getValue(), burstMillis));
+        }
+    }
+
+    /**
+     * Find the limits that apply to an endpoint. Callers look this up once and keep it.
+     *
+     * @param method The request method
+     * @param template The path template, e.g. "/skiers/{skierID}/vertical"
+     * @return The endpoint's limiter, which lets every call through if no limit applies
+     */
+    public Limiter limiterFor(String method, String template) {
+        return new Limiter(endpoints.get(method + " " + template), global);
+    }
+
+    /**
+     * Provide each limit's target and achieved rate for the run report.
+     *
+     * @return a human readable summary
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Rate Limits (burst %d ms):\n", burstMillis));
+        if (global != null) {
+            global.appendSummary(builder, "All calls");
+        }
+        for (Map.Entry<String, TokenBucket> entry : endpoints.entrySet()) {
+            entry.getValue().appendSummary(builder, entry.getKey());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The permits a call to one endpoint needs: one from the endpoint's bucket and one from the
+     * global bucket, when they exist.
+     */
+    public static final class Limiter {
+
+        private final TokenBucket endpoint;
+        private final TokenBucket global;
+
+        Limiter(TokenBucket endpoint, TokenBucket global) {
+            this.endpoint = endpoint;
+            this.global = global;
+        }
+
+        /**
+         * Wait until a call may be sent. An interrupt ends the wait early and is left set.
+         *
+         * @return nanoseconds spent waiting
+         */
+        public long acquire() {
+            long waited = 0;
+            if (endpoint != null) {
+                waited += endpoint.acquire();
+            }
+            if (global != null) {
+                waited += global.acquire();
+            }
+            return waited;
+        }
+
+        /**
+         * Take the permits for a call only if they are available now.
+         *
+         * @return true if the call may be sent, false if it would exceed a limit
+         */
+        public boolean tryAcquire() {
+            if (endpoint != null && !endpoint.tryAcquire()) {
+                return false;
+            }
+            if (global != null && !global.tryAcquire()) {
+                if (endpoint != null) {
+                    endpoint.refund();
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A token bucket kept as a schedule: permits are due one interval apart, and a bucket that
+     * has been idle may run up to its burst ahead of the clock. A permit is available when its due
+     * time is no more than the burst away.
+     */
+    public static final class TokenBucket {
+
+        private final double rate;
+        private final long intervalNanos;
+        private final long burstNanos;
+        // When the next permit is due, by System.nanoTime()
+        private final AtomicLong nextDue;
+
+        private final LongAdder permits = new LongAdder();
+        private final LongAdder delayed = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder refused = new LongAdder();
+        private final long createdNanos = System.nanoTime();
+        // Times of the first and last permits since the bucket was created, 0 before the first
+        private final AtomicLong firstPermitNanos = new AtomicLong();
+        private final AtomicLong lastPermitNanos = new AtomicLong();
+
+        /**
+         * @param rate permits per second
+         * @param burstMillis how many milliseconds' worth of permits may be handed out at once
+         */
+        public TokenBucket(double rate, long burstMillis) {
+            if (rate <= 0) {
+                throw new IllegalArgumentException("rate must be positive");
+            }
+            this.rate = rate;
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            // Always allow a single permit, however low the rate
+            this.burstNanos = Math.max(0, TimeUnit.MILLISECONDS.toNanos(burstMillis) - intervalNanos);
+            this.nextDue = new AtomicLong(createdNanos);
+        }
+
+        /**
+         * Take a permit, waiting until it is due. An interrupt ends the wait early and is left set.
+         *
+         * @return nanoseconds spent waiting
+         */
+        public long acquire() {
+            long now;
+            long due;
+            long current;
+            do {
+                now = System.nanoTime();
+                current = nextDue.get();
+                due = Math.max(current, now - burstNanos);
+            } while (!nextDue.compareAndSet(current, due + intervalNanos));
+
+            long wait = due - now;
+            if (wait > 0) {
+                long deadline = due;
+                while (wait > 0 && !Thread.currentThread().isInterrupted()) {
+                    LockSupport.parkNanos(wait);
+                    wait = deadline - System.nanoTime();
+                }
+                wait = System.nanoTime() - now;
+                delayed.increment();
+                waitNanos.add(wait);
+            } else {
+                wait = 0;
+            }
+            granted(now + wait);
+            return wait;
+        }
+
+        /**
+         * Take a permit only if it is due now.
+         *
+         * @return true if a permit was taken
+         */
+        public boolean tryAcquire() {
+            long now;
+            long due;
+            long current;
+            do {
+                now = System.nanoTime();
+                current = nextDue.get();
+                due = Math.max(current, now - burstNanos);
+                if (due > now) {
+                    refused.increment();
+                    return false;
+                }
+            } while (!nextDue.compareAndSet(current, due + intervalNanos));
+            granted(now);
+            return true;
+        }
+
+        /**
+         * Give back a permit taken by {@link #tryAcquire} for a call that is not sent after all.
+         */
+        void refund() {
+            nextDue.addAndGet(-intervalNanos);
+            permits.decrement();
+        }
+
+        private void granted(long nanoTime) {
+            long nanos = Math.max(1, nanoTime - createdNanos);
+            permits.increment();
+            if (firstPermitNanos.get() == 0) {
+                firstPermitNanos.compareAndSet(0, nanos);
+            }
+            long last = lastPermitNanos.get();
+            while (nanos > last && !lastPermitNanos.compareAndSet(last, nanos)) {
+                last = lastPermitNanos.get();
+            }
+        }
+
+        /**
+         * @return permits per second over the time from the first permit to the last
+         */
+        public double getAchievedRate() {
+            long count = permits.sum();
+            long span = lastPermitNanos.get() - firstPermitNanos.get();
+            if (count < 2 || span <= 0) {
+                return 0.0;
+            }
+            return (count - 1) * (double) TimeUnit.SECONDS.toNanos(1) / span;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        private void appendSummary(StringBuilder builder, String name) {
+            long count = permits.sum();
+            long waits = delayed.sum();
+            double achieved = getAchievedRate();
+            builder.append("\t").append(name).append(":\n");
+            builder.append(String.format("\t\tTarget: %.2f requests/second, Achieved: %.2f requests/second (%.1f%%)\n", rate, achieved, 100.0 * achieved / rate));
+            builder.append(String.format("\t\tPermits: %d, Delayed: %d (mean wait %.2f ms), Refused: %d\n", count, waits, waits == 0 ? 0.0 : waitNanos.sum() / 1e6 / waits, refused.sum()));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+
+import java.io.IOException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base for transports that do not produce OkHttp calls themselves. Calls are wrapped in a
+ * {@link TransportCall} and asynchronous calls run on a shared cached thread pool.
+ */
+public abstract class AbstractHttpTransport implements HttpTransport {
+
+    private final String name;
+    private ExecutorService asyncExecutor;
+
+    protected AbstractHttpTransport(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return new TransportCall(this, request);
+    }
+
+    /**
+     * Executor used for {@link Call#enqueue}. Created lazily so synchronous-only runs never start
+     * a thread.
+     *
+     * @return the async executor
+     */
+    synchronized ExecutorService asyncExecutor() {
+        if (asyncExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            asyncExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name + "-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return asyncExecutor;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+        }
+    }
+
+    /**
+     * Serialize a request body so its exact length is known before the headers are written.
+     *
+     * @param request The request
+     * @return the body bytes, or null when the request has no body
+     * @throws IOException If the body could not be written
+     */
+    protected static byte[] bodyBytes(Request request) throws IOException {
+        RequestBody body = request.body();
+        if (body == null) {
+            return null;
+        }
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readByteArray();
+    }
+
+    /**
+     * Assemble a buffered response from its parsed parts.
+     *
+     * @param request The request the response answers
+     * @param protocol The wire protocol used
+     * @param code The HTTP status code
+     * @param message The reason phrase, may be empty
+     * @param headers The response headers
+     * @param body The complete response body, may be empty
+     * @return The response
+     */
+    protected static Response buildResponse(Request request, Protocol protocol, int code, String message, Headers headers, byte[] body) {
+        String contentType = headers.get("Content-Type");
+        MediaType mediaType = contentType == null ? null : MediaType.parse(contentType);
+        return new Response.Builder()
+                .request(request)
+                .protocol(protocol)
+                .code(code)
+                .message(message == null ? "" : message)
+                .headers(headers)
+                .body(ResponseBody.create(mediaType, body))
+                .build();
+    }
+}
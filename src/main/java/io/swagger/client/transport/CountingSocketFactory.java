@@ -0,0 +1,59 @@
+package io.swagger.client.transport;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Socket factory decorator that counts the sockets it creates.
+ */
+class CountingSocketFactory extends SocketFactory {
+
+    private final SocketFactory delegate;
+    private final AtomicLong socketsCreated = new AtomicLong();
+
+    CountingSocketFactory(SocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    long getSocketsCreated() {
+        return socketsCreated.get();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        Socket socket = delegate.createSocket();
+        socketsCreated.incrementAndGet();
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = delegate.createSocket(host, port);
+        socketsCreated.incrementAndGet();
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        Socket socket = delegate.createSocket(host, port, localHost, localPort);
+        socketsCreated.incrementAndGet();
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        Socket socket = delegate.createSocket(host, port);
+        socketsCreated.incrementAndGet();
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        Socket socket = delegate.createSocket(address, port, localAddress, localPort);
+        socketsCreated.incrementAndGet();
+        return socket;
+    }
+}
@@ -0,0 +1,388 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.internal.framed.ErrorCode;
+import com.squareup.okhttp.internal.framed.FramedConnection;
+import com.squareup.okhttp.internal.framed.FramedStream;
+import com.squareup.okhttp.internal.framed.Header;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/2 transport that multiplexes concurrent requests over a small number of connections per
+ * host. Plaintext URLs use h2c with prior knowledge (no upgrade round trip), https URLs negotiate
+ * h2 with ALPN. Framing and HPACK come from OkHttp's internal framed connection. ALPN is part of
+ * the JDK from Java 9, and of Java 8 from 8u252; on older runtimes only plaintext URLs work, see
+ * {@link #isAlpnSupported}.
+ * <p>
+ * Each host gets at most {@code maxConnections} connections and each connection carries at most
+ * {@code maxStreamsPerConnection} concurrent streams (or fewer if the server says so). Callers
+ * block until a stream slot is free.
+ */
+public class Http2Transport extends AbstractHttpTransport {
+
+    public static final String NAME = "h2";
+
+    // Connection-specific headers that are illegal in HTTP/2
+    private static final Set<String> PROHIBITED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "host", "keep-alive", "proxy-connection", "te", "transfer-encoding", "upgrade"));
+
+    // Looked up rather than called directly, so the transport still loads on runtimes without ALPN
+    private static final Method SET_APPLICATION_PROTOCOLS =
+            findMethod(SSLParameters.class, "setApplicationProtocols", String[].class);
+    private static final Method GET_APPLICATION_PROTOCOL =
+            findMethod(SSLSocket.class, "getApplicationProtocol");
+    private static final String ALPN_UNSUPPORTED = "h2 over https needs ALPN, which this Java runtime ("
+            + System.getProperty("java.version") + ") lacks; use Java 8u252 or later, or a plaintext URL for h2c";
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxConnections;
+    private final int maxStreamsPerConnection;
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    // Guarded by this
+    private final Map<String, HostConnections> hosts = new HashMap<String, HostConnections>();
+    private boolean shutdown;
+
+    /**
+     * @param connectTimeoutMs connect timeout in milliseconds, 0 for none
+     * @param readTimeoutMs read timeout in milliseconds, 0 for none
+     * @param maxConnections maximum connections per host
+     * @param maxStreamsPerConnection maximum concurrent streams per connection
+     */
+    public Http2Transport(int connectTimeoutMs, int readTimeoutMs, int maxConnections, int maxStreamsPerConnection) {
+        super(NAME);
+        if (maxConnections < 1 || maxStreamsPerConnection < 1) {
+            throw new IllegalArgumentException("connection and stream limits must be at least 1");
+        }
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxConnections = maxConnections;
+        this.maxStreamsPerConnection = maxStreamsPerConnection;
+    }
+
+    /**
+     * Whether this runtime can negotiate h2 over TLS. Without it only plaintext (h2c) URLs work.
+     *
+     * @return true if the JDK supports ALPN
+     */
+    public static boolean isAlpnSupported() {
+        return SET_APPLICATION_PROTOCOLS != null && GET_APPLICATION_PROTOCOL != null;
+    }
+
+    /**
+     * @return why https URLs can't be used, for runtimes where {@link #isAlpnSupported} is false
+     */
+    public static String alpnUnsupportedMessage() {
+        return ALPN_UNSUPPORTED;
+    }
+
+    private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpUrl url = request.httpUrl();
+        byte[] body = bodyBytes(request);
+        List<Header> requestHeaders = buildRequestHeaders(request, body);
+
+        Connection connection = acquire(url);
+        try {
+            return exchange(connection, request, requestHeaders, body);
+        } catch (IOException e) {
+            // Stream-level failures leave the connection usable, anything else retires it
+            if (!(e instanceof StreamResetException)) {
+                retire(connection);
+            }
+            throw e;
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        List<Connection> toClose = new ArrayList<Connection>();
+        synchronized (this) {
+            shutdown = true;
+            for (HostConnections host : hosts.values()) {
+                toClose.addAll(host.connections);
+                host.connections.clear();
+            }
+            notifyAll();
+        }
+        for (Connection connection : toClose) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Reserve a stream slot on the least busy live connection to the URL's host, opening a new
+     * connection if every existing one is full and the host is below its connection limit.
+     */
+    private Connection acquire(HttpUrl url) throws IOException {
+        String key = url.scheme() + "://" + url.host() + ":" + url.port();
+        HostConnections host;
+        synchronized (this) {
+            host = hosts.get(key);
+            if (host == null) {
+                host = new HostConnections();
+                hosts.put(key, host);
+            }
+
+            while (true) {
+                if (shutdown) {
+                    throw new IOException("transport is shut down");
+                }
+                Connection best = null;
+                for (Connection connection : host.connections) {
+                    if (connection.activeStreams < connection.streamLimit()
+                            && (best == null || connection.activeStreams < best.activeStreams)) {
+                        best = connection;
+                    }
+                }
+                if (best != null) {
+                    best.activeStreams++;
+                    return best;
+                }
+                if (host.connections.size() + host.pendingConnects < maxConnections) {
+                    host.pendingConnects++;
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for an HTTP/2 stream");
+                }
+            }
+        }
+
+        // Connect outside the lock so other hosts and free streams are not held up
+        Connection connection = null;
+        try {
+            connection = connect(url, host);
+        } finally {
+            synchronized (this) {
+                host.pendingConnects--;
+                if (connection != null) {
+                    connection.activeStreams++;
+                    host.connections.add(connection);
+                }
+                notifyAll();
+            }
+        }
+        return connection;
+    }
+
+    private synchronized void release(Connection connection) {
+        connection.activeStreams--;
+        notifyAll();
+    }
+
+    private void retire(Connection connection) {
+        synchronized (this) {
+            connection.host.connections.remove(connection);
+            notifyAll();
+        }
+        connection.close();
+    }
+
+    private Connection connect(HttpUrl url, HostConnections host) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(url.host(), url.port()), connectTimeoutMs);
+            if (url.isHttps()) {
+                socket = negotiateAlpn(socket, url);
+            }
+            FramedConnection framed = new FramedConnection.Builder(true)
+                    .socket(socket)
+                    .protocol(Protocol.HTTP_2)
+                    .build();
+            framed.sendConnectionPreface();
+            connectionsOpened.incrementAndGet();
+            return new Connection(host, framed);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private SSLSocket negotiateAlpn(Socket plain, HttpUrl url) throws IOException {
+        if (!isAlpnSupported()) {
+            throw new ProtocolException(ALPN_UNSUPPORTED);
+        }
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocket socket = (SSLSocket) factory.createSocket(plain, url.host(), url.port(), true);
+        try {
+            SSLParameters params = socket.getSSLParameters();
+            params.setEndpointIdentificationAlgorithm("HTTPS");
+            SET_APPLICATION_PROTOCOLS.invoke(params, (Object) new String[]{"h2"});
+            socket.setSSLParameters(params);
+            socket.startHandshake();
+            if (!"h2".equals(GET_APPLICATION_PROTOCOL.invoke(socket))) {
+                throw new ProtocolException("server at " + url.host() + " did not negotiate h2 via ALPN");
+            }
+            return socket;
+        } catch (IllegalAccessException e) {
+            socket.close();
+            throw new ProtocolException(ALPN_UNSUPPORTED);
+        } catch (InvocationTargetException e) {
+            socket.close();
+            throw new IOException("ALPN negotiation with " + url.host() + " failed", e.getCause());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private List<Header> buildRequestHeaders(Request request, byte[] body) {
+        HttpUrl url = request.httpUrl();
+        String path = url.encodedQuery() == null ? url.encodedPath() : url.encodedPath() + "?" + url.encodedQuery();
+        boolean defaultPort = url.port() == HttpUrl.defaultPort(url.scheme());
+
+        List<Header> headers = new ArrayList<Header>();
+        headers.add(new Header(Header.TARGET_METHOD, request.method()));
+        headers.add(new Header(Header.TARGET_PATH, path));
+        headers.add(new Header(Header.TARGET_AUTHORITY, defaultPort ? url.host() : url.host() + ":" + url.port()));
+        headers.add(new Header(Header.TARGET_SCHEME, url.scheme()));
+
+        Headers requestHeaders = request.headers();
+        for (int i = 0; i < requestHeaders.size(); i++) {
+            String name = requestHeaders.name(i).toLowerCase();
+            if (!PROHIBITED_HEADERS.contains(name)) {
+                headers.add(new Header(name, requestHeaders.value(i)));
+            }
+        }
+        if (body != null) {
+            if (request.header("Content-Type") == null && request.body().contentType() != null) {
+                headers.add(new Header("content-type", request.body().contentType().toString()));
+            }
+            headers.add(new Header("content-length", String.valueOf(body.length)));
+        }
+        return headers;
+    }
+
+    private Response exchange(Connection connection, Request request, List<Header> requestHeaders, byte[] body) throws IOException {
+        FramedStream stream = connection.framed.newStream(requestHeaders, body != null, true);
+        stream.readTimeout().timeout(readTimeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            if (body != null) {
+                BufferedSink sink = Okio.buffer(stream.getSink());
+                sink.write(body);
+                sink.close();
+            }
+
+            int code = -1;
+            Headers.Builder responseHeaders = new Headers.Builder();
+            for (Header header : stream.getResponseHeaders()) {
+                String name = header.name.utf8();
+                String value = header.value.utf8();
+                if (header.name.equals(Header.RESPONSE_STATUS)) {
+                    code = Integer.parseInt(value.length() > 3 ? value.substring(0, 3) : value);
+                } else if (!name.startsWith(":")) {
+                    responseHeaders.add(name, value);
+                }
+            }
+            if (code == -1) {
+                throw new ProtocolException("HTTP/2 response without a :status header");
+            }
+
+            BufferedSource source = Okio.buffer(stream.getSource());
+            byte[] responseBody;
+            try {
+                responseBody = source.readByteArray();
+            } finally {
+                source.close();
+            }
+            return buildResponse(request, Protocol.HTTP_2, code, "", responseHeaders.build(), responseBody);
+        } catch (IOException e) {
+            if (stream.getErrorCode() != null) {
+                throw new StreamResetException(stream.getErrorCode());
+            }
+            stream.closeLater(ErrorCode.CANCEL);
+            throw e;
+        }
+    }
+
+    /**
+     * The server reset this one stream; the connection itself is still healthy.
+     */
+    static class StreamResetException extends IOException {
+        StreamResetException(ErrorCode errorCode) {
+            super("stream was reset: " + errorCode);
+        }
+    }
+
+    /**
+     * Connections to one scheme/host/port. Guarded by the transport.
+     */
+    private static class HostConnections {
+        final List<Connection> connections = new ArrayList<Connection>();
+        int pendingConnects;
+    }
+
+    /**
+     * One multiplexed connection and its stream usage. Guarded by the transport.
+     */
+    private class Connection {
+        final HostConnections host;
+        final FramedConnection framed;
+        int activeStreams;
+
+        Connection(HostConnections host, FramedConnection framed) {
+            this.host = host;
+            this.framed = framed;
+        }
+
+        int streamLimit() {
+            return Math.min(maxStreamsPerConnection, framed.maxConcurrentStreams());
+        }
+
+        void close() {
+            try {
+                framed.close();
+            } catch (IOException ignored) {
+                // Already closed by the peer
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Engine that moves an HTTP request over the wire for an {@link io.swagger.client.ApiClient}.
+ * <p>
+ * OkHttp's {@link Request} and {@link Response} types are used as the neutral request and
+ * response model so the generated API classes work unchanged on any transport.
+ */
+public interface HttpTransport {
+
+    /**
+     * Short name of the transport, as used in the properties file and the report.
+     *
+     * @return transport name
+     */
+    String getName();
+
+    /**
+     * Create a call that will send the given request when executed or enqueued.
+     *
+     * @param request The HTTP request
+     * @return The call
+     */
+    Call newCall(Request request);
+
+    /**
+     * Send the request and block until the full response has been read.
+     *
+     * @param request The HTTP request
+     * @return The HTTP response, with its body fully buffered
+     * @throws IOException If the request could not be sent or the response could not be read
+     */
+    Response execute(Request request) throws IOException;
+
+    /**
+     * Number of TCP connections this transport has opened so far.
+     *
+     * @return connections opened, or -1 if the underlying engine does not expose it
+     */
+    long getConnectionsOpened();
+
+    /**
+     * Release any connections and threads held by this transport.
+     */
+    void shutdown();
+}
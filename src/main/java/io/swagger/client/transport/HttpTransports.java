@@ -0,0 +1,32 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.OkHttpClient;
+
+/**
+ * Creates transports by the names used in the client's properties file.
+ */
+public final class HttpTransports {
+
+    private HttpTransports() {
+    }
+
+    /**
+     * Create a transport by name. Non-OkHttp transports take their timeouts from the given
+     * client so every engine runs with the same settings.
+     *
+     * @param name one of "okhttp", "urlconnection" or "socket"
+     * @param httpClient the OkHttp client of the owning ApiClient
+     * @return a new transport
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static HttpTransport create(String name, OkHttpClient httpClient) {
+        if (name == null || OkHttpTransport.NAME.equalsIgnoreCase(name)) {
+            return new OkHttpTransport(httpClient);
+        } else if (UrlConnectionTransport.NAME.equalsIgnoreCase(name)) {
+            return new UrlConnectionTransport(httpClient.getConnectTimeout(), httpClient.getReadTimeout());
+        } else if (SocketTransport.NAME.equalsIgnoreCase(name)) {
+            return new SocketTransport(httpClient.getConnectTimeout(), httpClient.getReadTimeout());
+        }
+        throw new IllegalArgumentException("unknown transport: " + name);
+    }
+}
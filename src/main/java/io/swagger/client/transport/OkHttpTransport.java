@@ -0,0 +1,68 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+
+/**
+ * The default transport, backed by an OkHttp 2 client and its connection pool.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+    public static final String NAME = "okhttp";
+
+    private final OkHttpClient httpClient;
+    private final CountingSocketFactory socketFactory;
+
+    /**
+     * Wraps the client's socket factory (once) so opened connections can be counted.
+     *
+     * @param httpClient The OkHttp client to send requests with
+     */
+    public OkHttpTransport(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+        SocketFactory current = httpClient.getSocketFactory();
+        if (current instanceof CountingSocketFactory) {
+            socketFactory = (CountingSocketFactory) current;
+        } else {
+            socketFactory = new CountingSocketFactory(current == null ? SocketFactory.getDefault() : current);
+            httpClient.setSocketFactory(socketFactory);
+        }
+    }
+
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return httpClient.newCall(request);
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        return httpClient.newCall(request).execute();
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return socketFactory.getSocketsCreated();
+    }
+
+    @Override
+    public void shutdown() {
+        // The pool is only assigned once the first call has been made
+        if (httpClient.getConnectionPool() != null) {
+            httpClient.getConnectionPool().evictAll();
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.HttpUrl;
+import okio.Buffer;
+import okio.ByteString;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipelined HTTP/1.1 engine on NIO for fire-and-forget requests such as lift ride POSTs.
+ * <p>
+ * Requests are written back-to-back on a fixed set of plaintext connections to one host without
+ * waiting for earlier responses, and responses are matched to requests in order. One selector
+ * thread drives every connection; listeners are called on that thread and must be cheap.
+ * <p>
+ * At most {@code maxInFlightPerConnection} requests are outstanding per connection;
+ * {@link #send} blocks once every connection is full. When a response says
+ * {@code Connection: close}, the requests pipelined behind it are resent on a fresh connection,
+ * since the server processes nothing after the response it closes on (RFC 7230 section 6.6). If
+ * a connection fails outright, or the oldest request on it outlives the response timeout, its
+ * outstanding requests are failed instead (never silently resent, since they may have been
+ * processed) and the connection is reopened for later requests. Interim 1xx responses are
+ * skipped. If the I/O thread itself dies, everything outstanding fails and so does every request
+ * sent after it.
+ */
+public class PipelinedHttpEngine implements Closeable {
+
+    /**
+     * Receives the outcome of one pipelined request. Times use the wall clock so they line up
+     * with the rest of the client's statistics; latency runs from {@link #send} to the last byte
+     * of the response, so head-of-line blocking is included. Anything a listener throws is
+     * ignored.
+     */
+    public interface ResponseListener {
+        void onResponse(int statusCode, long startMillis, long latencyMillis);
+
+        void onFailure(IOException e, long startMillis, long latencyMillis);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ByteString CRLF = ByteString.encodeUtf8("\r\n");
+    private static final ByteString HEADERS_END = ByteString.encodeUtf8("\r\n\r\n");
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 30000;
+
+    private final HttpUrl origin;
+    private final String hostHeader;
+    private final Connection[] connections;
+    private final long responseTimeoutNanos;
+    private final Semaphore inFlightPermits;
+    private final Queue<PendingRequest> submitted = new ConcurrentLinkedQueue<PendingRequest>();
+    private final Selector selector;
+    private final Thread ioThread;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final byte[] readBytes = new byte[READ_BUFFER_SIZE];
+    private volatile boolean closed;
+    // Why the I/O thread stopped without being closed, if it did
+    private volatile IOException loopFailure;
+    private volatile long requestsResent;
+
+    /**
+     * Start the engine's selector thread with a 30 second response timeout. Connections are
+     * opened lazily on first use.
+     *
+     * @param origin scheme, host and port to send to; only http is supported
+     * @param connections number of connections to spread requests over
+     * @param maxInFlightPerConnection pipeline depth per connection
+     * @throws IOException if the selector cannot be opened
+     */
+    public PipelinedHttpEngine(HttpUrl origin, int connections, int maxInFlightPerConnection) throws IOException {
+        this(origin, connections, maxInFlightPerConnection, DEFAULT_RESPONSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Start the engine's selector thread. Connections are opened lazily on first use.
+     *
+     * @param origin scheme, host and port to send to; only http is supported
+     * @param connections number of connections to spread requests over
+     * @param maxInFlightPerConnection pipeline depth per connection
+     * @param responseTimeoutMillis longest a request may wait for its response once it is
+     *     assigned to a connection, including time queued behind earlier requests
+     * @throws IOException if the selector cannot be opened
+     */
+    public PipelinedHttpEngine(HttpUrl origin, int connections, int maxInFlightPerConnection,
+                               long responseTimeoutMillis) throws IOException {
+        if (origin.isHttps()) {
+            throw new IllegalArgumentException("pipelining is only supported over plaintext http");
+        }
+        if (connections < 1 || maxInFlightPerConnection < 1) {
+            throw new IllegalArgumentException("connections and pipeline depth must be at least 1");
+        }
+        if (responseTimeoutMillis < 1) {
+            throw new IllegalArgumentException("response timeout must be at least 1 ms");
+        }
+        this.origin = origin;
+        this.responseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(responseTimeoutMillis);
+        boolean defaultPort = origin.port() == HttpUrl.defaultPort(origin.scheme());
+        this.hostHeader = defaultPort ? origin.host() : origin.host() + ":" + origin.port();
+        this.connections = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            this.connections[i] = new Connection(maxInFlightPerConnection);
+        }
+        this.inFlightPermits = new Semaphore(connections * maxInFlightPerConnection);
+        this.selector = Selector.open();
+        this.ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ioLoop();
+            }
+        }, "pipelined-http-io");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * Queue a request for sending, blocking while every connection is at its pipeline depth.
+     *
+     * @param method HTTP method
+     * @param url full request URL; must have the engine's scheme, host and port
+     * @param contentType body content type, may be null if there is no body
+     * @param body request body, may be null
+     * @param listener receives the result on the engine's I/O thread, or on the calling thread
+     *     if the I/O thread has already stopped
+     * @throws InterruptedException if interrupted while waiting for pipeline space
+     * @throws IllegalStateException if the engine was closed
+     */
+    public void send(String method, HttpUrl url, String contentType, byte[] body, ResponseListener listener) throws InterruptedException {
+        if (!url.host().equals(origin.host()) || url.port() != origin.port() || !url.scheme().equals(origin.scheme())) {
+            throw new IllegalArgumentException("url " + url + " is not on " + origin);
+        }
+        if (closed && loopFailure == null) {
+            throw new IllegalStateException("engine is closed");
+        }
+        long startMillis = System.currentTimeMillis();
+        inFlightPermits.acquire();
+        submitted.add(new PendingRequest(encode(method, url, contentType, body), "HEAD".equals(method), listener, startMillis));
+        if (closed) {
+            // The I/O thread has stopped, and may have drained the queue before this was added
+            failSubmitted(stoppedException());
+        } else {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Number of connections opened so far, including reconnects.
+     *
+     * @return connections opened
+     */
+    public long getConnectionsOpened() {
+        long opened = 0;
+        for (Connection connection : connections) {
+            opened += connection.timesOpened;
+        }
+        return opened;
+    }
+
+    /**
+     * Number of requests resent on a fresh connection because the server closed the connection
+     * in front of them.
+     *
+     * @return requests resent
+     */
+    public long getRequestsResent() {
+        return requestsResent;
+    }
+
+    /**
+     * Stop the I/O thread and fail anything still outstanding.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] encode(String method, HttpUrl url, String contentType, byte[] body) {
+        StringBuilder head = new StringBuilder(256);
+        head.append(method).append(' ').append(url.encodedPath());
+        if (url.encodedQuery() != null) {
+            head.append('?').append(url.encodedQuery());
+        }
+        head.append(" HTTP/1.1\r\nHost: ").append(hostHeader).append("\r\n");
+        if (body != null) {
+            if (contentType != null) {
+                head.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(UTF_8);
+        if (body == null) {
+            return headBytes;
+        }
+        byte[] request = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+        System.arraycopy(body, 0, request, headBytes.length, body.length);
+        return request;
+    }
+
+    private void ioLoop() {
+        try {
+            while (!closed) {
+                selector.select(100);
+                assignSubmitted();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle((Connection) key.attachment(), key);
+                }
+                expireStalled();
+            }
+        } catch (IOException e) {
+            // The selector itself failed; nothing more can be sent
+            loopFailure = e;
+        } catch (RuntimeException e) {
+            loopFailure = new IOException("pipelined I/O thread failed", e);
+        } finally {
+            // Set before draining, so a send that races with the drain fails its own request
+            closed = true;
+            IOException stopped = stoppedException();
+            for (Connection connection : connections) {
+                connection.fail(stopped);
+            }
+            failSubmitted(stopped);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private IOException stoppedException() {
+        IOException failure = loopFailure;
+        return failure != null ? failure : new IOException("engine closed");
+    }
+
+    /**
+     * Fail every request waiting to be assigned. Safe to call from any thread.
+     */
+    private void failSubmitted(IOException e) {
+        PendingRequest request;
+        while ((request = submitted.poll()) != null) {
+            complete(request, -1, e);
+        }
+    }
+
+    /**
+     * Hand newly submitted requests to the least loaded connection. Permits guarantee that some
+     * connection has room.
+     */
+    private void assignSubmitted() {
+        PendingRequest request;
+        while ((request = submitted.poll()) != null) {
+            Connection target = null;
+            for (Connection connection : connections) {
+                if (connection.inFlight.size() < connection.maxInFlight
+                        && (target == null || connection.inFlight.size() < target.inFlight.size())) {
+                    target = connection;
+                }
+            }
+            try {
+                target.enqueue(request);
+            } catch (IOException e) {
+                target.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Fail every connection whose oldest request has waited too long for its response. Requests
+     * are assigned in order, so the oldest holds the earliest deadline.
+     */
+    private void expireStalled() {
+        long now = System.nanoTime();
+        for (Connection connection : connections) {
+            PendingRequest oldest = connection.inFlight.peek();
+            if (oldest != null && now - oldest.deadlineNanos > 0) {
+                connection.fail(new SocketTimeoutException("no response within "
+                        + TimeUnit.NANOSECONDS.toMillis(responseTimeoutNanos) + " ms"));
+            }
+        }
+    }
+
+    private void handle(Connection connection, SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                connection.channel.finishConnect();
+                connection.updateInterest();
+            }
+            // Read first, so a Connection: close is seen before more is written behind it
+            if (key.isValid() && key.isReadable()) {
+                connection.read();
+            }
+        } catch (IOException e) {
+            connection.fail(e);
+            return;
+        }
+        if (key.isValid() && key.isWritable()) {
+            try {
+                connection.flush();
+            } catch (IOException e) {
+                connection.salvage(e);
+            }
+        }
+    }
+
+    private void complete(PendingRequest request, int statusCode, IOException failure) {
+        inFlightPermits.release();
+        long latency = System.currentTimeMillis() - request.startMillis;
+        try {
+            if (failure != null) {
+                request.listener.onFailure(failure, request.startMillis, latency);
+            } else {
+                request.listener.onResponse(statusCode, request.startMillis, latency);
+            }
+        } catch (RuntimeException ignored) {
+            // A broken listener must not stop the I/O thread for everyone else
+        }
+    }
+
+    private static class PendingRequest {
+        final ByteBuffer bytes;
+        final boolean head;
+        final ResponseListener listener;
+        final long startMillis;
+        // When the response is overdue, in System.nanoTime terms; set once on a connection
+        long deadlineNanos;
+
+        PendingRequest(byte[] bytes, boolean head, ResponseListener listener, long startMillis) {
+            this.bytes = ByteBuffer.wrap(bytes);
+            this.head = head;
+            this.listener = listener;
+            this.startMillis = startMillis;
+        }
+    }
+
+    /**
+     * One pipelined connection, touched only by the I/O thread.
+     */
+    private class Connection {
+        final int maxInFlight;
+        // Sent or queued requests, in wire order, awaiting responses
+        final ArrayDeque<PendingRequest> inFlight = new ArrayDeque<PendingRequest>();
+        // Requests (or their remainder) not yet written
+        final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+        final Buffer inbound = new Buffer();
+        final ResponseParser parser = new ResponseParser();
+        SocketChannel channel;
+        SelectionKey key;
+        volatile long timesOpened;
+
+        Connection(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        void enqueue(PendingRequest request) throws IOException {
+            request.deadlineNanos = System.nanoTime() + responseTimeoutNanos;
+            inFlight.add(request);
+            outbound.add(request.bytes);
+            if (channel == null) {
+                open();
+            }
+            updateInterest();
+        }
+
+        void open() throws IOException {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(new InetSocketAddress(origin.host(), origin.port()));
+            key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            timesOpened++;
+        }
+
+        void updateInterest() {
+            if (channel.isConnectionPending()) {
+                return;
+            }
+            int ops = SelectionKey.OP_READ;
+            if (!outbound.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        void flush() throws IOException {
+            while (!outbound.isEmpty()) {
+                ByteBuffer head = outbound.peek();
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                outbound.poll();
+            }
+            updateInterest();
+        }
+
+        /**
+         * Read and parse whatever has arrived.
+         *
+         * @return bytes read, 0 if nothing was waiting
+         */
+        int read() throws IOException {
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read == -1) {
+                throw new EOFException("server closed the connection");
+            }
+            readBuffer.flip();
+            readBuffer.get(readBytes, 0, read);
+            inbound.write(readBytes, 0, read);
+
+            while (!inFlight.isEmpty() && parser.parse(inbound, inFlight.peek().head)) {
+                PendingRequest request = inFlight.poll();
+                boolean keepAlive = parser.keepAlive;
+                int statusCode = parser.statusCode;
+                parser.reset();
+                complete(request, statusCode, null);
+                if (!keepAlive) {
+                    resendOutstanding();
+                    return read;
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Handle a failed write. A server that closes after a response resets the connection if
+         * more requests arrive behind it, so the write can fail before that response is read.
+         * Read what already arrived first; if it ends in a close, the requests behind it are
+         * resent, otherwise they all fail.
+         */
+        void salvage(IOException writeFailure) {
+            SocketChannel failed = channel;
+            try {
+                while (channel == failed && read() > 0) {
+                    // Keep reading until the close response, or nothing is left
+                }
+            } catch (IOException ignored) {
+                // The write failure is the one reported
+            }
+            if (channel == failed) {
+                fail(writeFailure);
+            }
+        }
+
+        /**
+         * Reopen the connection after the server closed it on a response, and resend the requests
+         * that were pipelined behind that response. The server processed none of them, so they
+         * are sent again from their first byte, each with a fresh deadline.
+         */
+        void resendOutstanding() throws IOException {
+            disconnect();
+            if (inFlight.isEmpty()) {
+                return;
+            }
+            long deadline = System.nanoTime() + responseTimeoutNanos;
+            for (PendingRequest request : inFlight) {
+                request.bytes.rewind();
+                request.deadlineNanos = deadline;
+                outbound.add(request.bytes);
+            }
+            requestsResent += inFlight.size();
+            open();
+            updateInterest();
+        }
+
+        /**
+         * Close the channel and fail every outstanding request on it. The connection is reopened
+         * when the next request is assigned to it.
+         */
+        void fail(IOException e) {
+            disconnect();
+            PendingRequest request;
+            while ((request = inFlight.poll()) != null) {
+                complete(request, -1, e);
+            }
+        }
+
+        /**
+         * Close the channel and drop anything buffered for it, leaving the requests in flight.
+         */
+        void disconnect() {
+            if (channel != null) {
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already broken
+                }
+                channel = null;
+                key = null;
+            }
+            outbound.clear();
+            inbound.clear();
+            parser.reset();
+        }
+    }
+
+    /**
+     * Incremental HTTP/1.1 response parser. Response bodies are discarded.
+     */
+    private static class ResponseParser {
+        private static final int HEADERS = 0;
+        private static final int FIXED_BODY = 1;
+        private static final int CHUNK_SIZE = 2;
+        private static final int CHUNK_DATA = 3;
+        private static final int TRAILERS = 4;
+
+        int state = HEADERS;
+        long remaining;
+        int statusCode;
+        boolean keepAlive;
+
+        void reset() {
+            state = HEADERS;
+            remaining = 0;
+            statusCode = 0;
+            keepAlive = false;
+        }
+
+        /**
+         * Consume as much of one response as is buffered.
+         *
+         * @return true once the response is complete
+         */
+        boolean parse(Buffer in, boolean headRequest) throws IOException {
+            while (true) {
+                switch (state) {
+                    case HEADERS: {
+                        long end = in.indexOf(HEADERS_END);
+                        if (end == -1) {
+                            return false;
+                        }
+                        String head = in.readUtf8(end + HEADERS_END.size());
+                        boolean hasBody = parseHead(head, headRequest);
+                        if (statusCode == 101) {
+                            throw new ProtocolException("server switched protocols on a pipelined connection");
+                        } else if (statusCode < 200) {
+                            // An interim response such as 100 Continue; the final one follows
+                            reset();
+                            break;
+                        }
+                        if (!hasBody) {
+                            return true;
+                        }
+                        break;
+                    }
+                    case FIXED_BODY: {
+                        long skip = Math.min(remaining, in.size());
+                        in.skip(skip);
+                        remaining -= skip;
+                        if (remaining > 0) {
+                            return false;
+                        }
+                        return true;
+                    }
+                    case CHUNK_SIZE: {
+                        long end = in.indexOf(CRLF);
+                        if (end == -1) {
+                            return false;
+                        }
+                        String line = in.readUtf8(end);
+                        in.skip(CRLF.size());
+                        int extension = line.indexOf(';');
+                        if (extension != -1) {
+                            line = line.substring(0, extension);
+                        }
+                        try {
+                            remaining = Long.parseLong(line.trim(), 16);
+                        } catch (NumberFormatException e) {
+                            throw new ProtocolException("malformed chunk size: " + line);
+                        }
+                        // Chunk data is followed by its own CRLF
+                        state = remaining == 0 ? TRAILERS : CHUNK_DATA;
+                        remaining += remaining == 0 ? 0 : CRLF.size();
+                        break;
+                    }
+                    case CHUNK_DATA: {
+                        long skip = Math.min(remaining, in.size());
+                        in.skip(skip);
+                        remaining -= skip;
+                        if (remaining > 0) {
+                            return false;
+                        }
+                        state = CHUNK_SIZE;
+                        break;
+                    }
+                    case TRAILERS: {
+                        long end = in.indexOf(CRLF);
+                        if (end == -1) {
+                            return false;
+                        }
+                        in.skip(end + CRLF.size());
+                        if (end == 0) {
+                            return true;
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("unknown parser state " + state);
+                }
+            }
+        }
+
+        /**
+         * Parse the status line and headers and pick the body framing.
+         *
+         * @return false if the response has no body
+         */
+        private boolean parseHead(String head, boolean headRequest) throws ProtocolException {
+            String[] lines = head.split("\r\n");
+            String statusLine = lines[0];
+            if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+                throw new ProtocolException("unexpected status line: " + statusLine);
+            }
+            try {
+                statusCode = Integer.parseInt(statusLine.substring(9, 12));
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("unexpected status line: " + statusLine);
+            }
+            keepAlive = statusLine.startsWith("HTTP/1.1");
+
+            long contentLength = -1;
+            boolean chunked = false;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon == -1) {
+                    continue;
+                }
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new ProtocolException("malformed Content-Length: " + value);
+                    }
+                    if (contentLength < 0) {
+                        throw new ProtocolException("malformed Content-Length: " + value);
+                    }
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    chunked = value.equalsIgnoreCase("chunked");
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    keepAlive = value.equalsIgnoreCase("keep-alive")
+                            || (keepAlive && !value.equalsIgnoreCase("close"));
+                }
+            }
+
+            if (headRequest || statusCode == 204 || statusCode == 304 || statusCode < 200) {
+                return false;
+            } else if (chunked) {
+                state = CHUNK_SIZE;
+            } else if (contentLength >= 0) {
+                state = FIXED_BODY;
+                remaining = contentLength;
+            } else {
+                // Close-delimited bodies cannot be pipelined
+                throw new ProtocolException("response without a length cannot be pipelined");
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.Okio;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal HTTP/1.1 engine written directly against {@link Socket}s. It supports keep-alive,
+ * fixed-length and chunked response bodies and nothing more: no redirects, proxies, caching or
+ * authentication challenges. Useful as a low-overhead baseline when comparing transports.
+ * <p>
+ * Up to {@code maxIdlePerHost} connections per host are kept for reuse, each for at most five
+ * minutes. A request that fails on a pooled connection is retried once on a fresh one, but only
+ * if none of it was written or its method is idempotent, so a POST is never sent twice. https
+ * connections send SNI and verify the server's hostname.
+ */
+public class SocketTransport extends AbstractHttpTransport {
+
+    public static final String NAME = "socket";
+
+    public static final int DEFAULT_MAX_IDLE_PER_HOST = 64;
+
+    private static final String CRLF = "\r\n";
+    private static final long KEEP_ALIVE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    // Idle time after which a pooled connection is probed before a non-idempotent request
+    private static final long PROBE_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxIdlePerHost;
+    private final ConcurrentMap<String, Deque<Connection>> idleConnections = new ConcurrentHashMap<String, Deque<Connection>>();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    /**
+     * @param connectTimeoutMs connect timeout in milliseconds, 0 for none
+     * @param readTimeoutMs read timeout in milliseconds, 0 for none
+     */
+    public SocketTransport(int connectTimeoutMs, int readTimeoutMs) {
+        this(connectTimeoutMs, readTimeoutMs, DEFAULT_MAX_IDLE_PER_HOST);
+    }
+
+    /**
+     * @param connectTimeoutMs connect timeout in milliseconds, 0 for none
+     * @param readTimeoutMs read timeout in milliseconds, 0 for none
+     * @param maxIdlePerHost idle connections kept for reuse per host
+     */
+    public SocketTransport(int connectTimeoutMs, int readTimeoutMs, int maxIdlePerHost) {
+        super(NAME);
+        if (maxIdlePerHost < 1) {
+            throw new IllegalArgumentException("maxIdlePerHost must be at least 1");
+        }
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxIdlePerHost = maxIdlePerHost;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpUrl url = request.httpUrl();
+        String key = url.scheme() + "://" + url.host() + ":" + url.port();
+        byte[] body = bodyBytes(request);
+        boolean idempotent = isIdempotent(request.method());
+
+        Connection connection = takeIdle(key, idempotent);
+        if (connection != null) {
+            try {
+                return exchange(key, connection, request, body);
+            } catch (IOException e) {
+                // A pooled connection may have been closed by the server. Retrying is only safe if
+                // the server can't have seen the request, or seeing it twice is harmless.
+                if (connection.requestWritten && !idempotent) {
+                    throw e;
+                }
+            }
+        }
+        return exchange(key, connect(url), request, body);
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        for (Deque<Connection> connections : idleConnections.values()) {
+            Connection connection;
+            while ((connection = connections.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Take the most recently used idle connection to a host, closing any that have been idle too
+     * long. Before a non-idempotent request, a connection idle for a while is first checked for a
+     * close from the server, since that request can't be retried once written.
+     */
+    private Connection takeIdle(String key, boolean idempotent) {
+        Deque<Connection> connections = idleConnections.get(key);
+        if (connections == null) {
+            return null;
+        }
+        Connection connection;
+        while ((connection = connections.pollFirst()) != null) {
+            long idleNanos = System.nanoTime() - connection.idleSinceNanos;
+            if (idleNanos < KEEP_ALIVE_NANOS
+                    && (idempotent || idleNanos < PROBE_AFTER_NANOS || connection.isHealthy(readTimeoutMs))) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private void release(String key, Connection connection) {
+        Deque<Connection> connections = idleConnections.get(key);
+        if (connections == null) {
+            Deque<Connection> created = new ConcurrentLinkedDeque<Connection>();
+            connections = idleConnections.putIfAbsent(key, created);
+            if (connections == null) {
+                connections = created;
+            }
+        }
+        connection.idleSinceNanos = System.nanoTime();
+        connections.offerFirst(connection);
+
+        // The least recently used connections are at the tail
+        Connection oldest;
+        while ((oldest = connections.peekLast()) != null
+                && (connections.size() > maxIdlePerHost
+                || System.nanoTime() - oldest.idleSinceNanos >= KEEP_ALIVE_NANOS)) {
+            if (connections.removeLastOccurrence(oldest)) {
+                oldest.close();
+            }
+        }
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || "OPTIONS".equals(method) || "TRACE".equals(method);
+    }
+
+    private Connection connect(HttpUrl url) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeoutMs);
+            socket.connect(new InetSocketAddress(url.host(), url.port()), connectTimeoutMs);
+            if (url.isHttps()) {
+                socket = startTls(socket, url);
+            }
+            connectionsOpened.incrementAndGet();
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Layer TLS over a connected socket. Creating the socket with the host name sends it as SNI,
+     * and the HTTPS endpoint identification checks the certificate against it.
+     */
+    private SSLSocket startTls(Socket plain, HttpUrl url) throws IOException {
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocket socket = (SSLSocket) factory.createSocket(plain, url.host(), url.port(), true);
+        SSLParameters params = socket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        socket.setSSLParameters(params);
+        socket.startHandshake();
+        return socket;
+    }
+
+    private Response exchange(String key, Connection connection, Request request, byte[] body) throws IOException {
+        connection.requestWritten = false;
+        try {
+            writeRequest(connection.sink, request, body);
+            Response response = readResponse(connection, request);
+            if (connection.reusable) {
+                release(key, connection);
+            } else {
+                connection.close();
+            }
+            return response;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private void writeRequest(BufferedSink sink, Request request, byte[] body) throws IOException {
+        HttpUrl url = request.httpUrl();
+        sink.writeUtf8(request.method()).writeUtf8(" ").writeUtf8(url.encodedPath());
+        if (url.encodedQuery() != null) {
+            sink.writeUtf8("?").writeUtf8(url.encodedQuery());
+        }
+        sink.writeUtf8(" HTTP/1.1").writeUtf8(CRLF);
+
+        boolean defaultPort = url.port() == HttpUrl.defaultPort(url.scheme());
+        sink.writeUtf8("Host: ").writeUtf8(defaultPort ? url.host() : url.host() + ":" + url.port()).writeUtf8(CRLF);
+
+        Headers headers = request.headers();
+        for (int i = 0; i < headers.size(); i++) {
+            sink.writeUtf8(headers.name(i)).writeUtf8(": ").writeUtf8(headers.value(i)).writeUtf8(CRLF);
+        }
+        if (body != null) {
+            if (request.header("Content-Type") == null && request.body().contentType() != null) {
+                sink.writeUtf8("Content-Type: ").writeUtf8(request.body().contentType().toString()).writeUtf8(CRLF);
+            }
+            sink.writeUtf8("Content-Length: ").writeUtf8(String.valueOf(body.length)).writeUtf8(CRLF);
+        }
+        sink.writeUtf8(CRLF);
+        if (body != null) {
+            sink.write(body);
+        }
+        sink.flush();
+    }
+
+    private Response readResponse(Connection connection, Request request) throws IOException {
+        BufferedSource source = connection.source;
+
+        Protocol protocol;
+        int code;
+        String message;
+        Headers headers;
+        do {
+            // Status line, e.g. "HTTP/1.1 201 Created"
+            String statusLine = source.readUtf8LineStrict();
+            if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+                throw new ProtocolException("Unexpected status line: " + statusLine);
+            }
+            protocol = statusLine.startsWith("HTTP/1.0") ? Protocol.HTTP_1_0 : Protocol.HTTP_1_1;
+            try {
+                code = Integer.parseInt(statusLine.substring(9, 12));
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Unexpected status line: " + statusLine);
+            }
+            message = statusLine.length() > 13 ? statusLine.substring(13) : "";
+
+            Headers.Builder headersBuilder = new Headers.Builder();
+            for (String line = source.readUtf8LineStrict(); line.length() != 0; line = source.readUtf8LineStrict()) {
+                headersBuilder.add(line);
+            }
+            headers = headersBuilder.build();
+            if (code == 101) {
+                throw new ProtocolException("Server switched protocols on a pooled connection");
+            }
+            // An interim response such as 100 Continue has no body; the final one follows
+        } while (code >= 100 && code < 200);
+
+        connection.reusable = protocol == Protocol.HTTP_1_1
+                ? !"close".equalsIgnoreCase(headers.get("Connection"))
+                : "keep-alive".equalsIgnoreCase(headers.get("Connection"));
+
+        byte[] body;
+        String contentLength = headers.get("Content-Length");
+        if ("HEAD".equals(request.method()) || code == 204 || code == 304) {
+            body = new byte[0];
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            body = readChunked(source);
+        } else if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Malformed Content-Length: " + contentLength);
+            }
+            if (length < 0) {
+                throw new ProtocolException("Malformed Content-Length: " + contentLength);
+            }
+            body = source.readByteArray(length);
+        } else {
+            // Body delimited by connection close
+            body = source.readByteArray();
+            connection.reusable = false;
+        }
+
+        return buildResponse(request, protocol, code, message, headers, body);
+    }
+
+    private byte[] readChunked(BufferedSource source) throws IOException {
+        Buffer body = new Buffer();
+        while (true) {
+            String sizeLine = source.readUtf8LineStrict();
+            int extension = sizeLine.indexOf(';');
+            if (extension != -1) {
+                sizeLine = sizeLine.substring(0, extension);
+            }
+            long size;
+            try {
+                size = Long.parseLong(sizeLine.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Malformed chunk size: " + sizeLine);
+            }
+            if (size == 0) {
+                // Skip trailers
+                while (source.readUtf8LineStrict().length() != 0) {
+                }
+                return body.readByteArray();
+            }
+            source.readFully(body, size);
+            source.readUtf8LineStrict();
+        }
+    }
+
+    /**
+     * One open socket with its buffered streams.
+     */
+    private static class Connection implements Closeable {
+        final Socket socket;
+        final BufferedSource source;
+        final BufferedSink sink;
+        boolean reusable;
+        // Whether any of the current request has been handed to the socket
+        boolean requestWritten;
+        long idleSinceNanos;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.source = Okio.buffer(Okio.source(socket));
+            this.sink = Okio.buffer(new ForwardingSink(Okio.sink(socket)) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    requestWritten = true;
+                    super.write(source, byteCount);
+                }
+            });
+        }
+
+        /**
+         * Check that the server hasn't closed the connection while it sat idle, waiting at most a
+         * millisecond.
+         *
+         * @param readTimeoutMs the read timeout to restore afterwards
+         * @return false if the server closed the connection or sent something unasked
+         */
+        boolean isHealthy(int readTimeoutMs) {
+            try {
+                socket.setSoTimeout(1);
+                try {
+                    // Returns at once on end of stream or unexpected data; times out if all is well
+                    source.request(1);
+                    return false;
+                } finally {
+                    socket.setSoTimeout(readTimeoutMs);
+                }
+            } catch (SocketTimeoutException e) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do if the socket is already gone
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import io.swagger.client.CallMeter;
+
+import java.io.IOException;
+
+/**
+ * A {@link Call} that hands its request to an {@link AbstractHttpTransport} instead of OkHttp's
+ * own engine. This keeps the {@code com.squareup.okhttp.Call} signatures of the generated API
+ * classes intact.
+ */
+public class TransportCall extends Call {
+
+    // Only needed to satisfy the Call constructor, never used to send anything
+    private static final OkHttpClient UNUSED_CLIENT = new OkHttpClient();
+
+    private final AbstractHttpTransport transport;
+    private final Request request;
+    private boolean executed;
+    private volatile boolean canceled;
+
+    TransportCall(AbstractHttpTransport transport, Request request) {
+        super(UNUSED_CLIENT, request);
+        this.transport = transport;
+        this.request = request;
+    }
+
+    @Override
+    public Response execute() throws IOException {
+        markExecuted();
+        if (canceled) {
+            CallMeter.fail(request, 0L);
+            throw new IOException("Canceled");
+        }
+        return send();
+    }
+
+    @Override
+    public void enqueue(final Callback responseCallback) {
+        markExecuted();
+        transport.asyncExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                Response response;
+                try {
+                    if (canceled) {
+                        throw new IOException("Canceled");
+                    }
+                    response = send();
+                } catch (IOException e) {
+                    responseCallback.onFailure(request, e);
+                    return;
+                }
+                try {
+                    responseCallback.onResponse(response);
+                } catch (IOException e) {
+                    responseCallback.onFailure(request, e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    private Response send() throws IOException {
+        long start = System.currentTimeMillis();
+        try {
+            return CallMeter.meter(request, transport.execute(request));
+        } catch (IOException e) {
+            CallMeter.fail(request, System.currentTimeMillis() - start);
+            throw e;
+        }
+    }
+
+    private synchronized void markExecuted() {
+        if (executed) {
+            throw new IllegalStateException("Already Executed");
+        }
+        executed = true;
+    }
+}
@@ -0,0 +1,100 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transport backed by the JDK's built-in {@link HttpURLConnection}, which keeps its own
+ * keep-alive cache per JVM.
+ */
+public class UrlConnectionTransport extends AbstractHttpTransport {
+
+    public static final String NAME = "urlconnection";
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    /**
+     * @param connectTimeoutMs connect timeout in milliseconds, 0 for none
+     * @param readTimeoutMs read timeout in milliseconds, 0 for none
+     */
+    public UrlConnectionTransport(int connectTimeoutMs, int readTimeoutMs) {
+        super(NAME);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        // HttpURLConnection hides its keep-alive cache
+        return -1;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) request.url().openConnection();
+        try {
+            conn.setConnectTimeout(connectTimeoutMs);
+            conn.setReadTimeout(readTimeoutMs);
+            conn.setInstanceFollowRedirects(false);
+            conn.setRequestMethod(request.method());
+
+            Headers requestHeaders = request.headers();
+            for (int i = 0; i < requestHeaders.size(); i++) {
+                conn.addRequestProperty(requestHeaders.name(i), requestHeaders.value(i));
+            }
+
+            byte[] body = bodyBytes(request);
+            if (body != null) {
+                if (request.header("Content-Type") == null && request.body().contentType() != null) {
+                    conn.setRequestProperty("Content-Type", request.body().contentType().toString());
+                }
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(body.length);
+                OutputStream out = conn.getOutputStream();
+                out.write(body);
+                out.close();
+            }
+
+            int code = conn.getResponseCode();
+            Headers.Builder responseHeaders = new Headers.Builder();
+            for (Map.Entry<String, List<String>> header : conn.getHeaderFields().entrySet()) {
+                // The null key holds the status line
+                if (header.getKey() == null) {
+                    continue;
+                }
+                for (String value : header.getValue()) {
+                    responseHeaders.add(header.getKey(), value);
+                }
+            }
+
+            InputStream in = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            byte[] responseBody = new byte[0];
+            if (in != null) {
+                BufferedSource source = Okio.buffer(Okio.source(in));
+                try {
+                    responseBody = source.readByteArray();
+                } finally {
+                    source.close();
+                }
+            }
+
+            return buildResponse(request, Protocol.HTTP_1_1, code, conn.getResponseMessage(), responseHeaders.build(), responseBody);
+        } catch (IOException e) {
+            // Drop the connection rather than returning a broken one to the keep-alive cache
+            conn.disconnect();
+            throw e;
+        }
+    }
+}
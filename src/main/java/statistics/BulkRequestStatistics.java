@@ -1,11 +1,17 @@
 package statistics;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -17,160 +23,313 @@ public class BulkRequestStatistics {
 
   public static final int MILLISECS_PER_SEC = 1000;
   private static final Logger logger = LogManager.getLogger(BulkRequestStatistics.class);
-
-  private AtomicInteger totalRequests = new AtomicInteger();
-  private AtomicInteger totalBadRequests = new AtomicInteger();
-  private BlockingQueue<SingleRequestStatistics[]> writeQueue = new LinkedBlockingQueue<>();
-
-  private Map<String, Double> avgLatencyByPath;
-  private Map<String, Integer> maxLatencyByPath;
-  private Map<String, Integer> medianLatencyByPath;
-  private Map<String, Integer> p99LatencyByPath;
-  private long[] numRequestsByMin;
+  // Arrays waiting for the CSV writer; full, it makes runners wait rather than pile up results
+  public static final int DEFAULT_WRITE_QUEUE_CAPACITY = 1024;
+
+  private AtomicLong totalRequests = new AtomicLong();
+  private AtomicLong totalBadRequests = new AtomicLong();
+  private AtomicLong totalShortCircuited = new AtomicLong();
+  // One ring and CSV writer per shard, each runner writing to one of them
+  private StatsRingBuffer[] writeQueues;
+  private final AtomicInteger nextShard = new AtomicInteger();
+
+  private RunSnapshot snapshot;
+  private List<RunSnapshot> mergedSnapshots = new CopyOnWriteArrayList<>();
+  private TopTenStatistics topTenStats = new TopTenStatistics();
   private long wallStart;
   private long wallStop;
+  private String transportName;
+  private long connectionsOpened = -1;
+  private List<String> extraReportSections = new CopyOnWriteArrayList<>();
+
+  // Flushes of the results runners are still holding, for the periodic flush and interruptions
+  private final List<Runnable> buffers = new CopyOnWriteArrayList<>();
+  private ScheduledExecutorService bufferFlusher;
+  private volatile boolean stopping;
+  private final AtomicBoolean reportClaimed = new AtomicBoolean();
 
   private String filePath;
   private CsvStatsReader reader;
-  private CsvStatsWriter writer;
+  private CsvStatsWriter[] writers;
 
   public BulkRequestStatistics(String filePathStr) {
+    this(filePathStr, SegmentPolicy.SINGLE_FILE, DEFAULT_WRITE_QUEUE_CAPACITY,
+        StatsRingBuffer.WaitStrategy.PARK, 1);
+  }
+
+  /**
+   * @param filePathStr   the CSV file name, without extension
+   * @param policy        when the CSV writers roll over to a new segment
+   * @param queueCapacity slots for arrays waiting for each CSV writer
+   * @param waitStrategy  how runners and the writers wait on each other
+   * @param shards        CSV writer threads, each with its own file; with more than one the
+   *                      files are csvFilename.shard1.csv and onwards, listed in
+   *                      csvFilename.shards
+   */
+  public BulkRequestStatistics(String filePathStr, SegmentPolicy policy, int queueCapacity,
+      StatsRingBuffer.WaitStrategy waitStrategy, int shards) {
     this.filePath = filePathStr;
-    filePathStr = filePathStr + ".csv";
-    this.reader = new CsvStatsReader(filePathStr);
-    this.writer = new CsvStatsWriter(filePathStr, writeQueue);
+    this.writeQueues = new StatsRingBuffer[shards];
+    this.writers = new CsvStatsWriter[shards];
+    for (int i = 0; i < shards; i++) {
+      writeQueues[i] = new StatsRingBuffer(queueCapacity, waitStrategy);
+      String csvPath = shards == 1
+          ? filePathStr + ".csv"
+          : filePathStr + ".shard" + (i + 1) + ".csv";
+      writers[i] = new CsvStatsWriter(csvPath, writeQueues[i], policy);
+    }
+    this.reader = new CsvStatsReader(shards == 1
+        ? writers[0].getDataPath().toString()
+        : filePathStr + ShardManifest.SUFFIX);
   }
 
   /**
-   * Opens a CSV file for writing and starts a listener waiting for data from each request thread.
+   * Opens the CSV files for writing and starts a listener for each, waiting for data from the
+   * request threads. With several shards, also lists their files in the shard manifest.
    *
-   * @return the listener thread handle
+   * @return the listener thread handle, which ends once every shard's listener has
    */
   public Thread startStatsToCsvListener() {
-    writer.initCsvFile();
-    return writer.startWriteLoop();
+    List<Path> shardPaths = new ArrayList<>();
+    for (CsvStatsWriter writer : writers) {
+      writer.initCsvFile();
+      shardPaths.add(writer.getDataPath());
+    }
+    if (writers.length > 1) {
+      try {
+        ShardManifest.save(Paths.get(filePath + ShardManifest.SUFFIX), shardPaths);
+      } catch (IOException e) {
+        handleError(e);
+      }
+    }
+    if (writers.length == 1) {
+      return writers[0].startWriteLoop();
+    }
+
+    List<Thread> loops = new ArrayList<>();
+    for (CsvStatsWriter writer : writers) {
+      loops.add(writer.startWriteLoop());
+    }
+    Thread all = new Thread(() -> {
+      for (Thread loop : loops) {
+        try {
+          loop.join();
+        } catch (InterruptedException e) {
+          handleError(e);
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }, "csv-shard-writers");
+    all.start();
+    return all;
+  }
+
+  /**
+   * Picks the shard a runner writes all of its results to, spreading runners evenly.
+   *
+   * @return the shard number, for pushDataToWriter
+   */
+  public int assignShard() {
+    return Math.floorMod(nextShard.getAndIncrement(), writeQueues.length);
   }
 
   /**
-   * Alias for putting data into the blocking queue.
+   * Alias for putting data into a writer's ring buffer, waiting while it is full. Threads without
+   * an assigned shard keep to one picked by their thread. An empty array goes to every writer,
+   * stopping them all.
    *
    * @param stats an array of stats to include
    */
   public void pushDataToWriter(SingleRequestStatistics[] stats) {
+    if (stats.length == 0) {
+      for (int shard = 0; shard < writeQueues.length; shard++) {
+        pushDataToWriter(shard, stats);
+      }
+      return;
+    }
+    pushDataToWriter((int) (Thread.currentThread().getId() % writeQueues.length), stats);
+  }
+
+  /**
+   * Puts data into the given shard's ring buffer, waiting while it is full.
+   *
+   * @param shard a shard from assignShard
+   * @param stats an array of stats to include
+   */
+  public void pushDataToWriter(int shard, SingleRequestStatistics[] stats) {
     try {
-      writeQueue.put(stats);
+      writeQueues[shard].put(stats);
     } catch (InterruptedException e) {
       handleError(e);
     }
   }
 
   /**
-   * Calculates final statistics for the client run. This will only work after all phases of main
-   * are complete.
+   * Registers a runner's flush, which hands whatever results it holds to the writer, so they can
+   * be written before the runner's chunk fills. The flush may be called from any thread.
    *
-   * @throws InterruptedException if threads are interrupted
+   * @param flush the runner's flush
    */
-  public void performFinalCalcs() throws InterruptedException {
-    // Work that doesn't need a max latency value
-    Thread mean = launchMeanCalculation();
-    Thread histData = launchNumRequestsByMin();
+  public void registerBuffer(Runnable flush) {
+    buffers.add(flush);
+  }
 
-    // Max latency calculation
-    try {
-      this.maxLatencyByPath = reader.calculateMaxLatencies();
-    } catch (IOException | NumberFormatException e) {
-      handleError(e);
+  /**
+   * Removes a runner's flush once it has handed over its last results.
+   *
+   * @param flush the flush given to registerBuffer
+   */
+  public void unregisterBuffer(Runnable flush) {
+    synchronized (buffers) {
+      buffers.remove(flush);
+      buffers.notifyAll();
     }
+  }
 
-    // Work requiring a max latency (for counting array)
-    Thread median = launchMedianCalculation();
-    Thread p99 = launchP99Calculation();
+  /**
+   * Hands every registered runner's results to the writer.
+   */
+  public void flushBuffers() {
+    for (Runnable flush : buffers) {
+      flush.run();
+    }
+  }
+
+  /**
+   * Flushes the registered runners on a timer, so no more than an interval of results is held
+   * back from the CSV.
+   *
+   * @param intervalMillis time between flushes
+   */
+  public void startPeriodicFlush(long intervalMillis) {
+    bufferFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "stats-buffer-flusher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    bufferFlusher.scheduleWithFixedDelay(this::flushBuffers, intervalMillis, intervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
 
-    // Let work finish
-    mean.join();
-    histData.join();
-    median.join();
-    p99.join();
+  /**
+   * Stops the periodic flush, waiting for one in progress so nothing reaches the writer after its
+   * stop signal.
+   */
+  public void stopPeriodicFlush() {
+    if (bufferFlusher == null) {
+      return;
+    }
+    bufferFlusher.shutdown();
+    try {
+      bufferFlusher.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
-    // Output the histogram data
-    String path = this.filePath + "-req-start-hist-data.csv";
-    this.writer.writeRequestStartData(path, this.numRequestsByMin);
+  /**
+   * Asks runners to stop sending, when the run is interrupted.
+   */
+  public void requestStop() {
+    stopping = true;
   }
 
   /**
-   * Launches a mean latency calculation in a new thread.
-   *
-   * @return the thread handle
+   * @return true once the run has been asked to stop
    */
-  private Thread launchMeanCalculation() {
-    // Set up work to be done
-    Runnable work = () -> {
-      try {
-        this.avgLatencyByPath = reader.calculateMeanLatencies();
-      } catch (IOException | NumberFormatException e) {
-        handleError(e);
-      }
-    };
-    Thread thread = new Thread(work);
-    thread.start();
-    return thread;
+  public boolean isStopping() {
+    return stopping;
   }
 
   /**
-   * Launches a median latency calculation in a new thread.
+   * Waits for registered runners to hand over their last results and unregister.
    *
-   * @return the thread handle
+   * @param timeoutMillis the longest to wait
+   * @return true if every runner unregistered in time
+   * @throws InterruptedException if interrupted while waiting
    */
-  private Thread launchMedianCalculation() {
-    // Set up work to be done
-    Runnable work = () -> {
-      try {
-        this.medianLatencyByPath = reader.calculateMedianLatencies(this.maxLatencyByPath);
-      } catch (IOException | NumberFormatException e) {
-        handleError(e);
+  public boolean awaitBuffers(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (buffers) {
+      long remaining = timeoutMillis;
+      while (!buffers.isEmpty() && remaining > 0) {
+        buffers.wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
       }
-    };
-    Thread thread = new Thread(work);
-    thread.start();
-    return thread;
+      return buffers.isEmpty();
+    }
   }
 
   /**
-   * Launches a 99th percentile latency calculation in a new thread.
+   * Claims the job of finishing and reporting the run, which either the end of the run or an
+   * interruption does, never both.
    *
-   * @return the thread handle
+   * @return true for the first caller only
    */
-  private Thread launchP99Calculation() {
-    // Set up work to be done
-    Runnable work = () -> {
-      try {
-        this.p99LatencyByPath = reader.calculateP99Latencies(this.maxLatencyByPath);
-      } catch (IOException | NumberFormatException e) {
-        handleError(e);
-      }
-    };
-    Thread thread = new Thread(work);
-    thread.start();
-    return thread;
+  public boolean claimReport() {
+    return reportClaimed.compareAndSet(false, true);
   }
 
   /**
-   * Launches a calculation to determine histogram data of request start times in a new thread.
+   * Adds the results of another run, such as a worker of a distributed run, to be merged into this
+   * run's snapshot by performFinalCalcs.
    *
-   * @return the thread handle
+   * @param snapshot the other run's snapshot
    */
-  private Thread launchNumRequestsByMin() {
-    // Set up work to be done
-    Runnable work = () -> {
-      try {
-        this.numRequestsByMin = this.reader.calculateNumRequestsByMin(this.wallStart, this.wallStop);
-      } catch (IOException | NumberFormatException e) {
-        handleError(e);
+  public void addSnapshot(RunSnapshot snapshot) {
+    mergedSnapshots.add(snapshot);
+  }
+
+  /**
+   * Calculates final statistics for the client run from its CSV and any added snapshots, then
+   * writes the request start histogram and saves the snapshot next to the CSV. This will only work
+   * after all phases of main are complete.
+   */
+  public void performFinalCalcs() {
+    RunSnapshot local;
+    try {
+      local = reader.readSnapshot();
+    } catch (IOException | NumberFormatException e) {
+      handleError(e);
+      local = new RunSnapshot();
+    }
+    local.setLabel(filePath);
+    local.setCounters(totalRequests.get(), totalBadRequests.get(), totalShortCircuited.get());
+    local.setWallWindow(wallStart, wallStop);
+    local.setTransportInfo(transportName, connectionsOpened);
+    // Segments the retention limit dropped are no longer in the CSV, but still count
+    for (CsvStatsWriter writer : writers) {
+      if (writer.getDroppedSegments() > 0) {
+        local.merge(writer.getDroppedSnapshot());
+        extraReportSections.add(
+            writer.retentionSummary(writer.getDataPath().getFileName().toString()));
       }
-    };
-    Thread thread = new Thread(work);
-    thread.start();
-    return thread;
+    }
+    if (totalRequests.get() == 0 && !mergedSnapshots.isEmpty()) {
+      local.setRuns(0);  // only collects the added runs
+    }
+    for (RunSnapshot other : mergedSnapshots) {
+      local.merge(other);
+    }
+    this.snapshot = local;
+    // The coordinator of a distributed run writes nothing
+    for (int i = 0; i < writeQueues.length; i++) {
+      if (writeQueues[i].getTaken() > 0) {
+        extraReportSections.add(writeQueues[i].summary(writeQueues.length == 1
+            ? "Stats Writer Queue"
+            : "Stats Writer Queue, shard " + (i + 1)));
+      }
+    }
+
+    // Output the histogram data and the snapshot
+    String path = this.filePath + "-req-start-hist-data.csv";
+    this.writers[0].writeRequestStartData(path, snapshot.requestsPerSecond());
+    try {
+      snapshot.save(getSnapshotPath());
+    } catch (IOException e) {
+      handleError(e);
+    }
   }
 
   /**
@@ -204,75 +363,95 @@ public class BulkRequestStatistics {
     this.wallStop = System.currentTimeMillis();
   }
 
+  /**
+   * Records which HTTP transport the run used so throughput can be compared across transports.
+   *
+   * @param transportName     transport name
+   * @param connectionsOpened TCP connections opened during the run, -1 if unknown
+   */
+  public void setTransportInfo(String transportName, long connectionsOpened) {
+    this.transportName = transportName;
+    this.connectionsOpened = connectionsOpened;
+  }
+
   @Override
   public String toString() {
-    return String.format("Execution Statistics\n"
-            + "--------------------\n"
-            + "Total Requests: %d\n"
-            + "Bad Requests: %d\n"
-            + "Wall Time: %.2f seconds\n"
-            + "Total Throughput: %.2f requests/second\n"
-            + "Success Throughput: %.2f requests/second\n"
-        , totalRequests.get()
-        , totalBadRequests.get()
-        , getWallTimeSecs()
-        , getThroughputPerSec()
-        , getGoodThroughputPerSec()
-    )
-        + statsPerPathToString();
+    return snapshot.report()
+        + topTenStats.summary()
+        + String.join("", extraReportSections);
   }
 
   /**
-   * Provides statistics for each path as a string.
+   * Adds a block of text to the end of the report, for features that gather their own statistics.
    *
-   * @return a string of statistics for each path
+   * @param section the text to append, ending in a newline
    */
-  private String statsPerPathToString() {
-    // Same keys for every map
-    Set<String> keys = this.avgLatencyByPath.keySet();
-    StringBuilder builder = new StringBuilder();
-    char newline = '\n';
-    for (String key : keys) {
-      // Section start
-      builder.append("Latencies (ms) for ");
-      builder.append(key);
-      builder.append(":\n");
-
-      // Mean
-      builder.append("\tMean: ");
-      String mean = String.format("%.2f\n", this.avgLatencyByPath.get(key));
-      builder.append(mean);
-
-      // Median
-      builder.append("\tMedian: ");
-      int median = this.medianLatencyByPath.get(key);
-      builder.append(median);
-      builder.append(newline);
-
-      // P99
-      builder.append("\t99th Percentile: ");
-      int p99 = this.p99LatencyByPath.get(key);
-      builder.append(p99);
-      builder.append(newline);
-
-      // Max
-      builder.append("\tMax: ");
-      int max = this.maxLatencyByPath.get(key);
-      builder.append(max);
-      builder.append(newline);
-    }
+  public void addReportSection(String section) {
+    extraReportSections.add(section);
+  }
+
+  /**
+   * @return the CSV file each request is recorded in
+   */
+  public Path getCsvPath() {
+    return Paths.get(filePath + ".csv");
+  }
+
+  /**
+   * @return where performFinalCalcs saves the run's snapshot
+   */
+  public Path getSnapshotPath() {
+    return Paths.get(filePath + ".snapshot");
+  }
+
+  /**
+   * @return the run's snapshot, null until performFinalCalcs has run
+   */
+  public RunSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * @return the transport name, or null if it was never set
+   */
+  public String getTransportName() {
+    return transportName;
+  }
 
-    return builder.toString();
+  /**
+   * @return TCP connections opened during the run, -1 if unknown
+   */
+  public long getConnectionsOpened() {
+    return connectionsOpened;
   }
 
-  public AtomicInteger getTotalRequests() {
+  /**
+   * @return the report sections added so far, in order
+   */
+  public List<String> getReportSections() {
+    return new ArrayList<>(extraReportSections);
+  }
+
+  public AtomicLong getTotalRequests() {
     return totalRequests;
   }
 
-  public AtomicInteger getTotalBadRequests() {
+  public AtomicLong getTotalBadRequests() {
     return totalBadRequests;
   }
 
+  /**
+   * @return requests a circuit breaker stopped from being sent, counted in the total requests
+   *     but kept out of the CSV
+   */
+  public AtomicLong getTotalShortCircuited() {
+    return totalShortCircuited;
+  }
+
+  public TopTenStatistics getTopTenStatistics() {
+    return topTenStats;
+  }
+
   public long getWallStart() {
     return wallStart;
   }
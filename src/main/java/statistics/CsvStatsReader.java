@@ -2,24 +2,43 @@ package statistics;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+import java.util.zip.GZIPInputStream;
 
 /**
- * Provides methods to calculate statistics from the CSV request file created during client
- * execution.
+ * Reads the CSV request file created during client execution into a RunSnapshot, from which the
+ * run's statistics are calculated. Given a segment index or shard manifest instead, reads every
+ * file it lists in parallel, gzipped or not, and merges them into one snapshot.
+ * <p>
+ * Where rows are needed in start order, such as for a replay, each shard is read and sorted on its
+ * own thread and the sorted shards are then merged k ways.
  */
 public class CsvStatsReader {
 
-  // For CSV splitting in calculation methods
+  // For CSV splitting
   private final int csvColIndexMethod = 0;
   private final int csvColIndexPath = 1;
   private final int csvColIndexTimestamp = 2;
   private final int csvColIndexLatency = 3;
   private final int csvColIndexCode = 4;
+  private final int csvColIndexRequestBytes = 5;
+  private final int csvColIndexResponseBytes = 6;
   private final String SEP = ",";
 
   private Path filePath;
@@ -29,188 +48,224 @@ public class CsvStatsReader {
   }
 
   /**
-   * Calculates the mean latency for each request type from a CSV.
+   * Reads every request row of the CSV, or of each segment and shard, into a snapshot. Requests
+   * without byte counts (older files, or requests that never got a response) are left out of the
+   * wire totals.
+   *
+   * @return a snapshot of the file's requests, without counters or metadata
+   * @throws IOException           if there is a problem reading from the file
+   * @throws NumberFormatException if there is a problem parsing a value
    */
-  public Map<String, Double> calculateMeanLatencies() throws IOException, NumberFormatException {
-    // Stores "method path" -> [sum, count]
-    Map<String, Long[]> tempCounter = new HashMap<>();
-    Map<String, Double> avgByPath = new HashMap<>();
+  public RunSnapshot readSnapshot() throws IOException, NumberFormatException {
+    List<Path> files = dataFiles(filePath);
+    if (files.size() == 1) {
+      return readFile(files.get(0));
+    }
 
-    BufferedReader reader = Files.newBufferedReader(filePath);
-    String line = reader.readLine(); // Ignore column headers
-    line = reader.readLine();
-    while (line != null) {
-      // Get vals from line
-      String[] cols = line.split(SEP);
-      String key = makeKey(cols);
-      long nextLatency = Long.parseLong(getLatency(cols));
+    List<Callable<RunSnapshot>> reads = new ArrayList<>();
+    for (Path file : files) {
+      reads.add(() -> readFile(file));
+    }
+    RunSnapshot snapshot = new RunSnapshot();
+    for (RunSnapshot part : inParallel(reads)) {
+      snapshot.merge(part);
+    }
+    // The files are all one run
+    snapshot.setRuns(1);
+    return snapshot;
+  }
 
-      // Update map
-      Long[] currNums = tempCounter.getOrDefault(key, new Long[]{(long) 0, (long) 0});
-      currNums[0] += nextLatency;
-      currNums[1] += (long) 1;
-      tempCounter.put(key, currNums);
+  /**
+   * Parses one CSV row into a caller's record.
+   *
+   * @param <T> the record type
+   */
+  public interface RowParser<T> {
+
+    /**
+     * @param cols a line of CSV data, split into an array
+     * @return the record, or null to skip the row
+     * @throws NumberFormatException if a value is malformed
+     */
+    T parse(String[] cols) throws NumberFormatException;
+  }
 
-      // Get next line
-      line = reader.readLine();
+  /**
+   * Reads the rows of a CSV, segment index or shard manifest in start order. Shards are read and
+   * sorted in parallel, then merged by repeatedly taking the earliest head among them.
+   *
+   * @param path      the CSV, segment index or shard manifest
+   * @param parser    turns each row into a record
+   * @param startTime the start timestamp of a record
+   * @param <T>       the record type
+   * @return the records, earliest start first
+   * @throws IOException           if a file can't be read
+   * @throws NumberFormatException if a value is malformed
+   */
+  public static <T> List<T> readInStartOrder(Path path, RowParser<T> parser,
+      ToLongFunction<T> startTime) throws IOException, NumberFormatException {
+    List<Path> shards = ShardManifest.isManifest(path)
+        ? ShardManifest.load(path)
+        : Collections.singletonList(path);
+    Comparator<T> byStart = Comparator.comparingLong(startTime);
+    List<Callable<List<T>>> sorts = new ArrayList<>();
+    for (Path shard : shards) {
+      sorts.add(() -> {
+        List<T> rows = new ArrayList<>();
+        for (Path file : dataFiles(shard)) {
+          readRows(file, parser, rows);
+        }
+        rows.sort(byStart);
+        return rows;
+      });
+    }
+    List<List<T>> sorted = inParallel(sorts);
+    if (sorted.size() == 1) {
+      return sorted.get(0);
     }
 
-    // Calculate the avg for each path
-    for (String key : tempCounter.keySet()) {
-      Long[] nums = tempCounter.get(key);
-
-      // Ignore anything that got in with a count of zero
-      // and avoid divide by zero
-      if (nums[1].equals((long) 0)) {
-        continue;
+    // Heads of the shards, as {shard, position}, earliest start first
+    PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sorted.size()),
+        (a, b) -> byStart.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1])));
+    int total = 0;
+    for (int i = 0; i < sorted.size(); i++) {
+      total += sorted.get(i).size();
+      if (!sorted.get(i).isEmpty()) {
+        heads.add(new int[]{i, 0});
       }
-
-      // Store the value
-      Double avg = (double) nums[0] / nums[1];
-      avgByPath.put(key, avg);
     }
-
-    return avgByPath;
+    List<T> merged = new ArrayList<>(total);
+    while (!heads.isEmpty()) {
+      int[] head = heads.poll();
+      List<T> shard = sorted.get(head[0]);
+      merged.add(shard.get(head[1]));
+      if (++head[1] < shard.size()) {
+        heads.add(head);
+      }
+    }
+    return merged;
   }
 
   /**
-   * Calculates the maximum latency for each request type from a CSV.
+   * Lists the CSV files behind a path: the file itself, the segments of an index, or the files of
+   * every shard of a manifest.
+   *
+   * @param path a CSV, segment index or shard manifest
+   * @return the CSV files, some of which may be gzipped
+   * @throws IOException if an index or manifest can't be read
    */
-  public Map<String, Integer> calculateMaxLatencies() throws IOException, NumberFormatException {
-    // Stores "method path" -> max
-    Map<String, Integer> maxByPath = new HashMap<>();
-
-    BufferedReader reader = Files.newBufferedReader(filePath);
-    String line = reader.readLine(); // Ignore column headers
-    line = reader.readLine();
-    while (line != null) {
-      // Parse data
-      String[] cols = line.split(SEP);
-      String key = makeKey(cols);
-      int latency = Integer.parseInt(getLatency(cols));
-
-      // Check max and update
-      Integer max = maxByPath.getOrDefault(key, 0);
-      if (latency > max) {
-        maxByPath.put(key, latency);
+  public static List<Path> dataFiles(Path path) throws IOException {
+    if (ShardManifest.isManifest(path)) {
+      List<Path> files = new ArrayList<>();
+      for (Path shard : ShardManifest.load(path)) {
+        files.addAll(dataFiles(shard));
       }
-
-      line = reader.readLine();
+      return files;
     }
-
-    return maxByPath;
+    if (SegmentIndex.isIndex(path)) {
+      return SegmentIndex.load(path).segmentPaths(path);
+    }
+    return Collections.singletonList(path);
   }
 
   /**
-   * Calculates median latencies for each request path from a CSV.
+   * Runs reads on a pool sized to the machine, returning their results in order.
    */
-  public Map<String, Integer> calculateMedianLatencies(Map<String, Integer> pathsToMax)
+  private static <T> List<T> inParallel(List<Callable<T>> reads)
       throws IOException, NumberFormatException {
-    // Used to count the number of times a specific latency occurs in a path
-    Map<String, Integer[]> pathsToCountingArray = buildCountingArrayMap(pathsToMax);
-
-    // Get the median and add it to the result map
-    Map<String, Integer> pathsToMedian = new HashMap<>();
-    for (String key : pathsToCountingArray.keySet()) {
-      Integer[] counter = pathsToCountingArray.get(key);
-      int median = getMedianFromCountingArray(counter);
-      pathsToMedian.put(key, median);
+    List<T> results = new ArrayList<>();
+    if (reads.isEmpty()) {
+      return results;
     }
-
-    return pathsToMedian;
+    int threads = Math.min(reads.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<T>> parts = new ArrayList<>();
+      for (Callable<T> read : reads) {
+        parts.add(pool.submit(read));
+      }
+      for (Future<T> part : parts) {
+        results.add(part.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted reading CSV files");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof NumberFormatException) {
+        throw (NumberFormatException) e.getCause();
+      }
+      throw new IOException("problem reading CSV files", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return results;
   }
 
   /**
-   * Calculates median latencies for each request path from a CSV.
+   * Parses every row of one CSV, or gzipped CSV, into a list.
    */
-  public Map<String, Integer> calculateP99Latencies(Map<String, Integer> pathsToMax)
+  private static <T> void readRows(Path path, RowParser<T> parser, List<T> rows)
       throws IOException, NumberFormatException {
-    // Used to count the number of times a specific latency occurs in a path
-    Map<String, Integer[]> pathsToCountingArray = buildCountingArrayMap(pathsToMax);
-
-    // Get the 99th percentile and add it to the result map
-    Map<String, Integer> pathsToP99 = new HashMap<>();
-    for (String key : pathsToCountingArray.keySet()) {
-      Integer[] counter = pathsToCountingArray.get(key);
-      int p99 = getP99FromCountingArray(counter);
-      pathsToP99.put(key, p99);
+    try (BufferedReader reader = openCsv(path)) {
+      String line = reader.readLine(); // Ignore column headers
+      line = reader.readLine();
+      while (line != null) {
+        T row = parser.parse(line.split(","));
+        if (row != null) {
+          rows.add(row);
+        }
+        line = reader.readLine();
+      }
     }
-
-    return pathsToP99;
   }
 
   /**
-   * Calculates the number of requests started during each second of program operation.
+   * Reads one CSV, or gzipped CSV, in a single pass.
    */
-  public long[] calculateNumRequestsByMin(long startTimestamp, long endTimestamp)
-      throws IOException, NumberFormatException {
-    double totalSecs = milliSecsToSecs(endTimestamp - startTimestamp);
-    int length = (int) Math.ceil(totalSecs);
-    long[] result = new long[length];
-    int timestampIndex = 2;
-
-    // Start reading file
-    BufferedReader reader = Files.newBufferedReader(filePath);
-    String line = reader.readLine(); // Ignore column headers
-    line = reader.readLine();
-    while (line != null) {
-      // Parse data
-      String[] cols = line.split(SEP);
-      long timeOfRequest = Long.parseLong(cols[timestampIndex]);
-
-      // Increment count on appropriate second
-      int secondBucket = (int) Math.floor(
-          milliSecsToSecs(timeOfRequest - startTimestamp)
-      );
-      result[secondBucket]++;
-
+  private RunSnapshot readFile(Path path) throws IOException, NumberFormatException {
+    RunSnapshot snapshot = new RunSnapshot();
+    try (BufferedReader reader = openCsv(path)) {
+      String line = reader.readLine(); // Ignore column headers
       line = reader.readLine();
+      while (line != null) {
+        String[] cols = line.split(SEP);
+        long reqBytes = -1;
+        long respBytes = -1;
+        if (cols.length > csvColIndexResponseBytes) {
+          reqBytes = Long.parseLong(cols[csvColIndexRequestBytes]);
+          respBytes = Long.parseLong(cols[csvColIndexResponseBytes]);
+        }
+        snapshot.record(makeKey(cols), Long.parseLong(cols[csvColIndexTimestamp]),
+            Long.parseLong(getLatency(cols)), reqBytes, respBytes);
+
+        line = reader.readLine();
+      }
     }
-
-    return result;
+    return snapshot;
   }
 
   /**
-   * Builds a latency counting array from a CSV file, given the max latencies in the file.
+   * Opens a CSV for reading, decompressing it if its name ends in ".gz".
    *
-   * @param pathsToMax a path to max latency map
-   * @return the path to counting array produced
-   * @throws IOException           if there is a problem reading from the file
-   * @throws NumberFormatException if there is a problem parsing the latency value
+   * @param path a CSV file
+   * @return a reader over its text
+   * @throws IOException if the file can't be opened
    */
-  private Map<String, Integer[]> buildCountingArrayMap(Map<String, Integer> pathsToMax)
-      throws IOException, NumberFormatException {
-    Map<String, Integer[]> pathsToCountingArray = new HashMap<>();
-
-    // Initialize above map
-    // Keys are the same, taken from CSV (assumed)
-    for (String key : pathsToMax.keySet()) {
-      int maxVal = pathsToMax.get(key);
-      pathsToCountingArray.put(key, new Integer[maxVal + 1]);  // Add 1 to account for latency=0
+  public static BufferedReader openCsv(Path path) throws IOException {
+    if (!path.getFileName().toString().endsWith(".gz")) {
+      return Files.newBufferedReader(path, StandardCharsets.UTF_8);
     }
-
-    // Start the count
-    BufferedReader reader = Files.newBufferedReader(filePath);
-    String line = reader.readLine(); // Ignore column headers
-    line = reader.readLine();
-    while (line != null) {
-      // Parse data
-      String[] cols = line.split(SEP);
-      String key = makeKey(cols);
-      int latency = Integer.parseInt(getLatency(cols));
-
-      // Update counting array
-      Integer[] counter = pathsToCountingArray.get(key);
-      if (counter[latency] == null) {
-        counter[latency] = 1;
-      } else {
-        counter[latency]++;
-      }
-
-      line = reader.readLine();
+    InputStream in = Files.newInputStream(path);
+    try {
+      return new BufferedReader(new InputStreamReader(new GZIPInputStream(in, 64 * 1024),
+          StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      in.close();
+      throw e;
     }
-
-    return pathsToCountingArray;
   }
 
   /**
@@ -229,80 +284,4 @@ public class CsvStatsReader {
   private String getLatency(String[] cols) {
     return cols[csvColIndexLatency];
   }
-
-  /**
-   * Helper for finding the median of an array efficiently.
-   *
-   * @param arr an array in which the index is the latency and the values are the counts of requests
-   *            that had that latency
-   * @return the median latency
-   */
-  private int getMedianFromCountingArray(Integer[] arr) {
-    long numRequests = getSum(arr);
-    int middleRequest = (int) Math.round(numRequests / 2.0);  // approximate in some cases
-    int currTotal = 0;
-    for (int i = 0; i < arr.length; i++) {
-      // Find the middle request bucket: its index is the median
-      if (arr[i] != null) {
-        currTotal += arr[i];
-      }
-      if (currTotal >= middleRequest) {
-        return i;
-      }
-    }
-    return -1;
-  }
-
-  /**
-   * Helper for finding the 99th percentile of an array efficiently.
-   *
-   * @param arr an array in which the index is the latency and the values are the counts of requests
-   *            that had that latency
-   * @return the median latency
-   */
-  private int getP99FromCountingArray(Integer[] arr) {
-    long numRequests = getSum(arr);
-    long p99Request = Math.round(numRequests * 0.99);  // approximate for decimal values
-    long currTotal = numRequests;
-    for (int i = arr.length - 1; i >= 0; i--) {
-      // Find the bucket of the p99 request: its index is value we want
-      if (arr[i] != null) {
-        currTotal -= arr[i];
-      }
-      if (currTotal <= p99Request) {
-        return i;
-      }
-    }
-    return -1;
-  }
-
-  /**
-   * Simple sum calculator.
-   *
-   * @param arr an array of ints
-   * @return the sum of the ints
-   */
-  private long getSum(Integer[] arr) {
-    if (arr == null) {
-      return -1;
-    }
-    long sum = 0;
-    for (Integer num : arr) {
-      if (num != null) {
-        sum += num;
-      }
-    }
-    return sum;
-  }
-
-  /**
-   * Converts milliseconds to seconds
-   *
-   * @param milliseconds a value in milliseconds
-   * @return the value of milliseconds as seconds
-   */
-  private double milliSecsToSecs(long milliseconds) {
-    int millisecsPerSec = 1000;
-    return (double) milliseconds / millisecsPerSec;
-  }
 }
@@ -3,27 +3,132 @@ package statistics;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.util.concurrent.BlockingQueue;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Writes request statistics to a CSV file during execution of the requests. Managed by the bulk
  * stats object which passes chunks of data from a queue.
+ * <p>
+ * With a rolling segment policy the rows go to numbered segments instead, csvFilename.00001.csv
+ * and so on, each closed once it reaches the policy's size or age. Closed segments are gzipped on
+ * a background thread and listed in a SegmentIndex, rewritten whenever a segment is closed or
+ * compressed. With a retention limit the oldest closed segments are dropped once there are too
+ * many or they take too much disk; their rows are folded into a RunSnapshot first, so the run's
+ * report still counts them.
  */
 public class CsvStatsWriter {
 
   private static final Logger logger = LogManager.getLogger(CsvStatsWriter.class);
+  private static final String HEADERS =
+      "RequestType,Path,StartTimestamp(ms),Latency(ms),ResponseCode,RequestBytes,ResponseBytes";
+  private static final int LINE_SEPARATOR_BYTES = System.lineSeparator().length();
 
   private String filePath;
   private PrintWriter pw;
-  private BlockingQueue<SingleRequestStatistics[]> writeQueue;
+  private StatsRingBuffer writeQueue;
 
-  public CsvStatsWriter(String csvPathStr,
-      BlockingQueue<SingleRequestStatistics[]> writeQueue) {
+  // Rolling segments, only used when the policy rolls
+  private final SegmentPolicy policy;
+  private final String segmentBase;
+  private final Path indexPath;
+  private final List<SegmentIndex.Entry> segments = new ArrayList<>();
+  // Guarded by segments: each indexed segment's bytes on disk, their total, and the names of
+  // segments waiting to be compressed
+  private final List<Long> segmentSizes = new ArrayList<>();
+  private long segmentsTotalBytes;
+  private final Set<String> compressing = new HashSet<>();
+  // Segments dropped by the retention limit, only touched by the compressor thread
+  private final RunSnapshot dropped = new RunSnapshot();
+  private int droppedSegments;
+  private long droppedRows;
+  private long droppedBytes;
+  private ExecutorService compressor;
+  private String segmentName;
+  private int segmentsOpened;
+  private long segmentOpenedAt;
+  private long segmentBytes;
+  private long segmentRows;
+  private long segmentFirstStart;
+  private long segmentLastStart;
+
+  public CsvStatsWriter(String csvPathStr, StatsRingBuffer writeQueue) {
+    this(csvPathStr, writeQueue, SegmentPolicy.SINGLE_FILE);
+  }
+
+  /**
+   * @param csvPathStr the CSV file, whose name without ".csv" also names the segments and index
+   * @param writeQueue where request threads leave their stats
+   * @param policy     when to roll over to a new segment
+   */
+  public CsvStatsWriter(String csvPathStr, StatsRingBuffer writeQueue,
+      SegmentPolicy policy) {
     this.filePath = csvPathStr;
     this.writeQueue = writeQueue;
+    this.policy = policy;
+    this.segmentBase = csvPathStr.endsWith(".csv")
+        ? csvPathStr.substring(0, csvPathStr.length() - ".csv".length())
+        : csvPathStr;
+    this.indexPath = Paths.get(segmentBase + SegmentIndex.SUFFIX);
+    this.dropped.setRuns(0);
+  }
+
+  /**
+   * @return the file a reader should be given: the CSV, or the segment index when rolling
+   */
+  public Path getDataPath() {
+    return policy.isRolling() ? indexPath : Paths.get(filePath);
+  }
+
+  /**
+   * @return segments the retention limit dropped, read once the write loop has ended
+   */
+  public int getDroppedSegments() {
+    return droppedSegments;
+  }
+
+  /**
+   * @return the rows of the dropped segments, with no counters or wall windows of its own, read
+   *     once the write loop has ended
+   */
+  public RunSnapshot getDroppedSnapshot() {
+    return dropped;
+  }
+
+  /**
+   * Describes what the retention limit dropped for the run report. Read once the write loop has
+   * ended.
+   *
+   * @param name the CSV the segments belonged to, heading the summary
+   * @return a human readable summary
+   */
+  public String retentionSummary(String name) {
+    int kept;
+    long keptBytes;
+    synchronized (segments) {
+      kept = segments.size();
+      keptBytes = segmentsTotalBytes;
+    }
+    return String.format("CSV Segment Retention (%s):\n", name)
+        + String.format("\tDropped: %d segments, %d rows, %d bytes\n", droppedSegments,
+        droppedRows, droppedBytes)
+        + String.format("\tKept: %d segments, %d bytes\n", kept, keptBytes)
+        + "\tThe report still counts the dropped rows\n";
   }
 
   /**
@@ -46,7 +151,8 @@ public class CsvStatsWriter {
   }
 
   /**
-   * The actual loop writing work. When the final values are written, closes the print writer.
+   * The actual loop writing work. When the final values are written, closes the print writer, and
+   * when rolling waits for the last segments to be compressed.
    *
    * @throws InterruptedException if there is a problem with the blocking queue
    */
@@ -59,20 +165,49 @@ public class CsvStatsWriter {
       for (SingleRequestStatistics stats : threadData) {
         String line = buildCsvLine(stats);
         pw.println(line);
+        if (policy.isRolling()) {
+          segmentBytes += line.length() + LINE_SEPARATOR_BYTES;
+          segmentRows++;
+          segmentFirstStart = Math.min(segmentFirstStart, stats.getStartTime());
+          segmentLastStart = Math.max(segmentLastStart, stats.getStartTime());
+        }
+      }
+      if (policy.isRolling()
+          && policy.isFull(segmentBytes, segmentOpenedAt, System.currentTimeMillis())) {
+        closeSegment();
+        openSegment();
       }
 
       // Get next thread's data
       threadData = writeQueue.take();
     }
 
-    pw.close();
+    if (policy.isRolling()) {
+      closeSegment();
+      compressor.shutdown();
+      compressor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } else {
+      pw.close();
+    }
   }
 
   /**
    * Erases any old file, creates a new one and writes the correct CSV headers. Keeps the file open
-   * and ready to write to.
+   * and ready to write to. When rolling, removes the segments of an earlier run of the same name
+   * and opens the first segment instead.
    */
   public void initCsvFile() {
+    if (policy.isRolling()) {
+      removeOldSegments();
+      compressor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "csv-segment-compressor");
+        thread.setDaemon(true);
+        return thread;
+      });
+      openSegment();
+      return;
+    }
+
     File csvFile = new File(filePath);
 
     // Ensure any old file is overwritten
@@ -95,8 +230,195 @@ public class CsvStatsWriter {
     }
 
     // Print headers but keep writer open to receive more data
-    String headers = "RequestType,Path,StartTimestamp(ms),Latency(ms),ResponseCode";
-    pw.println(headers);
+    pw.println(HEADERS);
+  }
+
+  /**
+   * Deletes the segments and index an earlier run with this CSV name left, so they are not read
+   * as part of this run.
+   */
+  private void removeOldSegments() {
+    try {
+      if (Files.exists(indexPath)) {
+        for (Path segment : SegmentIndex.load(indexPath).segmentPaths(indexPath)) {
+          Files.deleteIfExists(segment);
+        }
+        Files.delete(indexPath);
+      }
+    } catch (IOException | NumberFormatException e) {
+      fatal("Problem removing old CSV segments: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Starts the next segment and writes its headers.
+   */
+  private void openSegment() {
+    // Numbered by a count of its own, the index shrinks when old segments are dropped
+    segmentName = String.format("%s.%05d.csv", segmentBase, ++segmentsOpened);
+    try {
+      pw = new PrintWriter(Files.newBufferedWriter(Paths.get(segmentName)));
+    } catch (IOException e) {
+      fatal("Problem creating CSV segment " + segmentName);
+    }
+    pw.println(HEADERS);
+    segmentOpenedAt = System.currentTimeMillis();
+    segmentBytes = HEADERS.length() + LINE_SEPARATOR_BYTES;
+    segmentRows = 0;
+    segmentFirstStart = Long.MAX_VALUE;
+    segmentLastStart = Long.MIN_VALUE;
+  }
+
+  /**
+   * Closes the current segment, adds it to the index and queues it for compression. A segment
+   * nothing was written to is deleted instead.
+   */
+  private void closeSegment() {
+    pw.close();
+    Path segment = Paths.get(segmentName);
+    if (segmentRows == 0) {
+      try {
+        Files.deleteIfExists(segment);
+      } catch (IOException e) {
+        logger.error("Problem removing empty CSV segment " + segmentName + ": " + e.getMessage());
+      }
+      saveIndex();
+      return;
+    }
+    String name = segment.getFileName().toString();
+    synchronized (segments) {
+      segments.add(new SegmentIndex.Entry(name, segmentRows, segmentFirstStart,
+          segmentLastStart));
+      segmentSizes.add(segmentBytes);
+      segmentsTotalBytes += segmentBytes;
+      if (policy.isCompressed()) {
+        compressing.add(name);
+      }
+    }
+    saveIndex();
+    if (policy.isCompressed()) {
+      compressor.execute(() -> {
+        compress(segment);
+        enforceRetention();
+      });
+    } else if (policy.isRetentionLimited()) {
+      compressor.execute(this::enforceRetention);
+    }
+  }
+
+  /**
+   * Gzips a closed segment, then swaps it for the compressed file in the index. Runs on the
+   * compressor thread; a segment that fails to compress is left as it is.
+   */
+  private void compress(Path segment) {
+    String name = segment.getFileName().toString();
+    Path compressed = segment.resolveSibling(name + ".gz");
+    try (InputStream in = Files.newInputStream(segment);
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed), 64 * 1024)) {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      logger.error("Problem compressing CSV segment " + segment + ": " + e.getMessage());
+      try {
+        Files.deleteIfExists(compressed);
+      } catch (IOException ignored) {
+        // The index still lists the uncompressed segment
+      }
+      synchronized (segments) {
+        compressing.remove(name);
+      }
+      return;
+    }
+    long compressedBytes;
+    try {
+      compressedBytes = Files.size(compressed);
+    } catch (IOException e) {
+      compressedBytes = 0;
+    }
+    synchronized (segments) {
+      compressing.remove(name);
+      int position = indexOf(name);
+      SegmentIndex.Entry entry = segments.get(position);
+      segments.set(position, new SegmentIndex.Entry(compressed.getFileName().toString(),
+          entry.getRows(), entry.getFirstStart(), entry.getLastStart()));
+      segmentsTotalBytes += compressedBytes - segmentSizes.get(position);
+      segmentSizes.set(position, compressedBytes);
+    }
+    saveIndex();
+    try {
+      Files.delete(segment);
+    } catch (NoSuchFileException ignored) {
+      // Already gone
+    } catch (IOException e) {
+      logger.error("Problem removing compressed CSV segment " + segment + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return the index position of a segment, called holding the segments lock
+   */
+  private int indexOf(String fileName) {
+    for (int i = 0; i < segments.size(); i++) {
+      if (segments.get(i).getFileName().equals(fileName)) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("CSV segment " + fileName + " is not in the index");
+  }
+
+  /**
+   * Drops the oldest closed segments while the retention limit is exceeded: each is taken out of
+   * the index first, so readers never look for a missing file, then read into the dropped rows'
+   * snapshot and deleted. Runs on the compressor thread, after the compression of every segment
+   * closed before it; a segment still waiting to be compressed is never dropped.
+   */
+  private void enforceRetention() {
+    while (true) {
+      SegmentIndex.Entry oldest;
+      long size;
+      synchronized (segments) {
+        if (segments.isEmpty()
+            || !policy.isOverRetention(segments.size(), segmentsTotalBytes)
+            || compressing.contains(segments.get(0).getFileName())) {
+          return;
+        }
+        oldest = segments.remove(0);
+        size = segmentSizes.remove(0);
+        segmentsTotalBytes -= size;
+      }
+      saveIndex();
+
+      Path segment = indexPath.resolveSibling(oldest.getFileName());
+      try {
+        RunSnapshot rows = new CsvStatsReader(segment.toString()).readSnapshot();
+        rows.setRuns(0);
+        dropped.merge(rows);
+      } catch (IOException | NumberFormatException e) {
+        logger.error("Problem reading dropped CSV segment " + segment + ", the report will "
+            + "leave out its rows: " + e.getMessage());
+      }
+      try {
+        Files.deleteIfExists(segment);
+      } catch (IOException e) {
+        logger.error("Problem removing dropped CSV segment " + segment + ": " + e.getMessage());
+      }
+      droppedSegments++;
+      droppedRows += oldest.getRows();
+      droppedBytes += size;
+    }
+  }
+
+  private void saveIndex() {
+    synchronized (segments) {
+      try {
+        SegmentIndex.save(indexPath, segments);
+      } catch (IOException e) {
+        logger.error("Problem writing CSV segment index " + indexPath + ": " + e.getMessage());
+      }
+    }
   }
 
   /**
@@ -152,8 +474,10 @@ public class CsvStatsWriter {
     String start = String.valueOf(singleStats.getStartTime());
     String latency = String.valueOf(singleStats.getLatency());
     String code = String.valueOf(singleStats.getResponseCode());
+    String reqBytes = String.valueOf(singleStats.getRequestBytes());
+    String respBytes = String.valueOf(singleStats.getResponseBytes());
 
-    String[] data = new String[]{type, path, start, latency, code};
+    String[] data = new String[]{type, path, start, latency, code, reqBytes, respBytes};
     return String.join(",", data);
   }
 
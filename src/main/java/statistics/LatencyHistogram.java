@@ -0,0 +1,133 @@
+package statistics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Exact latency distribution for one request path: how many requests took each whole number of
+ * milliseconds. Counts add, so histograms from any number of runs or processes merge without
+ * losing anything, and the median and 99th percentile are computed from the merged counts the same
+ * way the client always has.
+ */
+public class LatencyHistogram {
+
+  private static final int INITIAL_LENGTH = 1024;
+
+  // Index is the latency in milliseconds
+  private long[] counts = new long[INITIAL_LENGTH];
+  private int max = -1;
+  private long total;
+  private long sum;
+
+  /**
+   * Adds one request.
+   *
+   * @param latency the request's latency in milliseconds, negative values count as 0
+   */
+  public void record(long latency) {
+    add((int) Math.max(0, Math.min(Integer.MAX_VALUE - 1, latency)), 1);
+  }
+
+  private void add(int latency, long count) {
+    if (latency >= counts.length) {
+      counts = Arrays.copyOf(counts, Math.max(latency + 1, counts.length * 2));
+    }
+    counts[latency] += count;
+    max = Math.max(max, latency);
+    total += count;
+    sum += latency * count;
+  }
+
+  /**
+   * Adds every request of another histogram to this one.
+   *
+   * @param other the histogram to add
+   */
+  public void merge(LatencyHistogram other) {
+    for (int latency = 0; latency <= other.max; latency++) {
+      if (other.counts[latency] != 0) {
+        add(latency, other.counts[latency]);
+      }
+    }
+  }
+
+  public long getCount() {
+    return total;
+  }
+
+  public double getMean() {
+    return total == 0 ? 0.0 : (double) sum / total;
+  }
+
+  public int getMax() {
+    return Math.max(0, max);
+  }
+
+  /**
+   * @return the latency of the middle request, 0 if there are none
+   */
+  public int getMedian() {
+    long middleRequest = Math.round(total / 2.0);  // approximate in some cases
+    long currTotal = 0;
+    for (int i = 0; i <= max; i++) {
+      // Find the middle request bucket: its index is the median
+      currTotal += counts[i];
+      if (currTotal >= middleRequest) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the 99th percentile latency, 0 if there are no requests
+   */
+  public int getP99() {
+    long p99Request = Math.round(total * 0.99);  // approximate for decimal values
+    long currTotal = total;
+    for (int i = max; i >= 0; i--) {
+      // Find the bucket of the p99 request: its index is value we want
+      currTotal -= counts[i];
+      if (currTotal <= p99Request) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Writes the non-empty buckets: their number (int), then latency (int) and count (long) pairs in
+   * ascending latency order.
+   */
+  void write(DataOutputStream out) throws IOException {
+    int buckets = 0;
+    for (int i = 0; i <= max; i++) {
+      if (counts[i] != 0) {
+        buckets++;
+      }
+    }
+    out.writeInt(buckets);
+    for (int i = 0; i <= max; i++) {
+      if (counts[i] != 0) {
+        out.writeInt(i);
+        out.writeLong(counts[i]);
+      }
+    }
+  }
+
+  static LatencyHistogram read(DataInputStream in) throws IOException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    int buckets = in.readInt();
+    for (int i = 0; i < buckets; i++) {
+      int latency = in.readInt();
+      long count = in.readLong();
+      if (latency < 0 || count < 0) {
+        throw new IOException("corrupt latency histogram");
+      }
+      histogram.add(latency, count);
+    }
+    return histogram;
+  }
+}
@@ -0,0 +1,119 @@
+package statistics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Accumulates wire byte counts for a single request path: totals for computing bytes/second and a
+ * histogram of response sizes with power-of-two buckets.
+ */
+public class PathWireStatistics {
+
+  // Bucket i holds sizes in [2^(i-1), 2^i), bucket 0 holds empty responses
+  private static final int NUM_BUCKETS = 32;
+
+  private long requests;
+  private long requestBytes;
+  private long responseBytes;
+  private long maxResponseBytes;
+  private long[] responseSizeBuckets = new long[NUM_BUCKETS];
+
+  /**
+   * Adds one request. Requests whose byte counts were not measured should not be added.
+   *
+   * @param reqBytes  bytes sent
+   * @param respBytes bytes received
+   */
+  public void add(long reqBytes, long respBytes) {
+    requests++;
+    requestBytes += reqBytes;
+    responseBytes += respBytes;
+    maxResponseBytes = Math.max(maxResponseBytes, respBytes);
+    responseSizeBuckets[bucketFor(respBytes)]++;
+  }
+
+  /**
+   * Adds every request of another path's statistics to these.
+   *
+   * @param other the statistics to add
+   */
+  public void merge(PathWireStatistics other) {
+    requests += other.requests;
+    requestBytes += other.requestBytes;
+    responseBytes += other.responseBytes;
+    maxResponseBytes = Math.max(maxResponseBytes, other.maxResponseBytes);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      responseSizeBuckets[i] += other.responseSizeBuckets[i];
+    }
+  }
+
+  private static int bucketFor(long bytes) {
+    int bucket = 64 - Long.numberOfLeadingZeros(bytes);
+    return Math.min(bucket, NUM_BUCKETS - 1);
+  }
+
+  public long getRequests() {
+    return requests;
+  }
+
+  public long getRequestBytes() {
+    return requestBytes;
+  }
+
+  public long getResponseBytes() {
+    return responseBytes;
+  }
+
+  /**
+   * Provides the statistics as an indented report block.
+   *
+   * @param wallTimeSecs the run's wall time, used for the byte rates
+   * @return the report text
+   */
+  public String toString(double wallTimeSecs) {
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format("\tSent: %d bytes (%.1f bytes/second, %.1f bytes/request)\n",
+        requestBytes, requestBytes / wallTimeSecs, (double) requestBytes / requests));
+    builder.append(String.format("\tReceived: %d bytes (%.1f bytes/second, %.1f bytes/request)\n",
+        responseBytes, responseBytes / wallTimeSecs, (double) responseBytes / requests));
+    builder.append("\tResponse Size Histogram (bytes):\n");
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      if (responseSizeBuckets[i] == 0) {
+        continue;
+      }
+      long low = i == 0 ? 0 : 1L << (i - 1);
+      String high = i == 0 ? "0" : i == NUM_BUCKETS - 1 ? "+" : String.valueOf((1L << i) - 1);
+      builder.append(String.format("\t\t%d-%s: %d\n", low, high, responseSizeBuckets[i]));
+    }
+    builder.append("\tMax Response Size: ");
+    builder.append(maxResponseBytes);
+    builder.append('\n');
+    return builder.toString();
+  }
+
+  /**
+   * Writes the totals (four longs) followed by every response size bucket (longs).
+   */
+  void write(DataOutputStream out) throws IOException {
+    out.writeLong(requests);
+    out.writeLong(requestBytes);
+    out.writeLong(responseBytes);
+    out.writeLong(maxResponseBytes);
+    for (long count : responseSizeBuckets) {
+      out.writeLong(count);
+    }
+  }
+
+  static PathWireStatistics read(DataInputStream in) throws IOException {
+    PathWireStatistics stats = new PathWireStatistics();
+    stats.requests = in.readLong();
+    stats.requestBytes = in.readLong();
+    stats.responseBytes = in.readLong();
+    stats.maxResponseBytes = in.readLong();
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      stats.responseSizeBuckets[i] = in.readLong();
+    }
+    return stats;
+  }
+}
@@ -0,0 +1,517 @@
+package statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The complete, mergeable result of one or more client runs: request counters, an exact latency
+ * histogram and wire byte totals for each request path, requests started in each second, the
+ * windows of wall time the runs spanned, and the run's metadata. Merging adds counters, histograms
+ * and byte totals exactly, so results from parallel clients or repeated runs combine without
+ * averaging percentiles. Wall windows are kept apart rather than stretched over the gaps between
+ * runs; windows that overlap, as those of parallel clients do, are joined. Throughputs are taken
+ * over the time covered by the windows, which is the time actually spent running.
+ * <p>
+ * Snapshots are saved next to the request CSV. Layout, all big-endian, strings as modified UTF-8:
+ * <pre>
+ *   header   magic (int), version (short), created millis (long), runs (int), label (string)
+ *   run      transport (string, empty if unknown), connections opened (long, -1 if unknown),
+ *            requests (long), bad requests (long), short-circuited requests (long), wall
+ *            windows (int count, then start and stop longs per window)
+ *   paths    count (int), then per path: key (string), latency histogram, has wire bytes
+ *            (boolean), wire statistics if it has
+ *   seconds  count (int), then per second: epoch second (long), requests started (long)
+ * </pre>
+ * A latency histogram is its non-empty bucket count (int) followed by latency (int) and count
+ * (long) pairs; wire statistics are four totals and the response size buckets, all longs.
+ */
+public class RunSnapshot {
+
+  static final int MAGIC = 0x534B5253;  // "SKRS"
+  static final short VERSION = 1;
+
+  private long createdMillis = System.currentTimeMillis();
+  private int runs = 1;
+  private String label = "";
+  // Disjoint windows of wall time, start to stop in epoch millis
+  private final TreeMap<Long, Long> wallWindows = new TreeMap<>();
+  private String transportName;
+  private long connectionsOpened = -1;
+  private long totalRequests;
+  private long totalBadRequests;
+  private long totalShortCircuited;
+  private final Map<String, LatencyHistogram> latencyByPath = new TreeMap<>();
+  private final Map<String, PathWireStatistics> wireByPath = new TreeMap<>();
+  private final TreeMap<Long, Long> startsBySecond = new TreeMap<>();
+
+  /**
+   * Adds one request's CSV row. Counters are kept separately, see setCounters.
+   *
+   * @param key        "method path" of the request
+   * @param startMillis when the request started
+   * @param latency    the request's latency in milliseconds
+   * @param reqBytes   bytes sent, negative if not measured
+   * @param respBytes  bytes received, negative if not measured
+   */
+  public void record(String key, long startMillis, long latency, long reqBytes, long respBytes) {
+    latencyByPath.computeIfAbsent(key, k -> new LatencyHistogram()).record(latency);
+    if (reqBytes >= 0 && respBytes >= 0) {
+      wireByPath.computeIfAbsent(key, k -> new PathWireStatistics()).add(reqBytes, respBytes);
+    }
+    startsBySecond.merge(Math.floorDiv(startMillis, BulkRequestStatistics.MILLISECS_PER_SEC), 1L,
+        Long::sum);
+  }
+
+  /**
+   * Adds every request of another snapshot to this one. The other snapshot's wall windows are
+   * added to this one's, joining any that overlap, connection counts add up unless both are
+   * unknown, and a transport that differs between the snapshots is reported as both.
+   *
+   * @param other the snapshot to add
+   */
+  public void merge(RunSnapshot other) {
+    for (Map.Entry<Long, Long> window : other.wallWindows.entrySet()) {
+      addWallWindow(window.getKey(), window.getValue());
+    }
+    if (transportName == null) {
+      transportName = other.transportName;
+    } else if (other.transportName != null && !transportName.equals(other.transportName)) {
+      transportName = transportName + " + " + other.transportName;
+    }
+    if (connectionsOpened < 0) {
+      connectionsOpened = other.connectionsOpened;
+    } else if (other.connectionsOpened >= 0) {
+      connectionsOpened += other.connectionsOpened;
+    }
+    runs += other.runs;
+    totalRequests += other.totalRequests;
+    totalBadRequests += other.totalBadRequests;
+    totalShortCircuited += other.totalShortCircuited;
+    for (Map.Entry<String, LatencyHistogram> entry : other.latencyByPath.entrySet()) {
+      latencyByPath.computeIfAbsent(entry.getKey(), k -> new LatencyHistogram())
+          .merge(entry.getValue());
+    }
+    for (Map.Entry<String, PathWireStatistics> entry : other.wireByPath.entrySet()) {
+      wireByPath.computeIfAbsent(entry.getKey(), k -> new PathWireStatistics())
+          .merge(entry.getValue());
+    }
+    for (Map.Entry<Long, Long> entry : other.startsBySecond.entrySet()) {
+      startsBySecond.merge(entry.getKey(), entry.getValue(), Long::sum);
+    }
+  }
+
+  /**
+   * Sets the run's counters, which count requests whether or not they made it into the CSV.
+   *
+   * @param totalRequests       requests the runners issued
+   * @param totalBadRequests    requests that failed
+   * @param totalShortCircuited requests a circuit breaker stopped from being sent
+   */
+  public void setCounters(long totalRequests, long totalBadRequests, long totalShortCircuited) {
+    this.totalRequests = totalRequests;
+    this.totalBadRequests = totalBadRequests;
+    this.totalShortCircuited = totalShortCircuited;
+  }
+
+  /**
+   * Replaces the wall windows with the single window of one run.
+   *
+   * @param wallStart when the run's first phase started, in epoch millis
+   * @param wallStop  when its last phase finished, in epoch millis
+   */
+  public void setWallWindow(long wallStart, long wallStop) {
+    wallWindows.clear();
+    addWallWindow(wallStart, wallStop);
+  }
+
+  /**
+   * Adds a window of wall time, joining it with any it overlaps or touches. Empty windows are
+   * ignored.
+   */
+  private void addWallWindow(long start, long stop) {
+    if (stop <= start) {
+      return;
+    }
+    Map.Entry<Long, Long> before = wallWindows.floorEntry(start);
+    if (before != null && before.getValue() >= start) {
+      start = before.getKey();
+      stop = Math.max(stop, before.getValue());
+      wallWindows.remove(before.getKey());
+    }
+    Map.Entry<Long, Long> after;
+    while ((after = wallWindows.ceilingEntry(start)) != null && after.getKey() <= stop) {
+      stop = Math.max(stop, after.getValue());
+      wallWindows.remove(after.getKey());
+    }
+    wallWindows.put(start, stop);
+  }
+
+  /**
+   * @param transportName     transport name, null if unknown
+   * @param connectionsOpened TCP connections opened during the run, -1 if unknown
+   */
+  public void setTransportInfo(String transportName, long connectionsOpened) {
+    this.transportName = transportName;
+    this.connectionsOpened = connectionsOpened;
+  }
+
+  /**
+   * @param label free text identifying where the snapshot came from, such as its CSV name
+   */
+  public void setLabel(String label) {
+    this.label = label == null ? "" : label;
+  }
+
+  /**
+   * @param runs client runs this snapshot covers, 0 for one that only collects others
+   */
+  public void setRuns(int runs) {
+    this.runs = runs;
+  }
+
+  public int getRuns() {
+    return runs;
+  }
+
+  public String getLabel() {
+    return label;
+  }
+
+  public long getCreatedMillis() {
+    return createdMillis;
+  }
+
+  public long getTotalRequests() {
+    return totalRequests;
+  }
+
+  public long getTotalBadRequests() {
+    return totalBadRequests;
+  }
+
+  public long getTotalShortCircuited() {
+    return totalShortCircuited;
+  }
+
+  /**
+   * @return when the first wall window starts, in epoch millis, 0 if there is none
+   */
+  public long getWallStart() {
+    return wallWindows.isEmpty() ? 0 : wallWindows.firstKey();
+  }
+
+  /**
+   * @return when the last wall window stops, in epoch millis, 0 if there is none
+   */
+  public long getWallStop() {
+    return wallWindows.isEmpty() ? 0 : wallWindows.lastEntry().getValue();
+  }
+
+  /**
+   * @return the disjoint wall windows, start to stop in epoch millis, in start order
+   */
+  public Map<Long, Long> getWallWindows() {
+    return wallWindows;
+  }
+
+  /**
+   * @return seconds covered by the wall windows, leaving out the gaps between them
+   */
+  public double getWallTimeSecs() {
+    long millis = 0;
+    for (Map.Entry<Long, Long> window : wallWindows.entrySet()) {
+      millis += window.getValue() - window.getKey();
+    }
+    return (double) millis / BulkRequestStatistics.MILLISECS_PER_SEC;
+  }
+
+  /**
+   * @return the latency histogram of each request path, by "method path"
+   */
+  public Map<String, LatencyHistogram> getLatencyByPath() {
+    return latencyByPath;
+  }
+
+  /**
+   * Counts the requests started in each second of the wall windows, starting with the second the
+   * first window opens in. The seconds of one window follow straight on from those of the window
+   * before it, so the gaps between runs take no room. Requests recorded outside every window, for
+   * instance by a machine whose clock disagrees, count towards the nearest second of one.
+   *
+   * @return requests started in each second
+   */
+  public long[] requestsPerSecond() {
+    // The seconds each window touches, joining windows that share a second
+    int ranges = 0;
+    long[] firsts = new long[wallWindows.size()];
+    long[] lasts = new long[wallWindows.size()];
+    for (Map.Entry<Long, Long> window : wallWindows.entrySet()) {
+      long first = Math.floorDiv(window.getKey(), BulkRequestStatistics.MILLISECS_PER_SEC);
+      long last = Math.floorDiv(window.getValue() - 1, BulkRequestStatistics.MILLISECS_PER_SEC);
+      if (ranges > 0 && first <= lasts[ranges - 1]) {
+        lasts[ranges - 1] = Math.max(lasts[ranges - 1], last);
+      } else {
+        firsts[ranges] = first;
+        lasts[ranges] = last;
+        ranges++;
+      }
+    }
+    if (ranges == 0) {
+      return new long[0];
+    }
+    int[] offsets = new int[ranges];
+    int length = 0;
+    for (int i = 0; i < ranges; i++) {
+      offsets[i] = length;
+      length += (int) (lasts[i] - firsts[i] + 1);
+    }
+
+    long[] result = new long[length];
+    int range = 0;
+    for (Map.Entry<Long, Long> entry : startsBySecond.entrySet()) {
+      long second = entry.getKey();
+      while (range + 1 < ranges && second >= firsts[range + 1]) {
+        range++;
+      }
+      // The second is before the next range; if it falls in a gap, use the nearer side
+      int target = range;
+      if (second < firsts[range]) {
+        second = firsts[range];
+      } else if (second > lasts[range]) {
+        if (range + 1 < ranges && firsts[range + 1] - second < second - lasts[range]) {
+          target = range + 1;
+          second = firsts[target];
+        } else {
+          second = lasts[range];
+        }
+      }
+      result[offsets[target] + (int) (second - firsts[target])] += entry.getValue();
+    }
+    return result;
+  }
+
+  /**
+   * Provides the execution statistics, per-path latencies and wire byte sections of the report.
+   * Short-circuited requests were never sent, so they are left out of the throughputs.
+   *
+   * @return the report text
+   */
+  public String report() {
+    double wallSecs = getWallTimeSecs();
+    long sent = totalRequests - totalShortCircuited;
+    return String.format("Execution Statistics\n"
+            + "--------------------\n"
+            + "Total Requests: %d\n"
+            + "Bad Requests: %d\n"
+            + (totalShortCircuited > 0 ? "Short-Circuited Requests: " + totalShortCircuited + "\n" : "")
+            + "Wall Time: %.2f seconds\n"
+            + "Total Throughput: %.2f requests/second\n"
+            + "Success Throughput: %.2f requests/second\n"
+        , totalRequests
+        , totalBadRequests
+        , wallSecs
+        , sent / wallSecs
+        , (sent - totalBadRequests) / wallSecs
+    )
+        + (runs > 1 ? "Merged Runs: " + runs + "\n" : "")
+        + (wallWindows.size() > 1 ? String.format("Run Windows: %d, spanning %.2f seconds\n",
+        wallWindows.size(),
+        (double) (getWallStop() - getWallStart()) / BulkRequestStatistics.MILLISECS_PER_SEC) : "")
+        + transportToString()
+        + latenciesToString()
+        + wireStatsToString(wallSecs);
+  }
+
+  private String transportToString() {
+    if (transportName == null) {
+      return "";
+    }
+    String connections = connectionsOpened < 0 ? "n/a" : String.valueOf(connectionsOpened);
+    return String.format("Transport: %s\n"
+            + "Connections Opened: %s\n"
+        , transportName
+        , connections
+    );
+  }
+
+  private String latenciesToString() {
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, LatencyHistogram> entry : latencyByPath.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      builder.append("Latencies (ms) for ").append(entry.getKey()).append(":\n");
+      builder.append(String.format("\tMean: %.2f\n", histogram.getMean()));
+      builder.append("\tMedian: ").append(histogram.getMedian()).append('\n');
+      builder.append("\t99th Percentile: ").append(histogram.getP99()).append('\n');
+      builder.append("\tMax: ").append(histogram.getMax()).append('\n');
+    }
+    return builder.toString();
+  }
+
+  private String wireStatsToString(double wallSecs) {
+    if (wireByPath.isEmpty()) {
+      return "";
+    }
+    long sent = 0;
+    long received = 0;
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, PathWireStatistics> entry : wireByPath.entrySet()) {
+      builder.append("Wire Bytes for ").append(entry.getKey()).append(":\n");
+      builder.append(entry.getValue().toString(wallSecs));
+      sent += entry.getValue().getRequestBytes();
+      received += entry.getValue().getResponseBytes();
+    }
+    return String.format("Wire Throughput: %.1f bytes/second sent, %.1f bytes/second received\n"
+        , sent / wallSecs
+        , received / wallSecs
+    ) + builder.toString();
+  }
+
+  /**
+   * Writes the snapshot in its binary layout.
+   *
+   * @param stream where to write, left open
+   * @throws IOException if writing fails
+   */
+  public void write(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    out.writeLong(createdMillis);
+    out.writeInt(runs);
+    out.writeUTF(label);
+
+    out.writeUTF(transportName == null ? "" : transportName);
+    out.writeLong(connectionsOpened);
+    out.writeLong(totalRequests);
+    out.writeLong(totalBadRequests);
+    out.writeLong(totalShortCircuited);
+    out.writeInt(wallWindows.size());
+    for (Map.Entry<Long, Long> window : wallWindows.entrySet()) {
+      out.writeLong(window.getKey());
+      out.writeLong(window.getValue());
+    }
+
+    out.writeInt(latencyByPath.size());
+    for (Map.Entry<String, LatencyHistogram> entry : latencyByPath.entrySet()) {
+      out.writeUTF(entry.getKey());
+      entry.getValue().write(out);
+      PathWireStatistics wire = wireByPath.get(entry.getKey());
+      out.writeBoolean(wire != null);
+      if (wire != null) {
+        wire.write(out);
+      }
+    }
+
+    out.writeInt(startsBySecond.size());
+    for (Map.Entry<Long, Long> entry : startsBySecond.entrySet()) {
+      out.writeLong(entry.getKey());
+      out.writeLong(entry.getValue());
+    }
+    out.flush();
+  }
+
+  /**
+   * @return the snapshot in its binary layout
+   */
+  public byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      write(bytes);
+    } catch (IOException e) {
+      throw new IllegalStateException("in-memory write failed", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Saves the snapshot to a file, replacing any existing one.
+   *
+   * @param path the file
+   * @throws IOException if the file can't be written
+   */
+  public void save(Path path) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+      write(out);
+    }
+  }
+
+  /**
+   * Reads a snapshot written by write.
+   *
+   * @param in where to read from, left open
+   * @return the snapshot
+   * @throws IOException if the stream can't be read or is not a snapshot of a supported version
+   */
+  public static RunSnapshot read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not a run snapshot");
+    }
+    short version = in.readShort();
+    if (version != VERSION) {
+      throw new IOException("unsupported run snapshot version " + version);
+    }
+    RunSnapshot snapshot = new RunSnapshot();
+    snapshot.createdMillis = in.readLong();
+    snapshot.runs = in.readInt();
+    snapshot.label = in.readUTF();
+
+    String transport = in.readUTF();
+    snapshot.transportName = transport.isEmpty() ? null : transport;
+    snapshot.connectionsOpened = in.readLong();
+    snapshot.totalRequests = in.readLong();
+    snapshot.totalBadRequests = in.readLong();
+    snapshot.totalShortCircuited = in.readLong();
+    int windows = in.readInt();
+    for (int i = 0; i < windows; i++) {
+      snapshot.addWallWindow(in.readLong(), in.readLong());
+    }
+
+    int paths = in.readInt();
+    for (int i = 0; i < paths; i++) {
+      String key = in.readUTF();
+      snapshot.latencyByPath.put(key, LatencyHistogram.read(in));
+      if (in.readBoolean()) {
+        snapshot.wireByPath.put(key, PathWireStatistics.read(in));
+      }
+    }
+
+    int seconds = in.readInt();
+    for (int i = 0; i < seconds; i++) {
+      snapshot.startsBySecond.put(in.readLong(), in.readLong());
+    }
+    return snapshot;
+  }
+
+  /**
+   * @param bytes a snapshot in its binary layout
+   * @return the snapshot
+   * @throws IOException if the bytes are not a snapshot of a supported version
+   */
+  public static RunSnapshot fromBytes(byte[] bytes) throws IOException {
+    return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * Loads a snapshot saved by save.
+   *
+   * @param path the file
+   * @return the snapshot
+   * @throws IOException if the file can't be read or is not a snapshot of a supported version
+   */
+  public static RunSnapshot load(Path path) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path)))) {
+      return read(in);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package statistics;
+
+import java.util.Arrays;
+
+/**
+ * Describes a small set of measured values, such as a report section's latencies, from the values
+ * themselves rather than a histogram.
+ */
+public class SampleSummary {
+
+  private SampleSummary() {
+  }
+
+  /**
+   * Describes values as their mean, median, 99th percentile and max. The percentile is the value
+   * that at least 99% of the values are at or below, so of 100 values it is the 99th smallest.
+   *
+   * @param values the values, left unsorted
+   * @return a one-line summary, or "n/a" if there are no values
+   */
+  public static String describe(long[] values) {
+    if (values.length == 0) {
+      return "n/a";
+    }
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    long sum = 0;
+    for (long value : sorted) {
+      sum += value;
+    }
+    int p99Index = (int) Math.ceil(sorted.length * 0.99) - 1;
+    return String.format("mean %.2f, median %d, p99 %d, max %d",
+        (double) sum / sorted.length, sorted[sorted.length / 2], sorted[p99Index],
+        sorted[sorted.length - 1]);
+  }
+
+  /**
+   * Describes weighted values, such as samples that each stand for a different number of
+   * measurements, as their weighted mean, median, 99th percentile and max. A percentile is the
+   * smallest value that at least that share of the total weight is at or below; with equal weights
+   * this matches {@link #describe(long[])}.
+   *
+   * @param values  the values, left unsorted
+   * @param weights each value's weight, positive
+   * @return a one-line summary, or "n/a" if there are no values
+   */
+  public static String describe(long[] values, double[] weights) {
+    if (values.length == 0) {
+      return "n/a";
+    }
+    Integer[] order = new Integer[values.length];
+    double totalWeight = 0;
+    double weightedSum = 0;
+    for (int i = 0; i < values.length; i++) {
+      order[i] = i;
+      totalWeight += weights[i];
+      weightedSum += values[i] * weights[i];
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(values[a], values[b]));
+
+    long median = values[order[order.length - 1]];
+    long p99 = median;
+    boolean medianFound = false;
+    double cumulative = 0;
+    for (int index : order) {
+      cumulative += weights[index];
+      if (!medianFound && cumulative > totalWeight / 2) {
+        median = values[index];
+        medianFound = true;
+      }
+      // Allow for rounding in the running sum, so equal weights land where describe(long[]) does
+      if (cumulative >= totalWeight * 0.99 - totalWeight * 1e-9) {
+        p99 = values[index];
+        break;
+      }
+    }
+    return String.format("mean %.2f, median %d, p99 %d, max %d",
+        weightedSum / totalWeight, median, p99, values[order[order.length - 1]]);
+  }
+}
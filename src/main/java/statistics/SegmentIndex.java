@@ -0,0 +1,139 @@
+package statistics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The index of a run's CSV segments, saved as csvFilename.segments next to them. One CSV row per
+ * segment, in the order they were written:
+ * <pre>
+ *   Segment,Rows,FirstStartTimestamp(ms),LastStartTimestamp(ms)
+ *   request-stats.00001.csv.gz,250000,1600000000000,1600000061000
+ * </pre>
+ * Segment names are relative to the index. Runners hand results over in chunks, so rows are not
+ * in start order and the time range is the earliest and latest start in the segment.
+ */
+public class SegmentIndex {
+
+  public static final String SUFFIX = ".segments";
+  private static final String HEADERS =
+      "Segment,Rows,FirstStartTimestamp(ms),LastStartTimestamp(ms)";
+
+  private final List<Entry> entries;
+
+  private SegmentIndex(List<Entry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * @param path a file path
+   * @return whether the path names a segment index rather than a single CSV
+   */
+  public static boolean isIndex(Path path) {
+    return path.getFileName().toString().endsWith(SUFFIX);
+  }
+
+  /**
+   * Reads an index.
+   *
+   * @param path the index file
+   * @return the index
+   * @throws IOException           if the file can't be read
+   * @throws NumberFormatException if a row is malformed
+   */
+  public static SegmentIndex load(Path path) throws IOException, NumberFormatException {
+    List<Entry> entries = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line = reader.readLine(); // Ignore column headers
+      line = reader.readLine();
+      while (line != null) {
+        String[] cols = line.split(",");
+        if (cols.length == 4) {
+          entries.add(new Entry(cols[0], Long.parseLong(cols[1]), Long.parseLong(cols[2]),
+              Long.parseLong(cols[3])));
+        }
+        line = reader.readLine();
+      }
+    }
+    return new SegmentIndex(entries);
+  }
+
+  /**
+   * Writes an index, replacing any earlier one in a single move so readers never see it half
+   * written.
+   *
+   * @param path    the index file
+   * @param entries the segments, in the order they were written
+   * @throws IOException if the file can't be written
+   */
+  static void save(Path path, List<Entry> entries) throws IOException {
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+      writer.println(HEADERS);
+      for (Entry entry : entries) {
+        writer.println(entry.fileName + "," + entry.rows + "," + entry.firstStart + ","
+            + entry.lastStart);
+      }
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Resolves the segment files of an index.
+   *
+   * @param indexPath the index file the segment names are relative to
+   * @return the segment files, in the order they were written
+   */
+  public List<Path> segmentPaths(Path indexPath) {
+    List<Path> paths = new ArrayList<>();
+    for (Entry entry : entries) {
+      paths.add(indexPath.resolveSibling(entry.fileName));
+    }
+    return paths;
+  }
+
+  /**
+   * One segment of the index.
+   */
+  public static class Entry {
+
+    private final String fileName;
+    private final long rows;
+    private final long firstStart;
+    private final long lastStart;
+
+    Entry(String fileName, long rows, long firstStart, long lastStart) {
+      this.fileName = fileName;
+      this.rows = rows;
+      this.firstStart = firstStart;
+      this.lastStart = lastStart;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public long getRows() {
+      return rows;
+    }
+
+    public long getFirstStart() {
+      return firstStart;
+    }
+
+    public long getLastStart() {
+      return lastStart;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package statistics;
+
+/**
+ * When the stats writer closes its CSV and starts a new segment, whether closed segments are
+ * compressed, and how many of them are kept. Without a size or time limit the run is written to a
+ * single CSV file.
+ */
+public class SegmentPolicy {
+
+  public static final SegmentPolicy SINGLE_FILE = new SegmentPolicy(0, 0, false);
+
+  private final long maxBytes;
+  private final long maxMillis;
+  private final boolean compress;
+  private final int retainSegments;
+  private final long retainBytes;
+
+  /**
+   * @param maxBytes  bytes after which a segment is closed, 0 for no size limit
+   * @param maxMillis milliseconds after which a segment is closed, 0 for no time limit
+   * @param compress  whether closed segments are gzipped
+   */
+  public SegmentPolicy(long maxBytes, long maxMillis, boolean compress) {
+    this(maxBytes, maxMillis, compress, 0, 0);
+  }
+
+  /**
+   * @param maxBytes       bytes after which a segment is closed, 0 for no size limit
+   * @param maxMillis      milliseconds after which a segment is closed, 0 for no time limit
+   * @param compress       whether closed segments are gzipped
+   * @param retainSegments closed segments kept on disk, the oldest dropped beyond that, 0 to
+   *                       keep them all
+   * @param retainBytes    bytes the closed segments may take on disk, the oldest dropped beyond
+   *                       that, 0 for no limit
+   */
+  public SegmentPolicy(long maxBytes, long maxMillis, boolean compress, int retainSegments,
+      long retainBytes) {
+    this.maxBytes = maxBytes;
+    this.maxMillis = maxMillis;
+    this.compress = compress;
+    this.retainSegments = retainSegments;
+    this.retainBytes = retainBytes;
+  }
+
+  /**
+   * @return whether the writer rolls over to new segments
+   */
+  public boolean isRolling() {
+    return maxBytes > 0 || maxMillis > 0;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getMaxMillis() {
+    return maxMillis;
+  }
+
+  public boolean isCompressed() {
+    return compress;
+  }
+
+  /**
+   * @return whether old segments are ever dropped
+   */
+  public boolean isRetentionLimited() {
+    return retainSegments > 0 || retainBytes > 0;
+  }
+
+  /**
+   * Checks whether the closed segments exceed either retention limit.
+   *
+   * @param segments closed segments on disk
+   * @param bytes    bytes they take on disk
+   * @return true if the oldest should be dropped
+   */
+  boolean isOverRetention(int segments, long bytes) {
+    return (retainSegments > 0 && segments > retainSegments)
+        || (retainBytes > 0 && bytes > retainBytes);
+  }
+
+  /**
+   * Checks whether a segment has reached either limit.
+   *
+   * @param bytes     bytes written to the segment
+   * @param openedAt  when the segment was opened, in epoch milliseconds
+   * @param now       the current time, in epoch milliseconds
+   * @return true if the segment should be closed
+   */
+  boolean isFull(long bytes, long openedAt, long now) {
+    return (maxBytes > 0 && bytes >= maxBytes) || (maxMillis > 0 && now - openedAt >= maxMillis);
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentPolicy{" +
+        "maxBytes=" + maxBytes +
+        ", maxMillis=" + maxMillis +
+        ", compress=" + compress +
+        ", retainSegments=" + retainSegments +
+        ", retainBytes=" + retainBytes +
+        '}';
+  }
+}
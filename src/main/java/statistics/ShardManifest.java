@@ -0,0 +1,80 @@
+package statistics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the files of a run whose stats were written by several writer threads, saved as
+ * csvFilename.shards next to them. One row per shard, naming its CSV or, when the shard is
+ * written in segments, its segment index:
+ * <pre>
+ *   Shard
+ *   request-stats.shard1.csv
+ *   request-stats.shard2.csv
+ * </pre>
+ * Shard names are relative to the manifest. Each runner writes to a single shard, so a shard's
+ * rows are no more out of start order than a single writer's.
+ */
+public class ShardManifest {
+
+  public static final String SUFFIX = ".shards";
+  private static final String HEADERS = "Shard";
+
+  private ShardManifest() {
+  }
+
+  /**
+   * @param path a file path
+   * @return whether the path names a shard manifest
+   */
+  public static boolean isManifest(Path path) {
+    return path.getFileName().toString().endsWith(SUFFIX);
+  }
+
+  /**
+   * Reads the shards of a manifest.
+   *
+   * @param path the manifest file
+   * @return each shard's CSV or segment index, in shard order
+   * @throws IOException if the file can't be read
+   */
+  public static List<Path> load(Path path) throws IOException {
+    List<Path> shards = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line = reader.readLine(); // Ignore column headers
+      line = reader.readLine();
+      while (line != null) {
+        if (!line.trim().isEmpty()) {
+          shards.add(path.resolveSibling(line.trim()));
+        }
+        line = reader.readLine();
+      }
+    }
+    return shards;
+  }
+
+  /**
+   * Writes a manifest, replacing any earlier one in a single move.
+   *
+   * @param path   the manifest file
+   * @param shards each shard's CSV or segment index, in shard order
+   * @throws IOException if the file can't be written
+   */
+  static void save(Path path, List<Path> shards) throws IOException {
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+      writer.println(HEADERS);
+      for (Path shard : shards) {
+        writer.println(shard.getFileName());
+      }
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
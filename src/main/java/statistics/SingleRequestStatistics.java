@@ -10,6 +10,8 @@ public class SingleRequestStatistics {
   private long startTime;
   private long latency;
   private int responseCode;
+  private long requestBytes;
+  private long responseBytes;
 
   /**
    * Constructor for statistics.SingleRequestStatistics.
@@ -21,11 +23,28 @@ public class SingleRequestStatistics {
    */
   public SingleRequestStatistics(String requestType, String path, long startTime, long latency,
       int responseCode) {
+    this(requestType, path, startTime, latency, responseCode, -1, -1);
+  }
+
+  /**
+   * Constructor for statistics.SingleRequestStatistics with wire byte counts.
+   *
+   * @param requestType   The request type (i.e. "GET" or "POST")
+   * @param startTime     The unix time at the start of the request
+   * @param latency       The latency of the request (e.g. the round trip time)
+   * @param responseCode  The response code returned from the server
+   * @param requestBytes  Bytes sent on the wire, -1 if not measured
+   * @param responseBytes Bytes received on the wire, -1 if not measured
+   */
+  public SingleRequestStatistics(String requestType, String path, long startTime, long latency,
+      int responseCode, long requestBytes, long responseBytes) {
     this.requestType = requestType;
     this.path = path;
     this.startTime = startTime;
     this.latency = latency;
     this.responseCode = responseCode;
+    this.requestBytes = requestBytes;
+    this.responseBytes = responseBytes;
   }
 
   public String getRequestType() {
@@ -48,4 +67,12 @@ public class SingleRequestStatistics {
     return responseCode;
   }
 
+  public long getRequestBytes() {
+    return requestBytes;
+  }
+
+  public long getResponseBytes() {
+    return responseBytes;
+  }
+
 }
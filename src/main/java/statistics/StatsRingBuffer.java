@@ -0,0 +1,232 @@
+package statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring of slots between the request threads and the CSV writer. Any number of threads
+ * put chunks of results in and the writer alone takes them out, in the order their slots were
+ * claimed. Every slot is allocated up front, so a put allocates nothing and takes no lock: a
+ * producer claims a sequence with one atomic increment, waits if the ring is full, fills the slot
+ * and publishes it by writing the sequence next to it.
+ * <p>
+ * A full ring holds producers back until the writer catches up rather than letting results pile
+ * up in memory. How both sides wait is set by a {@link WaitStrategy}. The ring counts how often
+ * producers were held back and how far the writer fell behind, for the run report.
+ */
+public class StatsRingBuffer {
+
+  /**
+   * How producers wait for room and the writer waits for results.
+   */
+  public enum WaitStrategy {
+    /**
+     * Parks for a few microseconds, backing off to a millisecond. Little CPU, the default.
+     */
+    PARK,
+    /**
+     * Yields the processor between checks. Lower latency, at the cost of a busy core when idle.
+     */
+    YIELD,
+    /**
+     * Checks in a tight loop. Lowest latency, only for machines with cores to spare.
+     */
+    SPIN;
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Waits once before the caller checks again.
+     *
+     * @param attempt how many times the caller has already waited
+     */
+    void idle(int attempt) {
+      switch (this) {
+        case SPIN:
+          break;
+        case YIELD:
+          Thread.yield();
+          break;
+        default:
+          LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << Math.min(attempt, 7)));
+      }
+    }
+
+    /**
+     * @param name a strategy name, in any case
+     * @return the strategy, or null if there is none of that name
+     */
+    public static WaitStrategy fromName(String name) {
+      for (WaitStrategy strategy : values()) {
+        if (strategy.name().equalsIgnoreCase(name)) {
+          return strategy;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final int capacity;
+  private final int mask;
+  private final WaitStrategy waitStrategy;
+  private final AtomicReferenceArray<SingleRequestStatistics[]> slots;
+  // The sequence last published in each slot, and when
+  private final AtomicLongArray published;
+  private final long[] publishedNanos;
+
+  // Next sequence a producer claims, and the first the writer has not yet taken
+  private final AtomicLong claimed = new AtomicLong();
+  private final AtomicLong consumed = new AtomicLong();
+  private long nextRead;
+
+  private final LongAdder stalls = new LongAdder();
+  private final LongAdder stallNanos = new LongAdder();
+  private final AtomicLong maxOccupancy = new AtomicLong();
+  private long taken;
+  private long lagNanosTotal;
+  private long maxLagNanos;
+
+  /**
+   * @param capacity     slots in the ring, rounded up to a power of two
+   * @param waitStrategy how both sides wait
+   * @throws IllegalArgumentException if capacity is outside 2 to 2^30
+   */
+  public StatsRingBuffer(int capacity, WaitStrategy waitStrategy) throws IllegalArgumentException {
+    if (capacity < 2 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("capacity must be between 2 and 2^30");
+    }
+    this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.waitStrategy = waitStrategy;
+    this.slots = new AtomicReferenceArray<>(this.capacity);
+    this.published = new AtomicLongArray(this.capacity);
+    this.publishedNanos = new long[this.capacity];
+    for (int i = 0; i < this.capacity; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  /**
+   * Puts a chunk of results in the next slot, waiting while the ring is full. Safe to call from
+   * any number of threads.
+   *
+   * @param chunk the results, or an empty array to tell the writer there are no more
+   * @throws InterruptedException if interrupted while waiting for room; the slot is still filled
+   *                              so the writer is never left waiting on it
+   */
+  public void put(SingleRequestStatistics[] chunk) throws InterruptedException {
+    long sequence = claimed.getAndIncrement();
+    // Producers waiting for room are counted as stalls, not occupancy
+    long occupancy = Math.min(capacity, sequence + 1 - consumed.get());
+    long max = maxOccupancy.get();
+    while (occupancy > max && !maxOccupancy.compareAndSet(max, occupancy)) {
+      max = maxOccupancy.get();
+    }
+
+    boolean interrupted = false;
+    if (sequence - capacity >= consumed.get()) {
+      long stallStart = System.nanoTime();
+      int attempt = 0;
+      while (sequence - capacity >= consumed.get()) {
+        waitStrategy.idle(attempt++);
+        interrupted |= Thread.interrupted();
+      }
+      stalls.increment();
+      stallNanos.add(System.nanoTime() - stallStart);
+    }
+
+    int index = (int) sequence & mask;
+    slots.set(index, chunk);
+    publishedNanos[index] = System.nanoTime();
+    // Publishing the sequence makes the slot and its time visible to the writer
+    published.set(index, sequence);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedException("interrupted waiting for room in the stats ring");
+    }
+  }
+
+  /**
+   * Takes the next chunk, waiting until it is published. Only the writer may call this.
+   *
+   * @return the chunk
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public SingleRequestStatistics[] take() throws InterruptedException {
+    int index = (int) nextRead & mask;
+    int attempt = 0;
+    while (published.get(index) != nextRead) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException("interrupted waiting for the stats ring");
+      }
+      waitStrategy.idle(attempt++);
+    }
+    SingleRequestStatistics[] chunk = slots.get(index);
+    long lag = System.nanoTime() - publishedNanos[index];
+    slots.lazySet(index, null);
+    nextRead++;
+    consumed.lazySet(nextRead);
+
+    // The empty array that stops the writer isn't counted
+    if (chunk.length > 0) {
+      taken++;
+      lagNanosTotal += lag;
+      maxLagNanos = Math.max(maxLagNanos, lag);
+    }
+    return chunk;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return chunks put in but not yet taken by the writer
+   */
+  public long getOccupancy() {
+    return Math.max(0, Math.min(capacity, claimed.get() - consumed.get()));
+  }
+
+  public long getMaxOccupancy() {
+    return maxOccupancy.get();
+  }
+
+  /**
+   * @return how many puts found the ring full and waited for the writer
+   */
+  public long getStalls() {
+    return stalls.sum();
+  }
+
+  /**
+   * @return how many chunks of results the writer has taken, read on the writer's thread or
+   *     after it ends
+   */
+  public long getTaken() {
+    return taken;
+  }
+
+  /**
+   * Describes the ring's backpressure and the writer's lag for the run report. Read once the
+   * writer has stopped.
+   *
+   * @param name what the ring feeds, heading the summary
+   * @return a human readable summary
+   */
+  public String summary(String name) {
+    long stallCount = stalls.sum();
+    return String.format("%s (%d slots, %s wait):\n", name, capacity,
+        waitStrategy.name().toLowerCase())
+        + String.format("\tChunks Written: %d, Max Occupancy: %d (%.1f%%)\n", taken,
+        maxOccupancy.get(), 100.0 * maxOccupancy.get() / capacity)
+        + String.format("\tWriter Lag (ms): mean %.3f, max %.3f\n",
+        taken == 0 ? 0.0 : lagNanosTotal / 1e6 / taken, maxLagNanos / 1e6)
+        + String.format("\tProducer Stalls: %d (mean wait %.3f ms)\n", stallCount,
+        stallCount == 0 ? 0.0 : stallNanos.sum() / 1e6 / stallCount);
+  }
+}
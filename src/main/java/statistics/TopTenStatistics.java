@@ -0,0 +1,172 @@
+package statistics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Collects the payload cost of top-ten leaderboard calls, which return the largest responses the
+ * client asks for: body size, number of TopTenTopTenSkiers entries, and how long deserializing the
+ * TopTen model took compared to the whole call. Runners record into their own pre-sized Recorder
+ * and hand it over once at the end, so recording takes no locks. A runner that makes more calls
+ * than its recorder holds, such as in a timed phase, keeps a uniform sample of them. Each kept
+ * call then stands for several, so a phase's figures weight every call by how many its runner's
+ * sample stands for, and a runner that made ten times the calls counts ten times as much.
+ */
+public class TopTenStatistics {
+
+  private final Map<Integer, Recorder> callsByPhase = new TreeMap<>();
+
+  /**
+   * Provides a recorder for one runner.
+   *
+   * @param phase    the runner's phase, starting at 1
+   * @param capacity most calls the runner will keep
+   * @return the recorder
+   */
+  public Recorder recorder(int phase, int capacity) {
+    return new Recorder(phase, capacity);
+  }
+
+  /**
+   * Adds a runner's recorded calls.
+   *
+   * @param recorder the runner's recorder
+   */
+  public synchronized void merge(Recorder recorder) {
+    if (recorder.count == 0) {
+      return;
+    }
+    Recorder phaseCalls = callsByPhase.get(recorder.phase);
+    if (phaseCalls == null) {
+      phaseCalls = new Recorder(recorder.phase, 0);
+      callsByPhase.put(recorder.phase, phaseCalls);
+    }
+    phaseCalls.append(recorder);
+  }
+
+  /**
+   * @return whether any top-ten calls were recorded
+   */
+  public synchronized boolean isEmpty() {
+    return callsByPhase.isEmpty();
+  }
+
+  /**
+   * Provides the report section, one block per phase that made top-ten calls.
+   *
+   * @return the report text, empty if no calls were recorded
+   */
+  public synchronized String summary() {
+    StringBuilder builder = new StringBuilder();
+    for (Recorder calls : callsByPhase.values()) {
+      int size = calls.count;
+      long[] bytes = Arrays.copyOf(calls.bodyBytes, size);
+      long[] skiers = Arrays.copyOf(calls.entries, size);
+      long[] micros = Arrays.copyOf(calls.deserializeMicros, size);
+      double[] weights = Arrays.copyOf(calls.weights, size);
+      double totalBytes = 0;
+      double totalSkiers = 0;
+      double totalMicros = 0;
+      double totalLatencyMillis = 0;
+      for (int i = 0; i < size; i++) {
+        totalBytes += bytes[i] * weights[i];
+        totalSkiers += skiers[i] * weights[i];
+        totalMicros += micros[i] * weights[i];
+        totalLatencyMillis += calls.latencyMillis[i] * weights[i];
+      }
+
+      builder.append("Top Ten Payloads in phase ").append(calls.phase).append(":\n");
+      builder.append("\tCalls measured: ").append(size);
+      if (calls.seen > size) {
+        builder.append(", sampled from ").append(calls.seen);
+      }
+      builder.append('\n');
+      builder.append("\tResponse body (bytes): ")
+          .append(SampleSummary.describe(bytes, weights)).append('\n');
+      builder.append("\tSkiers per response: ")
+          .append(SampleSummary.describe(skiers, weights)).append('\n');
+      builder.append(String.format("\tBytes per skier entry: %.1f\n",
+          totalSkiers == 0 ? 0.0 : totalBytes / totalSkiers));
+      builder.append("\tTopTen deserialization (us): ")
+          .append(SampleSummary.describe(micros, weights)).append('\n');
+      builder.append(String.format("\tDeserialization share of latency: %.2f%%\n",
+          totalLatencyMillis == 0 ? 0.0 : 100.0 * totalMicros / (totalLatencyMillis * 1000.0)));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Single-threaded buffer of one runner's top-ten calls.
+   */
+  public static class Recorder {
+
+    private final int phase;
+    private long[] bodyBytes;
+    private long[] entries;
+    private long[] deserializeMicros;
+    private long[] latencyMillis;
+    // How many calls each kept call stands for, only filled in a phase's merged recorder
+    private double[] weights;
+    private int count;
+    private long seen;
+
+    private Recorder(int phase, int capacity) {
+      this.phase = phase;
+      this.bodyBytes = new long[capacity];
+      this.entries = new long[capacity];
+      this.deserializeMicros = new long[capacity];
+      this.latencyMillis = new long[capacity];
+      this.weights = new double[0];
+    }
+
+    /**
+     * Records one successful, fully deserialized call. Once the recorder is full, each call
+     * replaces a random earlier one with a chance that keeps every call equally likely to be
+     * kept (reservoir sampling).
+     *
+     * @param bodyBytes        response body size on the wire
+     * @param entries          skiers in the response
+     * @param deserializeNanos time spent deserializing the body
+     * @param latencyMillis    latency of the whole call
+     */
+    public void record(long bodyBytes, int entries, long deserializeNanos, long latencyMillis) {
+      seen++;
+      int index = count;
+      if (count == this.bodyBytes.length) {
+        long slot = ThreadLocalRandom.current().nextLong(seen);
+        if (slot >= count) {
+          return;
+        }
+        index = (int) slot;
+      } else {
+        count++;
+      }
+      this.bodyBytes[index] = bodyBytes;
+      this.entries[index] = entries;
+      this.deserializeMicros[index] = deserializeNanos / 1000;
+      this.latencyMillis[index] = latencyMillis;
+    }
+
+    private void append(Recorder other) {
+      int needed = count + other.count;
+      if (needed > bodyBytes.length) {
+        int capacity = Math.max(needed, bodyBytes.length * 2);
+        bodyBytes = Arrays.copyOf(bodyBytes, capacity);
+        entries = Arrays.copyOf(entries, capacity);
+        deserializeMicros = Arrays.copyOf(deserializeMicros, capacity);
+        latencyMillis = Arrays.copyOf(latencyMillis, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+      }
+      System.arraycopy(other.bodyBytes, 0, bodyBytes, count, other.count);
+      System.arraycopy(other.entries, 0, entries, count, other.count);
+      System.arraycopy(other.deserializeMicros, 0, deserializeMicros, count, other.count);
+      System.arraycopy(other.latencyMillis, 0, latencyMillis, count, other.count);
+      // A full recorder kept count of its seen calls, each kept call standing for seen / count
+      Arrays.fill(weights, count, needed, (double) other.seen / other.count);
+      count = needed;
+      seen += other.seen;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * Samples an index from a fixed discrete distribution in constant time using Vose's alias method.
+ * Building the table is O(n); each sample costs one random int, one random double and one
+ * comparison no matter how skewed the weights are.
+ * <p>
+ * Tables are immutable after construction and can be shared between threads.
+ */
+public class AliasTable {
+
+  private final double[] prob;
+  private final int[] alias;
+
+  /**
+   * Builds a table from relative weights. Weights do not need to sum to one.
+   *
+   * @param weights non-negative weights, at least one of them positive
+   * @throws IllegalArgumentException if the weights are empty, negative or all zero
+   */
+  public AliasTable(double[] weights) throws IllegalArgumentException {
+    int n = weights.length;
+    if (n == 0) {
+      throw new IllegalArgumentException("alias table needs at least one weight");
+    }
+    double sum = 0;
+    for (double weight : weights) {
+      if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+        throw new IllegalArgumentException("weights must be finite and non-negative");
+      }
+      sum += weight;
+    }
+    if (sum <= 0) {
+      throw new IllegalArgumentException("at least one weight must be positive");
+    }
+
+    this.prob = new double[n];
+    this.alias = new int[n];
+
+    // Scale so the average weight is 1, then pair each small column with a large one
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int numSmall = 0;
+    int numLarge = 0;
+    for (int i = 0; i < n; i++) {
+      scaled[i] = weights[i] * n / sum;
+      if (scaled[i] < 1.0) {
+        small[numSmall++] = i;
+      } else {
+        large[numLarge++] = i;
+      }
+    }
+
+    while (numSmall > 0 && numLarge > 0) {
+      int less = small[--numSmall];
+      int more = large[--numLarge];
+      prob[less] = scaled[less];
+      alias[less] = more;
+      scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+      if (scaled[more] < 1.0) {
+        small[numSmall++] = more;
+      } else {
+        large[numLarge++] = more;
+      }
+    }
+
+    // Whatever is left is 1 up to rounding error
+    while (numLarge > 0) {
+      prob[large[--numLarge]] = 1.0;
+    }
+    while (numSmall > 0) {
+      prob[small[--numSmall]] = 1.0;
+    }
+  }
+
+  /**
+   * Draws an index with probability proportional to its weight.
+   *
+   * @param rand the random source, typically the calling thread's ThreadLocalRandom
+   * @return an index between 0 (inclusive) and size() (exclusive)
+   */
+  public int sample(Random rand) {
+    int column = rand.nextInt(prob.length);
+    return rand.nextDouble() < prob[column] ? column : alias[column];
+  }
+
+  public int size() {
+    return prob.length;
+  }
+}
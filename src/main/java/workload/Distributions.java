@@ -0,0 +1,90 @@
+package workload;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Factory for the samplers used to generate skier IDs, lift IDs and ride times. Skewed
+ * distributions are precomputed into an {@link AliasTable} so every draw is O(1).
+ */
+public class Distributions {
+
+  private Distributions() {
+  }
+
+  /**
+   * Every value in [low, high] is equally likely.
+   *
+   * @param low  low bound, inclusive
+   * @param high high bound, inclusive
+   * @return the sampler
+   */
+  public static IntSampler uniform(final int low, final int high) {
+    return new IntSampler() {
+      @Override
+      public int next(Random rand) {
+        return low + rand.nextInt(high - low + 1);
+      }
+    };
+  }
+
+  /**
+   * Zipf distribution over [low, high]: the k-th value (k starting at 1) has weight 1 / k^exponent,
+   * so low is the most popular value and popularity falls off as a power law.
+   *
+   * @param low      low bound, inclusive, the most popular value
+   * @param high     high bound, inclusive
+   * @param exponent skew, 0 is uniform and larger is more skewed
+   * @return the sampler
+   */
+  public static IntSampler zipf(int low, int high, double exponent) {
+    double[] weights = new double[high - low + 1];
+    for (int k = 0; k < weights.length; k++) {
+      weights[k] = 1.0 / Math.pow(k + 1, exponent);
+    }
+    return weighted(low, weights);
+  }
+
+  /**
+   * Mixture of normal peaks over the minutes in [low, high]. Only the part of each peak that falls
+   * inside the range is used, so runners covering different parts of the day still see the right
+   * relative load within their own slice.
+   *
+   * @param low   first minute, inclusive
+   * @param high  last minute, inclusive
+   * @param peaks the busy periods of the day
+   * @return the sampler
+   */
+  public static IntSampler gaussianPeaks(int low, int high, List<TimePeak> peaks) {
+    double[] weights = new double[high - low + 1];
+    double total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      for (TimePeak peak : peaks) {
+        weights[i] += peak.density(low + i);
+      }
+      total += weights[i];
+    }
+    // A range far from every peak underflows to zero, fall back to uniform there
+    if (total <= 0) {
+      return uniform(low, high);
+    }
+    return weighted(low, weights);
+  }
+
+  /**
+   * Draws low + i with probability proportional to weights[i].
+   *
+   * @param low     value of the first weight
+   * @param weights relative weights
+   * @return the sampler
+   */
+  public static IntSampler weighted(final int low, double[] weights) {
+    final AliasTable table = new AliasTable(weights);
+    return new IntSampler() {
+      @Override
+      public int next(Random rand) {
+        return low + table.sample(rand);
+      }
+    };
+  }
+}
@@ -0,0 +1,18 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * Draws integers from an inclusive range following some distribution. Implementations are
+ * immutable so a sampler can be shared; all randomness comes from the caller's random source.
+ */
+public interface IntSampler {
+
+  /**
+   * Draws the next value.
+   *
+   * @param rand the random source, typically the calling thread's ThreadLocalRandom
+   * @return a value in the sampler's range
+   */
+  int next(Random rand);
+}
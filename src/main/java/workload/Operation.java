@@ -0,0 +1,90 @@
+package workload;
+
+/**
+ * The kinds of request a runner sends. The ordinal is the operation code stored in workload files,
+ * so new operations must only ever be added at the end.
+ */
+public enum Operation {
+  POST_LIFT_RIDE("post", "POST", "/skiers/liftrides"),
+  GET_SKIER_DAY_VERTICAL("dayVertical", "GET", "/skiers/{resortID}/days/{dayID}/skiers/{skierID}"),
+  GET_SKIER_RESORT_TOTALS("resortTotals", "GET", "/skiers/{skierID}/vertical"),
+  GET_TOP_TEN_VERT("topTen", "GET", "/resort/day/top10vert");
+
+  private static final Operation[] VALUES = values();
+
+  private final String key;
+  private final String method;
+  private final String path;
+
+  Operation(String key, String method, String path) {
+    this.key = key;
+    this.method = method;
+    this.path = path;
+  }
+
+  /**
+   * Looks up an operation by its stored code.
+   *
+   * @param code the ordinal
+   * @return the operation
+   * @throws IllegalArgumentException if the code is unknown
+   */
+  public static Operation fromCode(int code) throws IllegalArgumentException {
+    if (code < 0 || code >= VALUES.length) {
+      throw new IllegalArgumentException("unknown operation code " + code);
+    }
+    return VALUES[code];
+  }
+
+  /**
+   * Looks up an operation by the short name used in the properties file.
+   *
+   * @param key e.g. "post" or "topTen"
+   * @return the operation, or null if there is none by that name
+   */
+  public static Operation fromKey(String key) {
+    for (Operation op : VALUES) {
+      if (op.key.equals(key)) {
+        return op;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Looks up an operation by the method and path template recorded in the stats CSV.
+   *
+   * @param method HTTP method
+   * @param path   path template
+   * @return the operation, or null if no operation uses that path
+   */
+  public static Operation fromPath(String method, String path) {
+    for (Operation op : VALUES) {
+      if (op.method.equals(method) && op.path.equals(path)) {
+        return op;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the short name used in the properties file
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return the HTTP method, as recorded in the stats CSV
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return the path template, as recorded in the stats CSV
+   */
+  public String getPath() {
+    return path;
+  }
+}
@@ -0,0 +1,145 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * How many requests of each operation one runner sends. Builds the runner's operation sequence up
+ * front so choosing the next operation at runtime is an array read.
+ */
+public class OperationMix {
+
+  private static final Operation[] OPERATIONS = Operation.values();
+
+  private final int[] counts;
+  private final int total;
+
+  /**
+   * @param counts request count for each operation, indexed by ordinal
+   * @throws IllegalArgumentException if there is not one count per operation or any is negative
+   */
+  public OperationMix(int[] counts) throws IllegalArgumentException {
+    if (counts.length != OPERATIONS.length) {
+      throw new IllegalArgumentException("need one count for each of the "
+          + OPERATIONS.length + " operations");
+    }
+    long sum = 0;
+    for (int count : counts) {
+      if (count < 0) {
+        throw new IllegalArgumentException("operation counts cannot be negative");
+      }
+      sum += count;
+    }
+    if (sum > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("too many requests for one runner");
+    }
+    this.counts = counts.clone();
+    this.total = (int) sum;
+  }
+
+  /**
+   * Splits a total request count between operations in proportion to weights, using the largest
+   * remainder method so the counts always add up to the total.
+   *
+   * @param weights relative weight of each operation, indexed by ordinal
+   * @param total   requests to split
+   * @return the mix
+   * @throws IllegalArgumentException if the weights are negative or all zero
+   */
+  public static OperationMix fromWeights(double[] weights, int total)
+      throws IllegalArgumentException {
+    double sum = 0;
+    for (double weight : weights) {
+      if (weight < 0) {
+        throw new IllegalArgumentException("operation weights cannot be negative");
+      }
+      sum += weight;
+    }
+    if (sum <= 0) {
+      throw new IllegalArgumentException("at least one operation weight must be positive");
+    }
+
+    int[] counts = new int[weights.length];
+    double[] remainders = new double[weights.length];
+    int assigned = 0;
+    for (int i = 0; i < weights.length; i++) {
+      double exact = total * weights[i] / sum;
+      counts[i] = (int) Math.floor(exact);
+      remainders[i] = exact - counts[i];
+      assigned += counts[i];
+    }
+    while (assigned < total) {
+      int largest = 0;
+      for (int i = 1; i < remainders.length; i++) {
+        if (remainders[i] > remainders[largest]) {
+          largest = i;
+        }
+      }
+      counts[largest]++;
+      remainders[largest] = -1;
+      assigned++;
+    }
+    return new OperationMix(counts);
+  }
+
+  public int getCount(Operation op) {
+    return counts[op.ordinal()];
+  }
+
+  public int getTotal() {
+    return total;
+  }
+
+  /**
+   * Copies this mix with one operation's count replaced.
+   *
+   * @param op    the operation
+   * @param count its new request count
+   * @return the new mix
+   * @throws IllegalArgumentException if the count is negative
+   */
+  public OperationMix withCount(Operation op, int count) throws IllegalArgumentException {
+    int[] newCounts = counts.clone();
+    newCounts[op.ordinal()] = count;
+    return new OperationMix(newCounts);
+  }
+
+  /**
+   * Builds the order a runner sends its requests in. Unshuffled, each operation's requests are sent
+   * together in declaration order (all POSTs, then each GET path); shuffled, they are interleaved
+   * uniformly at random with a Fisher-Yates shuffle.
+   *
+   * @param shuffle whether to interleave operations
+   * @param rand    random source for the shuffle, seeded for repeatable workloads
+   * @return the operation sequence
+   */
+  public Operation[] sequence(boolean shuffle, Random rand) {
+    Operation[] sequence = new Operation[total];
+    int next = 0;
+    for (Operation op : OPERATIONS) {
+      for (int i = 0; i < counts[op.ordinal()]; i++) {
+        sequence[next++] = op;
+      }
+    }
+    if (shuffle) {
+      for (int i = sequence.length - 1; i > 0; i--) {
+        int j = rand.nextInt(i + 1);
+        Operation swap = sequence[i];
+        sequence[i] = sequence[j];
+        sequence[j] = swap;
+      }
+    }
+    return sequence;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("OperationMix{");
+    for (Operation op : OPERATIONS) {
+      if (op.ordinal() > 0) {
+        builder.append(", ");
+      }
+      builder.append(op.getKey()).append('=').append(counts[op.ordinal()]);
+    }
+    return builder.append('}').toString();
+  }
+}
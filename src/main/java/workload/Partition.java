@@ -0,0 +1,40 @@
+package workload;
+
+/**
+ * One resort and day of the server's key space. Each runner sends all its requests to a single
+ * partition.
+ */
+public class Partition {
+
+  private final int index;
+  private final String resort;
+  private final int day;
+
+  /**
+   * @param index  position of the partition in the configured resort and day grid
+   * @param resort resort name
+   * @param day    ski day
+   */
+  public Partition(int index, String resort, int day) {
+    this.index = index;
+    this.resort = resort;
+    this.day = day;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public String getResort() {
+    return resort;
+  }
+
+  public int getDay() {
+    return day;
+  }
+
+  @Override
+  public String toString() {
+    return resort + " day " + day;
+  }
+}
@@ -0,0 +1,72 @@
+package workload;
+
+/**
+ * How a phase's runners, each owning a block of skier IDs, are spread over the configured
+ * partitions.
+ */
+public enum PartitionStrategy {
+  /**
+   * Neighbouring runners, and so neighbouring skier blocks, share a partition.
+   */
+  CONTIGUOUS("contiguous"),
+  /**
+   * A runner's partition is picked by hashing the first skier ID of its block.
+   */
+  HASHED("hashed"),
+  /**
+   * Runners take partitions in turn.
+   */
+  ROUND_ROBIN("roundRobin");
+
+  private final String key;
+
+  PartitionStrategy(String key) {
+    this.key = key;
+  }
+
+  /**
+   * Looks up a strategy by the name used in the properties file.
+   *
+   * @param key the name
+   * @return the strategy, or null if there is none by that name
+   */
+  public static PartitionStrategy fromKey(String key) {
+    for (PartitionStrategy strategy : values()) {
+      if (strategy.key.equals(key)) {
+        return strategy;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Picks the partition for one runner.
+   *
+   * @param runner        runner index within the phase
+   * @param numRunners    runners in the phase
+   * @param skierIdLow    first skier ID of the runner's block
+   * @param numPartitions partitions to choose from
+   * @return the partition index, from 0 to numPartitions - 1
+   */
+  public int partitionFor(int runner, int numRunners, int skierIdLow, int numPartitions) {
+    switch (this) {
+      case CONTIGUOUS:
+        return (int) ((long) runner * numPartitions / numRunners);
+      case HASHED:
+        // Murmur3 finalizer, so adjacent blocks land on unrelated partitions
+        int h = skierIdLow;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, numPartitions);
+      default:
+        return runner % numPartitions;
+    }
+  }
+
+  public String getKey() {
+    return key;
+  }
+}
@@ -0,0 +1,29 @@
+package workload;
+
+/**
+ * Supplies the skier, lift and time for each request a runner sends, either by sampling on the fly
+ * or by reading a pre-generated workload.
+ */
+public interface RequestSource {
+
+  /**
+   * Moves to the next request. The getters then describe that request until the next call.
+   *
+   * @param op the operation the runner is about to send
+   * @throws WorkloadMismatchException if a pre-generated workload is exhausted or expected a
+   *                                   different operation
+   */
+  void advance(Operation op) throws WorkloadMismatchException;
+
+  int getSkierId();
+
+  /**
+   * @return the 1-indexed lift ID, only meaningful for lift ride POSTs
+   */
+  int getLiftId();
+
+  /**
+   * @return the minute of the ride, only meaningful for lift ride POSTs
+   */
+  int getTime();
+}
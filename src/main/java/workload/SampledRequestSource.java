@@ -0,0 +1,56 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * Draws each request from the configured distributions. Lift and time are only drawn for POSTs, so
+ * a seeded source produces the same sequence whether it is run live or written to a file.
+ */
+public class SampledRequestSource implements RequestSource {
+
+  private final IntSampler skierSampler;
+  private final IntSampler liftSampler;
+  private final IntSampler timeSampler;
+  private final Random rand;
+  private int skierId;
+  private int liftId;
+  private int time;
+
+  /**
+   * @param skierSampler sampler for skier IDs
+   * @param liftSampler  sampler for 1-indexed lift IDs
+   * @param timeSampler  sampler for ride minutes
+   * @param rand         random source, seeded for repeatable workloads
+   */
+  public SampledRequestSource(IntSampler skierSampler, IntSampler liftSampler,
+      IntSampler timeSampler, Random rand) {
+    this.skierSampler = skierSampler;
+    this.liftSampler = liftSampler;
+    this.timeSampler = timeSampler;
+    this.rand = rand;
+  }
+
+  @Override
+  public void advance(Operation op) {
+    skierId = skierSampler.next(rand);
+    if (op == Operation.POST_LIFT_RIDE) {
+      time = timeSampler.next(rand);
+      liftId = liftSampler.next(rand);
+    }
+  }
+
+  @Override
+  public int getSkierId() {
+    return skierId;
+  }
+
+  @Override
+  public int getLiftId() {
+    return liftId;
+  }
+
+  @Override
+  public int getTime() {
+    return time;
+  }
+}
@@ -0,0 +1,77 @@
+package workload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One busy period in the ski day, modelled as a normal curve over the minute of the day.
+ */
+public class TimePeak {
+
+  private final double minute;
+  private final double stdDev;
+  private final double weight;
+
+  /**
+   * @param minute minute of the day at the centre of the peak
+   * @param stdDev spread of the peak in minutes, must be positive
+   * @param weight relative size of the peak compared to the others, must be positive
+   * @throws IllegalArgumentException if stdDev or weight is not positive
+   */
+  public TimePeak(double minute, double stdDev, double weight) throws IllegalArgumentException {
+    if (stdDev <= 0 || weight <= 0) {
+      throw new IllegalArgumentException("time peak spread and weight must be positive");
+    }
+    this.minute = minute;
+    this.stdDev = stdDev;
+    this.weight = weight;
+  }
+
+  /**
+   * Parses a comma separated list of peaks, each written as minute:stdDev:weight (the weight is
+   * optional and defaults to 1), e.g. "60:30:3,330:45:1".
+   *
+   * @param spec the peak list
+   * @return the parsed peaks
+   * @throws IllegalArgumentException if the list is empty or any peak is malformed
+   */
+  public static List<TimePeak> parseList(String spec) throws IllegalArgumentException {
+    List<TimePeak> peaks = new ArrayList<>();
+    for (String part : spec.split(",")) {
+      if (part.trim().isEmpty()) {
+        continue;
+      }
+      String[] fields = part.trim().split(":");
+      if (fields.length < 2 || fields.length > 3) {
+        throw new IllegalArgumentException("time peaks must be written as minute:stdDev[:weight]");
+      }
+      try {
+        double weight = fields.length == 3 ? Double.parseDouble(fields[2]) : 1.0;
+        peaks.add(new TimePeak(Double.parseDouble(fields[0]), Double.parseDouble(fields[1]),
+            weight));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("malformed time peak: " + part.trim());
+      }
+    }
+    if (peaks.isEmpty()) {
+      throw new IllegalArgumentException("at least one time peak is required");
+    }
+    return peaks;
+  }
+
+  /**
+   * Unnormalized density of this peak at a minute.
+   *
+   * @param at the minute
+   * @return the weighted normal density
+   */
+  double density(double at) {
+    double z = (at - minute) / stdDev;
+    return weight / stdDev * Math.exp(-0.5 * z * z);
+  }
+
+  @Override
+  public String toString() {
+    return minute + ":" + stdDev + ":" + weight;
+  }
+}
@@ -0,0 +1,141 @@
+package workload;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel for scheduling very many short delays cheaply. One ticker thread advances the
+ * wheel every tick and hands expired timeouts to an executor; scheduling is a queue offer, and each
+ * tick only touches the timeouts in its own bucket, so the cost doesn't grow with the number of
+ * waiting timeouts.
+ * <p>
+ * Timeouts are intrusive: the scheduled object carries its own bucket link, so a long-lived object
+ * such as a virtual user can be scheduled over and over without allocating.
+ */
+public class TimerWheel {
+
+  private final long tickNanos;
+  private final int mask;
+  private final Timeout[] buckets;
+  private final Executor executor;
+  private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+  private final Thread ticker;
+  private final long startNanos;
+  private volatile boolean stopped;
+  // Only touched by the ticker thread
+  private long tick;
+
+  /**
+   * A task waiting on the wheel. A timeout must not be scheduled again until it has run.
+   */
+  public abstract static class Timeout implements Runnable {
+
+    private long deadlineNanos;
+    private long remainingRounds;
+    private Timeout next;
+
+    /**
+     * @return the time this timeout was due, in System.nanoTime terms
+     */
+    public long getDeadlineNanos() {
+      return deadlineNanos;
+    }
+  }
+
+  /**
+   * Creates and starts a wheel.
+   *
+   * @param tickMillis resolution of the wheel
+   * @param wheelSize  number of buckets, rounded up to a power of two
+   * @param executor   runs expired timeouts
+   */
+  public TimerWheel(long tickMillis, int wheelSize, Executor executor) {
+    int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.mask = size - 1;
+    this.buckets = new Timeout[size];
+    this.executor = executor;
+    this.startNanos = System.nanoTime();
+    this.ticker = new Thread(this::runTicker, "timer-wheel");
+    this.ticker.setDaemon(true);
+    this.ticker.start();
+  }
+
+  /**
+   * Schedules a timeout. Safe to call from any thread, including from a running timeout.
+   *
+   * @param timeout    the timeout
+   * @param delayNanos how long from now it should run, 0 or less to run on the next tick
+   */
+  public void schedule(Timeout timeout, long delayNanos) {
+    timeout.deadlineNanos = System.nanoTime() + Math.max(0, delayNanos);
+    incoming.offer(timeout);
+  }
+
+  /**
+   * Stops the ticker. Timeouts still waiting never run.
+   *
+   * @throws InterruptedException if interrupted while waiting for the ticker to exit
+   */
+  public void stop() throws InterruptedException {
+    stopped = true;
+    LockSupport.unpark(ticker);
+    ticker.join();
+  }
+
+  private void runTicker() {
+    while (!stopped) {
+      long tickEnd = startNanos + (tick + 1) * tickNanos;
+      long wait = tickEnd - System.nanoTime();
+      while (wait > 0 && !stopped) {
+        LockSupport.parkNanos(wait);
+        wait = tickEnd - System.nanoTime();
+      }
+      if (stopped) {
+        return;
+      }
+      transferIncoming();
+      expireBucket((int) (tick & mask));
+      tick++;
+    }
+  }
+
+  /**
+   * Moves newly scheduled timeouts into their buckets.
+   */
+  private void transferIncoming() {
+    Timeout timeout;
+    while ((timeout = incoming.poll()) != null) {
+      long dueTick = (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos;
+      // Already due: goes in the current bucket and runs this tick
+      long targetTick = Math.max(dueTick, tick);
+      timeout.remainingRounds = (targetTick - tick) / buckets.length;
+      int index = (int) (targetTick & mask);
+      timeout.next = buckets[index];
+      buckets[index] = timeout;
+    }
+  }
+
+  private void expireBucket(int index) {
+    Timeout previous = null;
+    Timeout timeout = buckets[index];
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      if (timeout.remainingRounds <= 0) {
+        if (previous == null) {
+          buckets[index] = next;
+        } else {
+          previous.next = next;
+        }
+        timeout.next = null;
+        executor.execute(timeout);
+      } else {
+        timeout.remainingRounds--;
+        previous = timeout;
+      }
+      timeout = next;
+    }
+  }
+}
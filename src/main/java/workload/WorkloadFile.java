@@ -0,0 +1,199 @@
+package workload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A pre-generated workload: the full request sequence for every runner of every phase, stored in a
+ * compact binary file and read back through memory-mapped sections.
+ * <p>
+ * Layout, all big-endian:
+ * <pre>
+ *   header   magic (int), version (short), reserved (short), seed (long), section count (int)
+ *   sections phase (int), runner (int), record offset (long), record count (int)   per section
+ *   records  skier ID (int), time (short), lift ID (byte), operation code (byte)  8 bytes each
+ * </pre>
+ */
+public class WorkloadFile implements Closeable {
+
+  static final int MAGIC = 0x534B574C;  // "SKWL"
+  static final short VERSION = 1;
+  static final int HEADER_BYTES = 20;
+  static final int SECTION_BYTES = 20;
+  static final int RECORD_BYTES = 8;
+
+  private final FileChannel channel;
+  private final long seed;
+  private final Map<Long, long[]> sections = new HashMap<>();
+  // The first mismatch any section ran into, for the thread that started the runners to report
+  private final AtomicReference<WorkloadMismatchException> mismatch = new AtomicReference<>();
+
+  private WorkloadFile(FileChannel channel) throws IOException {
+    this.channel = channel;
+
+    ByteBuffer header = readFully(0, HEADER_BYTES);
+    if (header.getInt() != MAGIC) {
+      throw new IOException("not a workload file");
+    }
+    short version = header.getShort();
+    if (version != VERSION) {
+      throw new IOException("unsupported workload file version " + version);
+    }
+    header.getShort();
+    this.seed = header.getLong();
+    int numSections = header.getInt();
+
+    ByteBuffer table = readFully(HEADER_BYTES, numSections * SECTION_BYTES);
+    for (int i = 0; i < numSections; i++) {
+      int phase = table.getInt();
+      int runner = table.getInt();
+      long offset = table.getLong();
+      int count = table.getInt();
+      if (offset + (long) count * RECORD_BYTES > channel.size()) {
+        throw new IOException("workload file is truncated");
+      }
+      sections.put(key(phase, runner), new long[]{offset, count});
+    }
+  }
+
+  /**
+   * Opens a workload file and reads its section table.
+   *
+   * @param path the file
+   * @return the open workload
+   * @throws IOException if the file can't be read or is not a valid workload file
+   */
+  public static WorkloadFile open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new WorkloadFile(channel);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private ByteBuffer readFully(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("workload file is truncated");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  static long key(int phase, int runner) {
+    return ((long) phase << 32) | (runner & 0xFFFFFFFFL);
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Number of requests stored for a runner.
+   *
+   * @param phase  phase number, starting at 1
+   * @param runner runner index within the phase, starting at 0
+   * @return the request count, or -1 if the file has no such section
+   */
+  public int getRequestCount(int phase, int runner) {
+    long[] section = sections.get(key(phase, runner));
+    return section == null ? -1 : (int) section[1];
+  }
+
+  /**
+   * Maps one runner's requests into memory.
+   *
+   * @param phase  phase number, starting at 1
+   * @param runner runner index within the phase, starting at 0
+   * @return a source that streams the runner's requests in order
+   * @throws IOException if the file has no such section or it can't be mapped
+   */
+  public RequestSource section(int phase, int runner) throws IOException {
+    long[] section = sections.get(key(phase, runner));
+    if (section == null) {
+      throw new IOException("workload file has no requests for phase " + phase
+          + " runner " + runner);
+    }
+    MappedByteBuffer records = channel.map(
+        FileChannel.MapMode.READ_ONLY, section[0], section[1] * RECORD_BYTES);
+    return new MappedRequestSource(records);
+  }
+
+  /**
+   * @return the first mismatch a section of this file threw, or null if there was none
+   */
+  public WorkloadMismatchException getMismatch() {
+    return mismatch.get();
+  }
+
+  private WorkloadMismatchException mismatch(String message) {
+    WorkloadMismatchException e = new WorkloadMismatchException(message);
+    mismatch.compareAndSet(null, e);
+    return e;
+  }
+
+  /**
+   * Closes the file. Sections already mapped stay readable.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Streams records out of a mapped section. Each runner gets its own, so no synchronization.
+   */
+  private class MappedRequestSource implements RequestSource {
+
+    private final MappedByteBuffer records;
+    private int skierId;
+    private int liftId;
+    private int time;
+
+    MappedRequestSource(MappedByteBuffer records) {
+      this.records = records;
+    }
+
+    @Override
+    public void advance(Operation op) throws WorkloadMismatchException {
+      if (records.remaining() < RECORD_BYTES) {
+        throw mismatch("workload file ran out of requests");
+      }
+      skierId = records.getInt();
+      time = records.getShort() & 0xFFFF;
+      liftId = records.get() & 0xFF;
+      int code = records.get() & 0xFF;
+      if (code != op.ordinal()) {
+        throw mismatch("workload file expected " + Operation.fromCode(code)
+            + " but runner is sending " + op);
+      }
+    }
+
+    @Override
+    public int getSkierId() {
+      return skierId;
+    }
+
+    @Override
+    public int getLiftId() {
+      return liftId;
+    }
+
+    @Override
+    public int getTime() {
+      return time;
+    }
+  }
+}
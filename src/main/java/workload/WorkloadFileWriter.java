@@ -0,0 +1,83 @@
+package workload;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes a {@link WorkloadFile}. Sections are declared up front so the section table can be written
+ * first, then records are appended in section order.
+ */
+public class WorkloadFileWriter implements Closeable {
+
+  private final DataOutputStream out;
+  private final long expectedRecords;
+  private long writtenRecords;
+
+  /**
+   * Creates the file, replacing any old one, and writes the header and section table.
+   *
+   * @param path     output file
+   * @param seed     seed the workload was generated from, stored for reference
+   * @param sections one {phase, runner, record count} triple per section, in write order
+   * @throws IOException if the file can't be written
+   */
+  public WorkloadFileWriter(Path path, long seed, List<int[]> sections) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+    out.writeInt(WorkloadFile.MAGIC);
+    out.writeShort(WorkloadFile.VERSION);
+    out.writeShort(0);
+    out.writeLong(seed);
+    out.writeInt(sections.size());
+
+    long offset = WorkloadFile.HEADER_BYTES + (long) sections.size() * WorkloadFile.SECTION_BYTES;
+    long total = 0;
+    for (int[] section : sections) {
+      out.writeInt(section[0]);
+      out.writeInt(section[1]);
+      out.writeLong(offset + total * WorkloadFile.RECORD_BYTES);
+      out.writeInt(section[2]);
+      total += section[2];
+    }
+    this.expectedRecords = total;
+  }
+
+  /**
+   * Appends one request to the current section.
+   *
+   * @param op      operation
+   * @param skierId skier ID
+   * @param liftId  lift ID, 0 to 255
+   * @param time    ride minute, 0 to 65535
+   * @throws IOException              if the file can't be written
+   * @throws IllegalArgumentException if the lift or time don't fit the record format
+   */
+  public void write(Operation op, int skierId, int liftId, int time)
+      throws IOException, IllegalArgumentException {
+    if (liftId < 0 || liftId > 0xFF || time < 0 || time > 0xFFFF) {
+      throw new IllegalArgumentException("lift " + liftId + " or time " + time + " out of range");
+    }
+    out.writeInt(skierId);
+    out.writeShort(time);
+    out.writeByte(liftId);
+    out.writeByte(op.ordinal());
+    writtenRecords++;
+  }
+
+  /**
+   * Flushes and closes the file.
+   *
+   * @throws IOException if writing fails or fewer records were written than declared
+   */
+  @Override
+  public void close() throws IOException {
+    out.close();
+    if (writtenRecords != expectedRecords) {
+      throw new IOException("declared " + expectedRecords + " requests but wrote " + writtenRecords);
+    }
+  }
+}
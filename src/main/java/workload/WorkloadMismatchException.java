@@ -0,0 +1,15 @@
+package workload;
+
+/**
+ * Thrown when a pre-generated workload runs out of requests or holds a different operation than
+ * the runner is about to send, so the run no longer matches the phase plan it was generated for.
+ */
+public class WorkloadMismatchException extends RuntimeException {
+
+  /**
+   * @param message what did not match
+   */
+  public WorkloadMismatchException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,149 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import statistics.BulkRequestStatistics;
+
+public class CoordinatorTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static Properties properties(int port) {
+    Properties props = new Properties();
+    props.setProperty("maxThreads", "4");
+    props.setProperty("resort", "Silver Mountain");
+    props.setProperty("hostAddress", "http://127.0.0.1:8080");
+    props.setProperty("csvFilename", "request-stats");
+    props.setProperty("distributedWorkers", "1");
+    props.setProperty("coordinatorPort", String.valueOf(port));
+    props.setProperty("workerConnectSeconds", "5");
+    return props;
+  }
+
+  private static byte[] bytesOf(Properties props) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    props.store(bytes, null);
+    return bytes.toByteArray();
+  }
+
+  private interface Connector<T> {
+
+    T connect() throws IOException;
+  }
+
+  /**
+   * Connects to a coordinator that may not be listening yet.
+   */
+  private static <T> T retry(Connector<T> connector) throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (true) {
+      try {
+        return connector.connect();
+      } catch (ConnectException e) {
+        if (System.currentTimeMillis() > deadline) {
+          throw e;
+        }
+        Thread.sleep(20);
+      }
+    }
+  }
+
+  /**
+   * Runs a coordinator on a background thread, keeping whatever it throws.
+   */
+  private static Thread runCoordinator(Coordinator coordinator, BulkRequestStatistics stats,
+      AtomicReference<Exception> failure) {
+    Thread thread = new Thread(() -> {
+      try {
+        coordinator.run(stats);
+      } catch (IOException | InterruptedException e) {
+        failure.set(e);
+      }
+    }, "coordinator");
+    thread.start();
+    return thread;
+  }
+
+  @Test(timeout = 20_000)
+  public void workerRunsEveryPhaseAndReturnsItsResults() throws Exception {
+    int port = freePort();
+    Properties props = properties(port);
+    Coordinator coordinator = new Coordinator(
+        Arguments.fromProperties(props), bytesOf(props), 2);
+    BulkRequestStatistics coordinatorStats =
+        new BulkRequestStatistics(folder.getRoot() + "/coordinator");
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    Thread thread = runCoordinator(coordinator, coordinatorStats, failure);
+
+    WorkerLink link = retry(() -> WorkerLink.connect("127.0.0.1:" + port));
+    assertEquals(0, link.getIndex());
+    assertEquals(1, link.getNumWorkers());
+    Arguments workerArgs = link.getArguments();
+    assertFalse(workerArgs.getDistributedSettings().isEnabled());
+    assertTrue(workerArgs.getCsvFilename(), workerArgs.getCsvFilename().endsWith("-worker1"));
+
+    link.awaitPhaseStart(1);
+    link.awaitPhaseStart(2);
+    link.finished();
+    BulkRequestStatistics workerStats = new BulkRequestStatistics(folder.getRoot() + "/worker");
+    Thread writer = workerStats.startStatsToCsvListener();
+    workerStats.getTotalRequests().set(5);
+    workerStats.getTotalBadRequests().set(1);
+    workerStats.addReportSection("Probe:\n\tfrom the worker\n");
+    link.sendResults(workerStats, writer);
+
+    thread.join();
+    assertNull(failure.get());
+    String summary = coordinator.summary();
+    assertTrue(summary, summary.contains("Workers: 1 (connected to port " + port + ")"));
+    assertTrue(summary, summary.contains(": 5 requests, 1 bad,"));
+    assertTrue(summary, summary.contains("Worker 1 Probe:\n\tfrom the worker\n"));
+    coordinatorStats.performFinalCalcs();
+    assertEquals(5, coordinatorStats.getSnapshot().getTotalRequests());
+  }
+
+  @Test(timeout = 20_000)
+  public void rejectsAWorkerSpeakingAnotherVersion() throws Exception {
+    int port = freePort();
+    Properties props = properties(port);
+    Coordinator coordinator = new Coordinator(
+        Arguments.fromProperties(props), bytesOf(props), 1);
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    Thread thread = runCoordinator(coordinator,
+        new BulkRequestStatistics(folder.getRoot() + "/coordinator"), failure);
+
+    try (Socket socket = retry(() -> new Socket("127.0.0.1", port))) {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeByte(WorkerLink.HELLO);
+      out.writeInt(WorkerLink.MAGIC);
+      out.writeShort(WorkerLink.VERSION + 1);
+      out.flush();
+      thread.join();
+    }
+    if (failure.get() == null) {
+      fail("expected the coordinator to reject the worker");
+    }
+    assertTrue(failure.get().getMessage(),
+        failure.get().getMessage().contains("unsupported protocol version"));
+  }
+}
@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class ExpectedVerticalsTest {
+
+  // Two resorts of three days each
+  private final ExpectedVerticals verticals = new ExpectedVerticals(6, 3, 1000, 10);
+
+  @Test
+  public void startsWithNoActivePartitions() {
+    assertEquals(0, verticals.getActivePartitionCount());
+    assertEquals(-1, verticals.randomActivePartition(new Random(1)));
+    assertEquals(0, verticals.getDayVertical(4, 7));
+    assertEquals(0, verticals.getResortVertical(1, 7));
+    assertEquals(0, verticals.getDayLastWriteMillis(4, 7));
+  }
+
+  @Test
+  public void sumsRidesPerDayAndPerResort() {
+    verticals.recordRide(3, 7, 5);
+    verticals.recordRide(3, 7, 2);
+    verticals.recordRide(5, 7, 1);
+    verticals.recordRide(2, 7, 40);
+    verticals.recordRide(3, 1000, 1);
+
+    assertEquals(70, verticals.getDayVertical(3, 7));
+    assertEquals(10, verticals.getDayVertical(5, 7));
+    assertEquals(10, verticals.getDayVertical(3, 1000));
+    assertEquals(0, verticals.getDayVertical(3, 8));
+    // Partitions 3 to 5 are resort 1, partition 2 is the last day of resort 0
+    assertEquals(80, verticals.getResortVertical(1, 7));
+    assertEquals(400, verticals.getResortVertical(0, 7));
+  }
+
+  @Test
+  public void allocatesOnlyThePartitionsWrittenTo() {
+    verticals.recordRide(4, 1, 1);
+    verticals.recordRide(4, 2, 1);
+    verticals.recordRide(1, 1, 1);
+    assertEquals(2, verticals.getActivePartitionCount());
+
+    Set<Integer> sampled = new HashSet<>();
+    Random rand = new Random(6650);
+    for (int i = 0; i < 100; i++) {
+      sampled.add(verticals.randomActivePartition(rand));
+    }
+    assertEquals(new HashSet<>(Arrays.asList(1, 4)), sampled);
+  }
+
+  @Test
+  public void lastWriteTimesFollowTheLatestRide() {
+    long before = System.currentTimeMillis();
+    verticals.recordRide(0, 9, 1);
+    verticals.recordRide(2, 9, 1);
+    long after = System.currentTimeMillis();
+
+    long dayWrite = verticals.getDayLastWriteMillis(2, 9);
+    assertTrue(dayWrite >= before && dayWrite <= after);
+    assertEquals(Math.max(verticals.getDayLastWriteMillis(0, 9), dayWrite),
+        verticals.getResortLastWriteMillis(0, 9));
+    // A skier with no rides on an active partition has no write time
+    assertEquals(0, verticals.getDayLastWriteMillis(2, 10));
+    assertEquals(0, verticals.getResortLastWriteMillis(1, 9));
+  }
+
+  @Test
+  public void concurrentFirstRidesShareOneAccumulator() throws InterruptedException {
+    int numThreads = 8;
+    int ridesPerThread = 10_000;
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      threads[t] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < ridesPerThread; i++) {
+          verticals.recordRide(i % 6, 1, 1);
+        }
+      });
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(6, verticals.getActivePartitionCount());
+    int total = 0;
+    for (int partition = 0; partition < 6; partition++) {
+      total += verticals.getDayVertical(partition, 1);
+    }
+    assertEquals(numThreads * ridesPerThread * 10, total);
+  }
+}
@@ -0,0 +1,90 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Properties;
+import org.junit.Test;
+
+public class SkiDaySimulatorTest {
+
+  private static final int NUM_SKIERS = 300;
+  private static final int NUM_LIFTS = 12;
+  private static final int RIDES = 5000;
+
+  private static Arguments arguments(String seed) {
+    Properties props = new Properties();
+    props.setProperty("maxThreads", "4");
+    props.setProperty("resort", "Silver Mountain");
+    props.setProperty("hostAddress", "http://127.0.0.1:8080");
+    props.setProperty("numSkiers", String.valueOf(NUM_SKIERS));
+    props.setProperty("numSkiLifts", String.valueOf(NUM_LIFTS));
+    props.setProperty("simulateDay", "true");
+    // Unpaced, so the test runs as fast as it reads rides
+    props.setProperty("simCompression", "0");
+    props.setProperty("simFeedSize", "64");
+    if (seed != null) {
+      props.setProperty("workloadSeed", seed);
+    }
+    return Arguments.fromProperties(props);
+  }
+
+  /**
+   * Runs a simulation for RIDES rides, each flattened to skier, lift and minute.
+   */
+  private static int[] simulate(String seed) throws InterruptedException {
+    SkiDaySimulator simulator = new SkiDaySimulator(arguments(seed));
+    simulator.start();
+    int[] rides = new int[RIDES * 3];
+    try {
+      for (int i = 0; i < RIDES; i++) {
+        SkiDaySimulator.Ride ride = simulator.nextRide();
+        rides[3 * i] = ride.getSkierId();
+        rides[3 * i + 1] = ride.getLiftId();
+        rides[3 * i + 2] = ride.getMinute();
+      }
+    } finally {
+      simulator.stop();
+    }
+    assertNull(simulator.getFailure());
+    return rides;
+  }
+
+  @Test
+  public void seededDaysPlayOutTheSameWay() throws InterruptedException {
+    int[] first = simulate("6650");
+    assertArrayEquals(first, simulate("6650"));
+    assertFalse(Arrays.equals(first, simulate("6651")));
+  }
+
+  @Test
+  public void ridesStayWithinTheConfiguredRanges() throws InterruptedException {
+    int[] rides = simulate("1");
+    int dayMinutes = arguments("1").getDayLengthMinutes();
+    for (int i = 0; i < rides.length; i += 3) {
+      assertTrue("skier " + rides[i], rides[i] >= 1 && rides[i] <= NUM_SKIERS);
+      assertTrue("lift " + rides[i + 1], rides[i + 1] >= 1 && rides[i + 1] <= NUM_LIFTS);
+      assertTrue("minute " + rides[i + 2], rides[i + 2] >= 1 && rides[i + 2] <= dayMinutes);
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void waitingRunnersAreReleasedOnceStopped() throws InterruptedException {
+    SkiDaySimulator simulator = new SkiDaySimulator(arguments(null));
+    simulator.start();
+    simulator.nextRide();
+    simulator.stop();
+
+    // Whatever was left in the feed drains, then every call throws instead of blocking
+    try {
+      for (int i = 0; i <= 64; i++) {
+        simulator.nextRide();
+      }
+      fail("expected a SimulationStoppedException");
+    } catch (SimulationStoppedException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("stopped"));
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package io.swagger.client;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakersTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    // Window of 10 calls, opening at 50% failed or 80% slower than 1000 ms, 2 half-open trials
+    private final CircuitBreakers breakers = new CircuitBreakers(
+            Collections.singletonList("GET /skiers/{skierID}/vertical"), 10, 4, 50, 1000, 80, OPEN_MILLIS, 2);
+
+    private final CircuitBreakers.Breaker breaker = breakers.breakerFor("GET", "/skiers/123/vertical");
+
+    private void call(boolean failed) throws CircuitOpenException {
+        breaker.acquire();
+        breaker.complete(1, failed);
+    }
+
+    private void assertShortCircuited() {
+        try {
+            breaker.acquire();
+            fail("expected the call to be short-circuited");
+        } catch (CircuitOpenException e) {
+            // expected
+        }
+    }
+
+    private void assertState(CircuitBreakers.State state) {
+        assertTrue(breakers.summary(), breakers.summary().contains("State: " + state + ","));
+    }
+
+    @Test
+    public void matchesPathTemplatesAndFallsBackPerMethod() {
+        assertSame(breaker, breakers.breakerFor("GET", "/skiers/456/vertical"));
+        assertEquals("GET /skiers/{skierID}/vertical", breaker.getEndpoint());
+        assertEquals("POST *", breakers.breakerFor("POST", "/skiers/liftrides").getEndpoint());
+    }
+
+    @Test
+    public void staysClosedUntilTheWindowHasEnoughCalls() throws CircuitOpenException {
+        call(true);
+        call(true);
+        call(true);
+        assertState(CircuitBreakers.State.CLOSED);
+        call(true);
+        assertState(CircuitBreakers.State.OPEN);
+    }
+
+    @Test
+    public void opensThenHalfOpensThenCloses() throws Exception {
+        call(false);
+        call(true);
+        call(false);
+        call(true);
+        assertState(CircuitBreakers.State.OPEN);
+        assertShortCircuited();
+
+        Thread.sleep(OPEN_MILLIS + 10);
+        // Two trials go through, a third waits for them
+        breaker.acquire();
+        breaker.acquire();
+        assertState(CircuitBreakers.State.HALF_OPEN);
+        assertShortCircuited();
+
+        breaker.complete(1, false);
+        assertState(CircuitBreakers.State.HALF_OPEN);
+        breaker.complete(1, false);
+        assertState(CircuitBreakers.State.CLOSED);
+        // The window starts over, so earlier failures no longer count
+        call(true);
+        call(false);
+        call(false);
+        call(false);
+        assertState(CircuitBreakers.State.CLOSED);
+    }
+
+    @Test
+    public void failedTrialsOpenTheBreakerAgain() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        Thread.sleep(OPEN_MILLIS + 10);
+        call(false);
+        call(true);
+        assertState(CircuitBreakers.State.OPEN);
+        assertTrue(breakers.summary().contains("Opened: 2 times"));
+    }
+
+    @Test
+    public void releasedTrialIsHandedToTheNextCall() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        Thread.sleep(OPEN_MILLIS + 10);
+        breaker.acquire();
+        breaker.acquire();
+        assertShortCircuited();
+        breaker.release();
+        breaker.acquire();
+    }
+
+    @Test
+    public void slowCallsOpenTheBreaker() throws CircuitOpenException {
+        for (int i = 0; i < 4; i++) {
+            breaker.acquire();
+            breaker.complete(1000, false);
+        }
+        assertState(CircuitBreakers.State.OPEN);
+    }
+}
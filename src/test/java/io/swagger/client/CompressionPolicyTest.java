@@ -0,0 +1,111 @@
+package io.swagger.client;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionPolicyTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final CompressionPolicy policy = new CompressionPolicy(
+            Arrays.asList("/liftrides", "/vertical"), 100, 6);
+
+    private static byte[] repetitiveJson(int rides) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < rides; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"resortID\":\"Mission Ridge\",\"liftID\":\"").append(i % 40).append("\"}");
+        }
+        return json.append("]").toString().getBytes();
+    }
+
+    private static byte[] bytesOf(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readByteArray();
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void matchesTheFirstConfiguredFragment() {
+        assertEquals("/liftrides", policy.match("/skiers/liftrides"));
+        assertEquals("/vertical", policy.match("/skiers/123/vertical"));
+        assertNull(policy.match("/resort/day/top10vert"));
+        assertEquals("*", new CompressionPolicy(Collections.singletonList("*"), 0, 1).match("/anything"));
+    }
+
+    @Test
+    public void compressesMatchingBodiesIntoValidGzip() throws IOException {
+        byte[] raw = repetitiveJson(50);
+        Request.Builder builder = new Request.Builder().url("http://localhost/skiers/liftrides");
+
+        RequestBody sent = policy.apply("/skiers/liftrides", RequestBody.create(JSON, raw), builder);
+
+        byte[] compressed = bytesOf(sent);
+        assertTrue(compressed.length < raw.length);
+        assertArrayEquals(raw, gunzip(compressed));
+        assertEquals(JSON, sent.contentType());
+        assertEquals("gzip", builder.build().header("Content-Encoding"));
+    }
+
+    @Test
+    public void leavesSmallAndUnmatchedBodiesAlone() throws IOException {
+        byte[] small = "{\"liftID\":\"1\"}".getBytes();
+        Request.Builder smallBuilder = new Request.Builder().url("http://localhost/skiers/liftrides");
+        assertArrayEquals(small, bytesOf(policy.apply("/skiers/liftrides", RequestBody.create(JSON, small), smallBuilder)));
+        assertNull(smallBuilder.build().header("Content-Encoding"));
+
+        byte[] large = repetitiveJson(50);
+        RequestBody unmatched = RequestBody.create(JSON, large);
+        Request.Builder unmatchedBuilder = new Request.Builder().url("http://localhost/resort/day/top10vert");
+        assertSame(unmatched, policy.apply("/resort/day/top10vert", unmatched, unmatchedBuilder));
+        assertNull(unmatchedBuilder.build().header("Content-Encoding"));
+    }
+
+    @Test
+    public void pooledDeflatersStartFreshForEachBody() throws IOException {
+        byte[] first = repetitiveJson(80);
+        byte[] second = "a different, shorter body that still compresses".getBytes();
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(first, gunzip(policy.gzip(first)));
+            assertArrayEquals(second, gunzip(policy.gzip(second)));
+        }
+        assertArrayEquals(new byte[0], gunzip(policy.gzip(new byte[0])));
+    }
+
+    @Test
+    public void summaryCountsCompressedAndSkippedBodies() throws IOException {
+        Request.Builder builder = new Request.Builder().url("http://localhost/skiers/liftrides");
+        policy.apply("/skiers/liftrides", RequestBody.create(JSON, repetitiveJson(50)), builder);
+        policy.apply("/skiers/liftrides", RequestBody.create(JSON, "{}".getBytes()), builder);
+
+        String summary = policy.summary();
+        assertTrue(summary, summary.contains("/liftrides:"));
+        assertTrue(summary, summary.contains("Compressed: 1, Below threshold: 1"));
+    }
+}
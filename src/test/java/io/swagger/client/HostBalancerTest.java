@@ -0,0 +1,25 @@
+package io.swagger.client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNotSame;
+
+public class HostBalancerTest {
+
+    private final HostBalancer balancer = new HostBalancer(
+            Arrays.asList("http://10.0.0.1:8080/server", "http://10.0.0.2:8080/server"), HostBalancer.POWER_OF_TWO);
+
+    @Test
+    public void powerOfTwoCountsCallsInFlightWhenLatenciesRoundToZero() {
+        // With two hosts both are compared, so the second call must go to the host without one
+        for (int i = 0; i < 20; i++) {
+            HostBalancer.Host first = balancer.select();
+            HostBalancer.Host second = balancer.select();
+            assertNotSame(first, second);
+            first.complete(0, false);
+            second.complete(0, false);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.swagger.client;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitersTest {
+
+    @Test
+    public void idleBucketHandsOutItsBurstAtOnce() {
+        // 100 permits per second with a 50 ms burst: 5 permits now, the next one 10 ms later
+        RateLimiters.TokenBucket bucket = new RateLimiters.TokenBucket(100, 50);
+        sleepMillis(60);
+        for (int i = 0; i < 5; i++) {
+            assertTrue("permit " + i, bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void burstAlwaysAllowsOnePermit() {
+        RateLimiters.TokenBucket bucket = new RateLimiters.TokenBucket(1, 0);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void acquireHoldsCallersToTheRate() {
+        RateLimiters.TokenBucket bucket = new RateLimiters.TokenBucket(200, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 41; i++) {
+            bucket.acquire();
+        }
+        double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        // 40 intervals of 5 ms after the first permit
+        assertTrue("took " + seconds + " seconds", seconds >= 0.19);
+        assertEquals(200, bucket.getAchievedRate(), 20);
+    }
+
+    @Test
+    public void refusedGlobalPermitRefundsTheEndpointPermit() {
+        RateLimiters limiters = new RateLimiters(1,
+                Collections.singletonMap("GET /skiers/{skierID}/vertical", 1.0), 0);
+        RateLimiters.Limiter limiter = limiters.limiterFor("GET", "/skiers/{skierID}/vertical");
+        RateLimiters.Limiter other = limiters.limiterFor("POST", "/skiers/liftrides");
+        // The other endpoint spends the only global permit
+        assertTrue(other.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertFalse(other.tryAcquire());
+        // The endpoint's permit was given back, so its bucket shows none taken or refused
+        assertTrue(limiters.summary().contains("Permits: 0, Delayed: 0 (mean wait 0.00 ms), Refused: 0"));
+    }
+
+    @Test
+    public void noLimitsLetEveryCallThrough() {
+        RateLimiters.Limiter unlimited = new RateLimiters(0,
+                Collections.<String, Double>emptyMap(), 0).limiterFor("GET", "/resorts");
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(unlimited.tryAcquire());
+        }
+        assertEquals(0, unlimited.acquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate() {
+        new RateLimiters.TokenBucket(0, 1000);
+    }
+
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
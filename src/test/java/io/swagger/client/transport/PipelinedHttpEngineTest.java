@@ -0,0 +1,127 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.HttpUrl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PipelinedHttpEngineTest {
+
+    private ScriptedServer server;
+    private PipelinedHttpEngine engine;
+    private HttpUrl url;
+    // "status" or "failed: message", in the order results arrive
+    private final BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+
+    private final PipelinedHttpEngine.ResponseListener recorder = new PipelinedHttpEngine.ResponseListener() {
+        @Override
+        public void onResponse(int statusCode, long startMillis, long latencyMillis) {
+            results.add(String.valueOf(statusCode));
+        }
+
+        @Override
+        public void onFailure(IOException e, long startMillis, long latencyMillis) {
+            results.add("failed: " + e.getMessage());
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ScriptedServer();
+        url = HttpUrl.parse(server.baseUrl() + "/skiers/liftrides");
+        engine = new PipelinedHttpEngine(HttpUrl.parse(server.baseUrl()), 1, 8, 5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        engine.close();
+        server.close();
+    }
+
+    private void post(PipelinedHttpEngine.ResponseListener listener) throws InterruptedException {
+        engine.send("POST", url, "application/json", "{}".getBytes(), listener);
+    }
+
+    private String nextResult() throws InterruptedException {
+        String result = results.poll(5, TimeUnit.SECONDS);
+        if (result == null) {
+            throw new AssertionError("no result within 5 seconds");
+        }
+        return result;
+    }
+
+    @Test
+    public void matchesPipelinedResponsesInOrderAcrossFramings() throws InterruptedException {
+        server.enqueue(
+                "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 201 Created\r\nContent-Length: 2\r\n\r\nok",
+                "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\nX-Trailer: 1\r\n\r\n",
+                "HTTP/1.1 204 No Content\r\n\r\n",
+                "HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n");
+        for (int i = 0; i < 4; i++) {
+            post(recorder);
+        }
+
+        assertEquals("201", nextResult());
+        assertEquals("200", nextResult());
+        assertEquals("204", nextResult());
+        assertEquals("400", nextResult());
+        assertEquals(1, engine.getConnectionsOpened());
+    }
+
+    @Test
+    public void malformedContentLengthFailsOnlyItsConnection() throws InterruptedException {
+        server.enqueue("HTTP/1.1 201 Created\r\nContent-Length: ten\r\n\r\n");
+        post(recorder);
+        String failure = nextResult();
+        assertTrue(failure, failure.startsWith("failed: ") && failure.contains("Content-Length"));
+
+        // The I/O thread survives and reconnects for the next request
+        server.enqueue("HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n");
+        post(recorder);
+        assertEquals("201", nextResult());
+        assertEquals(2, engine.getConnectionsOpened());
+    }
+
+    @Test
+    public void throwingListenerDoesNotStopTheEngine() throws InterruptedException {
+        server.enqueue(
+                "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n",
+                "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n");
+        post(new PipelinedHttpEngine.ResponseListener() {
+            @Override
+            public void onResponse(int statusCode, long startMillis, long latencyMillis) {
+                throw new IllegalStateException("broken listener");
+            }
+
+            @Override
+            public void onFailure(IOException e, long startMillis, long latencyMillis) {
+                throw new IllegalStateException("broken listener");
+            }
+        });
+        post(recorder);
+        assertEquals("201", nextResult());
+    }
+
+    @Test
+    public void closeOnResponseResendsTheRequestsBehindIt() throws InterruptedException {
+        server.enqueue(
+                "HTTP/1.1 201 Created\r\nConnection: close\r\nContent-Length: 0\r\n\r\n",
+                "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n",
+                "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n");
+        for (int i = 0; i < 3; i++) {
+            post(recorder);
+        }
+
+        assertEquals("201", nextResult());
+        assertEquals("201", nextResult());
+        assertEquals("201", nextResult());
+    }
+}
@@ -0,0 +1,137 @@
+package io.swagger.client.transport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loopback HTTP/1.1 server for transport tests that answers each request it reads with the next
+ * raw response from its script, one connection at a time. A response with Connection: close ends
+ * its connection.
+ */
+class ScriptedServer implements Closeable {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final ServerSocket server;
+    private final Thread thread;
+    private final BlockingQueue<String> responses = new LinkedBlockingQueue<String>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    ScriptedServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "scripted-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue raw responses, status line to last body byte, for the next requests.
+     */
+    void enqueue(String... rawResponses) {
+        for (String response : rawResponses) {
+            responses.add(response);
+        }
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getLocalPort();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        thread.interrupt();
+    }
+
+    private void serve() {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connections.incrementAndGet();
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                while (readRequest(in)) {
+                    String response = responses.take();
+                    out.write(response.getBytes(ISO_8859_1));
+                    out.flush();
+                    // Like a real server, process nothing after a response that closes
+                    if (response.contains("\r\nConnection: close\r\n")) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // The client dropped the connection, wait for the next one
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // Closing anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Read one request and discard it.
+     *
+     * @return false if the client closed the connection first
+     */
+    private static boolean readRequest(InputStream in) throws IOException {
+        long contentLength = 0;
+        String line = readLine(in);
+        if (line == null) {
+            return false;
+        }
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Long.parseLong(line.substring("content-length:".length()).trim());
+            }
+        }
+        for (long i = 0; i < contentLength; i++) {
+            if (in.read() == -1) {
+                return false;
+            }
+        }
+        return line != null;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                String text = new String(line.toByteArray(), ISO_8859_1);
+                return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+            }
+            line.write(b);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,98 @@
+package io.swagger.client.transport;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SocketTransportTest {
+
+    private ScriptedServer server;
+    private SocketTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ScriptedServer();
+        transport = new SocketTransport(5000, 5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.shutdown();
+        server.close();
+    }
+
+    private Response get(String path) throws IOException {
+        return transport.execute(new Request.Builder().url(server.baseUrl() + path).build());
+    }
+
+    @Test
+    public void readsFixedAndChunkedBodiesOverOneConnection() throws IOException {
+        server.enqueue(
+                "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello",
+                "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3;ext=1\r\nabc\r\n2\r\nde\r\n0\r\n\r\n",
+                "HTTP/1.1 204 No Content\r\n\r\n");
+
+        assertEquals("hello", get("/a").body().string());
+        assertEquals("abcde", get("/b").body().string());
+        assertEquals(204, get("/c").code());
+        assertEquals(1, server.getConnections());
+        assertEquals(1, transport.getConnectionsOpened());
+    }
+
+    @Test
+    public void closeResponseIsNotReused() throws IOException {
+        server.enqueue(
+                "HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 1\r\n\r\na",
+                "HTTP/1.1 200 OK\r\nContent-Length: 1\r\n\r\nb");
+
+        assertEquals("a", get("/a").body().string());
+        assertEquals("b", get("/b").body().string());
+        assertEquals(2, transport.getConnectionsOpened());
+    }
+
+    @Test
+    public void interimResponsesAreSkipped() throws IOException {
+        server.enqueue(
+                "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 102 Processing\r\n\r\n"
+                        + "HTTP/1.1 201 Created\r\nContent-Length: 2\r\n\r\nok",
+                "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nnext");
+
+        Response first = get("/a");
+        assertEquals(201, first.code());
+        assertEquals("ok", first.body().string());
+        // The pooled connection is still in step with its responses
+        assertEquals("next", get("/b").body().string());
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void malformedContentLengthIsAProtocolError() throws IOException {
+        server.enqueue("HTTP/1.1 200 OK\r\nContent-Length: twelve\r\n\r\n");
+        try {
+            get("/a");
+            fail("expected a ProtocolException");
+        } catch (ProtocolException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Content-Length"));
+        }
+    }
+
+    @Test
+    public void malformedStatusLineIsAProtocolError() throws IOException {
+        server.enqueue("HTTP/1.1 OK\r\n\r\n");
+        try {
+            get("/a");
+            fail("expected a ProtocolException");
+        } catch (ProtocolException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("status line"));
+        }
+    }
+}
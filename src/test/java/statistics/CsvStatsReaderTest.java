@@ -0,0 +1,71 @@
+package statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvStatsReaderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path csv(String name, long... startTimes) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("StartTime,Shard");
+    for (long startTime : startTimes) {
+      lines.add(startTime + "," + name);
+    }
+    return Files.write(folder.getRoot().toPath().resolve(name), lines, StandardCharsets.UTF_8);
+  }
+
+  private static List<Long> startTimes(Path path) throws IOException {
+    List<String[]> rows = CsvStatsReader.readInStartOrder(path, cols -> cols,
+        cols -> Long.parseLong(cols[0]));
+    List<Long> starts = new ArrayList<>();
+    for (String[] row : rows) {
+      starts.add(Long.parseLong(row[0]));
+    }
+    return starts;
+  }
+
+  @Test
+  public void sortsASingleFile() throws IOException {
+    Path path = csv("request-stats.csv", 30, 10, 20);
+    assertEquals(Arrays.asList(10L, 20L, 30L), startTimes(path));
+  }
+
+  @Test
+  public void mergesShardsInStartOrder() throws IOException {
+    csv("request-stats.shard1.csv", 5, 1, 9, 7);
+    csv("request-stats.shard2.csv", 2, 8);
+    csv("request-stats.shard3.csv");
+    csv("request-stats.shard4.csv", 6, 3, 4, 10);
+    Path manifest = folder.getRoot().toPath().resolve("request-stats" + ShardManifest.SUFFIX);
+    ShardManifest.save(manifest, Arrays.asList(
+        folder.getRoot().toPath().resolve("request-stats.shard1.csv"),
+        folder.getRoot().toPath().resolve("request-stats.shard2.csv"),
+        folder.getRoot().toPath().resolve("request-stats.shard3.csv"),
+        folder.getRoot().toPath().resolve("request-stats.shard4.csv")));
+
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), startTimes(manifest));
+  }
+
+  @Test
+  public void skipsRowsTheParserDrops() throws IOException {
+    Path path = csv("request-stats.csv", 3, 2, 1);
+    List<String[]> rows = CsvStatsReader.readInStartOrder(path,
+        cols -> "2".equals(cols[0]) ? null : cols, cols -> Long.parseLong(cols[0]));
+    assertEquals(2, rows.size());
+    assertEquals("1", rows.get(0)[0]);
+    assertEquals("3", rows.get(1)[0]);
+  }
+}
@@ -0,0 +1,87 @@
+package statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvStatsWriterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Writes 20 chunks of 10 rows, each chunk filling a segment.
+   */
+  private CsvStatsWriter write(SegmentPolicy policy) throws Exception {
+    StatsRingBuffer ring = new StatsRingBuffer(64, StatsRingBuffer.WaitStrategy.PARK);
+    String csv = folder.getRoot().toPath().resolve("request-stats.csv").toString();
+    CsvStatsWriter writer = new CsvStatsWriter(csv, ring, policy);
+    writer.initCsvFile();
+    Thread loop = writer.startWriteLoop();
+    for (int chunk = 0; chunk < 20; chunk++) {
+      SingleRequestStatistics[] rows = new SingleRequestStatistics[10];
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = new SingleRequestStatistics("POST", "/skiers/liftrides",
+            1_000_000 + chunk * 1000 + i, 5, 201, 300, 240);
+      }
+      ring.put(rows);
+    }
+    ring.put(new SingleRequestStatistics[0]);
+    loop.join();
+    return writer;
+  }
+
+  private void assertRetained(CsvStatsWriter writer, int kept) throws Exception {
+    Path index = writer.getDataPath();
+    List<SegmentIndex.Entry> entries = SegmentIndex.load(index).getEntries();
+    assertEquals(kept, entries.size());
+    // The newest segments are kept, and only they are left on disk
+    assertEquals(String.format("request-stats.%05d.csv.gz", 20),
+        entries.get(kept - 1).getFileName());
+    for (Path segment : SegmentIndex.load(index).segmentPaths(index)) {
+      assertTrue(Files.exists(segment));
+    }
+    assertFalse(Files.exists(index.resolveSibling("request-stats.00001.csv.gz")));
+    assertEquals(20 - kept, writer.getDroppedSegments());
+
+    // Every row is still counted once, whether dropped or kept
+    RunSnapshot snapshot = new CsvStatsReader(index.toString()).readSnapshot();
+    snapshot.merge(writer.getDroppedSnapshot());
+    assertEquals(200, snapshot.getLatencyByPath().get("POST /skiers/liftrides").getCount());
+    assertEquals(1, snapshot.getRuns());
+  }
+
+  @Test
+  public void keepsTheNewestSegments() throws Exception {
+    CsvStatsWriter writer = write(new SegmentPolicy(100, 0, true, 3, 0));
+    assertRetained(writer, 3);
+    assertTrue(writer.retentionSummary("request-stats.segments")
+        .contains("Dropped: 17 segments, 170 rows"));
+  }
+
+  @Test
+  public void keepsSegmentsWithinTheByteLimit() throws Exception {
+    CsvStatsWriter writer = write(new SegmentPolicy(100, 0, true, 0, 1000));
+    Path index = writer.getDataPath();
+    long bytes = 0;
+    for (Path segment : SegmentIndex.load(index).segmentPaths(index)) {
+      bytes += Files.size(segment);
+    }
+    assertTrue(bytes <= 1000);
+    assertRetained(writer, SegmentIndex.load(index).getEntries().size());
+  }
+
+  @Test
+  public void keepsEverySegmentWithoutALimit() throws Exception {
+    CsvStatsWriter writer = write(new SegmentPolicy(100, 0, false));
+    assertEquals(20, SegmentIndex.load(writer.getDataPath()).getEntries().size());
+    assertEquals(0, writer.getDroppedSegments());
+  }
+}
@@ -0,0 +1,107 @@
+package statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Map;
+import org.junit.Test;
+
+public class RunSnapshotTest {
+
+  private static final String GET = "GET /skiers/{skierID}/vertical";
+  private static final String POST = "POST /skiers/liftrides";
+
+  /**
+   * A run of 10 seconds from wallStart with one GET and one POST started each second.
+   */
+  private static RunSnapshot run(long wallStart) {
+    RunSnapshot snapshot = new RunSnapshot();
+    snapshot.setWallWindow(wallStart, wallStart + 10_000);
+    for (int second = 0; second < 10; second++) {
+      long start = wallStart + second * 1000L;
+      snapshot.record(GET, start, 10 + second, 120, 300);
+      snapshot.record(POST, start + 500, 20, 200, 240);
+    }
+    snapshot.setCounters(20, 1, 0);
+    snapshot.setTransportInfo("okhttp", 4);
+    return snapshot;
+  }
+
+  @Test
+  public void mergeAddsCountsAndHistograms() {
+    RunSnapshot merged = run(1_000_000);
+    merged.merge(run(1_000_000));
+
+    assertEquals(2, merged.getRuns());
+    assertEquals(40, merged.getTotalRequests());
+    assertEquals(2, merged.getTotalBadRequests());
+    assertEquals(20, merged.getLatencyByPath().get(GET).getCount());
+    assertEquals(19, merged.getLatencyByPath().get(GET).getMax());
+    // Overlapping runs share one window
+    assertEquals(1, merged.getWallWindows().size());
+    assertEquals(10.0, merged.getWallTimeSecs(), 1e-9);
+    assertTrue(merged.report().contains("Connections Opened: 8\n"));
+  }
+
+  @Test
+  public void mergeKeepsTheGapBetweenSeparateRuns() {
+    RunSnapshot merged = run(1_000_000);
+    merged.merge(run(1_100_000));
+
+    Map<Long, Long> windows = merged.getWallWindows();
+    assertEquals(2, windows.size());
+    assertEquals(Long.valueOf(1_010_000), windows.get(1_000_000L));
+    assertEquals(Long.valueOf(1_110_000), windows.get(1_100_000L));
+    assertEquals(1_000_000, merged.getWallStart());
+    assertEquals(1_110_000, merged.getWallStop());
+    // Wall time leaves out the 90 seconds between the runs
+    assertEquals(20.0, merged.getWallTimeSecs(), 1e-9);
+    assertTrue(merged.report().contains("Run Windows: 2, spanning 110.00 seconds\n"));
+
+    long[] perSecond = merged.requestsPerSecond();
+    assertEquals(20, perSecond.length);
+    for (long count : perSecond) {
+      assertEquals(2, count);
+    }
+  }
+
+  @Test
+  public void mergeJoinsTouchingWindows() {
+    RunSnapshot merged = run(1_000_000);
+    merged.merge(run(1_010_000));
+    assertEquals(1, merged.getWallWindows().size());
+    assertEquals(20.0, merged.getWallTimeSecs(), 1e-9);
+  }
+
+  @Test
+  public void requestsOutsideEveryWindowGoToTheNearestSecond() {
+    RunSnapshot snapshot = new RunSnapshot();
+    snapshot.setWallWindow(10_000, 13_000);
+    snapshot.record(GET, 5_000, 1, -1, -1);
+    snapshot.record(GET, 11_500, 1, -1, -1);
+    snapshot.record(GET, 20_000, 1, -1, -1);
+    assertArrayEquals(new long[]{1, 1, 1}, snapshot.requestsPerSecond());
+  }
+
+  @Test
+  public void roundTripsThroughBytes() throws IOException {
+    RunSnapshot original = run(1_000_000);
+    original.merge(run(1_100_000));
+    original.setLabel("request-stats.csv");
+
+    RunSnapshot copy = RunSnapshot.fromBytes(original.toBytes());
+    assertEquals(original.getLabel(), copy.getLabel());
+    assertEquals(original.getRuns(), copy.getRuns());
+    assertEquals(original.getCreatedMillis(), copy.getCreatedMillis());
+    assertEquals(original.getWallWindows(), copy.getWallWindows());
+    assertArrayEquals(original.requestsPerSecond(), copy.requestsPerSecond());
+    assertEquals(original.report(), copy.report());
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsBytesThatAreNotASnapshot() throws IOException {
+    RunSnapshot.fromBytes(new byte[]{1, 2, 3, 4, 5, 6});
+  }
+}
@@ -0,0 +1,57 @@
+package statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SampleSummaryTest {
+
+  private static long[] oneTo(int n) {
+    long[] values = new long[n];
+    for (int i = 0; i < n; i++) {
+      values[n - 1 - i] = i + 1;
+    }
+    return values;
+  }
+
+  @Test
+  public void p99OfAHundredValuesIsTheNinetyNinthSmallest() {
+    assertEquals("mean 50.50, median 51, p99 99, max 100", SampleSummary.describe(oneTo(100)));
+  }
+
+  @Test
+  public void p99OfFewValuesIsTheMax() {
+    assertEquals("mean 5.50, median 6, p99 10, max 10", SampleSummary.describe(oneTo(10)));
+    assertEquals("mean 7.00, median 7, p99 7, max 7", SampleSummary.describe(new long[]{7}));
+  }
+
+  @Test
+  public void p99RoundsUpToAWholeValue() {
+    // 99% of 150 is 148.5, so the 149th smallest
+    assertEquals("mean 75.50, median 76, p99 149, max 150", SampleSummary.describe(oneTo(150)));
+  }
+
+  @Test
+  public void noValuesAreNotApplicable() {
+    assertEquals("n/a", SampleSummary.describe(new long[0]));
+  }
+
+  @Test
+  public void equalWeightsMatchTheUnweightedSummary() {
+    for (int n : new int[]{1, 2, 10, 100, 150, 200, 1000}) {
+      double[] weights = new double[n];
+      Arrays.fill(weights, 2.5);
+      assertEquals("n = " + n, SampleSummary.describe(oneTo(n)),
+          SampleSummary.describe(oneTo(n), weights));
+    }
+  }
+
+  @Test
+  public void heavierValuesPullTheSummaryTowardsThem() {
+    // 1 stands for 99 calls and 1000 for one: 99% of the weight is at 1
+    long[] values = {1000, 1};
+    double[] weights = {1, 99};
+    assertEquals("mean 10.99, median 1, p99 1, max 1000", SampleSummary.describe(values, weights));
+  }
+}
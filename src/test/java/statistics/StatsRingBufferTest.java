@@ -0,0 +1,115 @@
+package statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class StatsRingBufferTest {
+
+  private static SingleRequestStatistics[] chunk(long startTime) {
+    return new SingleRequestStatistics[]{
+        new SingleRequestStatistics("GET", "/skiers", startTime, 1, 200)};
+  }
+
+  @Test
+  public void capacityRoundsUpToPowerOfTwo() {
+    assertEquals(8, new StatsRingBuffer(5, StatsRingBuffer.WaitStrategy.PARK).getCapacity());
+    assertEquals(4, new StatsRingBuffer(4, StatsRingBuffer.WaitStrategy.PARK).getCapacity());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooSmallCapacity() {
+    new StatsRingBuffer(1, StatsRingBuffer.WaitStrategy.PARK);
+  }
+
+  @Test
+  public void takesChunksInOrderAcrossWraparound() throws InterruptedException {
+    StatsRingBuffer ring = new StatsRingBuffer(4, StatsRingBuffer.WaitStrategy.SPIN);
+    // Ten laps of the ring, never more than three chunks waiting
+    long next = 0;
+    for (long put = 0; put < 40; put++) {
+      ring.put(chunk(put));
+      if (put % 3 == 2) {
+        while (next <= put) {
+          assertEquals(next, ring.take()[0].getStartTime());
+          next++;
+        }
+      }
+    }
+    while (next < 40) {
+      assertEquals(next, ring.take()[0].getStartTime());
+      next++;
+    }
+    assertEquals(40, ring.getTaken());
+    assertEquals(0, ring.getOccupancy());
+    assertEquals(0, ring.getStalls());
+    assertEquals(3, ring.getMaxOccupancy());
+  }
+
+  @Test
+  public void emptyChunkIsPassedOnButNotCounted() throws InterruptedException {
+    StatsRingBuffer ring = new StatsRingBuffer(2, StatsRingBuffer.WaitStrategy.PARK);
+    SingleRequestStatistics[] end = new SingleRequestStatistics[0];
+    ring.put(end);
+    assertSame(end, ring.take());
+    assertEquals(0, ring.getTaken());
+  }
+
+  @Test
+  public void fullRingHoldsProducerBackUntilWriterTakes() throws Exception {
+    final StatsRingBuffer ring = new StatsRingBuffer(2, StatsRingBuffer.WaitStrategy.PARK);
+    ring.put(chunk(0));
+    ring.put(chunk(1));
+    assertEquals(2, ring.getOccupancy());
+
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread producer = new Thread(() -> {
+      try {
+        ring.put(chunk(2));
+        done.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    producer.start();
+    assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+    assertEquals(0, ring.take()[0].getStartTime());
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    producer.join();
+    assertEquals(1, ring.take()[0].getStartTime());
+    assertEquals(2, ring.take()[0].getStartTime());
+    assertEquals(1, ring.getStalls());
+    assertEquals(2, ring.getMaxOccupancy());
+  }
+
+  @Test
+  public void interruptedProducerStillFillsItsSlot() throws Exception {
+    final StatsRingBuffer ring = new StatsRingBuffer(2, StatsRingBuffer.WaitStrategy.PARK);
+    ring.put(chunk(0));
+    ring.put(chunk(1));
+    final boolean[] interrupted = new boolean[1];
+    Thread producer = new Thread(() -> {
+      try {
+        ring.put(chunk(2));
+      } catch (InterruptedException e) {
+        interrupted[0] = true;
+      }
+    });
+    producer.start();
+    producer.interrupt();
+    Thread.sleep(50);
+    ring.take();
+    producer.join(5000);
+    assertFalse(producer.isAlive());
+    assertTrue(interrupted[0]);
+    // The writer is never left waiting on the interrupted producer's slot
+    assertEquals(1, ring.take()[0].getStartTime());
+    assertEquals(2, ring.take()[0].getStartTime());
+  }
+}
@@ -0,0 +1,50 @@
+package statistics;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TopTenStatisticsTest {
+
+  @Test
+  public void runnersCountInProportionToTheCallsTheyMade() {
+    TopTenStatistics stats = new TopTenStatistics();
+    // A busy runner keeps 10 of its 1000 calls, all with 100 byte bodies
+    TopTenStatistics.Recorder busy = stats.recorder(1, 10);
+    for (int i = 0; i < 1000; i++) {
+      busy.record(100, 10, 1000, 1);
+    }
+    // A quiet runner keeps all 10 of its calls, with 1000 byte bodies
+    TopTenStatistics.Recorder quiet = stats.recorder(1, 10);
+    for (int i = 0; i < 10; i++) {
+      quiet.record(1000, 10, 1000, 1);
+    }
+    stats.merge(busy);
+    stats.merge(quiet);
+
+    String summary = stats.summary();
+    assertTrue(summary, summary.contains("Calls measured: 20, sampled from 1010\n"));
+    // (1000 * 100 + 10 * 1000) / 1010 calls, not the unweighted (100 + 1000) / 2
+    assertTrue(summary, summary.contains(
+        "Response body (bytes): mean 108.91, median 100, p99 100, max 1000\n"));
+    assertTrue(summary, summary.contains("Bytes per skier entry: 10.9\n"));
+  }
+
+  @Test
+  public void unsampledRunnersCountEveryCallOnce() {
+    TopTenStatistics stats = new TopTenStatistics();
+    TopTenStatistics.Recorder first = stats.recorder(2, 4);
+    TopTenStatistics.Recorder second = stats.recorder(2, 4);
+    for (int i = 1; i <= 4; i++) {
+      first.record(i, 10, 1000, 1);
+      second.record(i + 4, 10, 1000, 1);
+    }
+    stats.merge(first);
+    stats.merge(second);
+
+    String summary = stats.summary();
+    assertTrue(summary, summary.contains("Top Ten Payloads in phase 2:\n\tCalls measured: 8\n"));
+    assertTrue(summary, summary.contains(
+        "Response body (bytes): " + SampleSummary.describe(new long[]{1, 2, 3, 4, 5, 6, 7, 8})));
+  }
+}
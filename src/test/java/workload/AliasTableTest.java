@@ -0,0 +1,70 @@
+package workload;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class AliasTableTest {
+
+  private static final int SAMPLES = 1_000_000;
+
+  private static void assertFrequencies(double[] weights) {
+    AliasTable table = new AliasTable(weights);
+    assertEquals(weights.length, table.size());
+    long[] counts = new long[weights.length];
+    Random rand = new Random(6650);
+    for (int i = 0; i < SAMPLES; i++) {
+      counts[table.sample(rand)]++;
+    }
+    double sum = 0;
+    for (double weight : weights) {
+      sum += weight;
+    }
+    for (int i = 0; i < weights.length; i++) {
+      double expected = weights[i] / sum;
+      // Five standard deviations of a binomial count, so a correct table essentially never fails
+      double tolerance = 5 * Math.sqrt(expected * (1 - expected) / SAMPLES);
+      assertEquals("index " + i, expected, (double) counts[i] / SAMPLES, tolerance);
+    }
+  }
+
+  @Test
+  public void samplesUniformWeightsEvenly() {
+    assertFrequencies(new double[]{1, 1, 1, 1, 1});
+  }
+
+  @Test
+  public void samplesSkewedWeightsInProportion() {
+    assertFrequencies(new double[]{50, 25, 12.5, 6.25, 3.125, 3.125});
+  }
+
+  @Test
+  public void neverSamplesZeroWeights() {
+    assertFrequencies(new double[]{0, 3, 0, 1, 0});
+  }
+
+  @Test
+  public void singleWeightAlwaysSamplesIt() {
+    AliasTable table = new AliasTable(new double[]{0.2});
+    Random rand = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(0, table.sample(rand));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAllZeroWeights() {
+    new AliasTable(new double[]{0, 0});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeWeights() {
+    new AliasTable(new double[]{1, -1});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNoWeights() {
+    new AliasTable(new double[0]);
+  }
+}
@@ -0,0 +1,63 @@
+package workload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class OperationMixTest {
+
+  private static int[] countsOf(OperationMix mix) {
+    int[] counts = new int[Operation.values().length];
+    for (Operation op : Operation.values()) {
+      counts[op.ordinal()] = mix.getCount(op);
+    }
+    return counts;
+  }
+
+  @Test
+  public void splitsExactlyWhenWeightsDivideTheTotal() {
+    OperationMix mix = OperationMix.fromWeights(new double[]{80, 10, 5, 5}, 1000);
+    assertArrayEquals(new int[]{800, 100, 50, 50}, countsOf(mix));
+    assertEquals(1000, mix.getTotal());
+  }
+
+  @Test
+  public void largestRemaindersTakeTheLeftoverRequests() {
+    // Exact shares are 3.33, 3.33, 3.33 and 0, so one leftover goes to the first tied remainder
+    assertArrayEquals(new int[]{4, 3, 3, 0},
+        countsOf(OperationMix.fromWeights(new double[]{1, 1, 1, 0}, 10)));
+    // Exact shares are 0.7, 0.2 and 0.1 of 1, so the single request goes to the largest
+    assertArrayEquals(new int[]{1, 0, 0, 0},
+        countsOf(OperationMix.fromWeights(new double[]{7, 2, 1, 0}, 1)));
+  }
+
+  @Test
+  public void countsAlwaysAddUpToTheTotal() {
+    Random rand = new Random(6650);
+    for (int trial = 0; trial < 1000; trial++) {
+      double[] weights = new double[Operation.values().length];
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] = rand.nextDouble();
+      }
+      int total = rand.nextInt(10_000);
+      assertEquals(total, OperationMix.fromWeights(weights, total).getTotal());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeWeights() {
+    OperationMix.fromWeights(new double[]{1, -1, 1, 1}, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAllZeroWeights() {
+    OperationMix.fromWeights(new double[]{0, 0, 0, 0}, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAWeightCountThatDoesNotMatchTheOperations() {
+    OperationMix.fromWeights(new double[]{1, 1}, 10);
+  }
+}
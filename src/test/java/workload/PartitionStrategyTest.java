@@ -0,0 +1,67 @@
+package workload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PartitionStrategyTest {
+
+  private static int[] assign(PartitionStrategy strategy, int numRunners, int blockSize,
+      int numPartitions) {
+    int[] partitions = new int[numRunners];
+    for (int runner = 0; runner < numRunners; runner++) {
+      partitions[runner] = strategy.partitionFor(
+          runner, numRunners, runner * blockSize + 1, numPartitions);
+    }
+    return partitions;
+  }
+
+  @Test
+  public void contiguousGivesNeighbouringRunnersTheSamePartition() {
+    assertArrayEquals(new int[]{0, 0, 0, 1, 1, 1, 2, 2},
+        assign(PartitionStrategy.CONTIGUOUS, 8, 100, 3));
+    // More partitions than runners leaves gaps rather than going out of range
+    assertArrayEquals(new int[]{0, 2, 5}, assign(PartitionStrategy.CONTIGUOUS, 3, 100, 8));
+  }
+
+  @Test
+  public void contiguousDoesNotOverflowOnLargeCounts() {
+    assertEquals(Integer.MAX_VALUE - 1, PartitionStrategy.CONTIGUOUS.partitionFor(
+        Integer.MAX_VALUE - 1, Integer.MAX_VALUE, 1, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void roundRobinTakesPartitionsInTurn() {
+    assertArrayEquals(new int[]{0, 1, 2, 0, 1, 2, 0},
+        assign(PartitionStrategy.ROUND_ROBIN, 7, 100, 3));
+  }
+
+  @Test
+  public void hashedStaysInRangeAndSpreadsAdjacentBlocks() {
+    int numPartitions = 7;
+    int[] perPartition = new int[numPartitions];
+    for (int partition : assign(PartitionStrategy.HASHED, 7000, 1, numPartitions)) {
+      assertTrue(partition >= 0 && partition < numPartitions);
+      perPartition[partition]++;
+    }
+    for (int count : perPartition) {
+      // 1000 expected per partition, well clear of any real hash's spread
+      assertTrue("partition count " + count, count > 800 && count < 1200);
+    }
+    // The same block always lands on the same partition
+    assertEquals(PartitionStrategy.HASHED.partitionFor(0, 4, 12345, numPartitions),
+        PartitionStrategy.HASHED.partitionFor(3, 9, 12345, numPartitions));
+  }
+
+  @Test
+  public void looksUpStrategiesByPropertyName() {
+    for (PartitionStrategy strategy : PartitionStrategy.values()) {
+      assertSame(strategy, PartitionStrategy.fromKey(strategy.getKey()));
+    }
+    assertNull(PartitionStrategy.fromKey("random"));
+  }
+}
@@ -0,0 +1,88 @@
+package workload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+  // Small enough that a 100 ms delay needs more than one round of the wheel
+  private final TimerWheel wheel = new TimerWheel(5, 8, Runnable::run);
+
+  @After
+  public void stopWheel() throws InterruptedException {
+    wheel.stop();
+  }
+
+  private static class Recorder extends TimerWheel.Timeout {
+
+    private final String name;
+    private final List<String> ran;
+    private final CountDownLatch latch;
+    private volatile long ranNanos;
+
+    Recorder(String name, List<String> ran, CountDownLatch latch) {
+      this.name = name;
+      this.ran = ran;
+      this.latch = latch;
+    }
+
+    @Override
+    public void run() {
+      ranNanos = System.nanoTime();
+      ran.add(name);
+      latch.countDown();
+    }
+  }
+
+  @Test
+  public void runsTimeoutsNoEarlierThanTheirDelayAndInOrder() throws InterruptedException {
+    List<String> ran = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(3);
+    Recorder late = new Recorder("late", ran, latch);
+    Recorder soon = new Recorder("soon", ran, latch);
+    Recorder now = new Recorder("now", ran, latch);
+    wheel.schedule(late, TimeUnit.MILLISECONDS.toNanos(100));
+    wheel.schedule(soon, TimeUnit.MILLISECONDS.toNanos(30));
+    wheel.schedule(now, 0);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals("now", ran.get(0));
+    assertEquals("soon", ran.get(1));
+    assertEquals("late", ran.get(2));
+    assertTrue(late.ranNanos >= late.getDeadlineNanos());
+    assertTrue(soon.ranNanos >= soon.getDeadlineNanos());
+  }
+
+  @Test
+  public void timeoutCanBeScheduledAgainOnceItHasRun() throws InterruptedException {
+    List<String> ran = new CopyOnWriteArrayList<>();
+    CountDownLatch first = new CountDownLatch(1);
+    Recorder timeout = new Recorder("again", ran, first);
+    wheel.schedule(timeout, TimeUnit.MILLISECONDS.toNanos(10));
+    assertTrue(first.await(5, TimeUnit.SECONDS));
+    wheel.schedule(timeout, TimeUnit.MILLISECONDS.toNanos(10));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (ran.size() < 2 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(2, ran.size());
+  }
+
+  @Test
+  public void stoppedWheelRunsNothingMore() throws InterruptedException {
+    List<String> ran = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    wheel.schedule(new Recorder("never", ran, latch), TimeUnit.MILLISECONDS.toNanos(50));
+    wheel.stop();
+    assertFalse(latch.await(150, TimeUnit.MILLISECONDS));
+    assertTrue(ran.isEmpty());
+  }
+}
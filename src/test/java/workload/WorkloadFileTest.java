@@ -0,0 +1,119 @@
+package workload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkloadFileTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Path writeTwoSections() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("workload.bin");
+    try (WorkloadFileWriter writer = new WorkloadFileWriter(path, 6650L,
+        Arrays.asList(new int[]{1, 0, 2}, new int[]{2, 3, 1}))) {
+      writer.write(Operation.POST_LIFT_RIDE, 100_000, 40, 420);
+      writer.write(Operation.GET_SKIER_DAY_VERTICAL, 7, 0, 0);
+      writer.write(Operation.GET_TOP_TEN_VERT, 1, 255, 65535);
+    }
+    return path;
+  }
+
+  @Test
+  public void readsBackEveryRecordBySection() throws IOException {
+    try (WorkloadFile workload = WorkloadFile.open(writeTwoSections())) {
+      assertEquals(6650L, workload.getSeed());
+      assertEquals(2, workload.getRequestCount(1, 0));
+      assertEquals(1, workload.getRequestCount(2, 3));
+      assertEquals(-1, workload.getRequestCount(2, 0));
+
+      RequestSource first = workload.section(1, 0);
+      first.advance(Operation.POST_LIFT_RIDE);
+      assertEquals(100_000, first.getSkierId());
+      assertEquals(40, first.getLiftId());
+      assertEquals(420, first.getTime());
+      first.advance(Operation.GET_SKIER_DAY_VERTICAL);
+      assertEquals(7, first.getSkierId());
+
+      // The unsigned fields survive at the top of their range
+      RequestSource second = workload.section(2, 3);
+      second.advance(Operation.GET_TOP_TEN_VERT);
+      assertEquals(255, second.getLiftId());
+      assertEquals(65535, second.getTime());
+    }
+  }
+
+  @Test
+  public void mismatchesAreThrownAndRemembered() throws IOException {
+    try (WorkloadFile workload = WorkloadFile.open(writeTwoSections())) {
+      RequestSource source = workload.section(1, 0);
+      WorkloadMismatchException first = null;
+      try {
+        source.advance(Operation.GET_TOP_TEN_VERT);
+        fail("expected a mismatch");
+      } catch (WorkloadMismatchException e) {
+        first = e;
+      }
+      assertSame(first, workload.getMismatch());
+
+      RequestSource last = workload.section(2, 3);
+      last.advance(Operation.GET_TOP_TEN_VERT);
+      try {
+        last.advance(Operation.GET_TOP_TEN_VERT);
+        fail("expected the section to run out");
+      } catch (WorkloadMismatchException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("ran out"));
+      }
+      // Only the first mismatch is kept
+      assertSame(first, workload.getMismatch());
+    }
+  }
+
+  @Test
+  public void writerRejectsFewerRecordsThanDeclared() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("short.bin");
+    WorkloadFileWriter writer = new WorkloadFileWriter(path, 1L,
+        Arrays.asList(new int[]{1, 0, 2}));
+    writer.write(Operation.POST_LIFT_RIDE, 1, 1, 1);
+    try {
+      writer.close();
+      fail("expected an IOException");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("declared 2"));
+    }
+  }
+
+  @Test
+  public void openRejectsForeignAndTruncatedFiles() throws IOException {
+    Path foreign = folder.newFile("foreign.bin").toPath();
+    try (OutputStream out = Files.newOutputStream(foreign)) {
+      out.write(new byte[WorkloadFile.HEADER_BYTES]);
+    }
+    assertOpenFails(foreign, "not a workload file");
+
+    Path path = writeTwoSections();
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(bytes, bytes.length - WorkloadFile.RECORD_BYTES));
+    assertOpenFails(path, "truncated");
+  }
+
+  private static void assertOpenFails(Path path, String message) {
+    try {
+      WorkloadFile.open(path).close();
+      fail("expected " + path + " to be rejected");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+}